@@ -1,3 +1,3 @@
 APP_PROJECT_PATH := $(call my-dir)
 APP_MODULES      := signanzorbit
-
+APP_ABI          := armeabi armeabi-v7a x86
@@ -3,7 +3,19 @@ LOCAL_PATH := $(call my-dir)
 include $(CLEAR_VARS)
 
 LOCAL_MODULE	:= signanzorbit
-LOCAL_SRC_FILES := signanzorbit.c
+LOCAL_SRC_FILES := signanzorbit.c mathkernels.c
 LOCAL_LDLIBS    := -llog -lGLESv1_CM
 
+# NEON is optional on ARMv7: the NEON kernels are built separately and
+# selected at runtime with cpufeatures (see mathkernels.c)
+ifeq ($(TARGET_ARCH_ABI),armeabi-v7a)
+LOCAL_CFLAGS			+= -DHAVE_NEON=1
+LOCAL_SRC_FILES			+= mathkernels_neon.c.neon
+LOCAL_STATIC_LIBRARIES	:= cpufeatures
+endif
+
 include $(BUILD_SHARED_LIBRARY)
+
+ifeq ($(TARGET_ARCH_ABI),armeabi-v7a)
+$(call import-module,android/cpufeatures)
+endif
@@ -0,0 +1,353 @@
+#include <math.h>
+#include <string.h>
+
+#include "mathkernels.h"
+
+#if defined(__SSE__)
+#include <xmmintrin.h>
+#endif
+
+#if defined(HAVE_NEON) && !defined(SIGNANZORBIT_HOST)
+#include <cpu-features.h>
+#endif
+
+MultMatricesKernel kernelMultMatrices = multMatricesScalar;
+TransformPointsKernel kernelTransformPoints = transformPointsScalar;
+TransformSpheresKernel kernelTransformSpheres = transformSpheresScalar;
+OverlapSpheresKernel kernelOverlapSpheres = overlapSpheresScalar;
+OverlapPairsKernel kernelOverlapPairs = overlapPairsScalar;
+
+const char* selectMathKernels(int simd)
+{
+	kernelMultMatrices = multMatricesScalar;
+	kernelTransformPoints = transformPointsScalar;
+	kernelTransformSpheres = transformSpheresScalar;
+	kernelOverlapSpheres = overlapSpheresScalar;
+	kernelOverlapPairs = overlapPairsScalar;
+
+	if(!simd)
+		return "scalar";
+
+#if defined(__SSE__)
+	// SSE is part of every x86-64 and Android x86 cpu
+	kernelMultMatrices = multMatricesSSE;
+	kernelTransformPoints = transformPointsSSE;
+	kernelTransformSpheres = transformSpheresSSE;
+	kernelOverlapSpheres = overlapSpheresSSE;
+	kernelOverlapPairs = overlapPairsSSE;
+	return "sse";
+#elif defined(HAVE_NEON)
+#if !defined(SIGNANZORBIT_HOST)
+	// NEON is optional on ARMv7 (e.g. Tegra 2 has none)
+	if(android_getCpuFamily() != ANDROID_CPU_FAMILY_ARM || (android_getCpuFeatures() & ANDROID_CPU_ARM_FEATURE_NEON) == 0)
+		return "scalar";
+#endif
+	// desktop ARM builds only enable NEON where the cpu has it (see Makefile)
+	kernelMultMatrices = multMatricesNeon;
+	kernelTransformPoints = transformPointsNeon;
+	kernelTransformSpheres = transformSpheresNeon;
+	kernelOverlapSpheres = overlapSpheresNeon;
+	kernelOverlapPairs = overlapPairsNeon;
+	return "neon";
+#else
+	return "scalar";
+#endif
+}
+
+void homogenizeSphere(const jfloat* v, const jfloat* h, jfloat* out)
+{
+	jfloat x = v[0], y = v[1], z = v[2];
+	jfloat rx = h[0], ry = h[1], rz = h[2];
+
+	if(v[3] != 1 && v[3] != 0)
+	{
+		x /= v[3];
+		y /= v[3];
+		z /= v[3];
+	}
+	if(h[3] != 1 && h[3] != 0)
+	{
+		rx /= h[3];
+		ry /= h[3];
+		rz /= h[3];
+	}
+
+	rx -= x;
+	ry -= y;
+	rz -= z;
+	out[0] = x;
+	out[1] = y;
+	out[2] = z;
+	out[3] = sqrtf(rx*rx + ry*ry + rz*rz);
+}
+
+// ---------------------------------------------------------------------------
+// scalar, the same operations in the same order as JavaMath
+// ---------------------------------------------------------------------------
+
+void multMatricesScalar(const jfloat* left, const jfloat* right, jfloat* result, jint count)
+{
+	jint i, c;
+	for(i=0; i<count; i++)
+	{
+		const jfloat* l = &left[16*i];
+		const jfloat* r = &right[16*i];
+		jfloat temp[16];
+
+		for(c=0; c<16; c+=4)
+		{
+			jfloat r0 = r[c], r1 = r[c+1], r2 = r[c+2], r3 = r[c+3];
+			temp[c  ] = l[0]*r0 + l[4]*r1 + l[ 8]*r2 + l[12]*r3;
+			temp[c+1] = l[1]*r0 + l[5]*r1 + l[ 9]*r2 + l[13]*r3;
+			temp[c+2] = l[2]*r0 + l[6]*r1 + l[10]*r2 + l[14]*r3;
+			temp[c+3] = l[3]*r0 + l[7]*r1 + l[11]*r2 + l[15]*r3;
+		}
+		memcpy(&result[16*i], temp, 16*sizeof(jfloat));
+	}
+}
+
+void transformPointsScalar(const jfloat* m16, const jfloat* in, jfloat* out, jint count)
+{
+	jint i;
+	for(i=0; i<count; i++)
+	{
+		jfloat vx = in[3*i], vy = in[3*i+1], vz = in[3*i+2];
+		jfloat x = m16[0]*vx + m16[4]*vy + m16[ 8]*vz + m16[12];
+		jfloat y = m16[1]*vx + m16[5]*vy + m16[ 9]*vz + m16[13];
+		jfloat z = m16[2]*vx + m16[6]*vy + m16[10]*vz + m16[14];
+		jfloat w = m16[3]*vx + m16[7]*vy + m16[11]*vz + m16[15];
+
+		if(w != 1 && w != 0)
+		{
+			x /= w;
+			y /= w;
+			z /= w;
+		}
+		out[3*i  ] = x;
+		out[3*i+1] = y;
+		out[3*i+2] = z;
+	}
+}
+
+void transformSpheresScalar(const jfloat* m16, const jfloat* in, jint inStride, jfloat* out, jint outStride, jint count)
+{
+	jint i;
+	for(i=0; i<count; i++)
+	{
+		const jfloat* s = &in[inStride*i];
+		jfloat cx = s[0], cy = s[1], cz = s[2];
+		jfloat hx = cx + s[3];
+		jfloat v[4], h[4];
+
+		// the center and a point on the hull
+		v[0] = m16[0]*cx + m16[4]*cy + m16[ 8]*cz + m16[12];
+		v[1] = m16[1]*cx + m16[5]*cy + m16[ 9]*cz + m16[13];
+		v[2] = m16[2]*cx + m16[6]*cy + m16[10]*cz + m16[14];
+		v[3] = m16[3]*cx + m16[7]*cy + m16[11]*cz + m16[15];
+
+		h[0] = m16[0]*hx + m16[4]*cy + m16[ 8]*cz + m16[12];
+		h[1] = m16[1]*hx + m16[5]*cy + m16[ 9]*cz + m16[13];
+		h[2] = m16[2]*hx + m16[6]*cy + m16[10]*cz + m16[14];
+		h[3] = m16[3]*hx + m16[7]*cy + m16[11]*cz + m16[15];
+
+		homogenizeSphere(v, h, &out[outStride*i]);
+	}
+}
+
+jint overlapSpheresScalar(const jfloat* spheres, const jint* indices, jint count, const jfloat* query, jfloat depth, jint* hits)
+{
+	jfloat qx = query[0], qy = query[1], qz = query[2];
+	jfloat reach = query[3] - depth;
+	jint k, n = 0;
+	for(k=0; k<count; k++)
+	{
+		const jfloat* s = &spheres[4*(indices != NULL ? indices[k] : k)];
+		jfloat dx = s[0]-qx, dy = s[1]-qy, dz = s[2]-qz;
+		jfloat overlap = s[3] + reach;
+		if(overlap > 0 && dx*dx + dy*dy + dz*dz < overlap*overlap)
+			hits[n++] = k;
+	}
+	return n;
+}
+
+jint overlapPairsScalar(const jfloat* spheres, const jint* pairs, jint count, jfloat depth, jint* hits)
+{
+	jint k, n = 0;
+	for(k=0; k<count; k++)
+	{
+		const jfloat* a = &spheres[4*pairs[2*k]];
+		const jfloat* b = &spheres[4*pairs[2*k+1]];
+		jfloat dx = b[0]-a[0], dy = b[1]-a[1], dz = b[2]-a[2];
+		jfloat overlap = a[3] + b[3] - depth;
+		if(overlap > 0 && dx*dx + dy*dy + dz*dz < overlap*overlap)
+			hits[n++] = k;
+	}
+	return n;
+}
+
+// ---------------------------------------------------------------------------
+// SSE, one matrix column per register
+// ---------------------------------------------------------------------------
+
+#if defined(__SSE__)
+
+// column0*x + column1*y + column2*z + column3*w
+#define SSE_TRANSFORM(c0, c1, c2, c3, x, y, z, w) \
+	_mm_add_ps(	_mm_add_ps(_mm_mul_ps(c0, _mm_set1_ps(x)), _mm_mul_ps(c1, _mm_set1_ps(y))), \
+				_mm_add_ps(_mm_mul_ps(c2, _mm_set1_ps(z)), _mm_mul_ps(c3, _mm_set1_ps(w))))
+
+void multMatricesSSE(const jfloat* left, const jfloat* right, jfloat* result, jint count)
+{
+	jint i;
+	for(i=0; i<count; i++)
+	{
+		const jfloat* l = &left[16*i];
+		const jfloat* r = &right[16*i];
+		jfloat* res = &result[16*i];
+		__m128 l0 = _mm_loadu_ps(&l[ 0]);
+		__m128 l1 = _mm_loadu_ps(&l[ 4]);
+		__m128 l2 = _mm_loadu_ps(&l[ 8]);
+		__m128 l3 = _mm_loadu_ps(&l[12]);
+
+		// all columns are calculated before storing, so res may be l or r
+		__m128 res0 = SSE_TRANSFORM(l0, l1, l2, l3, r[ 0], r[ 1], r[ 2], r[ 3]);
+		__m128 res1 = SSE_TRANSFORM(l0, l1, l2, l3, r[ 4], r[ 5], r[ 6], r[ 7]);
+		__m128 res2 = SSE_TRANSFORM(l0, l1, l2, l3, r[ 8], r[ 9], r[10], r[11]);
+		__m128 res3 = SSE_TRANSFORM(l0, l1, l2, l3, r[12], r[13], r[14], r[15]);
+
+		_mm_storeu_ps(&res[ 0], res0);
+		_mm_storeu_ps(&res[ 4], res1);
+		_mm_storeu_ps(&res[ 8], res2);
+		_mm_storeu_ps(&res[12], res3);
+	}
+}
+
+void transformPointsSSE(const jfloat* m16, const jfloat* in, jfloat* out, jint count)
+{
+	__m128 c0 = _mm_loadu_ps(&m16[ 0]);
+	__m128 c1 = _mm_loadu_ps(&m16[ 4]);
+	__m128 c2 = _mm_loadu_ps(&m16[ 8]);
+	__m128 c3 = _mm_loadu_ps(&m16[12]);
+	jint i;
+
+	for(i=0; i<count; i++)
+	{
+		jfloat v[4];
+		_mm_storeu_ps(v, SSE_TRANSFORM(c0, c1, c2, c3, in[3*i], in[3*i+1], in[3*i+2], 1.0f));
+
+		if(v[3] != 1 && v[3] != 0)
+		{
+			v[0] /= v[3];
+			v[1] /= v[3];
+			v[2] /= v[3];
+		}
+		memcpy(&out[3*i], v, 3*sizeof(jfloat));
+	}
+}
+
+void transformSpheresSSE(const jfloat* m16, const jfloat* in, jint inStride, jfloat* out, jint outStride, jint count)
+{
+	__m128 c0 = _mm_loadu_ps(&m16[ 0]);
+	__m128 c1 = _mm_loadu_ps(&m16[ 4]);
+	__m128 c2 = _mm_loadu_ps(&m16[ 8]);
+	__m128 c3 = _mm_loadu_ps(&m16[12]);
+	jint i;
+
+	for(i=0; i<count; i++)
+	{
+		const jfloat* s = &in[inStride*i];
+		jfloat v[4], h[4];
+
+		// center and hull point (center + (r,0,0)) differ by column0*r
+		__m128 center = SSE_TRANSFORM(c0, c1, c2, c3, s[0], s[1], s[2], 1.0f);
+		__m128 hull = _mm_add_ps(center, _mm_mul_ps(c0, _mm_set1_ps(s[3])));
+		_mm_storeu_ps(v, center);
+		_mm_storeu_ps(h, hull);
+
+		homogenizeSphere(v, h, &out[outStride*i]);
+	}
+}
+
+// appends k..k+3 to hits for the set bits of mask, without branches
+#define SSE_APPEND_HITS(hits, n, k, mask) \
+	hits[n] = k;	n += (mask) & 1; \
+	hits[n] = k+1;	n += ((mask) >> 1) & 1; \
+	hits[n] = k+2;	n += ((mask) >> 2) & 1; \
+	hits[n] = k+3;	n += ((mask) >> 3) & 1
+
+// overlap > 0 && dx*dx + dy*dy + dz*dz < overlap*overlap for 4 lanes, as bits
+static inline int sseOverlapMask(__m128 dx, __m128 dy, __m128 dz, __m128 overlap)
+{
+	__m128 d2 = _mm_add_ps(_mm_add_ps(_mm_mul_ps(dx, dx), _mm_mul_ps(dy, dy)), _mm_mul_ps(dz, dz));
+	__m128 inside = _mm_cmplt_ps(d2, _mm_mul_ps(overlap, overlap));
+	return _mm_movemask_ps(_mm_and_ps(inside, _mm_cmpgt_ps(overlap, _mm_setzero_ps())));
+}
+
+jint overlapSpheresSSE(const jfloat* spheres, const jint* indices, jint count, const jfloat* query, jfloat depth, jint* hits)
+{
+	__m128 qx = _mm_set1_ps(query[0]);
+	__m128 qy = _mm_set1_ps(query[1]);
+	__m128 qz = _mm_set1_ps(query[2]);
+	__m128 reach = _mm_set1_ps(query[3] - depth);
+	jint k, j, n = 0, tail;
+
+	for(k=0; k+4<=count; k+=4)
+	{
+		// 4 spheres (xyzr rows) transposed into x, y, z and r
+		__m128 x, y, z, r;
+		if(indices != NULL)
+		{
+			x = _mm_loadu_ps(&spheres[4*indices[k  ]]);
+			y = _mm_loadu_ps(&spheres[4*indices[k+1]]);
+			z = _mm_loadu_ps(&spheres[4*indices[k+2]]);
+			r = _mm_loadu_ps(&spheres[4*indices[k+3]]);
+		}
+		else
+		{
+			x = _mm_loadu_ps(&spheres[4*k   ]);
+			y = _mm_loadu_ps(&spheres[4*k+ 4]);
+			z = _mm_loadu_ps(&spheres[4*k+ 8]);
+			r = _mm_loadu_ps(&spheres[4*k+12]);
+		}
+		_MM_TRANSPOSE4_PS(x, y, z, r);
+
+		int mask = sseOverlapMask(_mm_sub_ps(x, qx), _mm_sub_ps(y, qy), _mm_sub_ps(z, qz), _mm_add_ps(r, reach));
+		SSE_APPEND_HITS(hits, n, k, mask);
+	}
+
+	tail = overlapSpheresScalar(indices != NULL ? spheres : &spheres[4*k], indices != NULL ? &indices[k] : NULL, count-k, query, depth, &hits[n]);
+	for(j=0; j<tail; j++)
+		hits[n+j] += k;
+	return n + tail;
+}
+
+jint overlapPairsSSE(const jfloat* spheres, const jint* pairs, jint count, jfloat depth, jint* hits)
+{
+	__m128 d = _mm_set1_ps(depth);
+	jint k, j, n = 0, tail;
+
+	for(k=0; k+4<=count; k+=4)
+	{
+		const jint* p = &pairs[2*k];
+		__m128 ax = _mm_loadu_ps(&spheres[4*p[0]]);
+		__m128 ay = _mm_loadu_ps(&spheres[4*p[2]]);
+		__m128 az = _mm_loadu_ps(&spheres[4*p[4]]);
+		__m128 ar = _mm_loadu_ps(&spheres[4*p[6]]);
+		__m128 bx = _mm_loadu_ps(&spheres[4*p[1]]);
+		__m128 by = _mm_loadu_ps(&spheres[4*p[3]]);
+		__m128 bz = _mm_loadu_ps(&spheres[4*p[5]]);
+		__m128 br = _mm_loadu_ps(&spheres[4*p[7]]);
+		_MM_TRANSPOSE4_PS(ax, ay, az, ar);
+		_MM_TRANSPOSE4_PS(bx, by, bz, br);
+
+		int mask = sseOverlapMask(_mm_sub_ps(bx, ax), _mm_sub_ps(by, ay), _mm_sub_ps(bz, az), _mm_sub_ps(_mm_add_ps(ar, br), d));
+		SSE_APPEND_HITS(hits, n, k, mask);
+	}
+
+	tail = overlapPairsScalar(spheres, &pairs[2*k], count-k, depth, &hits[n]);
+	for(j=0; j<tail; j++)
+		hits[n+j] += k;
+	return n + tail;
+}
+
+#endif
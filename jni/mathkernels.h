@@ -0,0 +1,67 @@
+#ifndef MATHKERNELS_H
+#define MATHKERNELS_H
+
+#include <jni.h>
+
+// Batch kernels of the native math: each call processes count elements.
+// There is a scalar implementation for every cpu plus SSE (x86) and NEON
+// (ARMv7) ones, selectMathKernels() sets the function pointers below.
+// Matrices are column major (16 floats), like in Matrix44.java.
+
+// result[i] = left[i]*right[i] for count matrices, result may be left or right
+typedef void (*MultMatricesKernel)(const jfloat* left, const jfloat* right, jfloat* result, jint count);
+
+// out[i] = m16*in[i] (homogenized) for count points (xyz, 3 floats apart), out may be in
+typedef void (*TransformPointsKernel)(const jfloat* m16, const jfloat* in, jfloat* out, jint count);
+
+// transforms count spheres (xyzr, inStride/outStride floats apart) by m16, out may be in
+typedef void (*TransformSpheresKernel)(const jfloat* m16, const jfloat* in, jint inStride, jfloat* out, jint outStride, jint count);
+
+// two spheres overlap by more than depth if |ca-cb|^2 < (ra+rb-depth)^2 and ra+rb-depth > 0
+
+// hits[n++] = k for the spheres k (xyzr at spheres[4*indices[k]], or spheres[4*k] if indices
+// is NULL) overlapping the query sphere (xyzr), returns n (hits needs room for count)
+typedef jint (*OverlapSpheresKernel)(const jfloat* spheres, const jint* indices, jint count, const jfloat* query, jfloat depth, jint* hits);
+
+// hits[n++] = k for the pairs k (spheres pairs[2*k] and pairs[2*k+1]) which overlap,
+// returns n (hits needs room for count)
+typedef jint (*OverlapPairsKernel)(const jfloat* spheres, const jint* pairs, jint count, jfloat depth, jint* hits);
+
+extern MultMatricesKernel kernelMultMatrices;
+extern TransformPointsKernel kernelTransformPoints;
+extern TransformSpheresKernel kernelTransformSpheres;
+extern OverlapSpheresKernel kernelOverlapSpheres;
+extern OverlapPairsKernel kernelOverlapPairs;
+
+// selects the SIMD kernels if simd != 0 and the cpu supports them, the scalar ones otherwise
+// returns the name of the selected implementation ("scalar", "sse" or "neon")
+const char* selectMathKernels(int simd);
+
+void multMatricesScalar(const jfloat* left, const jfloat* right, jfloat* result, jint count);
+void transformPointsScalar(const jfloat* m16, const jfloat* in, jfloat* out, jint count);
+void transformSpheresScalar(const jfloat* m16, const jfloat* in, jint inStride, jfloat* out, jint outStride, jint count);
+jint overlapSpheresScalar(const jfloat* spheres, const jint* indices, jint count, const jfloat* query, jfloat depth, jint* hits);
+jint overlapPairsScalar(const jfloat* spheres, const jint* pairs, jint count, jfloat depth, jint* hits);
+
+#if defined(__SSE__)
+void multMatricesSSE(const jfloat* left, const jfloat* right, jfloat* result, jint count);
+void transformPointsSSE(const jfloat* m16, const jfloat* in, jfloat* out, jint count);
+void transformSpheresSSE(const jfloat* m16, const jfloat* in, jint inStride, jfloat* out, jint outStride, jint count);
+jint overlapSpheresSSE(const jfloat* spheres, const jint* indices, jint count, const jfloat* query, jfloat depth, jint* hits);
+jint overlapPairsSSE(const jfloat* spheres, const jint* pairs, jint count, jfloat depth, jint* hits);
+#endif
+
+#if defined(HAVE_NEON)
+// mathkernels_neon.c, only built for armeabi-v7a and ARM desktops (see Makefile)
+void multMatricesNeon(const jfloat* left, const jfloat* right, jfloat* result, jint count);
+void transformPointsNeon(const jfloat* m16, const jfloat* in, jfloat* out, jint count);
+void transformSpheresNeon(const jfloat* m16, const jfloat* in, jint inStride, jfloat* out, jint outStride, jint count);
+jint overlapSpheresNeon(const jfloat* spheres, const jint* indices, jint count, const jfloat* query, jfloat depth, jint* hits);
+jint overlapPairsNeon(const jfloat* spheres, const jint* pairs, jint count, jfloat depth, jint* hits);
+#endif
+
+// writes the homogenized xyz of a transformed point (x,y,z,w) and the radius of a sphere
+// whose center and hull point (center + (r,0,0)) have been transformed to v and h
+void homogenizeSphere(const jfloat* v, const jfloat* h, jfloat* out);
+
+#endif
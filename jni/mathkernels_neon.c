@@ -0,0 +1,170 @@
+#include <string.h>
+#include <arm_neon.h>
+
+#include "mathkernels.h"
+
+// NEON kernels, built with -mfpu=neon for armeabi-v7a (see Android.mk) and
+// for ARM desktops (see Makefile), selected if the cpu supports NEON (see
+// selectMathKernels())
+
+// column0*x + column1*y + column2*z + column3*w
+static inline float32x4_t neonTransform(float32x4_t c0, float32x4_t c1, float32x4_t c2, float32x4_t c3, jfloat x, jfloat y, jfloat z, jfloat w)
+{
+	float32x4_t result = vmulq_n_f32(c0, x);
+	result = vmlaq_n_f32(result, c1, y);
+	result = vmlaq_n_f32(result, c2, z);
+	return vmlaq_n_f32(result, c3, w);
+}
+
+void multMatricesNeon(const jfloat* left, const jfloat* right, jfloat* result, jint count)
+{
+	jint i;
+	for(i=0; i<count; i++)
+	{
+		const jfloat* l = &left[16*i];
+		const jfloat* r = &right[16*i];
+		jfloat* res = &result[16*i];
+		float32x4_t l0 = vld1q_f32(&l[ 0]);
+		float32x4_t l1 = vld1q_f32(&l[ 4]);
+		float32x4_t l2 = vld1q_f32(&l[ 8]);
+		float32x4_t l3 = vld1q_f32(&l[12]);
+
+		// all columns are calculated before storing, so res may be l or r
+		float32x4_t res0 = neonTransform(l0, l1, l2, l3, r[ 0], r[ 1], r[ 2], r[ 3]);
+		float32x4_t res1 = neonTransform(l0, l1, l2, l3, r[ 4], r[ 5], r[ 6], r[ 7]);
+		float32x4_t res2 = neonTransform(l0, l1, l2, l3, r[ 8], r[ 9], r[10], r[11]);
+		float32x4_t res3 = neonTransform(l0, l1, l2, l3, r[12], r[13], r[14], r[15]);
+
+		vst1q_f32(&res[ 0], res0);
+		vst1q_f32(&res[ 4], res1);
+		vst1q_f32(&res[ 8], res2);
+		vst1q_f32(&res[12], res3);
+	}
+}
+
+void transformPointsNeon(const jfloat* m16, const jfloat* in, jfloat* out, jint count)
+{
+	float32x4_t c0 = vld1q_f32(&m16[ 0]);
+	float32x4_t c1 = vld1q_f32(&m16[ 4]);
+	float32x4_t c2 = vld1q_f32(&m16[ 8]);
+	float32x4_t c3 = vld1q_f32(&m16[12]);
+	jint i;
+
+	for(i=0; i<count; i++)
+	{
+		jfloat v[4];
+		vst1q_f32(v, neonTransform(c0, c1, c2, c3, in[3*i], in[3*i+1], in[3*i+2], 1.0f));
+
+		if(v[3] != 1 && v[3] != 0)
+		{
+			v[0] /= v[3];
+			v[1] /= v[3];
+			v[2] /= v[3];
+		}
+		memcpy(&out[3*i], v, 3*sizeof(jfloat));
+	}
+}
+
+void transformSpheresNeon(const jfloat* m16, const jfloat* in, jint inStride, jfloat* out, jint outStride, jint count)
+{
+	float32x4_t c0 = vld1q_f32(&m16[ 0]);
+	float32x4_t c1 = vld1q_f32(&m16[ 4]);
+	float32x4_t c2 = vld1q_f32(&m16[ 8]);
+	float32x4_t c3 = vld1q_f32(&m16[12]);
+	jint i;
+
+	for(i=0; i<count; i++)
+	{
+		const jfloat* s = &in[inStride*i];
+		jfloat v[4], h[4];
+
+		// center and hull point (center + (r,0,0)) differ by column0*r
+		float32x4_t center = neonTransform(c0, c1, c2, c3, s[0], s[1], s[2], 1.0f);
+		float32x4_t hull = vmlaq_n_f32(center, c0, s[3]);
+		vst1q_f32(v, center);
+		vst1q_f32(h, hull);
+
+		homogenizeSphere(v, h, &out[outStride*i]);
+	}
+}
+
+// 4 xyzr rows transposed into x, y, z and r
+static inline float32x4x4_t neonTranspose(const jfloat* s0, const jfloat* s1, const jfloat* s2, const jfloat* s3)
+{
+	float32x4x2_t t01 = vtrnq_f32(vld1q_f32(s0), vld1q_f32(s1));	// x0 x1 z0 z1, y0 y1 r0 r1
+	float32x4x2_t t23 = vtrnq_f32(vld1q_f32(s2), vld1q_f32(s3));	// x2 x3 z2 z3, y2 y3 r2 r3
+	float32x4x4_t result;
+	result.val[0] = vcombine_f32(vget_low_f32(t01.val[0]), vget_low_f32(t23.val[0]));
+	result.val[1] = vcombine_f32(vget_low_f32(t01.val[1]), vget_low_f32(t23.val[1]));
+	result.val[2] = vcombine_f32(vget_high_f32(t01.val[0]), vget_high_f32(t23.val[0]));
+	result.val[3] = vcombine_f32(vget_high_f32(t01.val[1]), vget_high_f32(t23.val[1]));
+	return result;
+}
+
+// appends k..k+3 to hits for the lanes of mask which are set, without branches
+static inline jint neonAppendHits(uint32x4_t mask, jint k, jint* hits, jint n)
+{
+	uint32_t bits[4];
+	vst1q_u32(bits, vshrq_n_u32(mask, 31));
+	hits[n] = k;	n += bits[0];
+	hits[n] = k+1;	n += bits[1];
+	hits[n] = k+2;	n += bits[2];
+	hits[n] = k+3;	n += bits[3];
+	return n;
+}
+
+// overlap > 0 && dx*dx + dy*dy + dz*dz < overlap*overlap for 4 lanes
+static inline uint32x4_t neonOverlapMask(float32x4_t dx, float32x4_t dy, float32x4_t dz, float32x4_t overlap)
+{
+	float32x4_t d2 = vmlaq_f32(vmlaq_f32(vmulq_f32(dx, dx), dy, dy), dz, dz);
+	uint32x4_t inside = vcltq_f32(d2, vmulq_f32(overlap, overlap));
+	return vandq_u32(inside, vcgtq_f32(overlap, vdupq_n_f32(0)));
+}
+
+jint overlapSpheresNeon(const jfloat* spheres, const jint* indices, jint count, const jfloat* query, jfloat depth, jint* hits)
+{
+	float32x4_t qx = vdupq_n_f32(query[0]);
+	float32x4_t qy = vdupq_n_f32(query[1]);
+	float32x4_t qz = vdupq_n_f32(query[2]);
+	float32x4_t reach = vdupq_n_f32(query[3] - depth);
+	jint k, j, n = 0, tail;
+
+	for(k=0; k+4<=count; k+=4)
+	{
+		float32x4x4_t s;
+		if(indices != NULL)
+			s = neonTranspose(&spheres[4*indices[k]], &spheres[4*indices[k+1]], &spheres[4*indices[k+2]], &spheres[4*indices[k+3]]);
+		else
+			s = neonTranspose(&spheres[4*k], &spheres[4*k+4], &spheres[4*k+8], &spheres[4*k+12]);
+
+		uint32x4_t mask = neonOverlapMask(vsubq_f32(s.val[0], qx), vsubq_f32(s.val[1], qy), vsubq_f32(s.val[2], qz), vaddq_f32(s.val[3], reach));
+		n = neonAppendHits(mask, k, hits, n);
+	}
+
+	tail = overlapSpheresScalar(indices != NULL ? spheres : &spheres[4*k], indices != NULL ? &indices[k] : NULL, count-k, query, depth, &hits[n]);
+	for(j=0; j<tail; j++)
+		hits[n+j] += k;
+	return n + tail;
+}
+
+jint overlapPairsNeon(const jfloat* spheres, const jint* pairs, jint count, jfloat depth, jint* hits)
+{
+	float32x4_t d = vdupq_n_f32(depth);
+	jint k, j, n = 0, tail;
+
+	for(k=0; k+4<=count; k+=4)
+	{
+		const jint* p = &pairs[2*k];
+		float32x4x4_t a = neonTranspose(&spheres[4*p[0]], &spheres[4*p[2]], &spheres[4*p[4]], &spheres[4*p[6]]);
+		float32x4x4_t b = neonTranspose(&spheres[4*p[1]], &spheres[4*p[3]], &spheres[4*p[5]], &spheres[4*p[7]]);
+
+		uint32x4_t mask = neonOverlapMask(vsubq_f32(b.val[0], a.val[0]), vsubq_f32(b.val[1], a.val[1]), vsubq_f32(b.val[2], a.val[2]),
+				vsubq_f32(vaddq_f32(a.val[3], b.val[3]), d));
+		n = neonAppendHits(mask, k, hits, n);
+	}
+
+	tail = overlapPairsScalar(spheres, &pairs[2*k], count-k, depth, &hits[n]);
+	for(j=0; j<tail; j++)
+		hits[n+j] += k;
+	return n + tail;
+}
@@ -1,17 +1,32 @@
 #include <jni.h>
-#include <android/log.h>
 #include <stdio.h>
 #include <stdlib.h>
+#include <string.h>
 #include <math.h>
+
+#include "mathkernels.h"
+
+#ifndef SIGNANZORBIT_HOST
+#include <android/log.h>
 #include <GLES/gl.h>
 
 #define  LOG_TAG    "Signanzorbit"
 #define  LOGI(...)  __android_log_print(ANDROID_LOG_INFO,LOG_TAG,__VA_ARGS__)
 #define  LOGE(...)  __android_log_print(ANDROID_LOG_ERROR,LOG_TAG,__VA_ARGS__)
+#else
+// desktop build (see Makefile): no android log, no OpenGL ES
+#define  LOGI(...)  (fprintf(stdout,__VA_ARGS__), fputc('\n',stdout))
+#define  LOGE(...)  (fprintf(stderr,__VA_ARGS__), fputc('\n',stderr))
+#endif
 
 #define PI 3.1415926535897932384626433832795f
 #define PIHALF 1.5707963267948966192313216916398f
 
+// group states of a SphereBatch (see SphereBatch.java)
+#define SPHEREBATCH_UNCHANGED 0
+#define SPHEREBATCH_MOVED 1
+#define SPHEREBATCH_CHANGED 2
+
 static jclass vector3_class;
 static jmethodID vector3_constructor_FFF;
 
@@ -131,28 +146,7 @@ void vector3CrossProduct(jfloat* result, jfloat* a, jfloat* b)
 
 void matrixMult(jfloat* left, jfloat* right, jfloat* result)
 {
-	jfloat temp[16];
-	temp[ 0] = left[ 0]*right[ 0] + left[ 4]*right[ 1] + left[ 8]*right[ 2] + left[12]*right[ 3];
-	temp[ 1] = left[ 1]*right[ 0] + left[ 5]*right[ 1] + left[ 9]*right[ 2] + left[13]*right[ 3];
-	temp[ 2] = left[ 2]*right[ 0] + left[ 6]*right[ 1] + left[10]*right[ 2] + left[14]*right[ 3];
-	temp[ 3] = left[ 3]*right[ 0] + left[ 7]*right[ 1] + left[11]*right[ 2] + left[15]*right[ 3];
-
-	temp[ 4] = left[ 0]*right[ 4] + left[ 4]*right[ 5] + left[ 8]*right[ 6] + left[12]*right[ 7];
-	temp[ 5] = left[ 1]*right[ 4] + left[ 5]*right[ 5] + left[ 9]*right[ 6] + left[13]*right[ 7];
-	temp[ 6] = left[ 2]*right[ 4] + left[ 6]*right[ 5] + left[10]*right[ 6] + left[14]*right[ 7];
-	temp[ 7] = left[ 3]*right[ 4] + left[ 7]*right[ 5] + left[11]*right[ 6] + left[15]*right[ 7];
-
-	temp[ 8] = left[ 0]*right[ 8] + left[ 4]*right[ 9] + left[ 8]*right[10] + left[12]*right[11];
-	temp[ 9] = left[ 1]*right[ 8] + left[ 5]*right[ 9] + left[ 9]*right[10] + left[13]*right[11];
-	temp[10] = left[ 2]*right[ 8] + left[ 6]*right[ 9] + left[10]*right[10] + left[14]*right[11];
-	temp[11] = left[ 3]*right[ 8] + left[ 7]*right[ 9] + left[11]*right[10] + left[15]*right[11];
-
-	temp[12] = left[ 0]*right[12] + left[ 4]*right[13] + left[ 8]*right[14] + left[12]*right[15];
-	temp[13] = left[ 1]*right[12] + left[ 5]*right[13] + left[ 9]*right[14] + left[13]*right[15];
-	temp[14] = left[ 2]*right[12] + left[ 6]*right[13] + left[10]*right[14] + left[14]*right[15];
-	temp[15] = left[ 3]*right[12] + left[ 7]*right[13] + left[11]*right[14] + left[15]*right[15];
-
-	memcpy(result, temp, 16*sizeof(jfloat));
+	kernelMultMatrices(left, right, result, 1);
 }
 
 void transformVector(jfloat* matrix, jfloat* vector, jfloat* result)
@@ -168,6 +162,82 @@ void transformVector(jfloat* matrix, jfloat* vector, jfloat* result)
 	result[3] = w;
 }
 
+jfloat transformSphere(jfloat* m16, jfloat* in, jfloat* out)
+{
+	// transforms the center and a point on the hull
+	jfloat result[4];
+	kernelTransformSpheres(m16, in, 4, result, 4, 1);
+
+	memcpy(out, result, 3*sizeof(jfloat));
+	return result[3];
+}
+
+void mergeChildSpheres(jfloat* groupSphere, jfloat* childSpheres, jint count)
+{
+	// the group space spheres of the children are at offset 4 of each 12 floats
+	jint c;
+	if(count == 1)
+		memcpy(groupSphere, &childSpheres[4], 4*sizeof(jfloat));
+	else if(count > 1)
+	{
+		jfloat center[3] = {0,0,0};
+		jfloat temp[3];
+		jfloat r = 0;
+
+		for(c=0; c<count; c++)
+			vectorAddVector(3, center, center, &childSpheres[12*c+4]);
+		vectorDivideSkalar(3, center, center, count);
+
+		for(c=0; c<count; c++)
+		{
+			vectorSubtractVector(3, temp, &childSpheres[12*c+4], center);
+			jfloat tempR = vectorLength(3, temp) + childSpheres[12*c+7];
+			if(tempR > r)
+				r = tempR;
+		}
+		memcpy(groupSphere, center, 3*sizeof(jfloat));
+		groupSphere[3] = r;
+	}
+}
+
+void transformSphereHierarchy(jfloat* arena, jint* groupMatrixOffsets, jfloat* groupMatrices, jint* groupFirst, jint* groupStates, jfloat* groupSpheres, jint* childMatrixOffsets, jfloat* childMatrices, jfloat* childSpheres, jint groupCount)
+{
+	jint g;
+	for(g=0; g<groupCount; g++)
+	{
+		jint state = groupStates[g];
+		if(state == SPHEREBATCH_UNCHANGED)
+			continue;
+
+		jint first = groupFirst[g];
+		jint end = groupFirst[g+1];
+		jint count = end-first;
+		// matrices bound to the arena are read in place, all others have been copied into the batch
+		jfloat* groupMatrix = (arena != NULL && groupMatrixOffsets[g] >= 0) ? &arena[groupMatrixOffsets[g]] : &groupMatrices[16*g];
+		jfloat* groupSphere = &groupSpheres[8*g];
+		jint c;
+
+		// if only the group moved, the group space spheres of the last frame are still valid
+		if(state == SPHEREBATCH_CHANGED)
+		{
+			// children: local -> group space
+			for(c=first; c<end; c++)
+			{
+				jfloat* childSphere = &childSpheres[12*c];
+				jfloat* childMatrix = (arena != NULL && childMatrixOffsets[c] >= 0) ? &arena[childMatrixOffsets[c]] : &childMatrices[16*c];
+				childSphere[7] = transformSphere(childMatrix, childSphere, &childSphere[4]);
+			}
+
+			// merge the children into the group sphere
+			mergeChildSpheres(groupSphere, &childSpheres[12*first], count);
+		}
+
+		// group and children: group space -> world space
+		kernelTransformSpheres(groupMatrix, groupSphere, 8, &groupSphere[4], 8, 1);
+		kernelTransformSpheres(groupMatrix, &childSpheres[12*first+4], 12, &childSpheres[12*first+8], 12, count);
+	}
+}
+
 void calcCentroid(int dimension, jfloat* result, jsize nrOfVertices, jfloat* vertices)
 {
 	// reset center to zero
@@ -216,6 +286,8 @@ jint JNI_OnLoad(JavaVM* vm, void* reserved)
     vector3_class				= (*env)->FindClass(env, "nu/shacknet/poseidon/pn/signanzorbit/math/Vector3");
     vector3_constructor_FFF		= (*env)->GetMethodID(env, vector3_class, "<init>", "(FFF)V");
 
+    LOGI("math kernels: %s", selectMathKernels(1));
+
     return JNI_VERSION_1_4;
 }
 
@@ -339,16 +411,10 @@ void Java_nu_shacknet_poseidon_pn_signanzorbit_math_Matrix44_transformPoint(JNIE
 	jfloat* vector	= (*env)->GetFloatArrayElements(env, vector_java, NULL);
 	jsize dimension = (*env)->GetArrayLength(env, vector_java);
 
-	jfloat vector4[4] = {0,0,0,1};
-
-	memcpy(vector4, vector, dimension*sizeof(jfloat));
-
-	transformVector(m16, vector4, vector4);
-
 	if(dimension == 3)
-		vector4Homogenize(vector4, vector4);
-
-	memcpy(vector, vector4, dimension*sizeof(jfloat));
+		kernelTransformPoints(m16, vector, vector, 1);
+	else
+		transformVector(m16, vector, vector);
 
 	(*env)->ReleaseFloatArrayElements(env, vector_java, vector, 0);
 	(*env)->ReleaseFloatArrayElements(env, m16_java, m16, JNI_ABORT);
@@ -359,28 +425,118 @@ jfloat Java_nu_shacknet_poseidon_pn_signanzorbit_math_Matrix44_transformSphere(J
 	jfloat* center	= (*env)->GetFloatArrayElements(env, center_java, NULL);
 	jfloat* m16		= (*env)->GetFloatArrayElements(env, m16_java, NULL);
 
-	jfloat radiusVector[4] = {1,0,0,1};
-	jfloat center4[4] = {0,0,0,1};
-	memcpy(center4, center, 3*sizeof(jfloat));
+	jfloat sphere[4] = {center[0], center[1], center[2], radius};
+	kernelTransformSpheres(m16, sphere, 4, sphere, 4, 1);
 
-	// make radiusVector a point on the hull
-	vectorMultiplySkalar(3, radiusVector, radiusVector, radius);
-	vectorAddVector(3, radiusVector, radiusVector, center4);
+	memcpy(center, sphere, 3*sizeof(jfloat));
+	(*env)->ReleaseFloatArrayElements(env, center_java, center, 0);
+	(*env)->ReleaseFloatArrayElements(env, m16_java, m16, JNI_ABORT);
 
-	// transform both points
-	transformVector(m16, center4, center4);
-	vector4Homogenize(center4, center4);
-	transformVector(m16, radiusVector, radiusVector);
-	vector4Homogenize(radiusVector, radiusVector);
+	return sphere[3];
+}
 
-	// make radiusVector a vector from center to hull again
-	vectorSubtractVector(3, radiusVector, radiusVector, center4);
+void Java_nu_shacknet_poseidon_pn_signanzorbit_math_SphereBatch_transformSpheres(JNIEnv* env, jclass clazz, jobject arena_java, jintArray groupMatrixOffsets_java, jfloatArray groupMatrices_java, jintArray groupFirst_java, jintArray groupStates_java, jfloatArray groupSpheres_java, jintArray childMatrixOffsets_java, jfloatArray childMatrices_java, jfloatArray childSpheres_java, jint groupCount)
+{
+	// the arena is a direct buffer, so it is read without pinning or copying
+	jfloat* arena = NULL;
+	if(arena_java != NULL)
+		arena = (*env)->GetDirectBufferAddress(env, arena_java);
 
-	memcpy(center, center4, 3*sizeof(jfloat));
-	(*env)->ReleaseFloatArrayElements(env, center_java, center, 0);
-	(*env)->ReleaseFloatArrayElements(env, m16_java, m16, JNI_ABORT);
+	// no other JNI calls happen between Get and Release, so the critical variants can be used
+	jint* groupMatrixOffsets	= (*env)->GetPrimitiveArrayCritical(env, groupMatrixOffsets_java, NULL);
+	jfloat* groupMatrices	= (*env)->GetPrimitiveArrayCritical(env, groupMatrices_java, NULL);
+	jint* groupFirst		= (*env)->GetPrimitiveArrayCritical(env, groupFirst_java, NULL);
+	jint* groupStates		= (*env)->GetPrimitiveArrayCritical(env, groupStates_java, NULL);
+	jfloat* groupSpheres	= (*env)->GetPrimitiveArrayCritical(env, groupSpheres_java, NULL);
+	jint* childMatrixOffsets	= (*env)->GetPrimitiveArrayCritical(env, childMatrixOffsets_java, NULL);
+	jfloat* childMatrices	= (*env)->GetPrimitiveArrayCritical(env, childMatrices_java, NULL);
+	jfloat* childSpheres	= (*env)->GetPrimitiveArrayCritical(env, childSpheres_java, NULL);
+
+	transformSphereHierarchy(arena, groupMatrixOffsets, groupMatrices, groupFirst, groupStates, groupSpheres, childMatrixOffsets, childMatrices, childSpheres, groupCount);
+
+	(*env)->ReleasePrimitiveArrayCritical(env, childSpheres_java, childSpheres, 0);
+	(*env)->ReleasePrimitiveArrayCritical(env, childMatrices_java, childMatrices, JNI_ABORT);
+	(*env)->ReleasePrimitiveArrayCritical(env, childMatrixOffsets_java, childMatrixOffsets, JNI_ABORT);
+	(*env)->ReleasePrimitiveArrayCritical(env, groupSpheres_java, groupSpheres, 0);
+	(*env)->ReleasePrimitiveArrayCritical(env, groupStates_java, groupStates, JNI_ABORT);
+	(*env)->ReleasePrimitiveArrayCritical(env, groupFirst_java, groupFirst, JNI_ABORT);
+	(*env)->ReleasePrimitiveArrayCritical(env, groupMatrices_java, groupMatrices, JNI_ABORT);
+	(*env)->ReleasePrimitiveArrayCritical(env, groupMatrixOffsets_java, groupMatrixOffsets, JNI_ABORT);
+}
+
+jstring Java_nu_shacknet_poseidon_pn_signanzorbit_math_MathKernels_selectImplementation(JNIEnv* env, jclass clazz, jboolean simd)
+{
+	return (*env)->NewStringUTF(env, selectMathKernels(simd));
+}
+
+void Java_nu_shacknet_poseidon_pn_signanzorbit_math_MathKernels_nativeMultMatrices(JNIEnv* env, jclass clazz, jfloatArray left_java, jfloatArray right_java, jfloatArray result_java, jint count)
+{
+	// no other JNI calls happen between Get and Release, so the critical variants can be used
+	jfloat* left	= (*env)->GetPrimitiveArrayCritical(env, left_java, NULL);
+	jfloat* right	= (*env)->GetPrimitiveArrayCritical(env, right_java, NULL);
+	jfloat* result	= (*env)->GetPrimitiveArrayCritical(env, result_java, NULL);
+
+	kernelMultMatrices(left, right, result, count);
+
+	(*env)->ReleasePrimitiveArrayCritical(env, result_java, result, 0);
+	(*env)->ReleasePrimitiveArrayCritical(env, right_java, right, JNI_ABORT);
+	(*env)->ReleasePrimitiveArrayCritical(env, left_java, left, JNI_ABORT);
+}
+
+void Java_nu_shacknet_poseidon_pn_signanzorbit_math_MathKernels_nativeTransformPoints(JNIEnv* env, jclass clazz, jfloatArray m16_java, jfloatArray points_java, jfloatArray result_java, jint count)
+{
+	jfloat* m16		= (*env)->GetPrimitiveArrayCritical(env, m16_java, NULL);
+	jfloat* points	= (*env)->GetPrimitiveArrayCritical(env, points_java, NULL);
+	jfloat* result	= (*env)->GetPrimitiveArrayCritical(env, result_java, NULL);
+
+	kernelTransformPoints(m16, points, result, count);
+
+	(*env)->ReleasePrimitiveArrayCritical(env, result_java, result, 0);
+	(*env)->ReleasePrimitiveArrayCritical(env, points_java, points, JNI_ABORT);
+	(*env)->ReleasePrimitiveArrayCritical(env, m16_java, m16, JNI_ABORT);
+}
+
+void Java_nu_shacknet_poseidon_pn_signanzorbit_math_MathKernels_nativeTransformSpheres(JNIEnv* env, jclass clazz, jfloatArray m16_java, jfloatArray spheres_java, jfloatArray result_java, jint count)
+{
+	jfloat* m16		= (*env)->GetPrimitiveArrayCritical(env, m16_java, NULL);
+	jfloat* spheres	= (*env)->GetPrimitiveArrayCritical(env, spheres_java, NULL);
+	jfloat* result	= (*env)->GetPrimitiveArrayCritical(env, result_java, NULL);
+
+	kernelTransformSpheres(m16, spheres, 4, result, 4, count);
+
+	(*env)->ReleasePrimitiveArrayCritical(env, result_java, result, 0);
+	(*env)->ReleasePrimitiveArrayCritical(env, spheres_java, spheres, JNI_ABORT);
+	(*env)->ReleasePrimitiveArrayCritical(env, m16_java, m16, JNI_ABORT);
+}
+
+jint Java_nu_shacknet_poseidon_pn_signanzorbit_math_MathKernels_nativeOverlapSpheres(JNIEnv* env, jclass clazz, jfloatArray spheres_java, jintArray indices_java, jint count, jfloat x, jfloat y, jfloat z, jfloat radius, jfloat depth, jintArray hits_java)
+{
+	jfloat query[4] = { x, y, z, radius };
+	jfloat* spheres	= (*env)->GetPrimitiveArrayCritical(env, spheres_java, NULL);
+	jint* indices	= indices_java != NULL ? (*env)->GetPrimitiveArrayCritical(env, indices_java, NULL) : NULL;
+	jint* hits		= (*env)->GetPrimitiveArrayCritical(env, hits_java, NULL);
+
+	jint n = kernelOverlapSpheres(spheres, indices, count, query, depth, hits);
+
+	(*env)->ReleasePrimitiveArrayCritical(env, hits_java, hits, 0);
+	if(indices != NULL)
+		(*env)->ReleasePrimitiveArrayCritical(env, indices_java, indices, JNI_ABORT);
+	(*env)->ReleasePrimitiveArrayCritical(env, spheres_java, spheres, JNI_ABORT);
+	return n;
+}
+
+jint Java_nu_shacknet_poseidon_pn_signanzorbit_math_MathKernels_nativeOverlapPairs(JNIEnv* env, jclass clazz, jfloatArray spheres_java, jintArray pairs_java, jint count, jfloat depth, jintArray hits_java)
+{
+	jfloat* spheres	= (*env)->GetPrimitiveArrayCritical(env, spheres_java, NULL);
+	jint* pairs		= (*env)->GetPrimitiveArrayCritical(env, pairs_java, NULL);
+	jint* hits		= (*env)->GetPrimitiveArrayCritical(env, hits_java, NULL);
+
+	jint n = kernelOverlapPairs(spheres, pairs, count, depth, hits);
 
-	return vectorLength(3, radiusVector);
+	(*env)->ReleasePrimitiveArrayCritical(env, hits_java, hits, 0);
+	(*env)->ReleasePrimitiveArrayCritical(env, pairs_java, pairs, JNI_ABORT);
+	(*env)->ReleasePrimitiveArrayCritical(env, spheres_java, spheres, JNI_ABORT);
+	return n;
 }
 
 jboolean Java_nu_shacknet_poseidon_pn_signanzorbit_math_Sphere_isPointInside(JNIEnv* env, jobject thiz, jfloatArray center_java, jfloat radius, jfloatArray point_java)
@@ -935,6 +1091,7 @@ void Java_nu_shacknet_poseidon_pn_signanzorbit_util_managers_OGLManager_convertP
 	(*env)->ReleaseIntArrayElements(env, bitmap_ogl_java, bitmap_ogl, JNI_ABORT);
 }
 
+#ifndef SIGNANZORBIT_HOST
 jintArray Java_nu_shacknet_poseidon_pn_signanzorbit_util_managers_OGLManager_getPixelsNative(JNIEnv* env, jclass clazz, jint x, jint y, jint w, jint h)
 {
 	jintArray result_java = (*env)->NewIntArray(env, w*h);
@@ -951,3 +1108,4 @@ jintArray Java_nu_shacknet_poseidon_pn_signanzorbit_util_managers_OGLManager_get
 	(*env)->ReleaseIntArrayElements(env, result_java, result_c, 0);
 	return result_java;
 }
+#endif
@@ -348,6 +348,7 @@ public class LevelActivity extends Activity
 		
 		wakeLock.acquire();
 		soundManager.onResume();
+		CollisionManager.instance.getEvents().start();
 		renderView.synchronizer.setActive(true);
 		renderView.onResume();
 	}
@@ -396,6 +397,7 @@ public class LevelActivity extends Activity
 		
 		renderView.synchronizer.setActive(false);
 		renderView.onPause();
+		CollisionManager.instance.getEvents().stop();
 		soundManager.onPause();
 		wakeLock.release();
 	}
@@ -432,6 +434,9 @@ public class LevelActivity extends Activity
 		
 		//this waits for the logic thread to shut down
 		renderView.synchronizer.setActive(false);
+		//the score events still pending are consumed before the score is saved,
+		//the consumer threads are started again by onResume()
+		CollisionManager.instance.getEvents().stop();
 		
 		Scene scene = renderView.scene;
 		Camera cam = renderView.cam;
@@ -31,7 +31,7 @@ import nu.shacknet.poseidon.pn.signanzorbit.scene.MaterialManager;
 import nu.shacknet.poseidon.pn.signanzorbit.scene.Scene;
 import nu.shacknet.poseidon.pn.signanzorbit.scene.SceneEntity;
 import nu.shacknet.poseidon.pn.signanzorbit.util.CustomGestureDetector;
-import nu.shacknet.poseidon.pn.signanzorbit.util.MathUtil;
+import nu.shacknet.poseidon.pn.signanzorbit.util.FastMath;
 import nu.shacknet.poseidon.pn.signanzorbit.util.Synchronizer;
 import nu.shacknet.poseidon.pn.signanzorbit.util.CustomGestureDetector.CustomOnGestureListener;
 import nu.shacknet.poseidon.pn.signanzorbit.util.managers.CollisionManager;
@@ -367,7 +367,7 @@ public class RenderView extends GLSurfaceView implements Renderer
 			{
 				float powerPercent = (float)duration / (float)Config.LONG_PRESS_CYCLE_DURATION;
 				
-				float powerPercentPulsed = MathUtil.forcePulseFunktion(powerPercent);
+				float powerPercentPulsed = FastMath.forcePulse(powerPercent);
 				
 				//force strength
 				float power = powerPercentPulsed * Config.MAX_FORCE;
@@ -378,7 +378,7 @@ public class RenderView extends GLSurfaceView implements Renderer
 				SceneEntity entity = collManager.intersectRay(cam.eyePosition, rayDirection);
 
 				//entity selected
-				if(entity!=null && !entity.getName().equals(Config.PLANET_NAME))
+				if(entity!=null && !collManager.isPlanet(entity))
 				{
 					selectionDirection.set(cam.viewPosition);
 					selectionDirection.subtract(cam.eyePosition);
@@ -515,7 +515,10 @@ public class RenderView extends GLSurfaceView implements Renderer
 		
 		oglManager.glFrustumInfinite(left, right, bottom, top, zNear, zFar, projection);
 
-		glLoadMatrixf(projection.getArray16(), 0);
+		if(Config.FIXED_POINT)
+			glLoadMatrixx(projection.getArrayFixed16(), 0);
+		else
+			glLoadMatrixf(projection.getArray16(), 0);
 		
 		// Select the modelview matrix again
 		glMatrixMode(GL_MODELVIEW);
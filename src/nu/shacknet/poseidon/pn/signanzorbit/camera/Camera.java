@@ -4,9 +4,11 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 
+import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
 import nu.shacknet.poseidon.pn.signanzorbit.math.Constants;
 import nu.shacknet.poseidon.pn.signanzorbit.math.Matrix44;
 import nu.shacknet.poseidon.pn.signanzorbit.math.Vector3;
+import nu.shacknet.poseidon.pn.signanzorbit.util.FastMath;
 import nu.shacknet.poseidon.pn.signanzorbit.util.Persistable;
 import nu.shacknet.poseidon.pn.signanzorbit.util.managers.OGLManager;
 
@@ -121,7 +123,10 @@ public class Camera implements Persistable
 		
 		oglManager.gluLookAt(eyePosition, inverseViewVector, rightVector, upVector, modelview);
 		
-		glLoadMatrixf(modelview.getArray16(), 0);
+		if(Config.FIXED_POINT)
+			glLoadMatrixx(modelview.getArrayFixed16(), 0);
+		else
+			glLoadMatrixf(modelview.getArray16(), 0);
 	}
 	
 	
@@ -224,7 +229,7 @@ public class Camera implements Persistable
 			//reset
 			qx.setIdentity();
 			//rotate around the y axis
-			qx.setRotate(Constants.Y_AXIS,(float)Math.toRadians(azimuthDiff));
+			qx.setRotate(Constants.Y_AXIS,FastMath.toRadians(azimuthDiff));
 			qx.transformPoint(inverseViewVector);
 	
 			// create the axis for the vertical rotation (altitude)
@@ -238,7 +243,7 @@ public class Camera implements Persistable
 	
 			// rotatate view vec (grad)
 			qy.setIdentity();
-			qy.setRotate(qyAxis,(float)Math.toRadians(altitudeDiff));
+			qy.setRotate(qyAxis,FastMath.toRadians(altitudeDiff));
 	
 			qy.transformPoint(inverseViewVector);
 			inverseViewVector.normalize();
@@ -0,0 +1,30 @@
+package nu.shacknet.poseidon.pn.signanzorbit.collision;
+
+import java.util.ArrayList;
+
+import nu.shacknet.poseidon.pn.signanzorbit.orbit.Movable;
+
+/**
+ * The Interface Broadphase. A broadphase reduces the pairs of entities the
+ * CollisionManager has to test (the narrowphase) to those whose world
+ * bounding spheres may overlap. Entities are identified by their index in
+ * the entity list (Scene.sceneEntities), which only ever grows.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public interface Broadphase
+{
+
+	/**
+	 * Finds the candidate pairs among the active entities, based on their
+	 * current world bounding spheres. Every pair of active entities whose
+	 * bounding spheres overlap has to be reported, additional pairs are
+	 * allowed.
+	 *
+	 * @param entities the entities
+	 * @param active whether an entity takes part (at least entities.size() long)
+	 * @param pairs cleared, then receives the candidate pairs sorted by index
+	 */
+	public void findPairs(ArrayList<? extends Movable> entities, boolean[] active, PairList pairs);
+}
@@ -0,0 +1,36 @@
+package nu.shacknet.poseidon.pn.signanzorbit.collision;
+
+import java.util.ArrayList;
+
+import nu.shacknet.poseidon.pn.signanzorbit.orbit.Movable;
+
+/**
+ * The brute force broadphase: every pair of active entities is a candidate,
+ * O(n^2). The reference for the other broadphases.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class BruteForceBroadphase implements Broadphase
+{
+
+	/* (non-Javadoc)
+	 * @see nu.shacknet.poseidon.pn.signanzorbit.collision.Broadphase#findPairs(java.util.ArrayList, boolean[], nu.shacknet.poseidon.pn.signanzorbit.collision.PairList)
+	 */
+	@Override
+	public void findPairs(ArrayList<? extends Movable> entities, boolean[] active, PairList pairs)
+	{
+		pairs.clear();
+		int size = entities.size();
+		for(int i=0; i<size; i++)
+		{
+			if(!active[i])
+				continue;
+			for(int j=i+1; j<size; j++)
+			{
+				if(active[j])
+					pairs.add(i, j);
+			}
+		}
+	}
+}
@@ -0,0 +1,446 @@
+package nu.shacknet.poseidon.pn.signanzorbit.collision;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import nu.shacknet.poseidon.pn.signanzorbit.util.managers.LogManager;
+
+/**
+ * The results of the collision response which are handled outside of the
+ * logic thread (sound, score, vibration), published as compact events.
+ * Every consumer has its own channel: a single producer, single consumer
+ * ring buffer of ints and a thread which drains it. Publishing never
+ * blocks and never allocates, the logic thread only wakes the consumers
+ * with pending events once per frame (flush).
+ *
+ * An event is encoded in an int: the type in the lowest 4 bits, the flags
+ * in the next 4 bits and the index of the entity (for PART_HIT the number
+ * of the planet) above them.
+ *
+ * A full channel drops the event, unless the consumer is lossless: then
+ * the event is consumed by the publishing thread, so lossless consumers
+ * have to be thread safe. The pending events of lossless consumers are
+ * consumed when the channels are stopped as well.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class CollisionEvents
+{
+	/** Event type: a satellite hits the planet (once per contact). */
+	public static final int IMPACT = 0;
+
+	/** Event type: a planet part is knocked out of a planet (the entity is the number of the planet). */
+	public static final int PART_HIT = 1;
+
+	/** The number of event types. */
+	public static final int TYPES = 2;
+
+	/** Event flag: the satellite is faster than MIN_SPEED_FOR_UNDAMPED_DIRECTIONAL. */
+	public static final int HEAVY = 1;
+
+	/**
+	 * The consumer of a channel.
+	 */
+	public interface Consumer
+	{
+		/**
+		 * Handles an event.
+		 *
+		 * @param event the event
+		 */
+		void consume(int event);
+	}
+
+	/** The channels. */
+	private final ArrayList<Channel> channels;
+
+	/** The number of published events per type (written by the publishing thread only). */
+	private final int[] published;
+
+	/** Whether the events are consumed on the publishing thread. */
+	private boolean inline;
+
+	/** Whether the consumer threads are running. */
+	private boolean started;
+
+	/**
+	 * Instantiates new collision events without channels.
+	 */
+	public CollisionEvents()
+	{
+		channels = new ArrayList<Channel>();
+		published = new int[TYPES];
+	}
+
+	/**
+	 * Encodes an event.
+	 *
+	 * @param type the type
+	 * @param flags the flags
+	 * @param entity the index of the entity
+	 * @return the event
+	 */
+	public static int encode(int type, int flags, int entity)
+	{
+		return (entity << 8) | ((flags & 0xF) << 4) | (type & 0xF);
+	}
+
+	/**
+	 * Gets the type of an event.
+	 *
+	 * @param event the event
+	 * @return the type
+	 */
+	public static int getType(int event)
+	{
+		return event & 0xF;
+	}
+
+	/**
+	 * Gets the flags of an event.
+	 *
+	 * @param event the event
+	 * @return the flags
+	 */
+	public static int getFlags(int event)
+	{
+		return (event >> 4) & 0xF;
+	}
+
+	/**
+	 * Gets the entity of an event.
+	 *
+	 * @param event the event
+	 * @return the index of the entity
+	 */
+	public static int getEntity(int event)
+	{
+		return event >>> 8;
+	}
+
+	/**
+	 * Adds a channel, the channels have to be added before they are started.
+	 *
+	 * @param name the name of the consumer thread
+	 * @param types the event types of the channel, one bit per type
+	 * @param capacity the capacity of the ring buffer, rounded up to a power of 2
+	 * @param lossless whether events must not be dropped
+	 * @param consumer the consumer
+	 * @return the index of the channel
+	 */
+	public int addChannel(String name, int types, int capacity, boolean lossless, Consumer consumer)
+	{
+		channels.add(new Channel(name, types, capacity, lossless, consumer));
+		return channels.size()-1;
+	}
+
+	/**
+	 * Sets whether the events are consumed immediately on the publishing
+	 * thread instead of the consumer threads.
+	 *
+	 * @param inline whether to consume inline
+	 */
+	public void setInline(boolean inline)
+	{
+		this.inline = inline;
+	}
+
+	/**
+	 * Starts the consumer threads.
+	 */
+	public synchronized void start()
+	{
+		if(started)
+			return;
+		started = true;
+		int size = channels.size();
+		for(int c=0; c<size; c++)
+			channels.get(c).start();
+	}
+
+	/**
+	 * Stops the consumer threads and waits for them. The pending events of
+	 * lossless channels are consumed by the calling thread, the others are
+	 * dropped.
+	 */
+	public synchronized void stop()
+	{
+		if(!started)
+			return;
+		started = false;
+		int size = channels.size();
+		for(int c=0; c<size; c++)
+			channels.get(c).stop();
+	}
+
+	/**
+	 * Publishes an event to the channels of its type.
+	 *
+	 * @param type the type
+	 * @param flags the flags
+	 * @param entity the index of the entity
+	 */
+	public void publish(int type, int flags, int entity)
+	{
+		int event = encode(type, flags, entity);
+		published[type]++;
+		int size = channels.size();
+		for(int c=0; c<size; c++)
+		{
+			Channel channel = channels.get(c);
+			if((channel.types & (1 << type)) == 0)
+				continue;
+			if(inline)
+				channel.consume(event);
+			else
+				channel.offer(event);
+		}
+	}
+
+	/**
+	 * Wakes the consumers with pending events, called once per frame by
+	 * the publishing thread.
+	 */
+	public void flush()
+	{
+		int size = channels.size();
+		for(int c=0; c<size; c++)
+			channels.get(c).wake();
+	}
+
+	/**
+	 * Gets the number of published events of a type.
+	 *
+	 * @param type the type
+	 * @return the number of events since the start
+	 */
+	public int getPublished(int type)
+	{
+		return published[type];
+	}
+
+	/**
+	 * Gets the number of events consumed by a channel.
+	 *
+	 * @param channel the channel
+	 * @return the number of events since the start
+	 */
+	public int getConsumed(int channel)
+	{
+		return channels.get(channel).consumed.get();
+	}
+
+	/**
+	 * Gets the number of events a channel has dropped.
+	 *
+	 * @param channel the channel
+	 * @return the number of events since the start
+	 */
+	public int getDropped(int channel)
+	{
+		return channels.get(channel).dropped;
+	}
+
+	/**
+	 * Gets the number of events waiting in a channel.
+	 *
+	 * @param channel the channel
+	 * @return the number of events
+	 */
+	public int getPending(int channel)
+	{
+		Channel c = channels.get(channel);
+		return c.tail - c.head;
+	}
+
+	/**
+	 * Logs the event counts.
+	 */
+	public void logStats()
+	{
+		StringBuilder sb = new StringBuilder("collision events published:");
+		for(int t=0; t<TYPES; t++)
+			sb.append(' ').append(published[t]);
+		int size = channels.size();
+		for(int c=0; c<size; c++)
+		{
+			Channel channel = channels.get(c);
+			sb.append(", ").append(channel.name).append(": ").append(channel.consumed.get()).append(" consumed, ")
+				.append(channel.dropped).append(" dropped, ").append(channel.tail - channel.head).append(" pending");
+		}
+		LogManager.d(sb.toString());
+	}
+
+	/**
+	 * A ring buffer with a single producer (the publishing thread) and a
+	 * single consumer (its thread). The producer only writes tail, the
+	 * consumer only writes head.
+	 */
+	private static class Channel implements Runnable
+	{
+		/** The name of the consumer thread. */
+		private final String name;
+
+		/** The event types of the channel, one bit per type. */
+		private final int types;
+
+		/** Whether events must not be dropped. */
+		private final boolean lossless;
+
+		/** The consumer. */
+		private final Consumer consumer;
+
+		/** The events. */
+		private final int[] buffer;
+
+		/** The capacity - 1. */
+		private final int mask;
+
+		/** The number of events taken out of the buffer. */
+		private volatile int head;
+
+		/** The number of events put into the buffer. */
+		private volatile int tail;
+
+		/** The number of consumed events. */
+		private final AtomicInteger consumed;
+
+		/** The number of dropped events. */
+		private volatile int dropped;
+
+		/** Whether the thread should keep running. */
+		private volatile boolean running;
+
+		/** The consumer thread, null if it isn't running. */
+		private Thread thread;
+
+		/**
+		 * Instantiates a new channel.
+		 *
+		 * @param name the name of the consumer thread
+		 * @param types the event types, one bit per type
+		 * @param capacity the capacity of the ring buffer
+		 * @param lossless whether events must not be dropped
+		 * @param consumer the consumer
+		 */
+		public Channel(String name, int types, int capacity, boolean lossless, Consumer consumer)
+		{
+			int size = 1;
+			while(size < capacity)
+				size <<= 1;
+			this.name = name;
+			this.types = types;
+			this.lossless = lossless;
+			this.consumer = consumer;
+			buffer = new int[size];
+			mask = size-1;
+			consumed = new AtomicInteger();
+		}
+
+		/**
+		 * Puts an event into the buffer (producer only).
+		 *
+		 * @param event the event
+		 */
+		public void offer(int event)
+		{
+			int t = tail;
+			if(t - head == buffer.length)
+			{
+				if(lossless)
+					consume(event);
+				else
+					dropped++;
+				return;
+			}
+			buffer[t & mask] = event;
+			tail = t+1;
+		}
+
+		/**
+		 * Wakes the consumer if there are pending events (producer only).
+		 */
+		public void wake()
+		{
+			Thread thread = this.thread;
+			if(thread != null && tail != head)
+				LockSupport.unpark(thread);
+		}
+
+		/**
+		 * Consumes an event.
+		 *
+		 * @param event the event
+		 */
+		public void consume(int event)
+		{
+			consumer.consume(event);
+			consumed.incrementAndGet();
+		}
+
+		/**
+		 * Starts the consumer thread.
+		 */
+		public void start()
+		{
+			running = true;
+			thread = new Thread(this, name);
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		/**
+		 * Stops the consumer thread and waits for it.
+		 */
+		public void stop()
+		{
+			Thread thread = this.thread;
+			running = false;
+			LockSupport.unpark(thread);
+			try
+			{
+				thread.join();
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			this.thread = null;
+
+			if(lossless)
+				drain();
+			else
+				head = tail;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run()
+		{
+			while(running)
+			{
+				drain();
+				if(running && tail == head)
+					LockSupport.park(this);
+			}
+		}
+
+		/**
+		 * Consumes the pending events (consumer only).
+		 */
+		private void drain()
+		{
+			int h = head;
+			while(h != tail)
+			{
+				int event = buffer[h & mask];
+				head = ++h;
+				consume(event);
+			}
+		}
+	}
+}
@@ -0,0 +1,261 @@
+package nu.shacknet.poseidon.pn.signanzorbit.collision;
+
+import java.util.ArrayList;
+
+import nu.shacknet.poseidon.pn.signanzorbit.math.Matrix44;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Sphere;
+import nu.shacknet.poseidon.pn.signanzorbit.scene.Geometry;
+import nu.shacknet.poseidon.pn.signanzorbit.scene.Model;
+import nu.shacknet.poseidon.pn.signanzorbit.scene.SceneEntity;
+
+/**
+ * The sphere trees of the geometries of scene entities, transformed into
+ * world space once per frame (with the current transformations of the
+ * entities and their models). The narrowphase descends them after the
+ * bounding spheres of a pair have passed the coarse test, so the
+ * elongated satellites only collide where their meshes are close.
+ *
+ * The trees are shared by all models using a geometry, only the
+ * transformed spheres are stored here.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class CollisionProxies
+{
+	/** The transformed spheres of all trees: center xyz and radius. */
+	private float[] spheres;
+
+	/** The number of transformed spheres. */
+	private int sphereCount;
+
+	/** The trees of all entities. */
+	private GeometrySphereTree[] trees;
+
+	/** The position of the first sphere of a tree in spheres. */
+	private int[] treeOffsets;
+
+	/** The number of trees. */
+	private int treeCount;
+
+	/** The first tree of an entity. */
+	private int[] firstTree;
+
+	/** The number of trees of an entity, 0 if it has no proxy. */
+	private int[] entityTrees;
+
+	/** Temp var for the transformation of a model. */
+	private final Matrix44 modelToWorld;
+
+	/** Temp var for a transformed sphere. */
+	private final Sphere sphere;
+
+	/**
+	 * Instantiates new collision proxies.
+	 */
+	public CollisionProxies()
+	{
+		spheres = new float[4*64];
+		trees = new GeometrySphereTree[16];
+		treeOffsets = new int[16];
+		firstTree = new int[64];
+		entityTrees = new int[64];
+		modelToWorld = new Matrix44();
+		sphere = new Sphere();
+	}
+
+	/**
+	 * Transforms the trees of the marked entities into world space, the
+	 * other entities have no proxy.
+	 *
+	 * @param entities the entities
+	 * @param marked whether an entity needs its proxy
+	 */
+	public void update(ArrayList<SceneEntity> entities, boolean[] marked)
+	{
+		int size = entities.size();
+		if(firstTree.length < size)
+		{
+			int capacity = Math.max(size, 2*firstTree.length);
+			firstTree = new int[capacity];
+			entityTrees = new int[capacity];
+		}
+		sphereCount = 0;
+		treeCount = 0;
+
+		for(int i=0; i<size; i++)
+		{
+			firstTree[i] = treeCount;
+			entityTrees[i] = 0;
+			if(!marked[i])
+				continue;
+
+			SceneEntity entity = entities.get(i);
+			ArrayList<Model> models = entity.models;
+			int numModels = models.size();
+			for(int m=0; m<numModels; m++)
+			{
+				Model model = models.get(m);
+				if(model.isDisabled())
+					continue;
+				modelToWorld.copy(entity.getTransformation());
+				if(model.getTransformation() != null)
+					modelToWorld.mult(model.getTransformation());
+
+				ArrayList<Geometry> geometries = model.getGeometries();
+				int numGeoms = geometries.size();
+				for(int g=0; g<numGeoms; g++)
+				{
+					GeometrySphereTree tree = geometries.get(g).getCollisionTree();
+					if(tree == null || tree.getNodeCount() == 0)
+						continue;
+					addTree(tree);
+					entityTrees[i]++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Whether an entity has a proxy.
+	 *
+	 * @param entity the entity
+	 * @return true if the entity has at least one tree
+	 */
+	public boolean hasProxy(int entity)
+	{
+		return entity < firstTree.length && entityTrees[entity] > 0;
+	}
+
+	/**
+	 * Tests whether the proxies of two entities penetrate each other by more
+	 * than penetrationDepth: a pair of leaves has to. Both entities need
+	 * a proxy.
+	 *
+	 * @param a the first entity
+	 * @param b the second entity
+	 * @param penetrationDepth the depth the spheres have to penetrate each other
+	 * @param stack a stack of at least getStackSize() entries
+	 * @return true if the proxies are in contact
+	 */
+	public boolean contact(int a, int b, float penetrationDepth, int[] stack)
+	{
+		int treesA = firstTree[a] + entityTrees[a], treesB = firstTree[b] + entityTrees[b];
+		for(int ta=firstTree[a]; ta<treesA; ta++)
+		{
+			for(int tb=firstTree[b]; tb<treesB; tb++)
+			{
+				if(treesContact(ta, tb, penetrationDepth, stack))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the stack size needed by contact().
+	 *
+	 * @return the number of stack entries
+	 */
+	public static int getStackSize()
+	{
+		return 2*64;
+	}
+
+	/**
+	 * Tests whether two trees penetrate each other. The node with the larger
+	 * sphere of an overlapping pair is replaced by its children.
+	 *
+	 * @param ta the first tree
+	 * @param tb the second tree
+	 * @param penetrationDepth the depth the spheres have to penetrate each other
+	 * @param stack the stack of node pairs
+	 * @return true if two leaves are in contact
+	 */
+	private boolean treesContact(int ta, int tb, float penetrationDepth, int[] stack)
+	{
+		GeometrySphereTree treeA = trees[ta], treeB = trees[tb];
+		int offsetA = treeOffsets[ta], offsetB = treeOffsets[tb];
+		float[] spheres = this.spheres;
+		int top = 0;
+		stack[top++] = 0;
+		stack[top++] = 0;
+		while(top > 0)
+		{
+			int nb = stack[--top];
+			int na = stack[--top];
+			int sa = 4*(offsetA+na), sb = 4*(offsetB+nb);
+			float x = spheres[sb]-spheres[sa], y = spheres[sb+1]-spheres[sa+1], z = spheres[sb+2]-spheres[sa+2];
+			float reach = spheres[sa+3] + spheres[sb+3] - penetrationDepth;
+			if(reach <= 0 || x*x + y*y + z*z >= reach*reach)
+				continue;
+
+			int childA = treeA.getChild(na), childB = treeB.getChild(nb);
+			if(childA == GeometrySphereTree.NULL && childB == GeometrySphereTree.NULL)
+				return true;
+			//can't happen with trees of a few levels, a contact is the safe answer
+			if(top + 4 > stack.length)
+				return true;
+			if(childB == GeometrySphereTree.NULL || (childA != GeometrySphereTree.NULL && spheres[sa+3] >= spheres[sb+3]))
+			{
+				stack[top++] = childA;
+				stack[top++] = nb;
+				stack[top++] = childA+1;
+				stack[top++] = nb;
+			}
+			else
+			{
+				stack[top++] = na;
+				stack[top++] = childB;
+				stack[top++] = na;
+				stack[top++] = childB+1;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds a tree, transformed with modelToWorld.
+	 *
+	 * @param tree the tree
+	 */
+	private void addTree(GeometrySphereTree tree)
+	{
+		int nodeCount = tree.getNodeCount();
+		if(treeCount == trees.length)
+		{
+			GeometrySphereTree[] grownTrees = new GeometrySphereTree[2*treeCount];
+			System.arraycopy(trees, 0, grownTrees, 0, treeCount);
+			trees = grownTrees;
+			int[] grownOffsets = new int[2*treeCount];
+			System.arraycopy(treeOffsets, 0, grownOffsets, 0, treeCount);
+			treeOffsets = grownOffsets;
+		}
+		if(4*(sphereCount + nodeCount) > spheres.length)
+		{
+			float[] grownSpheres = new float[Math.max(4*(sphereCount + nodeCount), 2*spheres.length)];
+			System.arraycopy(spheres, 0, grownSpheres, 0, 4*sphereCount);
+			spheres = grownSpheres;
+		}
+
+		trees[treeCount] = tree;
+		treeOffsets[treeCount] = sphereCount;
+		treeCount++;
+		float[] s = sphere.center.v;
+		for(int n=0; n<nodeCount; n++)
+		{
+			int o = 4*(sphereCount+n);
+			tree.getSphere(n, spheres, o);
+			s[0] = spheres[o];
+			s[1] = spheres[o+1];
+			s[2] = spheres[o+2];
+			sphere.radius = spheres[o+3];
+			modelToWorld.transformSphere(sphere);
+			spheres[o  ] = s[0];
+			spheres[o+1] = s[1];
+			spheres[o+2] = s[2];
+			spheres[o+3] = sphere.radius;
+		}
+		sphereCount += nodeCount;
+	}
+}
@@ -0,0 +1,318 @@
+package nu.shacknet.poseidon.pn.signanzorbit.collision;
+
+import java.util.Arrays;
+
+/**
+ * Decides which candidate pairs the narrowphase tests in a frame. Every
+ * entity has an odometer, the distance it has travelled so far. When a pair
+ * is tested, its gap (the distance the spheres still have to approach for
+ * a contact) and the odometers are stored. The slack of a pair, its gap
+ * minus the distance both entities have travelled since, is a lower bound
+ * of its current gap:
+ * <ul>
+ * <li>pairs which may be in contact (slack <= 0) and new candidate pairs
+ * are always tested, so no contact is missed,</li>
+ * <li>pairs which haven't been tested for maxStaleness frames are overdue
+ * and always tested,</li>
+ * <li>the other pairs are tested by their time to a possible contact (slack
+ * divided by the closing speed of the last frame) while the time budget
+ * lasts, the rest is deferred.</li>
+ * </ul>
+ * The time a test takes is estimated from the previous frames.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class CollisionScheduler
+{
+	/** The weight of the last frame in the estimated time per pair. */
+	private static final float COST_SMOOTHING = 0.1f;
+
+	/** The pairs of the last frame, sorted. */
+	private long[] keys;
+
+	/** The frame a pair of the last frame has been tested last. */
+	private int[] lastTested;
+
+	/** The gap of a pair of the last frame when it has been tested last. */
+	private float[] gaps;
+
+	/** The summed odometers of a pair of the last frame when it has been tested last. */
+	private double[] travels;
+
+	/** The number of pairs of the last frame. */
+	private int count;
+
+	/** The pairs of the current frame (same layout as keys..travels). */
+	private long[] nextKeys;
+
+	/** The frame a pair of the current frame has been tested last. */
+	private int[] nextLastTested;
+
+	/** The gap of a pair of the current frame when it has been tested last. */
+	private float[] nextGaps;
+
+	/** The summed odometers of a pair of the current frame when it has been tested last. */
+	private double[] nextTravels;
+
+	/** Whether a pair of the current frame is tested. */
+	private boolean[] scheduled;
+
+	/** The sort keys of the optional pairs: priority and pair index. */
+	private long[] optional;
+
+	/** The index of a scheduled pair in the candidate pairs. */
+	private int[] scheduledIndex;
+
+	/** The distance an entity has travelled. */
+	private double[] odometers;
+
+	/** The distance an entity has travelled in the last frame. */
+	private float[] speeds;
+
+	/** The current frame. */
+	private int frame;
+
+	/** The estimated time per tested pair in nanoseconds, 0 if unknown. */
+	private float costPerPair;
+
+	/** The number of pairs tested in the current frame. */
+	private int tested;
+
+	/** The number of pairs deferred in the current frame. */
+	private int deferred;
+
+	/** The number of overdue pairs tested in the current frame. */
+	private int overdue;
+
+	/**
+	 * Instantiates a new collision scheduler.
+	 */
+	public CollisionScheduler()
+	{
+		keys = new long[64];
+		lastTested = new int[64];
+		gaps = new float[64];
+		travels = new double[64];
+		nextKeys = new long[64];
+		nextLastTested = new int[64];
+		nextGaps = new float[64];
+		nextTravels = new double[64];
+		scheduled = new boolean[64];
+		optional = new long[64];
+		scheduledIndex = new int[64];
+		odometers = new double[64];
+		speeds = new float[64];
+	}
+
+	/**
+	 * Forgets the pairs of the last frame, all pairs are tested in the next
+	 * frame. Call this whenever frames have been skipped.
+	 */
+	public void clear()
+	{
+		count = 0;
+	}
+
+	/**
+	 * Selects the pairs to test in this frame.
+	 *
+	 * @param size the number of entities
+	 * @param swept the sweeps of the current step (updated for this frame)
+	 * @param pairs the candidate pairs, sorted
+	 * @param budget the time the tests may take in nanoseconds
+	 * @param maxStaleness the maximal number of frames a pair may be deferred
+	 * @param result cleared, then receives the pairs to test, sorted
+	 */
+	public void schedule(int size, SweptSpheres swept, PairList pairs, long budget, int maxStaleness, PairList result)
+	{
+		frame++;
+		ensureEntityCapacity(size);
+		for(int i=0; i<size; i++)
+		{
+			float distance = swept.getDistance(i);
+			speeds[i] = distance;
+			odometers[i] += distance;
+		}
+
+		int pairCount = pairs.size();
+		ensurePairCapacity(pairCount);
+
+		//look up the state of the pairs, the mandatory tests first
+		int optionalCount = 0;
+		int mandatory = 0;
+		overdue = 0;
+		int j = 0;
+		for(int k=0; k<pairCount; k++)
+		{
+			long key = pairs.getKey(k);
+			int a = (int)(key >>> 32), b = (int)key;
+			while(j < count && keys[j] < key)
+				j++;
+			nextKeys[k] = key;
+			scheduled[k] = false;
+			if(j == count || keys[j] != key)
+			{
+				//a new candidate
+				nextLastTested[k] = frame;
+				nextGaps[k] = 0;
+				nextTravels[k] = odometers[a] + odometers[b];
+				scheduled[k] = true;
+				mandatory++;
+				continue;
+			}
+
+			nextLastTested[k] = lastTested[j];
+			nextGaps[k] = gaps[j];
+			nextTravels[k] = travels[j];
+			float slack = (float)(gaps[j] - (odometers[a] + odometers[b] - travels[j]));
+			if(slack <= 0)
+			{
+				scheduled[k] = true;
+				mandatory++;
+			}
+			else if(frame - lastTested[j] >= maxStaleness)
+			{
+				scheduled[k] = true;
+				mandatory++;
+				overdue++;
+			}
+			else
+			{
+				//time to a possible contact, in frames
+				float closing = speeds[a] + speeds[b];
+				float priority = closing > 0 ? slack / closing : Float.MAX_VALUE;
+				optional[optionalCount++] = ((long)Float.floatToIntBits(priority) << 32) | k;
+			}
+		}
+
+		//the optional pairs by priority, while the budget lasts
+		int affordable = costPerPair > 0 ? (int)Math.min(Integer.MAX_VALUE, budget / costPerPair) : pairCount;
+		int extra = Math.max(0, Math.min(optionalCount, affordable - mandatory));
+		if(extra > 0 && extra < optionalCount)
+			Arrays.sort(optional, 0, optionalCount);
+		for(int o=0; o<extra; o++)
+			scheduled[(int)optional[o]] = true;
+
+		result.clear();
+		tested = 0;
+		for(int k=0; k<pairCount; k++)
+		{
+			if(!scheduled[k])
+				continue;
+			scheduledIndex[tested++] = k;
+			result.addKey(nextKeys[k]);
+		}
+		deferred = pairCount - tested;
+
+		//the state of the current pairs is kept for the next frame
+		long[] swapKeys = keys; keys = nextKeys; nextKeys = swapKeys;
+		int[] swapLastTested = lastTested; lastTested = nextLastTested; nextLastTested = swapLastTested;
+		float[] swapGaps = gaps; gaps = nextGaps; nextGaps = swapGaps;
+		double[] swapTravels = travels; travels = nextTravels; nextTravels = swapTravels;
+		count = pairCount;
+	}
+
+	/**
+	 * Stores the results of the tests of the scheduled pairs.
+	 *
+	 * @param narrowphase the narrowphase which has tested the scheduled pairs
+	 * @param time the time the tests took in nanoseconds
+	 */
+	public void update(Narrowphase narrowphase, long time)
+	{
+		for(int s=0; s<tested; s++)
+		{
+			int k = scheduledIndex[s];
+			long key = keys[k];
+			int a = (int)(key >>> 32), b = (int)key;
+			lastTested[k] = frame;
+			gaps[k] = narrowphase.getGap(s);
+			travels[k] = odometers[a] + odometers[b];
+		}
+
+		if(tested > 0)
+		{
+			float cost = (float)time / tested;
+			costPerPair = costPerPair > 0 ? costPerPair + (cost - costPerPair)*COST_SMOOTHING : cost;
+		}
+	}
+
+	/**
+	 * Gets the number of pairs tested in the current frame.
+	 *
+	 * @return the number of tested pairs
+	 */
+	public int getTested()
+	{
+		return tested;
+	}
+
+	/**
+	 * Gets the number of pairs deferred in the current frame.
+	 *
+	 * @return the number of deferred pairs
+	 */
+	public int getDeferred()
+	{
+		return deferred;
+	}
+
+	/**
+	 * Gets the number of pairs tested in the current frame because they
+	 * have been deferred for the maximal number of frames.
+	 *
+	 * @return the number of overdue pairs
+	 */
+	public int getOverdue()
+	{
+		return overdue;
+	}
+
+	/**
+	 * Gets the estimated time per tested pair.
+	 *
+	 * @return the time in nanoseconds, 0 if unknown
+	 */
+	public float getCostPerPair()
+	{
+		return costPerPair;
+	}
+
+	/**
+	 * Makes room for size entities.
+	 *
+	 * @param size the number of entities
+	 */
+	private void ensureEntityCapacity(int size)
+	{
+		if(odometers.length >= size)
+			return;
+
+		int capacity = Math.max(size, 2*odometers.length);
+		double[] grownOdometers = new double[capacity];
+		System.arraycopy(odometers, 0, grownOdometers, 0, odometers.length);
+		odometers = grownOdometers;
+		speeds = new float[capacity];
+	}
+
+	/**
+	 * Makes room for the pairs of the current frame.
+	 *
+	 * @param pairCount the number of pairs
+	 */
+	private void ensurePairCapacity(int pairCount)
+	{
+		if(nextKeys.length >= pairCount)
+			return;
+
+		int capacity = Math.max(pairCount, 2*nextKeys.length);
+		nextKeys = new long[capacity];
+		nextLastTested = new int[capacity];
+		nextGaps = new float[capacity];
+		nextTravels = new double[capacity];
+		scheduled = new boolean[capacity];
+		optional = new long[capacity];
+		scheduledIndex = new int[capacity];
+	}
+}
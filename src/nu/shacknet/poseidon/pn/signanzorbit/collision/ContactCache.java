@@ -0,0 +1,364 @@
+package nu.shacknet.poseidon.pn.signanzorbit.collision;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import nu.shacknet.poseidon.pn.signanzorbit.util.Persistable;
+
+/**
+ * The contacts between pairs of entities, kept from frame to frame. A
+ * contact begins when it is touched for the first time, persists while it
+ * is touched every frame and ends with the first frame it isn't touched.
+ * So the collision response can react to the begin of a contact only,
+ * and every contact carries flags and a counter for the state of the
+ * response, which are dropped when it ends. Contacts of entities which
+ * are disabled are never touched again, so they end as well.
+ *
+ * The contacts are stored in an open addressing hash table keyed by the
+ * pair (the smaller index in the upper, the larger in the lower 32 bits).
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class ContactCache implements Persistable
+{
+	/** The key of an empty slot. */
+	private static final long EMPTY = -1;
+
+	/** The keys of the contacts, EMPTY for empty slots. */
+	private long[] keys;
+
+	/** The flags of the contacts. */
+	private int[] flags;
+
+	/** The counters of the contacts. */
+	private int[] counts;
+
+	/** The frame a contact has been touched last. */
+	private int[] frames;
+
+	/** The number of contacts. */
+	private int size;
+
+	/** The current frame. */
+	private int frame;
+
+	/** The contacts which end in the current frame. */
+	private long[] ended;
+
+	/**
+	 * Instantiates a new contact cache.
+	 */
+	public ContactCache()
+	{
+		allocate(64);
+		ended = new long[16];
+	}
+
+	/**
+	 * Removes all contacts without ending them.
+	 */
+	public void clear()
+	{
+		for(int s=0; s<keys.length; s++)
+			keys[s] = EMPTY;
+		size = 0;
+	}
+
+	/**
+	 * Gets the number of contacts.
+	 *
+	 * @return the number of contacts
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Starts a new frame, the contacts have to be touched again.
+	 */
+	public void beginFrame()
+	{
+		frame++;
+	}
+
+	/**
+	 * Ends the contacts which haven't been touched in the current frame.
+	 *
+	 * @return the number of ended contacts
+	 */
+	public int endFrame()
+	{
+		int endedCount = 0;
+		for(int s=0; s<keys.length; s++)
+		{
+			if(keys[s] == EMPTY || frames[s] == frame)
+				continue;
+			if(endedCount == ended.length)
+			{
+				long[] grown = new long[2*endedCount];
+				System.arraycopy(ended, 0, grown, 0, endedCount);
+				ended = grown;
+			}
+			ended[endedCount++] = keys[s];
+		}
+		for(int e=0; e<endedCount; e++)
+			removeSlot(find(ended[e]));
+		return endedCount;
+	}
+
+	/**
+	 * Touches the contact of two entities in the current frame.
+	 *
+	 * @param a the first entity
+	 * @param b the second entity
+	 * @return true if the contact begins, false if it persists
+	 */
+	public boolean touch(int a, int b)
+	{
+		long key = key(a, b);
+		int s = find(key);
+		if(s >= 0)
+		{
+			frames[s] = frame;
+			return false;
+		}
+
+		if(2*(size+1) > keys.length)
+		{
+			rehash(2*keys.length);
+			s = find(key);
+		}
+		s = -s-1;
+		keys[s] = key;
+		flags[s] = 0;
+		counts[s] = 0;
+		frames[s] = frame;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Whether two entities are in contact.
+	 *
+	 * @param a the first entity
+	 * @param b the second entity
+	 * @return true if there is a contact
+	 */
+	public boolean contains(int a, int b)
+	{
+		return find(key(a, b)) >= 0;
+	}
+
+	/**
+	 * Ends the contact of two entities immediately.
+	 *
+	 * @param a the first entity
+	 * @param b the second entity
+	 */
+	public void remove(int a, int b)
+	{
+		int s = find(key(a, b));
+		if(s >= 0)
+			removeSlot(s);
+	}
+
+	/**
+	 * Gets the flags of a contact.
+	 *
+	 * @param a the first entity
+	 * @param b the second entity
+	 * @return the flags, 0 if there is no contact
+	 */
+	public int getFlags(int a, int b)
+	{
+		int s = find(key(a, b));
+		return s >= 0 ? flags[s] : 0;
+	}
+
+	/**
+	 * Sets flags of a contact.
+	 *
+	 * @param a the first entity
+	 * @param b the second entity
+	 * @param flag the flags to set
+	 */
+	public void setFlags(int a, int b, int flag)
+	{
+		int s = find(key(a, b));
+		if(s >= 0)
+			flags[s] |= flag;
+	}
+
+	/**
+	 * Gets the counter of a contact.
+	 *
+	 * @param a the first entity
+	 * @param b the second entity
+	 * @return the counter, 0 if there is no contact
+	 */
+	public int getCount(int a, int b)
+	{
+		int s = find(key(a, b));
+		return s >= 0 ? counts[s] : 0;
+	}
+
+	/**
+	 * Sets the counter of a contact.
+	 *
+	 * @param a the first entity
+	 * @param b the second entity
+	 * @param count the new counter
+	 */
+	public void setCount(int a, int b, int count)
+	{
+		int s = find(key(a, b));
+		if(s >= 0)
+			counts[s] = count;
+	}
+
+	/* (non-Javadoc)
+	 * @see nu.shacknet.poseidon.pn.signanzorbit.util.Persistable#persist(java.io.DataOutputStream)
+	 */
+	@Override
+	public void persist(DataOutputStream dos) throws IOException
+	{
+		dos.writeInt(size);
+		for(int s=0; s<keys.length; s++)
+		{
+			if(keys[s] == EMPTY)
+				continue;
+			dos.writeLong(keys[s]);
+			dos.writeInt(flags[s]);
+			dos.writeInt(counts[s]);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see nu.shacknet.poseidon.pn.signanzorbit.util.Persistable#restore(java.io.DataInputStream)
+	 */
+	@Override
+	public void restore(DataInputStream dis) throws IOException
+	{
+		clear();
+		int count = dis.readInt();
+		for(int i=0; i<count; i++)
+		{
+			long key = dis.readLong();
+			int a = (int)(key >>> 32), b = (int)key;
+			touch(a, b);
+			int s = find(key);
+			flags[s] = dis.readInt();
+			counts[s] = dis.readInt();
+		}
+	}
+
+	/**
+	 * Gets the key of a pair.
+	 *
+	 * @param a the first entity
+	 * @param b the second entity
+	 * @return the key
+	 */
+	private static long key(int a, int b)
+	{
+		return a < b ? ((long)a << 32) | b : ((long)b << 32) | a;
+	}
+
+	/**
+	 * Finds the slot of a key.
+	 *
+	 * @param key the key
+	 * @return the slot, or -(the empty slot where it would be inserted)-1
+	 */
+	private int find(long key)
+	{
+		int mask = keys.length-1;
+		int s = hash(key) & mask;
+		while(keys[s] != EMPTY)
+		{
+			if(keys[s] == key)
+				return s;
+			s = (s+1) & mask;
+		}
+		return -s-1;
+	}
+
+	/**
+	 * Empties a slot, the following keys of the probe sequence are moved
+	 * back so no lookup stops early.
+	 *
+	 * @param s the slot
+	 */
+	private void removeSlot(int s)
+	{
+		int mask = keys.length-1;
+		int gap = s;
+		keys[gap] = EMPTY;
+		size--;
+		for(int next = (gap+1) & mask; keys[next] != EMPTY; next = (next+1) & mask)
+		{
+			int home = hash(keys[next]) & mask;
+			//the key can't move before its home slot
+			if(((next - home) & mask) < ((next - gap) & mask))
+				continue;
+			keys[gap] = keys[next];
+			flags[gap] = flags[next];
+			counts[gap] = counts[next];
+			frames[gap] = frames[next];
+			keys[next] = EMPTY;
+			gap = next;
+		}
+	}
+
+	/**
+	 * Grows the table.
+	 *
+	 * @param capacity the new capacity, a power of 2
+	 */
+	private void rehash(int capacity)
+	{
+		long[] oldKeys = keys;
+		int[] oldFlags = flags, oldCounts = counts, oldFrames = frames;
+		allocate(capacity);
+		for(int o=0; o<oldKeys.length; o++)
+		{
+			if(oldKeys[o] == EMPTY)
+				continue;
+			int s = -find(oldKeys[o])-1;
+			keys[s] = oldKeys[o];
+			flags[s] = oldFlags[o];
+			counts[s] = oldCounts[o];
+			frames[s] = oldFrames[o];
+		}
+	}
+
+	/**
+	 * Allocates an empty table.
+	 *
+	 * @param capacity the capacity, a power of 2
+	 */
+	private void allocate(int capacity)
+	{
+		keys = new long[capacity];
+		flags = new int[capacity];
+		counts = new int[capacity];
+		frames = new int[capacity];
+		for(int s=0; s<capacity; s++)
+			keys[s] = EMPTY;
+	}
+
+	/**
+	 * Hashes a key.
+	 *
+	 * @param key the key
+	 * @return the hash
+	 */
+	private static int hash(long key)
+	{
+		int h = (int)(key ^ (key >>> 32)) * 0x9E3779B1;
+		return h ^ (h >>> 16);
+	}
+}
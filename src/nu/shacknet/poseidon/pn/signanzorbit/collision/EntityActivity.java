@@ -0,0 +1,601 @@
+package nu.shacknet.poseidon.pn.signanzorbit.collision;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import nu.shacknet.poseidon.pn.signanzorbit.math.Sphere;
+import nu.shacknet.poseidon.pn.signanzorbit.orbit.Movable;
+
+/**
+ * Keeps the entities which don't need the collision detection out of it.
+ * An entity is
+ * <ul>
+ * <li>awake: it moves, the broadphase pairs it with the other awake entities,</li>
+ * <li>sleeping: it hasn't moved for a number of frames (or is fixed, like
+ * the planet). It only takes part in pairs with awake entities, found by
+ * a sweep along x over the sleeping and the awake entities,</li>
+ * <li>retired: it is disabled (culled) or ignored (the skysphere) and
+ * never takes part again.</li>
+ * </ul>
+ * Only the awake and the sleeping entities are visited every frame, the
+ * retired ones cost nothing. A sleeping entity wakes up when it moves, when
+ * it is in contact with an awake entity or when a force is applied to it
+ * (wake()), fixed entities never wake up. The awake and collidable masks
+ * are kept up to date incrementally for the broadphase and the sweeps.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class EntityActivity
+{
+	/** State: the entity is awake. */
+	private static final byte AWAKE = 0;
+
+	/** State: the entity is sleeping. */
+	private static final byte SLEEPING = 1;
+
+	/** State: the entity never takes part again. */
+	private static final byte RETIRED = 2;
+
+	/** Kind: an ordinary entity. */
+	private static final byte NORMAL = 0;
+
+	/** Kind: the entity sleeps from the start and never wakes up. */
+	private static final byte FIXED = 1;
+
+	/** Kind: the entity never takes part. */
+	private static final byte IGNORED = 2;
+
+	/** The states of the entities. */
+	private byte[] states;
+
+	/** The kinds of the entities. */
+	private byte[] kinds;
+
+	/** Whether an entity is awake. */
+	private boolean[] awake;
+
+	/** Whether an entity is awake or sleeping. */
+	private boolean[] collidable;
+
+	/** The awake entities. */
+	private int[] awakeList;
+
+	/** The number of awake entities. */
+	private int awakeCount;
+
+	/** The sleeping entities. */
+	private int[] sleepingList;
+
+	/** The number of sleeping entities. */
+	private int sleepingCount;
+
+	/** The number of frames an awake entity hasn't moved. */
+	private int[] stillFrames;
+
+	/** The centers of the entities (xyz) at the last update. */
+	private float[] positions;
+
+	/** The number of entities known (the entity list only ever grows). */
+	private int known;
+
+	/** The sort keys of the sweep in addSleepingPairs(). */
+	private long[] sweepKeys;
+
+	/** The open awake entities of the sweep. */
+	private int[] openAwake;
+
+	/** The open sleeping entities of the sweep. */
+	private int[] openSleeping;
+
+	/** The number of entities woken up in the current frame. */
+	private int woken;
+
+	/** The number of entities fallen asleep in the current frame. */
+	private int fallenAsleep;
+
+	/**
+	 * Instantiates a new entity activity without entities.
+	 */
+	public EntityActivity()
+	{
+		states = new byte[64];
+		kinds = new byte[64];
+		awake = new boolean[64];
+		collidable = new boolean[64];
+		awakeList = new int[64];
+		sleepingList = new int[16];
+		stillFrames = new int[64];
+		positions = new float[3*64];
+		sweepKeys = new long[64];
+		openAwake = new int[64];
+		openSleeping = new int[16];
+	}
+
+	/**
+	 * Forgets all entities, they are added again by the next update.
+	 */
+	public void clear()
+	{
+		for(int i=0; i<states.length; i++)
+		{
+			kinds[i] = NORMAL;
+			awake[i] = false;
+			collidable[i] = false;
+		}
+		known = 0;
+		awakeCount = 0;
+		sleepingCount = 0;
+		endFrame();
+	}
+
+	/**
+	 * Marks an entity which doesn't move (the planet): it sleeps from the
+	 * start and is never woken up. Call this after clear().
+	 *
+	 * @param entity the entity
+	 */
+	public void setFixed(int entity)
+	{
+		ensureCapacity(entity+1);
+		kinds[entity] = FIXED;
+	}
+
+	/**
+	 * Marks an entity which never collides (the skysphere). Call this after
+	 * clear().
+	 *
+	 * @param entity the entity
+	 */
+	public void setIgnored(int entity)
+	{
+		ensureCapacity(entity+1);
+		kinds[entity] = IGNORED;
+	}
+
+	/**
+	 * Updates the states once per frame: new entities are awake, disabled
+	 * entities are retired, awake entities which haven't moved farther than
+	 * sleepDistance for sleepFrames frames fall asleep and sleeping entities
+	 * which have moved wake up.
+	 *
+	 * @param entities the entities
+	 * @param sleeping whether entities may fall asleep, else all sleeping
+	 * entities (except the fixed ones) are woken up
+	 * @param sleepDistance the distance an entity has to move per frame to stay awake
+	 * @param sleepFrames the number of frames until an entity falls asleep
+	 */
+	public void update(ArrayList<? extends Movable> entities, boolean sleeping, float sleepDistance, int sleepFrames)
+	{
+		int size = entities.size();
+		ensureCapacity(size);
+		float sleepDistance2 = sleepDistance*sleepDistance;
+
+		//the sleeping entities first, they may wake up
+		for(int j=0; j<sleepingCount; j++)
+		{
+			int i = sleepingList[j];
+			Movable entity = entities.get(i);
+			if(entity.isDisabled())
+				retire(i);
+			else if(kinds[i] != FIXED && (!sleeping || moved(i, entity) > sleepDistance2))
+				wake(i);
+			else
+				continue;
+			//the list has been changed at j
+			j--;
+		}
+
+		//the new entities
+		for(int i=known; i<size; i++)
+		{
+			Movable entity = entities.get(i);
+			storePosition(i, entity);
+			if(kinds[i] == IGNORED || entity.isDisabled())
+				states[i] = RETIRED;
+			else if(kinds[i] == FIXED)
+				addSleeping(i);
+			else
+				addAwake(i);
+		}
+		known = size;
+
+		//the awake entities, in place
+		int count = 0;
+		for(int j=0; j<awakeCount; j++)
+		{
+			int i = awakeList[j];
+			Movable entity = entities.get(i);
+			if(entity.isDisabled())
+			{
+				states[i] = RETIRED;
+				awake[i] = false;
+				collidable[i] = false;
+				continue;
+			}
+			float distance2 = moved(i, entity);
+			storePosition(i, entity);
+			if(distance2 > sleepDistance2 || !sleeping)
+				stillFrames[i] = 0;
+			else if(++stillFrames[i] >= sleepFrames)
+			{
+				awake[i] = false;
+				addSleeping(i);
+				fallenAsleep++;
+				continue;
+			}
+			awakeList[count++] = i;
+		}
+		awakeCount = count;
+	}
+
+	/**
+	 * Ends the current frame, the counts of woken entities and entities
+	 * fallen asleep start again.
+	 */
+	public void endFrame()
+	{
+		woken = 0;
+		fallenAsleep = 0;
+	}
+
+	/**
+	 * Wakes up a sleeping entity, fixed and retired entities stay as they
+	 * are.
+	 *
+	 * @param entity the entity
+	 */
+	public void wake(int entity)
+	{
+		if(entity >= known || states[entity] != SLEEPING || kinds[entity] == FIXED)
+			return;
+		removeSleeping(entity);
+		addAwake(entity);
+		woken++;
+	}
+
+	/**
+	 * Adds the pairs of sleeping entities with awake entities whose bounding
+	 * spheres overlap. Both are swept along x in the order of their lower
+	 * bounds, an entity is tested against the open entities of the other
+	 * kind, which are closed once they end before it.
+	 *
+	 * @param entities the entities
+	 * @param pairs the candidate pairs of the awake entities, sorted by index
+	 */
+	public void addSleepingPairs(ArrayList<? extends Movable> entities, PairList pairs)
+	{
+		if(sleepingCount == 0 || awakeCount == 0)
+			return;
+		int count = awakeCount + sleepingCount;
+		if(sweepKeys.length < count)
+			sweepKeys = new long[Math.max(count, 2*sweepKeys.length)];
+		long[] keys = sweepKeys;
+		int k = 0;
+		for(int j=0; j<awakeCount; j++)
+			keys[k++] = sweepKey(entities.get(awakeList[j]), awakeList[j]);
+		for(int j=0; j<sleepingCount; j++)
+			keys[k++] = sweepKey(entities.get(sleepingList[j]), sleepingList[j]);
+		Arrays.sort(keys, 0, count);
+
+		if(openAwake.length < awakeCount)
+			openAwake = new int[Math.max(awakeCount, 2*openAwake.length)];
+		if(openSleeping.length < sleepingCount)
+			openSleeping = new int[Math.max(sleepingCount, 2*openSleeping.length)];
+		int openAwakeCount = 0, openSleepingCount = 0;
+		for(k=0; k<count; k++)
+		{
+			int i = (int)keys[k];
+			Sphere sphere = entities.get(i).getBoundingSphereWorld();
+			if(states[i] == AWAKE)
+			{
+				openSleepingCount = overlap(entities, sphere, i, openSleeping, openSleepingCount, pairs);
+				openAwake[openAwakeCount++] = i;
+			}
+			else
+			{
+				openAwakeCount = overlap(entities, sphere, i, openAwake, openAwakeCount, pairs);
+				openSleeping[openSleepingCount++] = i;
+			}
+		}
+		pairs.sortUnique();
+	}
+
+	/**
+	 * Tests an entity against the open entities of the other kind, those
+	 * ending before its lower bound along x are closed.
+	 *
+	 * @param entities the entities
+	 * @param sphere the bounding sphere of the entity
+	 * @param i the index of the entity
+	 * @param open the open entities
+	 * @param openCount the number of open entities
+	 * @param pairs receives the overlapping pairs
+	 * @return the new number of open entities
+	 */
+	private static int overlap(ArrayList<? extends Movable> entities, Sphere sphere, int i, int[] open, int openCount, PairList pairs)
+	{
+		float[] c = sphere.center.v;
+		float minX = c[0] - sphere.radius;
+		for(int o=0; o<openCount; o++)
+		{
+			int other = open[o];
+			Sphere otherSphere = entities.get(other).getBoundingSphereWorld();
+			float[] oc = otherSphere.center.v;
+			if(oc[0] + otherSphere.radius < minX)
+			{
+				open[o--] = open[--openCount];
+				continue;
+			}
+			float x = oc[0]-c[0], y = oc[1]-c[1], z = oc[2]-c[2];
+			float reach = sphere.radius + otherSphere.radius;
+			if(x*x + y*y + z*z < reach*reach)
+				pairs.add(Math.min(i, other), Math.max(i, other));
+		}
+		return openCount;
+	}
+
+	/**
+	 * Gets the sort key of an entity for the sweep: its lower bound along
+	 * x in the upper, its index in the lower 32 bits.
+	 *
+	 * @param entity the entity
+	 * @param i the index of the entity
+	 * @return the key
+	 */
+	private static long sweepKey(Movable entity, int i)
+	{
+		Sphere sphere = entity.getBoundingSphereWorld();
+		int bits = Float.floatToIntBits(sphere.center.v[0] - sphere.radius);
+		//floats ordered as signed ints
+		bits ^= (bits >> 31) & 0x7fffffff;
+		return ((long)bits << 32) | i;
+	}
+
+	/**
+	 * Gets the awake entities.
+	 *
+	 * @return whether an entity is awake (at least as long as the entity list)
+	 */
+	public boolean[] getAwake()
+	{
+		return awake;
+	}
+
+	/**
+	 * Gets the entities taking part in the collision detection.
+	 *
+	 * @return whether an entity is awake or sleeping (at least as long as the entity list)
+	 */
+	public boolean[] getCollidable()
+	{
+		return collidable;
+	}
+
+	/**
+	 * Gets the number of awake entities.
+	 *
+	 * @return the number of awake entities
+	 */
+	public int getAwakeCount()
+	{
+		return awakeCount;
+	}
+
+	/**
+	 * Gets an awake entity.
+	 *
+	 * @param index the index (< getAwakeCount())
+	 * @return the entity
+	 */
+	public int getAwakeEntity(int index)
+	{
+		return awakeList[index];
+	}
+
+	/**
+	 * Gets the number of sleeping entities.
+	 *
+	 * @return the number of sleeping entities
+	 */
+	public int getSleepingCount()
+	{
+		return sleepingCount;
+	}
+
+	/**
+	 * Gets a sleeping entity.
+	 *
+	 * @param index the index (< getSleepingCount())
+	 * @return the entity
+	 */
+	public int getSleepingEntity(int index)
+	{
+		return sleepingList[index];
+	}
+
+	/**
+	 * Gets the number of retired entities.
+	 *
+	 * @return the number of retired entities
+	 */
+	public int getRetiredCount()
+	{
+		return known - awakeCount - sleepingCount;
+	}
+
+	/**
+	 * Gets the number of entities woken up in the current frame, by
+	 * movements, contacts and forces.
+	 *
+	 * @return the number of woken entities
+	 */
+	public int getWokenCount()
+	{
+		return woken;
+	}
+
+	/**
+	 * Gets the number of entities which have fallen asleep in the current frame.
+	 *
+	 * @return the number of entities
+	 */
+	public int getFallenAsleepCount()
+	{
+		return fallenAsleep;
+	}
+
+	/**
+	 * Gets the squared distance an entity has moved since its position has
+	 * been stored.
+	 *
+	 * @param i the index of the entity
+	 * @param entity the entity
+	 * @return the squared distance
+	 */
+	private float moved(int i, Movable entity)
+	{
+		float[] c = entity.getBoundingSphereWorld().center.v;
+		int p = 3*i;
+		float x = c[0]-positions[p], y = c[1]-positions[p+1], z = c[2]-positions[p+2];
+		return x*x + y*y + z*z;
+	}
+
+	/**
+	 * Stores the position of an entity.
+	 *
+	 * @param i the index of the entity
+	 * @param entity the entity
+	 */
+	private void storePosition(int i, Movable entity)
+	{
+		float[] c = entity.getBoundingSphereWorld().center.v;
+		int p = 3*i;
+		positions[p  ] = c[0];
+		positions[p+1] = c[1];
+		positions[p+2] = c[2];
+	}
+
+	/**
+	 * Adds an entity to the awake ones.
+	 *
+	 * @param i the index of the entity
+	 */
+	private void addAwake(int i)
+	{
+		if(awakeCount == awakeList.length)
+			awakeList = grow(awakeList);
+		awakeList[awakeCount++] = i;
+		states[i] = AWAKE;
+		awake[i] = true;
+		collidable[i] = true;
+		stillFrames[i] = 0;
+	}
+
+	/**
+	 * Adds an entity to the sleeping ones.
+	 *
+	 * @param i the index of the entity
+	 */
+	private void addSleeping(int i)
+	{
+		if(sleepingCount == sleepingList.length)
+			sleepingList = grow(sleepingList);
+		sleepingList[sleepingCount++] = i;
+		states[i] = SLEEPING;
+		awake[i] = false;
+		collidable[i] = true;
+	}
+
+	/**
+	 * Removes an entity from the sleeping ones.
+	 *
+	 * @param i the index of the entity
+	 */
+	private void removeSleeping(int i)
+	{
+		for(int j=0; j<sleepingCount; j++)
+		{
+			if(sleepingList[j] == i)
+			{
+				sleepingList[j] = sleepingList[--sleepingCount];
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Retires a sleeping entity.
+	 *
+	 * @param i the index of the entity
+	 */
+	private void retire(int i)
+	{
+		removeSleeping(i);
+		states[i] = RETIRED;
+		collidable[i] = false;
+	}
+
+	/**
+	 * Makes sure the arrays can hold a number of entities.
+	 *
+	 * @param size the number of entities
+	 */
+	private void ensureCapacity(int size)
+	{
+		if(states.length >= size)
+			return;
+		int capacity = Math.max(size, 2*states.length);
+		states = grow(states, capacity);
+		kinds = grow(kinds, capacity);
+		awake = grow(awake, capacity);
+		collidable = grow(collidable, capacity);
+		int[] grownFrames = new int[capacity];
+		System.arraycopy(stillFrames, 0, grownFrames, 0, stillFrames.length);
+		stillFrames = grownFrames;
+		float[] grownPositions = new float[3*capacity];
+		System.arraycopy(positions, 0, grownPositions, 0, positions.length);
+		positions = grownPositions;
+	}
+
+	/**
+	 * Doubles the capacity of a list.
+	 *
+	 * @param list the list
+	 * @return the grown list
+	 */
+	private static int[] grow(int[] list)
+	{
+		int[] grown = new int[2*list.length];
+		System.arraycopy(list, 0, grown, 0, list.length);
+		return grown;
+	}
+
+	/**
+	 * Grows an array.
+	 *
+	 * @param array the array
+	 * @param capacity the new capacity
+	 * @return the grown array
+	 */
+	private static byte[] grow(byte[] array, int capacity)
+	{
+		byte[] grown = new byte[capacity];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+
+	/**
+	 * Grows an array.
+	 *
+	 * @param array the array
+	 * @param capacity the new capacity
+	 * @return the grown array
+	 */
+	private static boolean[] grow(boolean[] array, int capacity)
+	{
+		boolean[] grown = new boolean[capacity];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+}
@@ -0,0 +1,219 @@
+package nu.shacknet.poseidon.pn.signanzorbit.collision;
+
+/**
+ * A small sphere tree bounding the triangles of a geometry in model space,
+ * a tighter collision proxy than the single bounding sphere for elongated
+ * meshes. It is built once from the vertices when the geometry is loaded:
+ * the triangles of a node are split in two halves at the median of their
+ * centroids along the longest axis, down to the given number of levels.
+ * Every sphere bounds all vertices of its triangles, so the leaves cover
+ * the whole surface.
+ *
+ * The nodes are stored in flat arrays, the children of a node are
+ * adjacent: getChild(node) and getChild(node)+1, NULL for leaves.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class GeometrySphereTree
+{
+	/** The child of a leaf. */
+	public static final int NULL = -1;
+
+	/** Nodes with fewer triangles are not split. */
+	private static final int MIN_TRIANGLES = 2;
+
+	/** The spheres of the nodes: center xyz and radius. */
+	private final float[] spheres;
+
+	/** The first child of a node, NULL for leaves. */
+	private final int[] children;
+
+	/** The number of nodes. */
+	private int nodeCount;
+
+	/** The vertices of the geometry (build only). */
+	private float[] vertices;
+
+	/** The triangles, sorted by node (build only). */
+	private int[] triangles;
+
+	/**
+	 * Builds the tree of a triangle list.
+	 *
+	 * @param vertices the vertices (xyz), three per triangle
+	 * @param numVertices the number of vertices
+	 * @param levels the maximal number of levels (1: the bounding sphere only)
+	 */
+	public GeometrySphereTree(float[] vertices, int numVertices, int levels)
+	{
+		int triangleCount = numVertices/3;
+		int maxNodes = (1 << Math.max(1, levels)) - 1;
+		spheres = new float[4*maxNodes];
+		children = new int[maxNodes];
+		this.vertices = vertices;
+		triangles = new int[triangleCount];
+		for(int t=0; t<triangleCount; t++)
+			triangles[t] = t;
+
+		if(triangleCount > 0)
+		{
+			nodeCount = 1;
+			build(0, 0, triangleCount, Math.max(1, levels));
+		}
+		this.vertices = null;
+		this.triangles = null;
+	}
+
+	/**
+	 * Gets the number of nodes.
+	 *
+	 * @return the number of nodes, 0 for geometries without triangles
+	 */
+	public int getNodeCount()
+	{
+		return nodeCount;
+	}
+
+	/**
+	 * Gets the first child of a node.
+	 *
+	 * @param node the node
+	 * @return the first child, the second one follows it; NULL for leaves
+	 */
+	public int getChild(int node)
+	{
+		return children[node];
+	}
+
+	/**
+	 * Gets the sphere of a node.
+	 *
+	 * @param node the node
+	 * @param sphere receives center xyz and radius
+	 * @param offset the position of the sphere in the array
+	 */
+	public void getSphere(int node, float[] sphere, int offset)
+	{
+		System.arraycopy(spheres, 4*node, sphere, offset, 4);
+	}
+
+	/**
+	 * Builds a node and its children.
+	 *
+	 * @param node the node
+	 * @param from the first triangle of the node
+	 * @param to the end of the triangles of the node
+	 * @param levels the remaining levels, including this node
+	 */
+	private void build(int node, int from, int to, int levels)
+	{
+		float[] vertices = this.vertices;
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+		for(int i=from; i<to; i++)
+		{
+			int v = 9*triangles[i];
+			for(int c=0; c<9; c+=3)
+			{
+				float x = vertices[v+c], y = vertices[v+c+1], z = vertices[v+c+2];
+				if(x < minX) minX = x;
+				if(x > maxX) maxX = x;
+				if(y < minY) minY = y;
+				if(y > maxY) maxY = y;
+				if(z < minZ) minZ = z;
+				if(z > maxZ) maxZ = z;
+			}
+		}
+
+		//the center of the box, the radius reaches the farthest vertex
+		float cx = (minX+maxX)/2, cy = (minY+maxY)/2, cz = (minZ+maxZ)/2;
+		float radius2 = 0;
+		for(int i=from; i<to; i++)
+		{
+			int v = 9*triangles[i];
+			for(int c=0; c<9; c+=3)
+			{
+				float x = vertices[v+c]-cx, y = vertices[v+c+1]-cy, z = vertices[v+c+2]-cz;
+				radius2 = Math.max(radius2, x*x + y*y + z*z);
+			}
+		}
+		int s = 4*node;
+		spheres[s  ] = cx;
+		spheres[s+1] = cy;
+		spheres[s+2] = cz;
+		spheres[s+3] = (float)Math.sqrt(radius2);
+		children[node] = NULL;
+
+		if(levels <= 1 || to - from < MIN_TRIANGLES)
+			return;
+
+		//split at the median of the centroids along the longest axis
+		int axis = 0;
+		if(maxY-minY > maxX-minX)
+			axis = 1;
+		if(maxZ-minZ > Math.max(maxX-minX, maxY-minY))
+			axis = 2;
+		int mid = (from+to) >>> 1;
+		select(from, to-1, mid, axis);
+
+		int child = nodeCount;
+		nodeCount += 2;
+		children[node] = child;
+		build(child, from, mid, levels-1);
+		build(child+1, mid, to, levels-1);
+	}
+
+	/**
+	 * Moves the triangle with the k-th smallest centroid coordinate to
+	 * position k, the smaller ones before and the larger ones after it.
+	 *
+	 * @param left the first triangle
+	 * @param right the last triangle
+	 * @param k the position
+	 * @param axis the axis of the coordinate
+	 */
+	private void select(int left, int right, int k, int axis)
+	{
+		int[] triangles = this.triangles;
+		while(left < right)
+		{
+			float pivot = centroid(triangles[(left+right) >>> 1], axis);
+			int i = left, j = right;
+			while(i <= j)
+			{
+				while(centroid(triangles[i], axis) < pivot)
+					i++;
+				while(centroid(triangles[j], axis) > pivot)
+					j--;
+				if(i <= j)
+				{
+					int swap = triangles[i];
+					triangles[i] = triangles[j];
+					triangles[j] = swap;
+					i++;
+					j--;
+				}
+			}
+			if(k <= j)
+				right = j;
+			else if(k >= i)
+				left = i;
+			else
+				return;
+		}
+	}
+
+	/**
+	 * Gets a coordinate of the centroid of a triangle (times 3).
+	 *
+	 * @param triangle the triangle
+	 * @param axis the axis of the coordinate
+	 * @return the coordinate
+	 */
+	private float centroid(int triangle, int axis)
+	{
+		int v = 9*triangle + axis;
+		return vertices[v] + vertices[v+3] + vertices[v+6];
+	}
+}
@@ -0,0 +1,680 @@
+package nu.shacknet.poseidon.pn.signanzorbit.collision;
+
+import java.util.ArrayList;
+
+import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Constants;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Sphere;
+import nu.shacknet.poseidon.pn.signanzorbit.orbit.Motion;
+import nu.shacknet.poseidon.pn.signanzorbit.orbit.Orbit;
+import nu.shacknet.poseidon.pn.signanzorbit.scene.SceneEntity;
+
+/**
+ * Predicts the earliest time two satellites on stable orbits may touch, so
+ * their pair is only checked again when that time has come instead of every
+ * frame. An orbit moves its entity along the ellipse with its speed, so the
+ * gap between two of them can't shrink faster than the sum of their speeds:
+ * gap / (speedA + speedB) is a lower bound of the time to a contact. The
+ * times are kept in a priority queue (a binary heap).
+ *
+ * The bounding sphere of an entity may be rotated around its position on
+ * the ellipse by the satellite transformation, so the offset of its center
+ * is added to its radius twice. Pairs of orbits whose distance ranges to
+ * the universe center don't overlap never touch and aren't queued at all.
+ *
+ * An entity is kinetic while it is collidable, its motion is an Orbit and
+ * its trajectory (speed, center, axes) hasn't changed for a few frames. A
+ * morph, a new motion or a disabled entity ends this, its queued pairs are
+ * dropped (by an epoch per entity) and it is paired by the broadphase again
+ * until its trajectory is stable. The world bounding spheres are updated by
+ * the render thread and may be a frame behind the motions, so the times are
+ * counted from the last frame.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class KineticScheduler
+{
+	/** The number of samples of an ellipse for its distance range to the universe center. */
+	private static final int SHELL_SAMPLES = 32;
+
+	/** The radius and offset of an entity may grow by this factor before it is queued again. */
+	private static final float BOUND_TOLERANCE = 1.01f;
+
+	/** The length of a trajectory: speed, center position, center vector and direction vector. */
+	private static final int TRAJECTORY = 10;
+
+	/** The motion of an entity in the last frame, null if it isn't an Orbit. */
+	private Motion[] motions;
+
+	/** The trajectory of an entity in the last frame. */
+	private float[] trajectories;
+
+	/** The number of frames the trajectory of an entity hasn't changed. */
+	private int[] stableFrames;
+
+	/** Whether the pairs of an entity are queued. */
+	private boolean[] kinetic;
+
+	/** The epoch of an entity, queued pairs of an earlier epoch are dropped. */
+	private int[] epochs;
+
+	/** The speed of a kinetic entity, including the margin. */
+	private float[] speeds;
+
+	/** The radius of a kinetic entity, including the tolerance. */
+	private float[] radii;
+
+	/** The offset of the bounding sphere of a kinetic entity from its position, including the tolerance. */
+	private float[] offsets;
+
+	/** The minimal distance of a kinetic entity's bounding sphere to the universe center. */
+	private float[] shellMin;
+
+	/** The maximal distance of a kinetic entity's bounding sphere to the universe center. */
+	private float[] shellMax;
+
+	/** The kinetic entities. */
+	private int[] kineticList;
+
+	/** The number of kinetic entities. */
+	private int kineticCount;
+
+	/** The entities which become kinetic in the current frame. */
+	private int[] activated;
+
+	/** The time a queued pair may be in contact (the heap). */
+	private double[] times;
+
+	/** The queued pairs: first index in the upper, second index in the lower 32 bits. */
+	private long[] keys;
+
+	/** The epoch of the first entity of a queued pair. */
+	private int[] epochsFirst;
+
+	/** The epoch of the second entity of a queued pair. */
+	private int[] epochsSecond;
+
+	/** The number of queued pairs. */
+	private int queued;
+
+	/** The number of queued pairs at which the dropped ones are removed. */
+	private int compactSize;
+
+	/** The pairs which are due in the current frame. */
+	private long[] due;
+
+	/** The time of the current frame. */
+	private double now;
+
+	/** The time since the last frame. */
+	private float dt;
+
+	/** The number of due pairs checked in the current frame. */
+	private int checked;
+
+	/** The number of due pairs passed on in the current frame. */
+	private int emitted;
+
+	/** The number of candidate pairs of kinetic entities dropped in the current frame. */
+	private int filtered;
+
+	/** The number of entities which have stopped being kinetic in the current frame. */
+	private int deactivated;
+
+	/**
+	 * Instantiates a new kinetic scheduler.
+	 */
+	public KineticScheduler()
+	{
+		motions = new Motion[0];
+		trajectories = new float[0];
+		stableFrames = new int[0];
+		kinetic = new boolean[0];
+		epochs = new int[0];
+		speeds = new float[0];
+		radii = new float[0];
+		offsets = new float[0];
+		shellMin = new float[0];
+		shellMax = new float[0];
+		kineticList = new int[0];
+		activated = new int[0];
+		times = new double[64];
+		keys = new long[64];
+		epochsFirst = new int[64];
+		epochsSecond = new int[64];
+		compactSize = 64;
+		due = new long[64];
+	}
+
+	/**
+	 * Forgets all entities and queued pairs, the trajectories have to be
+	 * stable again before pairs are queued.
+	 */
+	public void clear()
+	{
+		for(int i=0; i<motions.length; i++)
+		{
+			motions[i] = null;
+			kinetic[i] = false;
+			epochs[i]++;
+		}
+		kineticCount = 0;
+		queued = 0;
+	}
+
+	/**
+	 * Replaces the candidate pairs of kinetic entities by the queued pairs
+	 * which are due and may be in contact.
+	 *
+	 * @param entities the scene entities
+	 * @param collidable whether an entity collides at all
+	 * @param dt the time since the last frame in seconds
+	 * @param speedMargin the factor for the speeds of the orbits
+	 * @param minStableFrames the number of frames a trajectory mustn't change before the entity is kinetic
+	 * @param penetrationDepth the depth the bounding spheres have to penetrate each other
+	 * @param pairs the candidate pairs of the broadphase
+	 * @param result cleared, then receives the candidate pairs of the other
+	 * entities and the due pairs, sorted
+	 */
+	public void schedule(ArrayList<SceneEntity> entities, boolean[] collidable, float dt, float speedMargin,
+			int minStableFrames, float penetrationDepth, PairList pairs, PairList result)
+	{
+		int size = entities.size();
+		ensureEntityCapacity(size);
+		float lastDt = this.dt;
+		this.dt = dt;
+		now += dt;
+
+		//the entities whose trajectory has been stable long enough
+		int activatedCount = 0;
+		kineticCount = 0;
+		deactivated = 0;
+		for(int i=0; i<size; i++)
+		{
+			SceneEntity entity = entities.get(i);
+			Motion motion = entity.getMotion();
+			boolean stable = false;
+			if(collidable[i] && motion instanceof Orbit)
+			{
+				Orbit orbit = (Orbit)motion;
+				if(motion == motions[i] && isSameTrajectory(i, orbit))
+				{
+					if(stableFrames[i] < minStableFrames)
+						stableFrames[i]++;
+				}
+				else
+				{
+					motions[i] = motion;
+					storeTrajectory(i, orbit);
+					stableFrames[i] = 0;
+					if(kinetic[i])
+						deactivate(i);
+				}
+				stable = stableFrames[i] >= minStableFrames;
+				if(stable && kinetic[i] && !isWithinBounds(i, entity))
+					deactivate(i);
+			}
+			else
+				motions[i] = null;
+
+			if(kinetic[i] && !stable)
+				deactivate(i);
+			else if(kinetic[i])
+				kineticList[kineticCount++] = i;
+			else if(stable)
+				activated[activatedCount++] = i;
+		}
+
+		//the pairs of new kinetic entities are due immediately, unless their orbits are apart
+		if(queued + activatedCount*kineticCount >= compactSize)
+			compact();
+		for(int n=0; n<activatedCount; n++)
+		{
+			int i = activated[n];
+			activate(i, entities.get(i), speedMargin);
+			for(int m=0; m<kineticCount; m++)
+			{
+				int j = kineticList[m];
+				if(shellMin[i] > shellMax[j] || shellMin[j] > shellMax[i])
+					continue;
+				push(now, i, j);
+			}
+			kineticList[kineticCount++] = i;
+		}
+
+		//the due pairs
+		int dueCount = 0;
+		while(queued > 0 && times[0] <= now)
+		{
+			long key = keys[0];
+			int a = (int)(key >>> 32), b = (int)key;
+			boolean current = kinetic[a] && kinetic[b] && epochs[a] == epochsFirst[0] && epochs[b] == epochsSecond[0];
+			pop();
+			if(!current)
+				continue;
+			if(dueCount == due.length)
+			{
+				long[] grown = new long[2*dueCount];
+				System.arraycopy(due, 0, grown, 0, dueCount);
+				due = grown;
+			}
+			due[dueCount++] = key;
+		}
+
+		//due pairs which may have touched since the last frame are tested, all are queued again
+		result.clear();
+		checked = dueCount;
+		emitted = 0;
+		float frame = Math.max(dt, lastDt);
+		for(int d=0; d<dueCount; d++)
+		{
+			long key = due[d];
+			int a = (int)(key >>> 32), b = (int)key;
+			float[] ca = entities.get(a).getBoundingSphereWorld().center.v;
+			float[] cb = entities.get(b).getBoundingSphereWorld().center.v;
+			float x = cb[0]-ca[0], y = cb[1]-ca[1], z = cb[2]-ca[2];
+			float gap = (float)Math.sqrt(x*x + y*y + z*z) - radii[a] - radii[b] - 2*(offsets[a] + offsets[b]) + penetrationDepth;
+			float closing = speeds[a] + speeds[b];
+			if(gap <= closing*frame)
+			{
+				result.addKey(key);
+				emitted++;
+			}
+			if(gap <= 0)
+				push(now, a, b);
+			else if(closing > 0)
+				push(now - dt + gap/closing, a, b);
+		}
+
+		//the other candidate pairs
+		filtered = 0;
+		int pairCount = pairs.size();
+		for(int k=0; k<pairCount; k++)
+		{
+			long key = pairs.getKey(k);
+			if(kinetic[(int)(key >>> 32)] && kinetic[(int)key])
+			{
+				filtered++;
+				continue;
+			}
+			result.addKey(key);
+		}
+		if(emitted > 0)
+			result.sortUnique();
+	}
+
+	/**
+	 * Gets the number of kinetic entities.
+	 *
+	 * @return the number of entities
+	 */
+	public int getKineticCount()
+	{
+		return kineticCount;
+	}
+
+	/**
+	 * Gets the number of queued pairs, including dropped ones which haven't
+	 * been removed yet.
+	 *
+	 * @return the number of pairs
+	 */
+	public int getQueued()
+	{
+		return queued;
+	}
+
+	/**
+	 * Gets the number of due pairs checked in the current frame.
+	 *
+	 * @return the number of pairs
+	 */
+	public int getChecked()
+	{
+		return checked;
+	}
+
+	/**
+	 * Gets the number of due pairs tested in the current frame.
+	 *
+	 * @return the number of pairs
+	 */
+	public int getEmitted()
+	{
+		return emitted;
+	}
+
+	/**
+	 * Gets the number of candidate pairs of the broadphase which have been
+	 * replaced by queued pairs in the current frame.
+	 *
+	 * @return the number of pairs
+	 */
+	public int getFiltered()
+	{
+		return filtered;
+	}
+
+	/**
+	 * Gets the number of entities which have stopped being kinetic in the
+	 * current frame (changed trajectory, new motion or not collidable).
+	 *
+	 * @return the number of entities
+	 */
+	public int getDeactivated()
+	{
+		return deactivated;
+	}
+
+	/**
+	 * Whether the trajectory of an orbit is the one of the last frame.
+	 *
+	 * @param i the entity
+	 * @param orbit the orbit
+	 * @return true if nothing has changed
+	 */
+	private boolean isSameTrajectory(int i, Orbit orbit)
+	{
+		float[] t = trajectories;
+		int o = TRAJECTORY*i;
+		float[] cp = orbit.centerPos.v, cv = orbit.centerVec.v, dv = orbit.directionVec.v;
+		return t[o] == orbit.getSpeed()
+			&& t[o+1] == cp[0] && t[o+2] == cp[1] && t[o+3] == cp[2]
+			&& t[o+4] == cv[0] && t[o+5] == cv[1] && t[o+6] == cv[2]
+			&& t[o+7] == dv[0] && t[o+8] == dv[1] && t[o+9] == dv[2];
+	}
+
+	/**
+	 * Stores the trajectory of an orbit.
+	 *
+	 * @param i the entity
+	 * @param orbit the orbit
+	 */
+	private void storeTrajectory(int i, Orbit orbit)
+	{
+		float[] t = trajectories;
+		int o = TRAJECTORY*i;
+		t[o] = orbit.getSpeed();
+		System.arraycopy(orbit.centerPos.v, 0, t, o+1, 3);
+		System.arraycopy(orbit.centerVec.v, 0, t, o+4, 3);
+		System.arraycopy(orbit.directionVec.v, 0, t, o+7, 3);
+	}
+
+	/**
+	 * Whether the radius and offset of a kinetic entity are still within
+	 * the ones it has been queued with.
+	 *
+	 * @param i the entity
+	 * @param entity the scene entity
+	 * @return true if they are
+	 */
+	private boolean isWithinBounds(int i, SceneEntity entity)
+	{
+		float radius = entity.getBoundingSphereWorld().radius;
+		return radius <= radii[i] && getOffset(entity, radius) <= offsets[i];
+	}
+
+	/**
+	 * Gets the distance of the center of the world bounding sphere from the
+	 * position of the entity.
+	 *
+	 * @param entity the scene entity
+	 * @param radius the radius of the world bounding sphere
+	 * @return the distance
+	 */
+	private static float getOffset(SceneEntity entity, float radius)
+	{
+		Sphere sphere = entity.getBoundingSphere();
+		float length = sphere.center.length();
+		if(length == 0)
+			return 0;
+		//the center is scaled like the radius
+		return sphere.radius > 0 ? length * radius / sphere.radius : length;
+	}
+
+	/**
+	 * Makes an entity kinetic: its bounds, speed and distance range to the
+	 * universe center are stored.
+	 *
+	 * @param i the entity
+	 * @param entity the scene entity
+	 * @param speedMargin the factor for the speed
+	 */
+	private void activate(int i, SceneEntity entity, float speedMargin)
+	{
+		Orbit orbit = (Orbit)entity.getMotion();
+		float radius = entity.getBoundingSphereWorld().radius;
+		radii[i] = radius*BOUND_TOLERANCE;
+		offsets[i] = getOffset(entity, radius)*BOUND_TOLERANCE;
+		speeds[i] = Math.abs(orbit.getSpeed())*speedMargin;
+
+		//the ellipse is center + centerVec*cos(t) + directionVec*sin(t), between two
+		//samples a point is at most (|centerVec|+|directionVec|)*PI/SHELL_SAMPLES from one
+		float[] u = Config.UNIVERSE_CENTER.v, c = orbit.centerPos.v, a = orbit.centerVec.v, b = orbit.directionVec.v;
+		float min = Float.MAX_VALUE, max = 0;
+		for(int s=0; s<SHELL_SAMPLES; s++)
+		{
+			double t = Constants.TWOPI*s/SHELL_SAMPLES;
+			float cos = (float)Math.cos(t), sin = (float)Math.sin(t);
+			float x = c[0] + a[0]*cos + b[0]*sin - u[0];
+			float y = c[1] + a[1]*cos + b[1]*sin - u[1];
+			float z = c[2] + a[2]*cos + b[2]*sin - u[2];
+			float distance = (float)Math.sqrt(x*x + y*y + z*z);
+			min = Math.min(min, distance);
+			max = Math.max(max, distance);
+		}
+		float error = (orbit.centerVec.length() + orbit.directionVec.length())*(float)Math.PI/SHELL_SAMPLES;
+		float reach = radii[i] + offsets[i] + error;
+		shellMin[i] = min - reach;
+		shellMax[i] = max + reach;
+
+		kinetic[i] = true;
+		epochs[i]++;
+	}
+
+	/**
+	 * Ends the kinetic state of an entity, its queued pairs are dropped.
+	 *
+	 * @param i the entity
+	 */
+	private void deactivate(int i)
+	{
+		kinetic[i] = false;
+		epochs[i]++;
+		deactivated++;
+	}
+
+	/**
+	 * Queues a pair.
+	 *
+	 * @param time the earliest time of a contact
+	 * @param a an entity
+	 * @param b the other entity
+	 */
+	private void push(double time, int a, int b)
+	{
+		if(queued == keys.length)
+			ensureQueueCapacity(2*queued);
+		int first = Math.min(a, b), second = Math.max(a, b);
+		long key = ((long)first << 32) | second;
+		int epochFirst = epochs[first], epochSecond = epochs[second];
+
+		//sift up
+		int n = queued++;
+		while(n > 0)
+		{
+			int parent = (n-1) >>> 1;
+			if(times[parent] <= time)
+				break;
+			move(parent, n);
+			n = parent;
+		}
+		times[n] = time;
+		keys[n] = key;
+		epochsFirst[n] = epochFirst;
+		epochsSecond[n] = epochSecond;
+	}
+
+	/**
+	 * Removes the earliest queued pair.
+	 */
+	private void pop()
+	{
+		queued--;
+		if(queued > 0)
+			siftDown(0, queued);
+	}
+
+	/**
+	 * Moves the last queued pair (at index queued) down from a slot of the
+	 * heap until the heap order holds.
+	 *
+	 * @param n the empty slot
+	 * @param last the index of the pair to place
+	 */
+	private void siftDown(int n, int last)
+	{
+		double time = times[last];
+		long key = keys[last];
+		int epochFirst = epochsFirst[last], epochSecond = epochsSecond[last];
+		int half = queued >>> 1;
+		while(n < half)
+		{
+			int child = 2*n+1;
+			if(child+1 < queued && times[child+1] < times[child])
+				child++;
+			if(time <= times[child])
+				break;
+			move(child, n);
+			n = child;
+		}
+		times[n] = time;
+		keys[n] = key;
+		epochsFirst[n] = epochFirst;
+		epochsSecond[n] = epochSecond;
+	}
+
+	/**
+	 * Copies a queued pair to another slot.
+	 *
+	 * @param from the source slot
+	 * @param to the target slot
+	 */
+	private void move(int from, int to)
+	{
+		times[to] = times[from];
+		keys[to] = keys[from];
+		epochsFirst[to] = epochsFirst[from];
+		epochsSecond[to] = epochsSecond[from];
+	}
+
+	/**
+	 * Removes the dropped pairs from the queue and restores the heap order.
+	 */
+	private void compact()
+	{
+		int kept = 0;
+		for(int n=0; n<queued; n++)
+		{
+			long key = keys[n];
+			int a = (int)(key >>> 32), b = (int)key;
+			if(kinetic[a] && kinetic[b] && epochs[a] == epochsFirst[n] && epochs[b] == epochsSecond[n])
+				move(n, kept++);
+		}
+		queued = kept;
+		for(int n=(queued >>> 1)-1; n>=0; n--)
+		{
+			//place the pair at n again: park it behind the heap
+			ensureQueueCapacity(queued+1);
+			move(n, queued);
+			siftDown(n, queued);
+		}
+		compactSize = Math.max(64, 2*queued);
+	}
+
+	/**
+	 * Makes room for queued pairs.
+	 *
+	 * @param capacity the number of pairs
+	 */
+	private void ensureQueueCapacity(int capacity)
+	{
+		if(keys.length >= capacity)
+			return;
+
+		capacity = Math.max(capacity, 2*keys.length);
+		double[] grownTimes = new double[capacity];
+		long[] grownKeys = new long[capacity];
+		int[] grownFirst = new int[capacity];
+		int[] grownSecond = new int[capacity];
+		System.arraycopy(times, 0, grownTimes, 0, queued);
+		System.arraycopy(keys, 0, grownKeys, 0, queued);
+		System.arraycopy(epochsFirst, 0, grownFirst, 0, queued);
+		System.arraycopy(epochsSecond, 0, grownSecond, 0, queued);
+		times = grownTimes;
+		keys = grownKeys;
+		epochsFirst = grownFirst;
+		epochsSecond = grownSecond;
+	}
+
+	/**
+	 * Makes room for size entities, new entities aren't kinetic.
+	 *
+	 * @param size the number of entities
+	 */
+	private void ensureEntityCapacity(int size)
+	{
+		int length = motions.length;
+		if(length >= size)
+			return;
+
+		int capacity = Math.max(size, 2*length);
+		Motion[] grownMotions = new Motion[capacity];
+		System.arraycopy(motions, 0, grownMotions, 0, length);
+		motions = grownMotions;
+		float[] grownTrajectories = new float[TRAJECTORY*capacity];
+		System.arraycopy(trajectories, 0, grownTrajectories, 0, TRAJECTORY*length);
+		trajectories = grownTrajectories;
+		stableFrames = grow(stableFrames, capacity);
+		boolean[] grownKinetic = new boolean[capacity];
+		System.arraycopy(kinetic, 0, grownKinetic, 0, length);
+		kinetic = grownKinetic;
+		epochs = grow(epochs, capacity);
+		speeds = grow(speeds, capacity);
+		radii = grow(radii, capacity);
+		offsets = grow(offsets, capacity);
+		shellMin = grow(shellMin, capacity);
+		shellMax = grow(shellMax, capacity);
+		kineticList = new int[capacity];
+		activated = new int[capacity];
+	}
+
+	/**
+	 * Grows an array, keeping its content.
+	 *
+	 * @param array the array
+	 * @param capacity the new length
+	 * @return the grown array
+	 */
+	private static int[] grow(int[] array, int capacity)
+	{
+		int[] grown = new int[capacity];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+
+	/**
+	 * Grows an array, keeping its content.
+	 *
+	 * @param array the array
+	 * @param capacity the new length
+	 * @return the grown array
+	 */
+	private static float[] grow(float[] array, int capacity)
+	{
+		float[] grown = new float[capacity];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+}
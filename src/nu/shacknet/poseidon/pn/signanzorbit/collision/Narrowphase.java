@@ -0,0 +1,337 @@
+package nu.shacknet.poseidon.pn.signanzorbit.collision;
+
+import java.util.ArrayList;
+
+import nu.shacknet.poseidon.pn.signanzorbit.math.Sphere;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Vector3;
+import nu.shacknet.poseidon.pn.signanzorbit.orbit.Movable;
+
+/**
+ * The contact tests of the candidate pairs. Testing a pair only reads the
+ * world bounding spheres (and the sweeps of fast entities), the result and
+ * the center distance are stored per pair. So the pairs can be split into
+ * contiguous ranges which are tested by several threads, and the results
+ * don't depend on the number of threads. The collision response applies
+ * them afterwards, serially and in the order of the pairs.
+ *
+ * The first range is tested by the calling thread, the others by worker
+ * threads which wait for the next call in between.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class Narrowphase
+{
+	/** Ranges are not split below this number of pairs. */
+	private static final int MIN_PAIRS_PER_THREAD = 64;
+
+	/** The worker threads. */
+	private final Worker[] workers;
+
+	/** Guards generation and pending. */
+	private final Object lock;
+
+	/** Incremented for every call the workers have to take part in. */
+	private int generation;
+
+	/** The number of workers which haven't finished the current call. */
+	private int pending;
+
+	/** Whether the workers have to stop. */
+	private boolean shutdown;
+
+	/** The number of ranges of the current call. */
+	private int rangeCount;
+
+	/** The entities of the current call. */
+	private ArrayList<? extends Movable> entities;
+
+	/** The pairs of the current call. */
+	private PairList pairs;
+
+	/** The sweeps of the current call, null without continuous collision detection. */
+	private SweptSpheres swept;
+
+	/** The collision proxies of the current call, null to test the bounding spheres only. */
+	private CollisionProxies proxies;
+
+	/** The penetration depth of the current call. */
+	private float penetrationDepth;
+
+	/** The stacks for the descent of the proxies, one per range. */
+	private final int[][] stacks;
+
+	/** Whether a pair is in contact. */
+	private boolean[] contact;
+
+	/** The distances from the first to the second center (xyz) of the pairs in contact. */
+	private float[] distances;
+
+	/** The distances the spheres of the pairs have to approach each other for a contact at the end of the step. */
+	private float[] gaps;
+
+	/**
+	 * Instantiates a new narrowphase.
+	 *
+	 * @param threads the number of threads testing the pairs (including the calling thread)
+	 */
+	public Narrowphase(int threads)
+	{
+		lock = new Object();
+		contact = new boolean[64];
+		distances = new float[3*64];
+		gaps = new float[64];
+		workers = new Worker[Math.max(0, threads-1)];
+		stacks = new int[workers.length+1][CollisionProxies.getStackSize()];
+		for(int w=0; w<workers.length; w++)
+		{
+			workers[w] = new Worker(w+1);
+			workers[w].start();
+		}
+	}
+
+	/**
+	 * Gets the number of threads testing the pairs.
+	 *
+	 * @return the number of threads
+	 */
+	public int getThreads()
+	{
+		return workers.length + 1;
+	}
+
+	/**
+	 * Stops the worker threads, the narrowphase must not be used afterwards.
+	 */
+	public void shutdown()
+	{
+		synchronized(lock)
+		{
+			shutdown = true;
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Tests the candidate pairs: two entities are in contact if their
+	 * spheres penetrate each other by more than penetrationDepth, pairs with
+	 * a fast entity if they do so during the sweep.
+	 *
+	 * @param entities the entities
+	 * @param pairs the candidate pairs
+	 * @param swept the sweeps of the current step, null to test the current spheres only
+	 * @param penetrationDepth the depth the spheres have to penetrate each other
+	 */
+	public void test(ArrayList<? extends Movable> entities, PairList pairs, SweptSpheres swept, float penetrationDepth)
+	{
+		test(entities, pairs, swept, null, penetrationDepth);
+	}
+
+	/**
+	 * Tests the candidate pairs like test(entities, pairs, swept, penetrationDepth),
+	 * but pairs of entities which both have a collision proxy are only in
+	 * contact if their proxies are (except pairs with a fast entity).
+	 *
+	 * @param entities the entities
+	 * @param pairs the candidate pairs
+	 * @param swept the sweeps of the current step, null to test the current spheres only
+	 * @param proxies the collision proxies, null to test the bounding spheres only
+	 * @param penetrationDepth the depth the spheres have to penetrate each other
+	 */
+	public void test(ArrayList<? extends Movable> entities, PairList pairs, SweptSpheres swept, CollisionProxies proxies, float penetrationDepth)
+	{
+		int pairCount = pairs.size();
+		if(contact.length < pairCount)
+		{
+			int capacity = Math.max(pairCount, 2*contact.length);
+			contact = new boolean[capacity];
+			distances = new float[3*capacity];
+			gaps = new float[capacity];
+		}
+		this.entities = entities;
+		this.pairs = pairs;
+		this.swept = swept;
+		this.proxies = proxies;
+		this.penetrationDepth = penetrationDepth;
+		rangeCount = Math.max(1, Math.min(workers.length + 1, pairCount / MIN_PAIRS_PER_THREAD));
+
+		if(rangeCount == 1)
+		{
+			testRange(0);
+			return;
+		}
+
+		synchronized(lock)
+		{
+			generation++;
+			pending = workers.length;
+			lock.notifyAll();
+		}
+		testRange(0);
+		synchronized(lock)
+		{
+			while(pending > 0)
+			{
+				try
+				{
+					lock.wait();
+				}
+				catch(InterruptedException e)
+				{
+					//the workers finish anyway
+				}
+			}
+		}
+	}
+
+	/**
+	 * Whether a pair of the last test() is in contact.
+	 *
+	 * @param index the index of the pair
+	 * @return true if the entities are in contact
+	 */
+	public boolean hasContact(int index)
+	{
+		return contact[index];
+	}
+
+	/**
+	 * Gets the distance from the first to the second center of a pair in
+	 * contact, at the time of impact for pairs with a fast entity.
+	 *
+	 * @param index the index of the pair
+	 * @param centerDistance receives the distance
+	 */
+	public void getCenterDistance(int index, Vector3 centerDistance)
+	{
+		int d = 3*index;
+		centerDistance.set(distances[d], distances[d+1], distances[d+2]);
+	}
+
+	/**
+	 * Gets the distance the spheres of a pair of the last test() have to
+	 * approach each other for a contact, measured at the end of the step.
+	 * It is negative or 0 for pairs in contact at the end of the step.
+	 *
+	 * @param index the index of the pair
+	 * @return the gap
+	 */
+	public float getGap(int index)
+	{
+		return gaps[index];
+	}
+
+	/**
+	 * Tests a range of the pairs.
+	 *
+	 * @param range the index of the range
+	 */
+	private void testRange(int range)
+	{
+		if(range >= rangeCount)
+			return;
+		int pairCount = pairs.size();
+		int from = (int)((long)pairCount * range / rangeCount);
+		int to = (int)((long)pairCount * (range+1) / rangeCount);
+		int[] stack = stacks[range];
+		for(int k=from; k<to; k++)
+			contact[k] = testPair(pairs.getFirst(k), pairs.getSecond(k), k, stack);
+	}
+
+	/**
+	 * Tests a pair.
+	 *
+	 * @param a the first entity
+	 * @param b the second entity
+	 * @param k the index of the pair
+	 * @param stack the stack for the descent of the proxies
+	 * @return true if the entities are in contact
+	 */
+	private boolean testPair(int a, int b, int k, int[] stack)
+	{
+		Sphere sphereA = entities.get(a).getBoundingSphereWorld();
+		Sphere sphereB = entities.get(b).getBoundingSphereWorld();
+		float[] ca = sphereA.center.v, cb = sphereB.center.v;
+		float x = cb[0]-ca[0], y = cb[1]-ca[1], z = cb[2]-ca[2];
+		float gap = (float)Math.sqrt(x*x + y*y + z*z) + penetrationDepth - (sphereA.radius + sphereB.radius);
+		gaps[k] = gap;
+		int d = 3*k;
+
+		if(swept != null && (swept.isFast(a) || swept.isFast(b)))
+		{
+			float t = swept.timeOfImpact(a, b, penetrationDepth);
+			if(t == SweptSpheres.NO_IMPACT)
+				return false;
+			swept.getCenterDistance(a, b, t, distances, d);
+			return true;
+		}
+
+		if(gap >= 0)
+			return false;
+		//the bounding spheres are in contact, the meshes may not be
+		if(proxies != null && proxies.hasProxy(a) && proxies.hasProxy(b) && !proxies.contact(a, b, penetrationDepth, stack))
+			return false;
+		distances[d  ] = x;
+		distances[d+1] = y;
+		distances[d+2] = z;
+		return true;
+	}
+
+	/**
+	 * A worker thread, tests one range per call.
+	 */
+	private class Worker extends Thread
+	{
+		/** The range tested by this worker. */
+		private final int range;
+
+		/**
+		 * Instantiates a new worker.
+		 *
+		 * @param range the range tested by this worker
+		 */
+		public Worker(int range)
+		{
+			super("Narrowphase " + range);
+			this.range = range;
+			setDaemon(true);
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Thread#run()
+		 */
+		@Override
+		public void run()
+		{
+			int seen = 0;
+			while(true)
+			{
+				synchronized(lock)
+				{
+					while(generation == seen && !shutdown)
+					{
+						try
+						{
+							lock.wait();
+						}
+						catch(InterruptedException e)
+						{
+							//check again
+						}
+					}
+					if(shutdown)
+						return;
+					seen = generation;
+				}
+
+				testRange(range);
+
+				synchronized(lock)
+				{
+					if(--pending == 0)
+						lock.notifyAll();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package nu.shacknet.poseidon.pn.signanzorbit.collision;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of index pairs (first < second), packed into longs so it
+ * can be sorted without allocations. Sorted by first, then second index,
+ * which is the order of the nested loop over all pairs.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public final class PairList
+{
+	/** The pairs: first index in the upper, second index in the lower 32 bits. */
+	private long[] pairs;
+
+	/** The number of pairs. */
+	private int size;
+
+	/**
+	 * Instantiates a new empty PairList.
+	 */
+	public PairList()
+	{
+		pairs = new long[64];
+		size = 0;
+	}
+
+	/**
+	 * Removes all pairs.
+	 */
+	public void clear()
+	{
+		size = 0;
+	}
+
+	/**
+	 * Adds a pair.
+	 *
+	 * @param first the smaller index
+	 * @param second the larger index
+	 */
+	public void add(int first, int second)
+	{
+		if(size == pairs.length)
+		{
+			long[] grown = new long[2*size];
+			System.arraycopy(pairs, 0, grown, 0, size);
+			pairs = grown;
+		}
+		pairs[size++] = ((long)first << 32) | second;
+	}
+
+	/**
+	 * Gets the number of pairs.
+	 *
+	 * @return the number of pairs
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Gets the first (smaller) index of a pair.
+	 *
+	 * @param i the pair
+	 * @return the first index
+	 */
+	public int getFirst(int i)
+	{
+		return (int)(pairs[i] >>> 32);
+	}
+
+	/**
+	 * Gets the second (larger) index of a pair.
+	 *
+	 * @param i the pair
+	 * @return the second index
+	 */
+	public int getSecond(int i)
+	{
+		return (int)pairs[i];
+	}
+
+	/**
+	 * Gets a pair as packed key (first index in the upper, second index in
+	 * the lower 32 bits), keys compare like the pairs.
+	 *
+	 * @param i the pair
+	 * @return the key
+	 */
+	long getKey(int i)
+	{
+		return pairs[i];
+	}
+
+	/**
+	 * Adds a pair as packed key.
+	 *
+	 * @param key the key
+	 */
+	void addKey(long key)
+	{
+		add((int)(key >>> 32), (int)key);
+	}
+
+	/**
+	 * Sorts the pairs and removes duplicates.
+	 */
+	void sortUnique()
+	{
+		if(size < 2)
+			return;
+
+		Arrays.sort(pairs, 0, size);
+		int unique = 1;
+		for(int i=1; i<size; i++)
+		{
+			if(pairs[i] != pairs[unique-1])
+				pairs[unique++] = pairs[i];
+		}
+		size = unique;
+	}
+}
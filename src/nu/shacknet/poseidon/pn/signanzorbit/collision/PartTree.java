@@ -0,0 +1,771 @@
+package nu.shacknet.poseidon.pn.signanzorbit.collision;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import nu.shacknet.poseidon.pn.signanzorbit.math.MathKernels;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Sphere;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Vector3;
+import nu.shacknet.poseidon.pn.signanzorbit.orbit.Movable;
+
+/**
+ * A static sphere tree over the parts of an entity which don't move while
+ * they are attached (the parts of the planet). The tree is built once, top
+ * down, by splitting the parts at the median of the longest axis of their
+ * centers, up to LEAF_SIZE parts per leaf. The parts are numbered (the
+ * items) in the order they are passed to build().
+ *
+ * Removing a part is O(1): it is swapped with the last remaining part of
+ * its leaf, a leaf without parts is invalidated. Inner nodes whose
+ * children are both invalid are invalidated by the next query passing by.
+ * The remaining parts are also kept in a dense list for random access.
+ *
+ * The candidates of the overlap query can be filtered by the bounding
+ * spheres of the parts, which are packed so that MathKernels tests them in
+ * one batch.
+ *
+ * Besides the overlap query, the tree answers the aiming queries with
+ * branch and bound over the node spheres: the part nearest to a ray, the
+ * k parts nearest to a point and the most exposed part in a direction.
+ *
+ * @param <T> the type of the parts
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class PartTree<T extends Movable>
+{
+	/** No node, no part. */
+	public static final int NULL = -1;
+
+	/** The maximal number of parts in a leaf. */
+	private static final int LEAF_SIZE = 4;
+
+	/** The parts, indexed by item. */
+	private final ArrayList<T> parts;
+
+	/** The node spheres: center xyz and radius. */
+	private float[] spheres;
+
+	/** The first child of an inner node, NULL for leaves. */
+	private int[] child1;
+
+	/** The second child of an inner node, NULL for leaves. */
+	private int[] child2;
+
+	/** The first position of a leaf in order. */
+	private int[] start;
+
+	/** The number of remaining parts of a leaf. */
+	private int[] count;
+
+	/** Whether a node contains no remaining parts. */
+	private boolean[] invalid;
+
+	/** The number of nodes. */
+	private int nodeCount;
+
+	/** The items, grouped by leaf, the remaining ones first in each leaf. */
+	private int[] order;
+
+	/** The position of an item in order. */
+	private int[] orderIndex;
+
+	/** The leaf of an item. */
+	private int[] leaf;
+
+	/** The remaining items. */
+	private int[] remaining;
+
+	/** The position of an item in remaining, NULL if it has been removed. */
+	private int[] remainingIndex;
+
+	/** The number of remaining items. */
+	private int remainingCount;
+
+	/** The items found by the last query. */
+	private int[] candidates;
+
+	/** The number of items found by the last query. */
+	private int candidateCount;
+
+	/** The traversal stack. */
+	private int[] stack;
+
+	/** The bounds of the nodes on the traversal stack. */
+	private float[] stackBounds;
+
+	/** The bounding spheres of the parts (center xyz and radius), indexed by item. */
+	private float[] partSpheres;
+
+	/** The positions of the candidates passing filterCandidates(). */
+	private int[] hits;
+
+	/** The squared distances of the candidates of the last k-nearest query. */
+	private float[] candidateDistances;
+
+	/** The sort keys used by build(). */
+	private long[] keys;
+
+	/**
+	 * Instantiates a new empty part tree.
+	 */
+	public PartTree()
+	{
+		parts = new ArrayList<T>();
+		build(parts);
+	}
+
+	/**
+	 * Builds the tree from the current world bounding spheres of the parts.
+	 *
+	 * @param parts the parts, all of them remain
+	 */
+	public void build(List<? extends T> parts)
+	{
+		if(parts != this.parts)
+		{
+			this.parts.clear();
+			this.parts.addAll(parts);
+		}
+		int size = this.parts.size();
+		int nodes = Math.max(1, 2*size);
+		spheres = new float[4*nodes];
+		child1 = new int[nodes];
+		child2 = new int[nodes];
+		start = new int[nodes];
+		count = new int[nodes];
+		invalid = new boolean[nodes];
+		order = new int[size];
+		orderIndex = new int[size];
+		leaf = new int[size];
+		remaining = new int[size];
+		remainingIndex = new int[size];
+		candidates = new int[Math.max(8, size)];
+		candidateDistances = new float[candidates.length];
+		hits = new int[candidates.length];
+		keys = new long[size];
+		partSpheres = new float[4*size];
+
+		for(int i=0; i<size; i++)
+		{
+			Sphere sphere = this.parts.get(i).getBoundingSphereWorld();
+			float[] c = sphere.center.v;
+			partSpheres[4*i  ] = c[0];
+			partSpheres[4*i+1] = c[1];
+			partSpheres[4*i+2] = c[2];
+			partSpheres[4*i+3] = sphere.radius;
+			order[i] = i;
+			remaining[i] = i;
+			remainingIndex[i] = i;
+		}
+		remainingCount = size;
+		candidateCount = 0;
+
+		nodeCount = 0;
+		int depth = size > 0 ? buildNode(0, size) : 0;
+		if(size == 0)
+		{
+			invalid[0] = true;
+			child1[0] = NULL;
+			child2[0] = NULL;
+			nodeCount = 1;
+		}
+		stack = new int[depth + 2];
+		stackBounds = new float[depth + 2];
+
+		for(int k=0; k<size; k++)
+			orderIndex[order[k]] = k;
+	}
+
+	/**
+	 * Builds the subtree over order[from..to).
+	 *
+	 * @param from the first position in order
+	 * @param to the position after the last one
+	 * @return the height of the subtree
+	 */
+	private int buildNode(int from, int to)
+	{
+		int node = nodeCount++;
+		setSphere(node, from, to);
+		invalid[node] = false;
+
+		if(to - from <= LEAF_SIZE)
+		{
+			child1[node] = NULL;
+			child2[node] = NULL;
+			start[node] = from;
+			count[node] = to - from;
+			for(int k=from; k<to; k++)
+				leaf[order[k]] = node;
+			return 0;
+		}
+
+		//split at the median of the longest axis
+		int axis = longestAxis(from, to);
+		for(int k=from; k<to; k++)
+		{
+			int item = order[k];
+			float value = parts.get(item).getBoundingSphereWorld().center.v[axis];
+			keys[k] = ((long)sortable(value) << 32) | item;
+		}
+		Arrays.sort(keys, from, to);
+		for(int k=from; k<to; k++)
+			order[k] = (int)keys[k];
+
+		int middle = (from + to) >>> 1;
+		int height1 = buildNode(from, middle);
+		child1[node] = node + 1;
+		child2[node] = nodeCount;
+		int height2 = buildNode(middle, to);
+		return 1 + Math.max(height1, height2);
+	}
+
+	/**
+	 * Gets the number of remaining parts.
+	 *
+	 * @return the number of remaining parts
+	 */
+	public int size()
+	{
+		return remainingCount;
+	}
+
+	/**
+	 * Gets a remaining part, the order changes when parts are removed.
+	 *
+	 * @param index the index (< size())
+	 * @return the part
+	 */
+	public T get(int index)
+	{
+		return parts.get(remaining[index]);
+	}
+
+	/**
+	 * Gets the item of a remaining part.
+	 *
+	 * @param index the index (< size())
+	 * @return the item
+	 */
+	public int getItem(int index)
+	{
+		return remaining[index];
+	}
+
+	/**
+	 * Gets a part by its item.
+	 *
+	 * @param item the item
+	 * @return the part
+	 */
+	public T getPart(int item)
+	{
+		return parts.get(item);
+	}
+
+	/**
+	 * Whether a part has not been removed yet.
+	 *
+	 * @param item the item
+	 * @return true if the part remains
+	 */
+	public boolean contains(int item)
+	{
+		return remainingIndex[item] != NULL;
+	}
+
+	/**
+	 * Removes a part, if it has not been removed yet.
+	 *
+	 * @param item the item
+	 */
+	public void remove(int item)
+	{
+		int index = remainingIndex[item];
+		if(index == NULL)
+			return;
+
+		//swap with the last remaining part
+		int last = remaining[--remainingCount];
+		remaining[index] = last;
+		remainingIndex[last] = index;
+		remainingIndex[item] = NULL;
+
+		//swap with the last remaining part of the leaf
+		int node = leaf[item];
+		int position = orderIndex[item];
+		int lastPosition = start[node] + --count[node];
+		int lastItem = order[lastPosition];
+		order[position] = lastItem;
+		orderIndex[lastItem] = position;
+		order[lastPosition] = item;
+		orderIndex[item] = lastPosition;
+		if(count[node] == 0)
+			invalid[node] = true;
+	}
+
+	/**
+	 * Finds the remaining parts whose bounding spheres may overlap a sphere
+	 * by more than penetrationDepth, only nodes overlapping the sphere are
+	 * visited. The result is available through getCandidate().
+	 *
+	 * @param sphere the sphere
+	 * @param penetrationDepth the depth the spheres have to penetrate each other
+	 * @return the number of candidates
+	 */
+	public int query(Sphere sphere, float penetrationDepth)
+	{
+		float[] c = sphere.center.v;
+		float x = c[0], y = c[1], z = c[2];
+		float reach = sphere.radius - penetrationDepth;
+		float[] spheres = this.spheres;
+		int[] stack = this.stack;
+		candidateCount = 0;
+
+		int top = 0;
+		stack[top++] = 0;
+		while(top > 0)
+		{
+			int node = stack[--top];
+			if(invalid[node])
+				continue;
+
+			int s = 4*node;
+			float dx = spheres[s] - x, dy = spheres[s+1] - y, dz = spheres[s+2] - z;
+			float overlap = spheres[s+3] + reach;
+			if(overlap <= 0 || dx*dx + dy*dy + dz*dz >= overlap*overlap)
+				continue;
+
+			int c1 = child1[node];
+			if(c1 != NULL)
+			{
+				int c2 = child2[node];
+				if(invalid[c1] && invalid[c2])
+				{
+					invalid[node] = true;
+					continue;
+				}
+				stack[top++] = c1;
+				stack[top++] = c2;
+				continue;
+			}
+
+			int end = start[node] + count[node];
+			for(int k=start[node]; k<end; k++)
+				candidates[candidateCount++] = order[k];
+		}
+
+		//sort by item
+		for(int k=1; k<candidateCount; k++)
+		{
+			int item = candidates[k];
+			int j = k-1;
+			while(j >= 0 && candidates[j] > item)
+			{
+				candidates[j+1] = candidates[j];
+				j--;
+			}
+			candidates[j+1] = item;
+		}
+		return candidateCount;
+	}
+
+	/**
+	 * Removes the candidates of the last query whose bounding spheres don't
+	 * overlap a sphere by more than penetrationDepth, in one batch
+	 * (MathKernels.overlapSpheres()). The order of the remaining candidates
+	 * is kept.
+	 *
+	 * @param sphere the sphere
+	 * @param penetrationDepth the depth the spheres have to penetrate each other
+	 * @return the number of remaining candidates
+	 */
+	public int filterCandidates(Sphere sphere, float penetrationDepth)
+	{
+		float[] c = sphere.center.v;
+		int n = MathKernels.overlapSpheres(partSpheres, candidates, candidateCount, c[0], c[1], c[2], sphere.radius, penetrationDepth, hits);
+		//the hits are ascending, so the candidates can be compacted in place
+		for(int k=0; k<n; k++)
+			candidates[k] = candidates[hits[k]];
+		candidateCount = n;
+		return n;
+	}
+
+	/**
+	 * Gets a candidate of the last query: sorted by item after query(),
+	 * by distance after nearest().
+	 *
+	 * @param index the index (< the result of the query)
+	 * @return the item
+	 */
+	public int getCandidate(int index)
+	{
+		return candidates[index];
+	}
+
+	/**
+	 * Finds the remaining part whose center is nearest to a ray. The
+	 * distance to the points behind the origin is the distance to the
+	 * origin.
+	 *
+	 * @param origin the origin of the ray
+	 * @param direction the direction of the ray
+	 * @return the item, NULL if no part remains or the direction is 0
+	 */
+	public int nearestToRay(Vector3 origin, Vector3 direction)
+	{
+		float[] o = origin.v, d = direction.v;
+		float ox = o[0], oy = o[1], oz = o[2];
+		float length = (float)Math.sqrt(d[0]*d[0] + d[1]*d[1] + d[2]*d[2]);
+		if(length == 0)
+			return NULL;
+		float dx = d[0]/length, dy = d[1]/length, dz = d[2]/length;
+		float[] centers = this.partSpheres;
+		int[] stack = this.stack;
+		float[] bounds = stackBounds;
+		int best = NULL;
+		float bestDistance2 = Float.MAX_VALUE;
+
+		int top = 0;
+		stack[top] = 0;
+		bounds[top++] = 0;
+		while(top > 0)
+		{
+			int node = stack[--top];
+			float bound = bounds[top];
+			if(invalid[node] || bound*bound >= bestDistance2)
+				continue;
+
+			int c1 = child1[node];
+			if(c1 != NULL)
+			{
+				int c2 = child2[node];
+				if(invalid[c1] && invalid[c2])
+				{
+					invalid[node] = true;
+					continue;
+				}
+				//the nearer child is visited first
+				float bound1 = rayBound(c1, ox, oy, oz, dx, dy, dz), bound2 = rayBound(c2, ox, oy, oz, dx, dy, dz);
+				top = push(c1, bound1, c2, bound2, top);
+				continue;
+			}
+
+			int end = start[node] + count[node];
+			for(int k=start[node]; k<end; k++)
+			{
+				int item = order[k];
+				int c = 4*item;
+				float vx = centers[c]-ox, vy = centers[c+1]-oy, vz = centers[c+2]-oz;
+				float t = Math.max(0, vx*dx + vy*dy + vz*dz);
+				vx -= t*dx;
+				vy -= t*dy;
+				vz -= t*dz;
+				float distance2 = vx*vx + vy*vy + vz*vz;
+				if(distance2 < bestDistance2)
+				{
+					bestDistance2 = distance2;
+					best = item;
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Finds the k remaining parts whose centers are nearest to a point.
+	 * The result is available through getCandidate(), the nearest first.
+	 *
+	 * @param point the point
+	 * @param k the maximal number of parts
+	 * @return the number of parts found, min(k, size())
+	 */
+	public int nearest(Vector3 point, int k)
+	{
+		float[] p = point.v;
+		float px = p[0], py = p[1], pz = p[2];
+		k = Math.min(k, candidates.length);
+		float[] centers = this.partSpheres, distances = candidateDistances;
+		int[] stack = this.stack;
+		float[] bounds = stackBounds;
+		candidateCount = 0;
+		if(k <= 0)
+			return 0;
+
+		int top = 0;
+		stack[top] = 0;
+		bounds[top++] = 0;
+		while(top > 0)
+		{
+			int node = stack[--top];
+			float bound = bounds[top];
+			if(invalid[node] || (candidateCount == k && bound*bound >= distances[k-1]))
+				continue;
+
+			int c1 = child1[node];
+			if(c1 != NULL)
+			{
+				int c2 = child2[node];
+				if(invalid[c1] && invalid[c2])
+				{
+					invalid[node] = true;
+					continue;
+				}
+				top = push(c1, pointBound(c1, px, py, pz), c2, pointBound(c2, px, py, pz), top);
+				continue;
+			}
+
+			int end = start[node] + count[node];
+			for(int i=start[node]; i<end; i++)
+			{
+				int item = order[i];
+				int c = 4*item;
+				float vx = centers[c]-px, vy = centers[c+1]-py, vz = centers[c+2]-pz;
+				float distance2 = vx*vx + vy*vy + vz*vz;
+				if(candidateCount == k && distance2 >= distances[k-1])
+					continue;
+
+				//insert sorted, the farthest one drops out of a full list
+				int j = candidateCount < k ? candidateCount++ : k-1;
+				while(j > 0 && distances[j-1] > distance2)
+				{
+					candidates[j] = candidates[j-1];
+					distances[j] = distances[j-1];
+					j--;
+				}
+				candidates[j] = item;
+				distances[j] = distance2;
+			}
+		}
+		return candidateCount;
+	}
+
+	/**
+	 * Finds the most exposed remaining part in a direction: the part whose
+	 * center reaches farthest from a center along the direction, the part
+	 * facing an object in this direction.
+	 *
+	 * @param center the center (of the planet)
+	 * @param direction the direction
+	 * @return the item, NULL if no part remains
+	 */
+	public int mostExposed(Vector3 center, Vector3 direction)
+	{
+		float[] o = center.v, d = direction.v;
+		float ox = o[0], oy = o[1], oz = o[2];
+		float length = (float)Math.sqrt(d[0]*d[0] + d[1]*d[1] + d[2]*d[2]);
+		float dx = 0, dy = 0, dz = 0;
+		if(length != 0)
+		{
+			dx = d[0]/length;
+			dy = d[1]/length;
+			dz = d[2]/length;
+		}
+		float[] spheres = this.spheres, centers = this.partSpheres;
+		int[] stack = this.stack;
+		float[] bounds = stackBounds;
+		int best = NULL;
+		float bestExposure = -Float.MAX_VALUE;
+
+		//the bounds are negated, so the smaller bound is visited first
+		int top = 0;
+		stack[top] = 0;
+		bounds[top++] = -Float.MAX_VALUE;
+		while(top > 0)
+		{
+			int node = stack[--top];
+			float bound = bounds[top];
+			if(invalid[node] || -bound <= bestExposure)
+				continue;
+
+			int c1 = child1[node];
+			if(c1 != NULL)
+			{
+				int c2 = child2[node];
+				if(invalid[c1] && invalid[c2])
+				{
+					invalid[node] = true;
+					continue;
+				}
+				int s1 = 4*c1, s2 = 4*c2;
+				float bound1 = (spheres[s1]-ox)*dx + (spheres[s1+1]-oy)*dy + (spheres[s1+2]-oz)*dz + spheres[s1+3];
+				float bound2 = (spheres[s2]-ox)*dx + (spheres[s2+1]-oy)*dy + (spheres[s2+2]-oz)*dz + spheres[s2+3];
+				top = push(c1, -bound1, c2, -bound2, top);
+				continue;
+			}
+
+			int end = start[node] + count[node];
+			for(int k=start[node]; k<end; k++)
+			{
+				int item = order[k];
+				int c = 4*item;
+				float exposure = (centers[c]-ox)*dx + (centers[c+1]-oy)*dy + (centers[c+2]-oz)*dz;
+				if(exposure > bestExposure)
+				{
+					bestExposure = exposure;
+					best = item;
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Pushes two children onto the traversal stack, the one with the smaller
+	 * bound last, so it is visited first.
+	 *
+	 * @param c1 the first child
+	 * @param bound1 the bound of the first child
+	 * @param c2 the second child
+	 * @param bound2 the bound of the second child
+	 * @param top the top of the stack
+	 * @return the new top of the stack
+	 */
+	private int push(int c1, float bound1, int c2, float bound2, int top)
+	{
+		if(bound1 <= bound2)
+		{
+			stack[top] = c2;
+			stackBounds[top++] = bound2;
+			stack[top] = c1;
+			stackBounds[top++] = bound1;
+		}
+		else
+		{
+			stack[top] = c1;
+			stackBounds[top++] = bound1;
+			stack[top] = c2;
+			stackBounds[top++] = bound2;
+		}
+		return top;
+	}
+
+	/**
+	 * Gets a lower bound of the distances of the part centers in a node to
+	 * a ray.
+	 *
+	 * @param node the node
+	 * @param ox the x coordinate of the origin
+	 * @param oy the y coordinate of the origin
+	 * @param oz the z coordinate of the origin
+	 * @param dx the x coordinate of the normalized direction
+	 * @param dy the y coordinate of the normalized direction
+	 * @param dz the z coordinate of the normalized direction
+	 * @return the bound, 0 if the ray passes through the node sphere
+	 */
+	private float rayBound(int node, float ox, float oy, float oz, float dx, float dy, float dz)
+	{
+		int s = 4*node;
+		float vx = spheres[s]-ox, vy = spheres[s+1]-oy, vz = spheres[s+2]-oz;
+		float t = Math.max(0, vx*dx + vy*dy + vz*dz);
+		vx -= t*dx;
+		vy -= t*dy;
+		vz -= t*dz;
+		return Math.max(0, (float)Math.sqrt(vx*vx + vy*vy + vz*vz) - spheres[s+3]);
+	}
+
+	/**
+	 * Gets a lower bound of the distances of the part centers in a node to
+	 * a point.
+	 *
+	 * @param node the node
+	 * @param px the x coordinate of the point
+	 * @param py the y coordinate of the point
+	 * @param pz the z coordinate of the point
+	 * @return the bound, 0 if the point is inside the node sphere
+	 */
+	private float pointBound(int node, float px, float py, float pz)
+	{
+		int s = 4*node;
+		float vx = spheres[s]-px, vy = spheres[s+1]-py, vz = spheres[s+2]-pz;
+		return Math.max(0, (float)Math.sqrt(vx*vx + vy*vy + vz*vz) - spheres[s+3]);
+	}
+
+	/**
+	 * Sets the sphere of a node to a sphere enclosing the parts in
+	 * order[from..to): the center of their bounding box and the largest
+	 * distance to a part's surface.
+	 *
+	 * @param node the node
+	 * @param from the first position in order
+	 * @param to the position after the last one
+	 */
+	private void setSphere(int node, int from, int to)
+	{
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+		for(int k=from; k<to; k++)
+		{
+			Sphere sphere = parts.get(order[k]).getBoundingSphereWorld();
+			float[] c = sphere.center.v;
+			float r = sphere.radius;
+			minX = Math.min(minX, c[0]-r);
+			minY = Math.min(minY, c[1]-r);
+			minZ = Math.min(minZ, c[2]-r);
+			maxX = Math.max(maxX, c[0]+r);
+			maxY = Math.max(maxY, c[1]+r);
+			maxZ = Math.max(maxZ, c[2]+r);
+		}
+		float x = (minX+maxX)/2, y = (minY+maxY)/2, z = (minZ+maxZ)/2;
+
+		float radius = 0;
+		for(int k=from; k<to; k++)
+		{
+			Sphere sphere = parts.get(order[k]).getBoundingSphereWorld();
+			float[] c = sphere.center.v;
+			float dx = c[0]-x, dy = c[1]-y, dz = c[2]-z;
+			radius = Math.max(radius, (float)Math.sqrt(dx*dx + dy*dy + dz*dz) + sphere.radius);
+		}
+
+		int s = 4*node;
+		spheres[s  ] = x;
+		spheres[s+1] = y;
+		spheres[s+2] = z;
+		spheres[s+3] = radius * 1.0001f;
+	}
+
+	/**
+	 * Finds the axis along which the centers of the parts in order[from..to)
+	 * are spread the most.
+	 *
+	 * @param from the first position in order
+	 * @param to the position after the last one
+	 * @return the axis (0, 1 or 2)
+	 */
+	private int longestAxis(int from, int to)
+	{
+		float[] min = { Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE };
+		float[] max = { -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE };
+		for(int k=from; k<to; k++)
+		{
+			float[] c = parts.get(order[k]).getBoundingSphereWorld().center.v;
+			for(int a=0; a<3; a++)
+			{
+				min[a] = Math.min(min[a], c[a]);
+				max[a] = Math.max(max[a], c[a]);
+			}
+		}
+		int axis = 0;
+		for(int a=1; a<3; a++)
+		{
+			if(max[a]-min[a] > max[axis]-min[axis])
+				axis = a;
+		}
+		return axis;
+	}
+
+	/**
+	 * Maps a float to an int with the same order (as signed ints).
+	 *
+	 * @param f the float
+	 * @return the sortable int
+	 */
+	private static int sortable(float f)
+	{
+		int bits = Float.floatToIntBits(f);
+		return bits ^ ((bits >> 31) & 0x7fffffff);
+	}
+}
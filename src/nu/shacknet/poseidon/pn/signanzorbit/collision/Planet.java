@@ -0,0 +1,145 @@
+package nu.shacknet.poseidon.pn.signanzorbit.collision;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import nu.shacknet.poseidon.pn.signanzorbit.scene.Model;
+import nu.shacknet.poseidon.pn.signanzorbit.scene.SceneEntity;
+
+/**
+ * A destructible planet: a fixed scene entity whose models (the parts) are
+ * knocked out one by one. The remaining parts are indexed by their own part
+ * tree, so a satellite only queries the parts of the planets it overlaps.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class Planet
+{
+	/** The scene entity of the planet. */
+	private final SceneEntity entity;
+
+	/** The index of the scene entity. */
+	private final int index;
+
+	/** The number of the planet (its position in the list of planets). */
+	private final int number;
+
+	/** The remaining parts, indexed by a sphere tree - the items are
+	 * numbered by the distance to the planet center. */
+	private final PartTree<Model> remainingParts;
+
+	/** The number of parts the planet started with. */
+	private final int partCount;
+
+	/**
+	 * Instantiates a new planet with all of its parts, the planet must not
+	 * move afterwards.
+	 *
+	 * @param entity the scene entity
+	 * @param index the index of the scene entity
+	 * @param number the number of the planet
+	 */
+	public Planet(SceneEntity entity, int index, int number)
+	{
+		this.entity = entity;
+		this.index = index;
+		this.number = number;
+
+		ArrayList<Model> parts = new ArrayList<Model>(entity.models);
+		sortByDistance(parts, entity.getBoundingSphereWorld().center.v);
+		remainingParts = new PartTree<Model>();
+		remainingParts.build(parts);
+		partCount = parts.size();
+	}
+
+	/**
+	 * Gets the scene entity.
+	 *
+	 * @return the scene entity
+	 */
+	public SceneEntity getEntity()
+	{
+		return entity;
+	}
+
+	/**
+	 * Gets the index of the scene entity.
+	 *
+	 * @return the index
+	 */
+	public int getIndex()
+	{
+		return index;
+	}
+
+	/**
+	 * Gets the number of the planet.
+	 *
+	 * @return the number
+	 */
+	public int getNumber()
+	{
+		return number;
+	}
+
+	/**
+	 * Gets the remaining parts.
+	 *
+	 * @return the part tree
+	 */
+	public PartTree<Model> getRemainingParts()
+	{
+		return remainingParts;
+	}
+
+	/**
+	 * Gets the number of parts the planet started with.
+	 *
+	 * @return the number of parts
+	 */
+	public int getPartCount()
+	{
+		return partCount;
+	}
+
+	/**
+	 * Gets the squared distance of a point to the planet center.
+	 *
+	 * @param p the point (xyz)
+	 * @return the squared distance
+	 */
+	public float distance2(float[] p)
+	{
+		float[] c = entity.getBoundingSphereWorld().center.v;
+		float x = p[0]-c[0], y = p[1]-c[1], z = p[2]-c[2];
+		return x*x + y*y + z*z;
+	}
+
+	/**
+	 * Sorts parts by the distance of their centers to the planet center,
+	 * the distances are computed once.
+	 *
+	 * @param parts the parts
+	 * @param center the planet center
+	 */
+	private static void sortByDistance(ArrayList<Model> parts, float[] center)
+	{
+		int size = parts.size();
+		long[] keys = new long[size];
+		for(int i=0; i<size; i++)
+		{
+			float[] c = parts.get(i).getBoundingSphereWorld().center.v;
+			float x = c[0]-center[0], y = c[1]-center[1], z = c[2]-center[2];
+			//the bits of positive floats have the same order as the floats
+			keys[i] = ((long)Float.floatToIntBits(x*x + y*y + z*z) << 32) | i;
+		}
+		Arrays.sort(keys);
+
+		ArrayList<Model> sorted = new ArrayList<Model>(size);
+		for(int i=0; i<size; i++)
+			sorted.add(parts.get((int)keys[i]));
+		parts.clear();
+		parts.addAll(sorted);
+	}
+}
@@ -0,0 +1,260 @@
+package nu.shacknet.poseidon.pn.signanzorbit.collision;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Sphere;
+import nu.shacknet.poseidon.pn.signanzorbit.orbit.Movable;
+
+/**
+ * A uniform spatial hash broadphase. The bounding box of every world
+ * bounding sphere is inserted into the cells of a uniform grid it
+ * overlaps, keyed by the hash of the cell coordinates. The (hash, entity)
+ * keys are sorted each frame, so entities sharing a hash end up next to
+ * each other and only those are tested against each other. Rebuilding
+ * costs O(n log n) and no allocations once the arrays have grown, the
+ * candidate pairs are the pairs with overlapping bounding boxes.
+ *
+ * Entities covering more than MAX_CELLS cells (the planet) are not hashed
+ * but tested against all other entities.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class SpatialHashBroadphase implements Broadphase
+{
+	/** The maximal number of cells an entity is inserted into. */
+	private static final int MAX_CELLS = 27;
+
+	/** The (hash, entity) keys: cell hash in the upper, entity index in the lower 32 bits. */
+	private long[] keys;
+
+	/** The number of keys. */
+	private int keyCount;
+
+	/** The world bounding boxes (min xyz, max xyz) of the active entities. */
+	private float[] bounds;
+
+	/** The entities that are too large for the grid. */
+	private int[] large;
+
+	/** The number of large entities. */
+	private int largeCount;
+
+	/** The cell size used by the last findPairs(). */
+	private float cellSize;
+
+	/**
+	 * Instantiates a new spatial hash broadphase.
+	 */
+	public SpatialHashBroadphase()
+	{
+		keys = new long[256];
+		bounds = new float[6*64];
+		large = new int[8];
+	}
+
+	/**
+	 * Gets the cell size used by the last findPairs(): Config.SPATIAL_HASH_CELL_SIZE
+	 * or, if that is not positive, twice the mean bounding sphere diameter.
+	 *
+	 * @return the cell size
+	 */
+	public float getCellSize()
+	{
+		return cellSize;
+	}
+
+	/* (non-Javadoc)
+	 * @see nu.shacknet.poseidon.pn.signanzorbit.collision.Broadphase#findPairs(java.util.ArrayList, boolean[], nu.shacknet.poseidon.pn.signanzorbit.collision.PairList)
+	 */
+	@Override
+	public void findPairs(ArrayList<? extends Movable> entities, boolean[] active, PairList pairs)
+	{
+		pairs.clear();
+		int size = entities.size();
+		if(bounds.length < 6*size)
+			bounds = new float[6*Math.max(size, 2*bounds.length/6)];
+		float[] bounds = this.bounds;
+
+		//world bounding boxes
+		int activeCount = 0;
+		float radiusSum = 0;
+		for(int i=0; i<size; i++)
+		{
+			if(!active[i])
+				continue;
+			Sphere sphere = entities.get(i).getBoundingSphereWorld();
+			float[] c = sphere.center.v;
+			float r = sphere.radius;
+			int b = 6*i;
+			bounds[b  ] = c[0] - r;
+			bounds[b+1] = c[1] - r;
+			bounds[b+2] = c[2] - r;
+			bounds[b+3] = c[0] + r;
+			bounds[b+4] = c[1] + r;
+			bounds[b+5] = c[2] + r;
+			radiusSum += r;
+			activeCount++;
+		}
+		if(activeCount < 2)
+			return;
+
+		cellSize = Config.SPATIAL_HASH_CELL_SIZE > 0 ? Config.SPATIAL_HASH_CELL_SIZE : 4*radiusSum/activeCount;
+		if(!(cellSize > 0))
+			cellSize = 1;
+		float invCellSize = 1 / cellSize;
+
+		//insert into the cells
+		keyCount = 0;
+		largeCount = 0;
+		for(int i=0; i<size; i++)
+		{
+			if(!active[i])
+				continue;
+			int b = 6*i;
+			int x0 = floor(bounds[b  ] * invCellSize), x1 = floor(bounds[b+3] * invCellSize);
+			int y0 = floor(bounds[b+1] * invCellSize), y1 = floor(bounds[b+4] * invCellSize);
+			int z0 = floor(bounds[b+2] * invCellSize), z1 = floor(bounds[b+5] * invCellSize);
+			long cells = (long)(x1-x0+1) * (y1-y0+1) * (z1-z0+1);
+			if(cells > MAX_CELLS)
+			{
+				if(largeCount == large.length)
+					large = grow(large, 2*largeCount);
+				large[largeCount++] = i;
+				continue;
+			}
+			if(keyCount + cells > keys.length)
+				keys = grow(keys, (int)Math.max(2*keys.length, keyCount + cells));
+			for(int x=x0; x<=x1; x++)
+				for(int y=y0; y<=y1; y++)
+					for(int z=z0; z<=z1; z++)
+						keys[keyCount++] = ((long)hash(x, y, z) << 32) | i;
+		}
+
+		//entities with the same hash are adjacent after sorting
+		long[] keys = this.keys;
+		Arrays.sort(keys, 0, keyCount);
+		int runStart = 0;
+		for(int k=1; k<=keyCount; k++)
+		{
+			if(k < keyCount && (keys[k] >> 32) == (keys[runStart] >> 32))
+				continue;
+			for(int a=runStart; a<k; a++)
+			{
+				int ia = (int)keys[a];
+				for(int c=a+1; c<k; c++)
+				{
+					int ib = (int)keys[c];
+					if(ia != ib && overlap(bounds, ia, ib))
+						pairs.add(Math.min(ia, ib), Math.max(ia, ib));
+				}
+			}
+			runStart = k;
+		}
+
+		//large entities against everything
+		for(int l=0; l<largeCount; l++)
+		{
+			int il = large[l];
+			for(int i=0; i<size; i++)
+			{
+				if(!active[i] || i == il || (i < il && isLarge(i, l)))
+					continue;
+				if(overlap(bounds, il, i))
+					pairs.add(Math.min(il, i), Math.max(il, i));
+			}
+		}
+
+		//an entity pair shares up to 8 cells
+		pairs.sortUnique();
+	}
+
+	/**
+	 * Whether an entity is one of the first large entities.
+	 *
+	 * @param i the entity
+	 * @param count the number of large entities to search
+	 * @return true if i is in large[0..count)
+	 */
+	private boolean isLarge(int i, int count)
+	{
+		for(int l=0; l<count; l++)
+		{
+			if(large[l] == i)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Whether the bounding boxes of two entities overlap.
+	 *
+	 * @param bounds the bounding boxes
+	 * @param a the first entity
+	 * @param b the second entity
+	 * @return true if the boxes overlap
+	 */
+	private static boolean overlap(float[] bounds, int a, int b)
+	{
+		a *= 6;
+		b *= 6;
+		return	bounds[a  ] <= bounds[b+3] && bounds[b  ] <= bounds[a+3] &&
+				bounds[a+1] <= bounds[b+4] && bounds[b+1] <= bounds[a+4] &&
+				bounds[a+2] <= bounds[b+5] && bounds[b+2] <= bounds[a+5];
+	}
+
+	/**
+	 * Hashes cell coordinates.
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @return the hash
+	 */
+	private static int hash(int x, int y, int z)
+	{
+		return x*73856093 ^ y*19349663 ^ z*83492791;
+	}
+
+	/**
+	 * Rounds down to an int (faster than Math.floor()).
+	 *
+	 * @param f the value
+	 * @return the largest int <= f
+	 */
+	private static int floor(float f)
+	{
+		int i = (int)f;
+		return f < i ? i-1 : i;
+	}
+
+	/**
+	 * Grows an array.
+	 *
+	 * @param arr the array
+	 * @param length the new length
+	 * @return a new array containing the values of arr
+	 */
+	private static int[] grow(int[] arr, int length)
+	{
+		int[] result = new int[length];
+		System.arraycopy(arr, 0, result, 0, arr.length);
+		return result;
+	}
+
+	/**
+	 * Grows an array.
+	 *
+	 * @param arr the array
+	 * @param length the new length
+	 * @return a new array containing the values of arr
+	 */
+	private static long[] grow(long[] arr, int length)
+	{
+		long[] result = new long[length];
+		System.arraycopy(arr, 0, result, 0, arr.length);
+		return result;
+	}
+}
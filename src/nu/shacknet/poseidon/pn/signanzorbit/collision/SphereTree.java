@@ -0,0 +1,739 @@
+package nu.shacknet.poseidon.pn.signanzorbit.collision;
+
+/**
+ * A dynamic bounding volume hierarchy of spheres. Every item (an entity
+ * index) is a leaf whose sphere is enlarged by a margin, so items moving a
+ * little stay inside their leaf and the tree is left as it is. An item
+ * leaving its leaf sphere is removed and inserted again, the spheres of
+ * its ancestors are refitted on the way. Items are inserted next to the
+ * node which enlarges the tree the least, and the tree is kept balanced
+ * by rotations, so its height is O(log n).
+ *
+ * The nodes are kept in arrays and reused through a free list, queries
+ * don't allocate anything once the arrays have grown.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class SphereTree
+{
+	/** No node or no item. */
+	public static final int NULL = -1;
+
+	/** The merged spheres are enlarged by this fraction to absorb rounding errors. */
+	private static final float SLACK = 1e-5f;
+
+	/** The node spheres: center xyz and radius. */
+	private float[] spheres;
+
+	/** The parent node, the next free node for free nodes. */
+	private int[] parent;
+
+	/** The first child node, NULL for leaves. */
+	private int[] child1;
+
+	/** The second child node, NULL for leaves. */
+	private int[] child2;
+
+	/** The height of the node, 0 for leaves and -1 for free nodes. */
+	private int[] height;
+
+	/** The item of a leaf, NULL for inner nodes. */
+	private int[] items;
+
+	/** The first free node. */
+	private int freeNode;
+
+	/** The root node. */
+	private int root;
+
+	/** The leaf of an item, NULL if the item is not in the tree. */
+	private int[] leaves;
+
+	/** The exact spheres of the items: center xyz and radius. */
+	private float[] itemSpheres;
+
+	/** The number of items. */
+	private int count;
+
+	/** The margin the leaf spheres are enlarged by. */
+	private final float margin;
+
+	/** The traversal stack. */
+	private int[] stack;
+
+	/** The inherited costs of the nodes on the stack during insertion. */
+	private float[] costStack;
+
+	/**
+	 * Instantiates a new sphere tree.
+	 *
+	 * @param margin the margin the leaf spheres are enlarged by, the
+	 * distance an item may move before it is inserted again
+	 */
+	public SphereTree(float margin)
+	{
+		this.margin = margin;
+		spheres = new float[0];
+		parent = new int[0];
+		child1 = new int[0];
+		child2 = new int[0];
+		height = new int[0];
+		items = new int[0];
+		leaves = new int[0];
+		itemSpheres = new float[0];
+		stack = new int[32];
+		costStack = new float[32];
+		freeNode = NULL;
+		root = NULL;
+		growNodes(32);
+	}
+
+	/**
+	 * Removes all items.
+	 */
+	public void clear()
+	{
+		for(int i=0; i<leaves.length; i++)
+			leaves[i] = NULL;
+		int capacity = height.length;
+		for(int n=0; n<capacity; n++)
+		{
+			parent[n] = n+1 < capacity ? n+1 : NULL;
+			height[n] = -1;
+		}
+		freeNode = 0;
+		root = NULL;
+		count = 0;
+	}
+
+	/**
+	 * Gets the number of items.
+	 *
+	 * @return the number of items
+	 */
+	public int size()
+	{
+		return count;
+	}
+
+	/**
+	 * Gets the height of the tree.
+	 *
+	 * @return the height, 0 for a single leaf and -1 for an empty tree
+	 */
+	public int getHeight()
+	{
+		return root == NULL ? -1 : height[root];
+	}
+
+	/**
+	 * Whether an item is in the tree.
+	 *
+	 * @param item the item
+	 * @return true if the item is in the tree
+	 */
+	public boolean contains(int item)
+	{
+		return item < leaves.length && leaves[item] != NULL;
+	}
+
+	/**
+	 * Inserts an item, an item which is already in the tree is moved.
+	 *
+	 * @param item the item (>= 0)
+	 * @param x the x coordinate of the center
+	 * @param y the y coordinate of the center
+	 * @param z the z coordinate of the center
+	 * @param radius the radius
+	 */
+	public void insert(int item, float x, float y, float z, float radius)
+	{
+		if(contains(item))
+		{
+			update(item, x, y, z, radius);
+			return;
+		}
+		if(item >= leaves.length)
+			growItems(Math.max(item+1, 2*leaves.length));
+
+		setItemSphere(item, x, y, z, radius);
+		int leaf = allocateNode();
+		setLeafSphere(leaf, x, y, z, radius);
+		items[leaf] = item;
+		height[leaf] = 0;
+		leaves[item] = leaf;
+		insertLeaf(leaf);
+		count++;
+	}
+
+	/**
+	 * Removes an item, if it is in the tree.
+	 *
+	 * @param item the item
+	 */
+	public void remove(int item)
+	{
+		if(!contains(item))
+			return;
+		int leaf = leaves[item];
+		removeLeaf(leaf);
+		freeNode(leaf);
+		leaves[item] = NULL;
+		count--;
+	}
+
+	/**
+	 * Updates the sphere of an item. The tree is only changed if the sphere
+	 * has left the enlarged leaf sphere.
+	 *
+	 * @param item the item, has to be in the tree
+	 * @param x the x coordinate of the center
+	 * @param y the y coordinate of the center
+	 * @param z the z coordinate of the center
+	 * @param radius the radius
+	 * @return true if the item has been inserted again
+	 */
+	public boolean update(int item, float x, float y, float z, float radius)
+	{
+		setItemSphere(item, x, y, z, radius);
+		int leaf = leaves[item];
+		int s = 4*leaf;
+		float dx = x - spheres[s], dy = y - spheres[s+1], dz = z - spheres[s+2];
+		float room = spheres[s+3] - radius;
+		if(room >= 0 && dx*dx + dy*dy + dz*dz <= room*room)
+			return false;
+
+		removeLeaf(leaf);
+		setLeafSphere(leaf, x, y, z, radius);
+		insertLeaf(leaf);
+		return true;
+	}
+
+	/**
+	 * Finds the item nearest to the origin of a line, among the items whose
+	 * sphere, enlarged by increment, is hit by the line. Subtrees which
+	 * can't contain a hit or can't contain a nearer item are skipped.
+	 *
+	 * @param ox the x coordinate of the origin
+	 * @param oy the y coordinate of the origin
+	 * @param oz the z coordinate of the origin
+	 * @param dx the x coordinate of the direction (normalized)
+	 * @param dy the y coordinate of the direction (normalized)
+	 * @param dz the z coordinate of the direction (normalized)
+	 * @param increment the value the item spheres are enlarged by
+	 * @return the item whose center is nearest to the origin, NULL if no item is hit
+	 */
+	public int nearestOnLine(float ox, float oy, float oz, float dx, float dy, float dz, float increment)
+	{
+		if(root == NULL)
+			return NULL;
+		if(stack.length < height[root] + 2)
+			stack = new int[2*(height[root] + 2)];
+
+		float[] spheres = this.spheres;
+		int[] stack = this.stack;
+		int nearest = NULL;
+		float nearestDistance = Float.MAX_VALUE;
+		float nearestDistance2 = Float.MAX_VALUE;
+
+		int top = 0;
+		stack[top++] = root;
+		while(top > 0)
+		{
+			int node = stack[--top];
+			int item = items[node];
+			float[] source = spheres;
+			int s = 4*node;
+			if(item != NULL)
+			{
+				source = itemSpheres;
+				s = 4*item;
+			}
+			float px = source[s] - ox, py = source[s+1] - oy, pz = source[s+2] - oz;
+			float reach = source[s+3] + increment;
+			float along = px*dx + py*dy + pz*dz;
+			float distance2 = px*px + py*py + pz*pz;
+
+			//distance to the line
+			if(distance2 - along*along >= reach*reach)
+				continue;
+
+			if(item != NULL)
+			{
+				if(distance2 < nearestDistance2)
+				{
+					nearest = item;
+					nearestDistance2 = distance2;
+					nearestDistance = (float)Math.sqrt(distance2);
+				}
+				continue;
+			}
+
+			//the items inside are at least distance - radius away
+			if(nearest != NULL)
+			{
+				float bound = nearestDistance + source[s+3];
+				if(distance2 >= bound*bound)
+					continue;
+			}
+
+			//visit the nearer child first
+			int c1 = child1[node], c2 = child2[node];
+			if(distance2To(c1, ox, oy, oz) < distance2To(c2, ox, oy, oz))
+			{
+				stack[top++] = c2;
+				stack[top++] = c1;
+			}
+			else
+			{
+				stack[top++] = c1;
+				stack[top++] = c2;
+			}
+		}
+		return nearest;
+	}
+
+	/**
+	 * The squared distance between the center of a node and a point.
+	 *
+	 * @param node the node
+	 * @param x the x coordinate of the point
+	 * @param y the y coordinate of the point
+	 * @param z the z coordinate of the point
+	 * @return the squared distance
+	 */
+	private float distance2To(int node, float x, float y, float z)
+	{
+		int s = 4*node;
+		float dx = spheres[s] - x, dy = spheres[s+1] - y, dz = spheres[s+2] - z;
+		return dx*dx + dy*dy + dz*dz;
+	}
+
+	/**
+	 * Inserts a leaf next to the node which enlarges the tree the least.
+	 *
+	 * @param leaf the leaf
+	 */
+	private void insertLeaf(int leaf)
+	{
+		if(root == NULL)
+		{
+			root = leaf;
+			parent[leaf] = NULL;
+			return;
+		}
+
+		//find the sibling
+		int sibling = findSibling(leaf);
+
+		//the new parent of leaf and sibling
+		int oldParent = parent[sibling];
+		int newParent = allocateNode();
+		parent[newParent] = oldParent;
+		items[newParent] = NULL;
+		height[newParent] = height[sibling] + 1;
+		merge(sibling, leaf, newParent);
+		if(oldParent == NULL)
+			root = newParent;
+		else if(child1[oldParent] == sibling)
+			child1[oldParent] = newParent;
+		else
+			child2[oldParent] = newParent;
+		child1[newParent] = sibling;
+		child2[newParent] = leaf;
+		parent[sibling] = newParent;
+		parent[leaf] = newParent;
+
+		refit(newParent);
+	}
+
+	/**
+	 * Finds the node whose pairing with a leaf increases the summed squared
+	 * radii of the tree the least (branch and bound). The cost of a sibling
+	 * is the squared radius of the new parent plus the growth of all its
+	 * ancestors, subtrees which can't beat the best cost are skipped.
+	 *
+	 * @param leaf the leaf
+	 * @return the sibling
+	 */
+	private int findSibling(int leaf)
+	{
+		float leafRadius = spheres[4*leaf+3];
+		float leafArea = leafRadius*leafRadius;
+		if(stack.length < height[root] + 2)
+			stack = new int[2*(height[root] + 2)];
+		if(costStack.length < stack.length)
+			costStack = new float[stack.length];
+		int[] stack = this.stack;
+		float[] costStack = this.costStack;
+
+		int best = root;
+		float bestCost = Float.MAX_VALUE;
+		int top = 0;
+		stack[top] = root;
+		costStack[top++] = 0;
+		while(top > 0)
+		{
+			top--;
+			int node = stack[top];
+			float inherited = costStack[top];
+			float radius = spheres[4*node+3];
+			float combined = mergedRadius(node, leaf);
+			float cost = combined*combined + inherited;
+			if(cost < bestCost)
+			{
+				best = node;
+				bestCost = cost;
+			}
+			if(child1[node] == NULL)
+				continue;
+
+			//the children inherit the growth of this node
+			inherited += combined*combined - radius*radius;
+			if(leafArea + inherited >= bestCost)
+				continue;
+			stack[top] = child1[node];
+			costStack[top++] = inherited;
+			stack[top] = child2[node];
+			costStack[top++] = inherited;
+		}
+		return best;
+	}
+
+	/**
+	 * Removes a leaf, its parent is replaced by the sibling and freed.
+	 *
+	 * @param leaf the leaf
+	 */
+	private void removeLeaf(int leaf)
+	{
+		if(leaf == root)
+		{
+			root = NULL;
+			return;
+		}
+
+		int oldParent = parent[leaf];
+		int grandParent = parent[oldParent];
+		int sibling = child1[oldParent] == leaf ? child2[oldParent] : child1[oldParent];
+		freeNode(oldParent);
+		parent[sibling] = grandParent;
+		if(grandParent == NULL)
+		{
+			root = sibling;
+			return;
+		}
+		if(child1[grandParent] == oldParent)
+			child1[grandParent] = sibling;
+		else
+			child2[grandParent] = sibling;
+		refit(grandParent);
+	}
+
+	/**
+	 * Balances and refits a node and its ancestors.
+	 *
+	 * @param node the node
+	 */
+	private void refit(int node)
+	{
+		while(node != NULL)
+		{
+			node = balance(node);
+			int c1 = child1[node], c2 = child2[node];
+			height[node] = 1 + Math.max(height[c1], height[c2]);
+			merge(c1, c2, node);
+			node = parent[node];
+		}
+	}
+
+	/**
+	 * Rotates the higher child of a node up, if the heights of the children
+	 * differ by more than one.
+	 *
+	 * @param a the node
+	 * @return the node now at the position of a
+	 */
+	private int balance(int a)
+	{
+		if(child1[a] == NULL || height[a] < 2)
+			return a;
+
+		int b = child1[a], c = child2[a];
+		int balance = height[c] - height[b];
+		if(balance > 1)
+		{
+			//rotate c up
+			int f = child1[c], g = child2[c];
+			child1[c] = a;
+			replaceChild(parent[a], a, c);
+			parent[a] = c;
+			if(height[f] > height[g])
+			{
+				child2[c] = f;
+				child2[a] = g;
+				parent[g] = a;
+				setInner(a, b, g);
+				setInner(c, a, f);
+			}
+			else
+			{
+				child2[c] = g;
+				child2[a] = f;
+				parent[f] = a;
+				setInner(a, b, f);
+				setInner(c, a, g);
+			}
+			return c;
+		}
+		if(balance < -1)
+		{
+			//rotate b up
+			int d = child1[b], e = child2[b];
+			child1[b] = a;
+			replaceChild(parent[a], a, b);
+			parent[a] = b;
+			if(height[d] > height[e])
+			{
+				child2[b] = d;
+				child1[a] = e;
+				parent[e] = a;
+				setInner(a, c, e);
+				setInner(b, a, d);
+			}
+			else
+			{
+				child2[b] = e;
+				child1[a] = d;
+				parent[d] = a;
+				setInner(a, c, d);
+				setInner(b, a, e);
+			}
+			return b;
+		}
+		return a;
+	}
+
+	/**
+	 * Sets the parent of newChild to the parent of oldChild and replaces
+	 * oldChild with newChild there (or makes newChild the root).
+	 *
+	 * @param node the parent of oldChild
+	 * @param oldChild the old child
+	 * @param newChild the new child
+	 */
+	private void replaceChild(int node, int oldChild, int newChild)
+	{
+		parent[newChild] = node;
+		if(node == NULL)
+			root = newChild;
+		else if(child1[node] == oldChild)
+			child1[node] = newChild;
+		else
+			child2[node] = newChild;
+	}
+
+	/**
+	 * Updates the height and the sphere of an inner node from the given children.
+	 *
+	 * @param node the node
+	 * @param c1 the first child
+	 * @param c2 the second child
+	 */
+	private void setInner(int node, int c1, int c2)
+	{
+		height[node] = 1 + Math.max(height[c1], height[c2]);
+		merge(c1, c2, node);
+	}
+
+	/**
+	 * The radius of the sphere enclosing the spheres of two nodes.
+	 *
+	 * @param a the first node
+	 * @param b the second node
+	 * @return the radius
+	 */
+	private float mergedRadius(int a, int b)
+	{
+		float[] s = spheres;
+		a *= 4;
+		b *= 4;
+		float dx = s[b]-s[a], dy = s[b+1]-s[a+1], dz = s[b+2]-s[a+2];
+		float d = (float)Math.sqrt(dx*dx + dy*dy + dz*dz);
+		float ra = s[a+3], rb = s[b+3];
+		if(d + rb <= ra)
+			return ra;
+		if(d + ra <= rb)
+			return rb;
+		return (d + ra + rb) / 2;
+	}
+
+	/**
+	 * Sets the sphere of a node to the sphere enclosing the spheres of two nodes.
+	 *
+	 * @param a the first node
+	 * @param b the second node
+	 * @param target the node receiving the sphere
+	 */
+	private void merge(int a, int b, int target)
+	{
+		float[] s = spheres;
+		a *= 4;
+		b *= 4;
+		target *= 4;
+		float ax = s[a], ay = s[a+1], az = s[a+2], ra = s[a+3];
+		float dx = s[b]-ax, dy = s[b+1]-ay, dz = s[b+2]-az, rb = s[b+3];
+		float d = (float)Math.sqrt(dx*dx + dy*dy + dz*dz);
+		if(d + rb <= ra)
+			setSphere(s, target, ax, ay, az, ra);
+		else if(d + ra <= rb)
+			setSphere(s, target, s[b], s[b+1], s[b+2], rb);
+		else
+		{
+			float r = (d + ra + rb) / 2;
+			float t = (r - ra) / d;
+			setSphere(s, target, ax + dx*t, ay + dy*t, az + dz*t, r + r*SLACK);
+		}
+	}
+
+	/**
+	 * Stores a sphere.
+	 *
+	 * @param s the sphere array
+	 * @param i the index of the center x coordinate
+	 * @param x the x coordinate of the center
+	 * @param y the y coordinate of the center
+	 * @param z the z coordinate of the center
+	 * @param r the radius
+	 */
+	private static void setSphere(float[] s, int i, float x, float y, float z, float r)
+	{
+		s[i  ] = x;
+		s[i+1] = y;
+		s[i+2] = z;
+		s[i+3] = r;
+	}
+
+	/**
+	 * Sets the enlarged sphere of a leaf.
+	 *
+	 * @param leaf the leaf
+	 * @param x the x coordinate of the center
+	 * @param y the y coordinate of the center
+	 * @param z the z coordinate of the center
+	 * @param radius the radius of the item
+	 */
+	private void setLeafSphere(int leaf, float x, float y, float z, float radius)
+	{
+		setSphere(spheres, 4*leaf, x, y, z, radius + margin);
+	}
+
+	/**
+	 * Sets the exact sphere of an item.
+	 *
+	 * @param item the item
+	 * @param x the x coordinate of the center
+	 * @param y the y coordinate of the center
+	 * @param z the z coordinate of the center
+	 * @param radius the radius
+	 */
+	private void setItemSphere(int item, float x, float y, float z, float radius)
+	{
+		setSphere(itemSpheres, 4*item, x, y, z, radius);
+	}
+
+	/**
+	 * Takes a node from the free list, the arrays grow if it is empty.
+	 *
+	 * @return the node
+	 */
+	private int allocateNode()
+	{
+		if(freeNode == NULL)
+			growNodes(2*height.length);
+		int node = freeNode;
+		freeNode = parent[node];
+		parent[node] = NULL;
+		child1[node] = NULL;
+		child2[node] = NULL;
+		height[node] = 0;
+		return node;
+	}
+
+	/**
+	 * Returns a node to the free list.
+	 *
+	 * @param node the node
+	 */
+	private void freeNode(int node)
+	{
+		parent[node] = freeNode;
+		height[node] = -1;
+		freeNode = node;
+	}
+
+	/**
+	 * Grows the node arrays, the new nodes are added to the free list.
+	 *
+	 * @param capacity the new number of nodes
+	 */
+	private void growNodes(int capacity)
+	{
+		int old = height.length;
+		spheres = grow(spheres, 4*capacity);
+		parent = grow(parent, capacity);
+		child1 = grow(child1, capacity);
+		child2 = grow(child2, capacity);
+		height = grow(height, capacity);
+		items = grow(items, capacity);
+		for(int n=capacity-1; n>=old; n--)
+		{
+			height[n] = -1;
+			parent[n] = freeNode;
+			freeNode = n;
+		}
+	}
+
+	/**
+	 * Grows the item arrays.
+	 *
+	 * @param capacity the new number of items
+	 */
+	private void growItems(int capacity)
+	{
+		int old = leaves.length;
+		leaves = grow(leaves, capacity);
+		for(int i=old; i<capacity; i++)
+			leaves[i] = NULL;
+		itemSpheres = grow(itemSpheres, 4*capacity);
+	}
+
+	/**
+	 * Grows an array.
+	 *
+	 * @param arr the array
+	 * @param length the new length
+	 * @return a new array containing the values of arr
+	 */
+	private static int[] grow(int[] arr, int length)
+	{
+		int[] result = new int[length];
+		System.arraycopy(arr, 0, result, 0, arr.length);
+		return result;
+	}
+
+	/**
+	 * Grows an array.
+	 *
+	 * @param arr the array
+	 * @param length the new length
+	 * @return a new array containing the values of arr
+	 */
+	private static float[] grow(float[] arr, int length)
+	{
+		float[] result = new float[length];
+		System.arraycopy(arr, 0, result, 0, arr.length);
+		return result;
+	}
+}
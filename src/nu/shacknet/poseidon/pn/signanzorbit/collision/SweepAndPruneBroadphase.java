@@ -0,0 +1,298 @@
+package nu.shacknet.poseidon.pn.signanzorbit.collision;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import nu.shacknet.poseidon.pn.signanzorbit.math.Sphere;
+import nu.shacknet.poseidon.pn.signanzorbit.orbit.Movable;
+
+/**
+ * An incremental sweep and prune broadphase. The x extents of the world
+ * bounding boxes are kept in a sorted list of interval endpoints, which
+ * is repaired with insertion sort every frame. Entities move only a
+ * little between frames, so the list stays nearly sorted and repairing
+ * it is close to O(n). A sweep over the list yields the pairs overlapping
+ * on x, which are then tested on y and z.
+ *
+ * Entities are added and removed incrementally when they become active
+ * or inactive (setDisabled(), new entities from Scene.unTie()). The pairs
+ * whose boxes started or stopped overlapping since the previous call are
+ * available as begin and end events.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class SweepAndPruneBroadphase implements Broadphase
+{
+	/** Entities added at once beyond this share of the list are sorted in, not inserted. */
+	private static final int RESORT_FRACTION = 8;
+
+	/** The endpoints: sortable x value in the upper, entity index * 2 (+1 for the max endpoint) in the lower 32 bits. */
+	private long[] endpoints;
+
+	/** The number of endpoints. */
+	private int endpointCount;
+
+	/** Whether an entity is in the endpoint list. */
+	private boolean[] member;
+
+	/** The world bounding boxes (min xyz, max xyz) of the members. */
+	private float[] bounds;
+
+	/** The entities whose interval is open during the sweep. */
+	private int[] open;
+
+	/** The position of an entity in open. */
+	private int[] openIndex;
+
+	/** The pairs of the previous call. */
+	private PairList previous;
+
+	/** The pairs which started overlapping in the last call. */
+	private final PairList begins;
+
+	/** The pairs which stopped overlapping in the last call. */
+	private final PairList ends;
+
+	/**
+	 * Instantiates a new sweep and prune broadphase.
+	 */
+	public SweepAndPruneBroadphase()
+	{
+		endpoints = new long[128];
+		member = new boolean[64];
+		bounds = new float[6*64];
+		open = new int[64];
+		openIndex = new int[64];
+		previous = new PairList();
+		begins = new PairList();
+		ends = new PairList();
+	}
+
+	/**
+	 * Gets the pairs whose bounding boxes started overlapping in the last
+	 * findPairs() (including pairs of newly added entities).
+	 *
+	 * @return the begin events, sorted by index
+	 */
+	public PairList getBegins()
+	{
+		return begins;
+	}
+
+	/**
+	 * Gets the pairs whose bounding boxes stopped overlapping in the last
+	 * findPairs() (including pairs of removed entities).
+	 *
+	 * @return the end events, sorted by index
+	 */
+	public PairList getEnds()
+	{
+		return ends;
+	}
+
+	/* (non-Javadoc)
+	 * @see nu.shacknet.poseidon.pn.signanzorbit.collision.Broadphase#findPairs(java.util.ArrayList, boolean[], nu.shacknet.poseidon.pn.signanzorbit.collision.PairList)
+	 */
+	@Override
+	public void findPairs(ArrayList<? extends Movable> entities, boolean[] active, PairList pairs)
+	{
+		int size = entities.size();
+		ensureCapacity(size);
+		float[] bounds = this.bounds;
+		boolean[] member = this.member;
+
+		//remove entities which are no longer active
+		int kept = 0;
+		for(int k=0; k<endpointCount; k++)
+		{
+			long endpoint = endpoints[k];
+			int entity = (int)endpoint >>> 1;
+			if(entity < size && active[entity])
+				endpoints[kept++] = endpoint;
+			else
+				member[entity] = false;
+		}
+		endpointCount = kept;
+
+		//update the bounds, add entities which have become active
+		int added = 0;
+		for(int i=0; i<size; i++)
+		{
+			if(!active[i])
+				continue;
+			Sphere sphere = entities.get(i).getBoundingSphereWorld();
+			float[] c = sphere.center.v;
+			float r = sphere.radius;
+			int b = 6*i;
+			bounds[b  ] = c[0] - r;
+			bounds[b+1] = c[1] - r;
+			bounds[b+2] = c[2] - r;
+			bounds[b+3] = c[0] + r;
+			bounds[b+4] = c[1] + r;
+			bounds[b+5] = c[2] + r;
+			if(!member[i])
+			{
+				member[i] = true;
+				endpoints[endpointCount++] = 2*i;
+				endpoints[endpointCount++] = 2*i+1;
+				added += 2;
+			}
+		}
+
+		//refresh the values, the order is kept from the last frame
+		long[] endpoints = this.endpoints;
+		for(int k=0; k<endpointCount; k++)
+		{
+			int tag = (int)endpoints[k];
+			float value = bounds[6*(tag >>> 1) + 3*(tag & 1)];
+			endpoints[k] = ((long)sortable(value) << 32) | tag;
+		}
+		if(added > 16 && added*RESORT_FRACTION > endpointCount)
+			Arrays.sort(endpoints, 0, endpointCount);
+		else
+			insertionSort(endpoints, endpointCount);
+
+		//sweep along x
+		pairs.clear();
+		int openCount = 0;
+		for(int k=0; k<endpointCount; k++)
+		{
+			int tag = (int)endpoints[k];
+			int entity = tag >>> 1;
+			if((tag & 1) == 0)
+			{
+				for(int o=0; o<openCount; o++)
+				{
+					int other = open[o];
+					if(overlapYZ(bounds, entity, other))
+						pairs.add(Math.min(entity, other), Math.max(entity, other));
+				}
+				openIndex[entity] = openCount;
+				open[openCount++] = entity;
+			}
+			else
+			{
+				int last = open[--openCount];
+				int index = openIndex[entity];
+				open[index] = last;
+				openIndex[last] = index;
+			}
+		}
+		pairs.sortUnique();
+
+		updateEvents(pairs);
+	}
+
+	/**
+	 * Compares the pairs with the ones of the previous call and stores them.
+	 *
+	 * @param pairs the current pairs
+	 */
+	private void updateEvents(PairList pairs)
+	{
+		begins.clear();
+		ends.clear();
+		int i = 0, j = 0;
+		int previousSize = previous.size(), size = pairs.size();
+		while(i < previousSize || j < size)
+		{
+			long before = i < previousSize ? previous.getKey(i) : Long.MAX_VALUE;
+			long now = j < size ? pairs.getKey(j) : Long.MAX_VALUE;
+			if(before == now)
+			{
+				i++;
+				j++;
+			}
+			else if(before < now)
+			{
+				ends.addKey(before);
+				i++;
+			}
+			else
+			{
+				begins.addKey(now);
+				j++;
+			}
+		}
+
+		previous.clear();
+		for(int k=0; k<size; k++)
+			previous.addKey(pairs.getKey(k));
+	}
+
+	/**
+	 * Makes room for size entities.
+	 *
+	 * @param size the number of entities
+	 */
+	private void ensureCapacity(int size)
+	{
+		if(member.length >= size)
+			return;
+
+		int capacity = Math.max(size, 2*member.length);
+		boolean[] grownMember = new boolean[capacity];
+		System.arraycopy(member, 0, grownMember, 0, member.length);
+		member = grownMember;
+		float[] grownBounds = new float[6*capacity];
+		System.arraycopy(bounds, 0, grownBounds, 0, bounds.length);
+		bounds = grownBounds;
+		long[] grownEndpoints = new long[2*capacity];
+		System.arraycopy(endpoints, 0, grownEndpoints, 0, endpointCount);
+		endpoints = grownEndpoints;
+		open = new int[capacity];
+		openIndex = new int[capacity];
+	}
+
+	/**
+	 * Sorts a nearly sorted array.
+	 *
+	 * @param a the array
+	 * @param count the number of elements to sort
+	 */
+	private static void insertionSort(long[] a, int count)
+	{
+		for(int k=1; k<count; k++)
+		{
+			long value = a[k];
+			int j = k-1;
+			if(a[j] <= value)
+				continue;
+			while(j >= 0 && a[j] > value)
+			{
+				a[j+1] = a[j];
+				j--;
+			}
+			a[j+1] = value;
+		}
+	}
+
+	/**
+	 * Whether the bounding boxes of two entities overlap on y and z.
+	 *
+	 * @param bounds the bounding boxes
+	 * @param a the first entity
+	 * @param b the second entity
+	 * @return true if the boxes overlap
+	 */
+	private static boolean overlapYZ(float[] bounds, int a, int b)
+	{
+		a *= 6;
+		b *= 6;
+		return	bounds[a+1] <= bounds[b+4] && bounds[b+1] <= bounds[a+4] &&
+				bounds[a+2] <= bounds[b+5] && bounds[b+2] <= bounds[a+5];
+	}
+
+	/**
+	 * Maps a float to an int with the same order (as signed ints).
+	 *
+	 * @param f the float
+	 * @return the sortable int
+	 */
+	private static int sortable(float f)
+	{
+		int bits = Float.floatToIntBits(f);
+		return bits ^ ((bits >> 31) & 0x7fffffff);
+	}
+}
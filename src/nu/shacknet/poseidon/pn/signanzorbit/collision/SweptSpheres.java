@@ -0,0 +1,347 @@
+package nu.shacknet.poseidon.pn.signanzorbit.collision;
+
+import java.util.ArrayList;
+
+import nu.shacknet.poseidon.pn.signanzorbit.math.Sphere;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Vector3;
+import nu.shacknet.poseidon.pn.signanzorbit.orbit.Movable;
+
+/**
+ * Continuous collision detection for moving spheres. The world bounding
+ * sphere centers of the entities are remembered from one collision
+ * detection to the next, so every entity sweeps its sphere linearly from
+ * the previous to the current center during a step (t from 0 to 1).
+ * Entities moving farther than a minimal distance per step are fast: they
+ * can pass through small entities between two steps, so they are tested
+ * with their swept volumes and the time of impact within the step.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class SweptSpheres
+{
+	/** The time of impact if there is no impact. */
+	public static final float NO_IMPACT = -1;
+
+	/** The centers at the start of the step (xyz). */
+	private float[] previous;
+
+	/** The spheres at the end of the step: center xyz and radius. */
+	private float[] current;
+
+	/** Whether the entity took part in the previous step. */
+	private boolean[] valid;
+
+	/** Whether the entity is fast. */
+	private boolean[] fast;
+
+	/** The fast entities. */
+	private int[] fastEntities;
+
+	/** The number of fast entities. */
+	private int fastCount;
+
+	/** The number of entities of the last update. */
+	private int size;
+
+	/**
+	 * Instantiates new swept spheres.
+	 */
+	public SweptSpheres()
+	{
+		previous = new float[3*64];
+		current = new float[4*64];
+		valid = new boolean[64];
+		fast = new boolean[64];
+		fastEntities = new int[64];
+	}
+
+	/**
+	 * Starts a new step: the current world bounding spheres of the active
+	 * entities become the ends of their sweeps, the spheres of the last call
+	 * the starts. Entities which have just become active don't move during
+	 * this step.
+	 *
+	 * @param entities the entities
+	 * @param active whether an entity takes part
+	 * @param minDistance entities moving farther than this are fast
+	 */
+	public void update(ArrayList<? extends Movable> entities, boolean[] active, float minDistance)
+	{
+		size = entities.size();
+		ensureCapacity(size);
+		float[] previous = this.previous, current = this.current;
+		float minDistance2 = minDistance*minDistance;
+		fastCount = 0;
+		for(int i=0; i<size; i++)
+		{
+			fast[i] = false;
+			if(!active[i])
+			{
+				valid[i] = false;
+				continue;
+			}
+			Sphere sphere = entities.get(i).getBoundingSphereWorld();
+			float[] c = sphere.center.v;
+			int p = 3*i, s = 4*i;
+			if(valid[i])
+			{
+				previous[p  ] = current[s  ];
+				previous[p+1] = current[s+1];
+				previous[p+2] = current[s+2];
+			}
+			else
+			{
+				previous[p  ] = c[0];
+				previous[p+1] = c[1];
+				previous[p+2] = c[2];
+				valid[i] = true;
+			}
+			current[s  ] = c[0];
+			current[s+1] = c[1];
+			current[s+2] = c[2];
+			current[s+3] = sphere.radius;
+
+			float dx = c[0]-previous[p], dy = c[1]-previous[p+1], dz = c[2]-previous[p+2];
+			if(dx*dx + dy*dy + dz*dz > minDistance2)
+			{
+				fast[i] = true;
+				fastEntities[fastCount++] = i;
+			}
+		}
+	}
+
+	/**
+	 * Whether an entity has moved farther than the minimal distance in the
+	 * current step.
+	 *
+	 * @param entity the entity
+	 * @return true if the entity is fast
+	 */
+	public boolean isFast(int entity)
+	{
+		return entity < size && fast[entity];
+	}
+
+	/**
+	 * Gets the distance an entity has moved in the current step.
+	 *
+	 * @param entity the entity
+	 * @return the distance, 0 for entities which don't take part
+	 */
+	public float getDistance(int entity)
+	{
+		if(entity >= size || !valid[entity])
+			return 0;
+		int p = 3*entity, s = 4*entity;
+		float dx = current[s]-previous[p], dy = current[s+1]-previous[p+1], dz = current[s+2]-previous[p+2];
+		return (float)Math.sqrt(dx*dx + dy*dy + dz*dz);
+	}
+
+	/**
+	 * Gets the number of fast entities.
+	 *
+	 * @return the number of fast entities
+	 */
+	public int getFastCount()
+	{
+		return fastCount;
+	}
+
+	/**
+	 * Adds the pairs of fast entities with active entities whose swept
+	 * bounding spheres overlap, which the broadphase may have missed.
+	 *
+	 * @param active whether an entity takes part
+	 * @param pairs the candidate pairs of the broadphase, sorted by index
+	 */
+	public void addPairs(boolean[] active, PairList pairs)
+	{
+		if(fastCount == 0)
+			return;
+		for(int f=0; f<fastCount; f++)
+		{
+			int a = fastEntities[f];
+			for(int b=0; b<size; b++)
+			{
+				if(b == a || !active[b] || (fast[b] && b < a))
+					continue;
+				if(sweptBoundsOverlap(a, b))
+					pairs.add(Math.min(a, b), Math.max(a, b));
+			}
+		}
+		pairs.sortUnique();
+	}
+
+	/**
+	 * Gets the sphere enclosing the sweep of an entity.
+	 *
+	 * @param entity the entity
+	 * @param bound receives the bounding sphere
+	 */
+	public void getSweptBound(int entity, Sphere bound)
+	{
+		int p = 3*entity, s = 4*entity;
+		float dx = current[s]-previous[p], dy = current[s+1]-previous[p+1], dz = current[s+2]-previous[p+2];
+		bound.center.set(previous[p] + dx/2, previous[p+1] + dy/2, previous[p+2] + dz/2);
+		bound.radius = current[s+3] + (float)Math.sqrt(dx*dx + dy*dy + dz*dz)/2;
+	}
+
+	/**
+	 * Gets the center of an entity's sphere at a time of the step.
+	 *
+	 * @param entity the entity
+	 * @param t the time (0 at the start, 1 at the end of the step)
+	 * @param center receives the center
+	 */
+	public void getCenter(int entity, float t, Vector3 center)
+	{
+		int p = 3*entity, s = 4*entity;
+		center.set(	previous[p  ] + (current[s  ]-previous[p  ])*t,
+					previous[p+1] + (current[s+1]-previous[p+1])*t,
+					previous[p+2] + (current[s+2]-previous[p+2])*t);
+	}
+
+	/**
+	 * Gets the distance from the center of one entity to the center of
+	 * another at a time of the step.
+	 *
+	 * @param a the first entity
+	 * @param b the second entity
+	 * @param t the time (0 at the start, 1 at the end of the step)
+	 * @param distance receives the distance (xyz)
+	 * @param offset the position of the distance in the array
+	 */
+	public void getCenterDistance(int a, int b, float t, float[] distance, int offset)
+	{
+		int pa = 3*a, sa = 4*a, pb = 3*b, sb = 4*b;
+		for(int i=0; i<3; i++)
+		{
+			float centerA = previous[pa+i] + (current[sa+i]-previous[pa+i])*t;
+			float centerB = previous[pb+i] + (current[sb+i]-previous[pb+i])*t;
+			distance[offset+i] = centerB - centerA;
+		}
+	}
+
+	/**
+	 * Computes when the spheres of two entities first penetrate each other
+	 * by penetrationDepth during the step.
+	 *
+	 * @param a the first entity
+	 * @param b the second entity
+	 * @param penetrationDepth the depth the spheres have to penetrate each other
+	 * @return the time of impact in [0, 1], NO_IMPACT if there is none
+	 */
+	public float timeOfImpact(int a, int b, float penetrationDepth)
+	{
+		int pa = 3*a, sa = 4*a, pb = 3*b, sb = 4*b;
+		return timeOfImpact(previous[pb]-previous[pa], previous[pb+1]-previous[pa+1], previous[pb+2]-previous[pa+2],
+				(current[sb]-previous[pb]) - (current[sa]-previous[pa]),
+				(current[sb+1]-previous[pb+1]) - (current[sa+1]-previous[pa+1]),
+				(current[sb+2]-previous[pb+2]) - (current[sa+2]-previous[pa+2]),
+				current[sa+3] + current[sb+3] - penetrationDepth);
+	}
+
+	/**
+	 * Computes when the sphere of an entity first penetrates a sphere which
+	 * doesn't move by penetrationDepth during the step.
+	 *
+	 * @param a the entity
+	 * @param fixed the sphere
+	 * @param penetrationDepth the depth the spheres have to penetrate each other
+	 * @return the time of impact in [0, 1], NO_IMPACT if there is none
+	 */
+	public float timeOfImpact(int a, Sphere fixed, float penetrationDepth)
+	{
+		int pa = 3*a, sa = 4*a;
+		float[] c = fixed.center.v;
+		return timeOfImpact(c[0]-previous[pa], c[1]-previous[pa+1], c[2]-previous[pa+2],
+				previous[pa]-current[sa], previous[pa+1]-current[sa+1], previous[pa+2]-current[sa+2],
+				current[sa+3] + fixed.radius - penetrationDepth);
+	}
+
+	/**
+	 * Computes when the distance of two centers first drops below a contact
+	 * distance: the centers are s apart at the start and s + d at the end
+	 * of the step. Centers already closer at the start only count if they
+	 * are still closer at the end, centers moving apart were handled in the
+	 * previous step.
+	 *
+	 * @param sx the x coordinate of the distance at the start
+	 * @param sy the y coordinate of the distance at the start
+	 * @param sz the z coordinate of the distance at the start
+	 * @param dx the x coordinate of the change of the distance
+	 * @param dy the y coordinate of the change of the distance
+	 * @param dz the z coordinate of the change of the distance
+	 * @param contact the contact distance
+	 * @return the time of impact in [0, 1], NO_IMPACT if there is none
+	 */
+	public static float timeOfImpact(float sx, float sy, float sz, float dx, float dy, float dz, float contact)
+	{
+		if(contact <= 0)
+			return NO_IMPACT;
+		float contact2 = contact*contact;
+		float c = sx*sx + sy*sy + sz*sz - contact2;
+		if(c < 0)
+		{
+			float ex = sx+dx, ey = sy+dy, ez = sz+dz;
+			return ex*ex + ey*ey + ez*ez < contact2 ? 0 : NO_IMPACT;
+		}
+
+		//|s + t*d| = contact
+		float a = dx*dx + dy*dy + dz*dz;
+		float b = sx*dx + sy*dy + sz*dz;
+		if(b >= 0 || a == 0)
+			return NO_IMPACT;
+		float discriminant = b*b - a*c;
+		if(discriminant < 0)
+			return NO_IMPACT;
+		float t = (-b - (float)Math.sqrt(discriminant)) / a;
+		return t <= 1 ? Math.max(t, 0) : NO_IMPACT;
+	}
+
+	/**
+	 * Whether the spheres enclosing the sweeps of two entities overlap.
+	 *
+	 * @param a the first entity
+	 * @param b the second entity
+	 * @return true if the bounds overlap
+	 */
+	private boolean sweptBoundsOverlap(int a, int b)
+	{
+		int pa = 3*a, sa = 4*a, pb = 3*b, sb = 4*b;
+		float ax = current[sa]-previous[pa], ay = current[sa+1]-previous[pa+1], az = current[sa+2]-previous[pa+2];
+		float bx = current[sb]-previous[pb], by = current[sb+1]-previous[pb+1], bz = current[sb+2]-previous[pb+2];
+		float ra = current[sa+3] + (float)Math.sqrt(ax*ax + ay*ay + az*az)/2;
+		float rb = current[sb+3] + (float)Math.sqrt(bx*bx + by*by + bz*bz)/2;
+		float x = (previous[pb] + bx/2) - (previous[pa] + ax/2);
+		float y = (previous[pb+1] + by/2) - (previous[pa+1] + ay/2);
+		float z = (previous[pb+2] + bz/2) - (previous[pa+2] + az/2);
+		float r = ra + rb;
+		return x*x + y*y + z*z < r*r;
+	}
+
+	/**
+	 * Makes room for size entities.
+	 *
+	 * @param size the number of entities
+	 */
+	private void ensureCapacity(int size)
+	{
+		if(valid.length >= size)
+			return;
+
+		int capacity = Math.max(size, 2*valid.length);
+		float[] grownPrevious = new float[3*capacity];
+		System.arraycopy(previous, 0, grownPrevious, 0, previous.length);
+		previous = grownPrevious;
+		float[] grownCurrent = new float[4*capacity];
+		System.arraycopy(current, 0, grownCurrent, 0, current.length);
+		current = grownCurrent;
+		boolean[] grownValid = new boolean[capacity];
+		System.arraycopy(valid, 0, grownValid, 0, valid.length);
+		valid = grownValid;
+		fast = new boolean[capacity];
+		fastEntities = new int[capacity];
+	}
+}
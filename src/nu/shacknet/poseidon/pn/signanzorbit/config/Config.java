@@ -33,7 +33,22 @@ public class Config
 	
 	/** Whether or not OpenGL ES 1.1 is available (set on runtime). */
 	public static boolean GLES11 = false;
-
+	
+	/** Whether the math package uses the native library (true) or the pure
+	 * Java backend (false). Has to be chosen on startup, both backends agree 
+	 * within a relative error of 1e-5. */
+	public static boolean NATIVE_MATH = false;
+	
+	/** Whether geometry is loaded and matrices are handed to OpenGL in 16.16
+	 * fixed point (GL_FIXED) instead of float, for devices with a weak FPU.
+	 * Geometry is converted once when a level is loaded. */
+	public static boolean FIXED_POINT = false;
+	
+	/** Whether sin/cos, sqrt and acos of the Java code paths (the Java math
+	 * backend, rotations, the force pulse) use the table and polynomial
+	 * approximations of FastMath instead of java.lang.Math. */
+	public static boolean FAST_MATH = false;
+	
 	/** The FPS update interval in ms. */
 	public static long FPS_UPDATE_INTERVAL = 1000;
 	
@@ -90,6 +105,13 @@ public class Config
 	/** How long the vibrator should fire on full power. */
 	public static final float MAX_VIBRATION_LENGTH = 250;
 	
+	/** Whether the vibrator fires when a fast satellite hits the planet
+	 * (read when the collision manager is created). */
+	public static boolean IMPACT_VIBRATION = false;
+	
+	/** How long the vibrator fires when a fast satellite hits the planet. */
+	public static final long IMPACT_VIBRATION_LENGTH = 40;
+	
 	/** GAMEPLAY. */
 	
 	/** the maximum length of the force vector (in units) */
@@ -109,10 +131,10 @@ public class Config
 	/** center position of the universe / orbits */
 	public static Vector3 UNIVERSE_CENTER = new Vector3(0,0,0);
 	
-	/** The name of the Planet SceneEntity. */
+	/** The name of the Planet SceneEntities (a prefix, a level may have several planets). */
 	public static String PLANET_NAME = "GoldPlanet";
 	
-	/** The name of the Skysphere SceneEntity. */
+	/** The name of the Skysphere SceneEntity (a prefix). */
 	public static String SKYSPHERE_NAME = "Skysphere";
 	
 	/** prefix for the satellite SceneEntities. */
@@ -151,6 +173,12 @@ public class Config
 	/** The minimal speed of an orbit. */
 	public static float ORBIT_MIN_SPEED = 0.5f;
 
+	/** The number of samples of the arc length table of an ellipse (at least 16).
+	 * Bounds the error of the constant speed motion along an orbit: with 32
+	 * samples the arc length of a point is within 1e-5 of the perimeter for
+	 * axis ratios up to 1:5 (7e-5 for 1:10), 64 samples keep it below 1e-6. */
+	public static int ELLIPSE_TABLE_SIZE = 32;
+
 	/** ratio between speed and rotation angle. */
 	public static float SATELLITE_SPEEDROTA_RATIO = 4f;
 	
@@ -160,6 +188,110 @@ public class Config
 	/** the required penetration depth on collisions. */
 	public static float COLLISION_PENETRATION_DEPTH = 0.2f;
 	
+	/** Whether fast entities are tested with their swept bounding spheres
+	 * (continuous collision detection), so they can't pass through other
+	 * entities between two frames. */
+	public static boolean CONTINUOUS_COLLISION = true;
+	
+	/** Entities moving farther than this between two collision detections
+	 * are tested with their swept bounding spheres. */
+	public static float CONTINUOUS_COLLISION_MIN_DISTANCE = 0.2f;
+	
+	/** The number of threads testing the candidate pairs of the collision
+	 * detection (may be changed at runtime), the response is always serial. */
+	public static int COLLISION_THREADS = 1;
+	
+	/** Whether the collision scheduler selects the candidate pairs tested
+	 * per frame: pairs which may be in contact are always tested, pairs
+	 * known to be apart only within the time budget. Off by default, up to
+	 * 1024 entities the scheduling costs more than the skipped tests. */
+	public static boolean COLLISION_SCHEDULER = false;
+	
+	/** The time the scheduled contact tests may take per frame in microseconds. */
+	public static int COLLISION_TIME_BUDGET = 1000;
+	
+	/** The maximal number of frames a candidate pair is left untested. */
+	public static int COLLISION_MAX_STALENESS = 8;
+	
+	/** Whether the collision scheduler logs the tested, deferred and
+	 * overdue pairs every frame. */
+	public static boolean COLLISION_SCHEDULER_STATS = false;
+	
+	/** Whether pairs of satellites on stable orbits are only tested when
+	 * they may touch: the earliest time of a contact is predicted from their
+	 * gap and speeds, a changed trajectory predicts it again. */
+	public static boolean KINETIC_SCHEDULER = true;
+	
+	/** The factor for the speed of an orbit in the predicted times. */
+	public static float KINETIC_SPEED_MARGIN = 1.1f;
+	
+	/** The number of frames the trajectory of an orbit mustn't change
+	 * before its pairs are predicted. */
+	public static int KINETIC_STABLE_FRAMES = 2;
+	
+	/** Whether the kinetic scheduler logs the kinetic entities and the
+	 * checked and tested pairs every frame. */
+	public static boolean KINETIC_SCHEDULER_STATS = false;
+	
+	/** Whether the loader builds a sphere tree per geometry, which the
+	 * narrowphase descends after the bounding spheres of two satellites
+	 * have passed the coarse test. */
+	public static boolean COLLISION_PROXIES = true;
+	
+	/** The number of levels of the sphere trees per geometry (1 is the bounding sphere only). */
+	public static int COLLISION_PROXY_LEVELS = 3;
+	
+	/** Whether the sound, score and vibration of the collision response
+	 * are handled by their own threads (else on the logic thread). */
+	public static boolean COLLISION_EVENTS = true;
+	
+	/** The number of collision events a consumer thread may lag behind
+	 * before they are dropped (the score is never dropped). */
+	public static int COLLISION_EVENT_CAPACITY = 64;
+	
+	/** Whether the published, consumed and dropped collision events are
+	 * logged every frame. */
+	public static boolean COLLISION_EVENT_STATS = false;
+	
+	/** Whether entities which don't move fall asleep: the broadphase only
+	 * pairs the awake entities, contacts and forces wake them up again. */
+	public static boolean SLEEPING = true;
+	
+	/** The distance an entity has to move per frame to stay awake. */
+	public static float SLEEP_DISTANCE = 0.001f;
+	
+	/** The number of frames an entity has to rest before it falls asleep. */
+	public static int SLEEP_FRAMES = 30;
+	
+	/** Whether the awake, sleeping, woken and retired entities are logged
+	 * every frame. */
+	public static boolean SLEEP_STATS = false;
+	
+	/** Broadphase: every pair of entities is a candidate. */
+	public static final int BROADPHASE_BRUTE_FORCE = 0;
+	
+	/** Broadphase: uniform spatial hash over the world bounding spheres. */
+	public static final int BROADPHASE_SPATIAL_HASH = 1;
+	
+	/** Broadphase: incremental sweep and prune along x. */
+	public static final int BROADPHASE_SWEEP_AND_PRUNE = 2;
+	
+	/** Broadphase: brute force below BROADPHASE_AUTO_SIZE entities, sweep and prune above. */
+	public static final int BROADPHASE_AUTO = 3;
+	
+	/** The broadphase of the collision detection (may be changed at runtime). */
+	public static int BROADPHASE = BROADPHASE_AUTO;
+	
+	/** The number of entities from which BROADPHASE_AUTO uses sweep and
+	 * prune: per frame it took 207 us for brute force and
+	 * 851 us for the spatial hash at 64 entities, sweep and prune breaks
+	 * even with brute force at about 256. */
+	public static int BROADPHASE_AUTO_SIZE = 256;
+	
+	/** The cell size of the spatial hash broadphase, 0 chooses twice the
+	 * mean bounding sphere diameter every frame. */
+	public static float SPATIAL_HASH_CELL_SIZE = 0;
+	
 	/** minimal force to change the motion into a directional motion. */
 	public static float MIN_STRENGTH_FOR_DIRECTIONAL = 0.4f * MAX_FORCE;
 	
@@ -213,6 +345,10 @@ public class Config
 	 * process */
 	public static final float SELECTION_BSPHERE_INCREMENT = 0.5f;
 	
+	/** The distance a satellite may move before it is inserted into the
+	 * selection tree again */
+	public static final float SELECTION_TREE_MARGIN = 0.5f;
+	
 	/** The normal impact sound. */
 	public static final int SOUND_IMPACT = R.raw.impact;
 	
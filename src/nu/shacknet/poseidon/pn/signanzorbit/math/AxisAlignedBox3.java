@@ -1,5 +1,7 @@
 package nu.shacknet.poseidon.pn.signanzorbit.math;
 
+import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
+
 /**
  * The Class AxisAlignedBox3.
  *
@@ -160,7 +162,9 @@ public class AxisAlignedBox3
 	 */
 	public Vector3 center()
 	{ 
-		return center(min.v[0], max.v[0], min.v[1], max.v[1], min.v[2], max.v[2]); 
+		if(Config.NATIVE_MATH)
+			return center(min.v[0], max.v[0], min.v[1], max.v[1], min.v[2], max.v[2]);
+		return new Vector3(0.5f*(min.v[0]+max.v[0]), 0.5f*(min.v[1]+max.v[1]), 0.5f*(min.v[2]+max.v[2]));
 	}
 	
 	/* (non-Javadoc)
@@ -1,9 +1,18 @@
 package nu.shacknet.poseidon.pn.signanzorbit.math;
 
+import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
+
 /**
  * The Class Ellipse
  * Encapsulates the parametric form of the ellipse
  * 
+ * Besides the parametric form an ellipse can be evaluated by arc length
+ * (getPointArc()), which gives a constant speed along the ellipse. The arc
+ * length of <code>Config.ELLIPSE_TABLE_SIZE</code> samples is kept in a table,
+ * built from sin/cos tables shared by all ellipses. It is rebuilt only if the
+ * axes have changed (a uniform scale of both axes just scales it), and it
+ * also yields the perimeter.
+ * 
  * @author Alex Druml
  * @author Lukas Roessler
  */
@@ -24,6 +33,36 @@ public class Ellipse
 
 	/** The perimeter of the ellipse */
 	public float perimeter;
+	
+	/** The cosine of the table samples (shared by all ellipses). */
+	private static float[] cosTable;
+	
+	/** The sine of the table samples (shared by all ellipses). */
+	private static float[] sinTable;
+	
+	/** The arc length at each table sample, unscaled (see arcScale). */
+	private float[] arcTable;
+	
+	/** The speed |dp/dt| at each table sample, unscaled (see arcScale). */
+	private float[] speedTable;
+	
+	/** The derivative of the speed at each table sample, unscaled (see arcScale). */
+	private float[] accelerationTable;
+	
+	/** The table interval of the last getPointArc() call (the arc parameter usually advances slowly). */
+	private int lastIndex;
+	
+	/** The factor the arc table is scaled with. */
+	private float arcScale;
+	
+	/** a*a the arc table has been built for. */
+	private float aa;
+	
+	/** b*b the arc table has been built for. */
+	private float bb;
+	
+	/** a*b the arc table has been built for. */
+	private float ab;
 
 	/**
 	 * Instantiates a new ellipse.
@@ -50,11 +89,117 @@ public class Ellipse
 	private native float calcPerimeter(float[] a, float[] b);
 	
 	/**
-	 * Compute a approximation for the perimeter of the ellipse
+	 * Compute the perimeter of the ellipse (from the arc length table).
+	 * Has to be called after the axes have been changed.
 	 */
 	public void calcPerimeter()
 	{
-		perimeter = calcPerimeter(a.v, b.v);
+		updateArcTable();
+		perimeter = arcTable[arcTable.length-1] * arcScale;
+	}
+	
+	/**
+	 * Compute the closed form approximation for the perimeter of the ellipse
+	 * (Ramanujan), which assumes that a and b are orthogonal.
+	 *
+	 * @return the approximated perimeter
+	 */
+	public float calcPerimeterApproximation()
+	{
+		if(Config.NATIVE_MATH)
+			return calcPerimeter(a.v, b.v);
+		else
+			return JavaMath.ellipsePerimeter(a.v, b.v);
+	}
+	
+	/**
+	 * Builds the sin/cos tables shared by all ellipses.
+	 */
+	private static synchronized void initTables(int n)
+	{
+		if(cosTable != null && cosTable.length == n+1)
+			return;
+		
+		float[] cos = new float[n+1];
+		float[] sin = new float[n+1];
+		for(int i=0; i<=n; i++)
+		{
+			double t = (2*Math.PI*i)/n;
+			cos[i] = (float)Math.cos(t);
+			sin[i] = (float)Math.sin(t);
+		}
+		sinTable = sin;
+		cosTable = cos;
+	}
+	
+	/**
+	 * Rebuilds the arc length table if the axes have changed since the last
+	 * call. The speed along the ellipse is |-a*sin(t) + b*cos(t)|, so the
+	 * table depends on a*a, b*b and a*b only.
+	 */
+	private void updateArcTable()
+	{
+		float[] av = a.v, bv = b.v;
+		float aa = av[0]*av[0] + av[1]*av[1] + av[2]*av[2];
+		float bb = bv[0]*bv[0] + bv[1]*bv[1] + bv[2]*bv[2];
+		float ab = av[0]*bv[0] + av[1]*bv[1] + av[2]*bv[2];
+		
+		int n = Math.max(16, Config.ELLIPSE_TABLE_SIZE);
+		boolean valid = arcTable != null && arcTable.length == n+1;
+		
+		if(valid && aa == this.aa && bb == this.bb && ab == this.ab)
+			return;
+		
+		//both axes scaled by the same factor -> the arc length scales linearly
+		if(valid && this.aa > 0 && this.bb > 0)
+		{
+			float k2 = aa / this.aa;
+			if(Math.abs(bb - k2*this.bb) <= JavaMath.EPSILON*bb && Math.abs(ab - k2*this.ab) <= JavaMath.EPSILON*(aa+bb))
+			{
+				arcScale *= (float)Math.sqrt(k2);
+				this.aa = aa;
+				this.bb = bb;
+				this.ab = ab;
+				return;
+			}
+		}
+		
+		if(cosTable == null || cosTable.length != n+1)
+			initTables(n);
+		float[] cos = cosTable;
+		float[] sin = sinTable;
+		
+		if(!valid)
+		{
+			arcTable = new float[n+1];
+			speedTable = new float[n+1];
+			accelerationTable = new float[n+1];
+		}
+		float[] arc = arcTable;
+		float[] speedTable = this.speedTable;
+		float[] accelerationTable = this.accelerationTable;
+		
+		//the table is periodic, so the trapezoidal rule converges very fast
+		float dt = (float)(2*Math.PI)/n;
+		for(int i=0; i<=n; i++)
+		{
+			float s = sin[i], c = cos[i];
+			float speedSq = aa*s*s - 2*ab*s*c + bb*c*c;
+			float speed = speedSq > 0 ? (float)Math.sqrt(speedSq) : 0;
+			speedTable[i] = speed;
+			accelerationTable[i] = speed > 0 ? ((aa-bb)*s*c + ab*(s*s - c*c)) / speed : 0;
+		}
+		
+		//cubic hermite integration (trapezoidal rule with end correction)
+		arc[0] = 0;
+		for(int i=1; i<=n; i++)
+			arc[i] = arc[i-1] + (speedTable[i-1] + speedTable[i]) * 0.5f * dt
+					- (accelerationTable[i] - accelerationTable[i-1]) * dt*dt / 12;
+		
+		this.aa = aa;
+		this.bb = bb;
+		this.ab = ab;
+		arcScale = 1;
 	}
 	
 	/**
@@ -76,7 +221,98 @@ public class Ellipse
 	public Vector3 getPoint(float t)
 	{
         //pos = center + a cos(t) + b sin(t) - thx to dr. math
-		getPoint(center.v, a.v, b.v, pos.v, t);
+		if(Config.NATIVE_MATH)
+			getPoint(center.v, a.v, b.v, pos.v, t);
+		else
+			JavaMath.ellipsePoint(center.v, a.v, b.v, pos.v, t);
+		return pos;
+	}
+	
+	/**
+	 * Gets the point on the ellipse for a given arc parameter u. Equal steps
+	 * of u cover equal distances along the ellipse.
+	 * 
+	 * @param u the arc length along the ellipse, normalized to [0,2PI) (u=0 is the same point as t=0)
+	 * @return the corresponding point on the ellipse
+	 */
+	public Vector3 getPointArc(float u)
+	{
+		updateArcTable();
+		float[] arc = arcTable;
+		int n = arc.length-1;
+		
+		float twoPi = Constants.TWOPI;
+		if(u >= twoPi || u < 0)
+			u -= twoPi * (float)Math.floor(u / twoPi);
+		float s = u / twoPi * arc[n];
+		
+		//find the sample interval containing s: the last one or its successor, else binary search
+		int lo = lastIndex;
+		if(lo >= n || arc[lo] > s || arc[lo+1] <= s)
+		{
+			if(lo+2 <= n && arc[lo+1] <= s && arc[lo+2] > s)
+				lo++;
+			else
+			{
+				lo = 0;
+				int hi = n;
+				while(hi - lo > 1)
+				{
+					int mid = (lo + hi) >>> 1;
+					if(arc[mid] <= s)
+						lo = mid;
+					else
+						hi = mid;
+				}
+			}
+			lastIndex = lo;
+		}
+		
+		//within the interval the speed is linear in t: solve
+		//s - arc[lo] = v0*d + k/2*d^2 for d, then refine with a newton step
+		//on the cubic hermite arc length of the interval
+		float dt = twoPi / n;
+		float r = s - arc[lo];
+		float v0 = speedTable[lo];
+		float v1 = speedTable[lo+1];
+		float k = (v1 - v0) / dt;
+		float root = v0*v0 + 2*k*r;
+		float denominator = v0 + (root > 0 ? (float)Math.sqrt(root) : 0);
+		float d = denominator > 0 ? 2*r / denominator : 0;
+		if(d > dt)
+			d = dt;
+		
+		float a0 = accelerationTable[lo];
+		float a1 = accelerationTable[lo+1];
+		float x = d / dt;
+		float x2 = x*x;
+		//hermite speed: v(x) = h00*v0 + h10*dt*a0 + h01*v1 + h11*dt*a1
+		float h00 = 1 - x2*(3 - 2*x), h01 = x2*(3 - 2*x);
+		float h10 = x*(1 - x)*(1 - x), h11 = x2*(x - 1);
+		float speed = h00*v0 + h01*v1 + dt*(h10*a0 + h11*a1);
+		//its integral over [0,d]
+		float x3 = x2*x, x4 = x2*x2;
+		float g00 = x - x3 + x4/2, g01 = x3 - x4/2;
+		float g10 = x2/2 - 2*x3/3 + x4/4, g11 = x4/4 - x3/3;
+		float arcLength = dt*(g00*v0 + g01*v1 + dt*(g10*a0 + g11*a1));
+		if(speed > 0)
+			d -= (arcLength - r) / speed;
+		if(d < 0)
+			d = 0;
+		else if(d > dt)
+			d = dt;
+		
+		//cos/sin(t_lo + d) by the angle sum identities, d is small (a polynomial is exact enough)
+		float d2 = d*d;
+		float cosd = 1 - d2/2 * (1 - d2/12);
+		float sind = d * (1 - d2/6 * (1 - d2/20));
+		float cost = cosTable[lo]*cosd - sinTable[lo]*sind;
+		float sint = sinTable[lo]*cosd + cosTable[lo]*sind;
+		
+		float[] c = center.v, av = a.v, bv = b.v, p = pos.v;
+		p[0] = c[0] + av[0]*cost + bv[0]*sint;
+		p[1] = c[1] + av[1]*cost + bv[1]*sint;
+		p[2] = c[2] + av[2]*cost + bv[2]*sint;
 		return pos;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,128 @@
+package nu.shacknet.poseidon.pn.signanzorbit.math;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Conversions to and arithmetic in 16.16 fixed point, the GL_FIXED format
+ * of OpenGL ES 1.x. Devices without a (fast) FPU render fixed point
+ * geometry and matrices without converting them in the driver.
+ * The range is -32768 to 32767.99998 with a resolution of 1/65536.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public final class FixedPoint
+{
+	/** 1.0 in fixed point. */
+	public static final int ONE = 1 << 16;
+
+	/** The largest float that can be represented. */
+	private static final float MAX = (float)Integer.MAX_VALUE / ONE;
+
+	/** The smallest float that can be represented. */
+	private static final float MIN = (float)Integer.MIN_VALUE / ONE;
+
+	/**
+	 * Instantiates a new FixedPoint (not used).
+	 */
+	private FixedPoint()
+	{
+	}
+
+	/**
+	 * Converts a float to fixed point (rounded, clamped to the range).
+	 *
+	 * @param f the float
+	 * @return f in fixed point
+	 */
+	public static int toFixed(float f)
+	{
+		if(f >= MAX)
+			return Integer.MAX_VALUE;
+		if(f <= MIN)
+			return Integer.MIN_VALUE;
+		return Math.round(f * ONE);
+	}
+
+	/**
+	 * Converts fixed point to float.
+	 *
+	 * @param x the fixed point value
+	 * @return x as float
+	 */
+	public static float toFloat(int x)
+	{
+		return x * (1f / ONE);
+	}
+
+	/**
+	 * Converts an array of floats to fixed point.
+	 *
+	 * @param src the floats
+	 * @param dst the fixed point values are written into this (may be longer than src)
+	 */
+	public static void toFixed(float[] src, int[] dst)
+	{
+		for(int i=0; i<src.length; i++)
+			dst[i] = toFixed(src[i]);
+	}
+
+	/**
+	 * Converts an array of floats into a direct, native order IntBuffer
+	 * holding fixed point values (GL_FIXED).
+	 *
+	 * @param data the floats
+	 * @return the buffer, null if data is null
+	 */
+	public static IntBuffer toFixedBuffer(float[] data)
+	{
+		if(data == null)
+			return null;
+
+		int[] fixed = new int[data.length];
+		toFixed(data, fixed);
+		IntBuffer intBuffer = ByteBuffer.allocateDirect(data.length*4).order(ByteOrder.nativeOrder()).asIntBuffer();
+		intBuffer.put(fixed);
+		intBuffer.position(0);
+		return intBuffer;
+	}
+
+	/**
+	 * Fixed point multiplication.
+	 *
+	 * @param a the first factor
+	 * @param b the second factor
+	 * @return a*b
+	 */
+	public static int mult(int a, int b)
+	{
+		return (int)(((long)a * b) >> 16);
+	}
+
+	/**
+	 * Transforms an array of points by a fixed point matrix, all in
+	 * integer arithmetic. The matrix has to be affine (no homogenization).
+	 *
+	 * @param m16 the matrix (column major, fixed point)
+	 * @param points the points (packed xyz, fixed point)
+	 * @param result the transformed points (may be points)
+	 * @param count the number of points
+	 */
+	public static void transformPoints(int[] m16, int[] points, int[] result, int count)
+	{
+		long m0 = m16[0], m1 = m16[1], m2 = m16[ 2];
+		long m4 = m16[4], m5 = m16[5], m6 = m16[ 6];
+		long m8 = m16[8], m9 = m16[9], m10 = m16[10];
+		int m12 = m16[12], m13 = m16[13], m14 = m16[14];
+
+		for(int i=0; i<3*count; i+=3)
+		{
+			long x = points[i], y = points[i+1], z = points[i+2];
+			result[i  ] = (int)((m0*x + m4*y + m8*z) >> 16) + m12;
+			result[i+1] = (int)((m1*x + m5*y + m9*z) >> 16) + m13;
+			result[i+2] = (int)((m2*x + m6*y + m10*z) >> 16) + m14;
+		}
+	}
+}
@@ -0,0 +1,1138 @@
+package nu.shacknet.poseidon.pn.signanzorbit.math;
+
+import nu.shacknet.poseidon.pn.signanzorbit.util.FastMath;
+
+/**
+ * The pure Java math backend. Every method mirrors the corresponding helper
+ * of the native library (jni/signanzorbit.c) operation by operation, so both
+ * backends compute the same float results. The only differences stem from
+ * sqrtf/acosf/sinf/cosf being replaced by their java.lang.Math counterparts,
+ * which keeps the results within <code>EPSILON</code> (relative) of the
+ * native ones. With <code>Config.FAST_MATH</code> the lengths, angles and
+ * rotations of the Java backend use the approximations of FastMath instead.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+final class JavaMath
+{
+	/** The maximum relative difference between native and Java results. */
+	static final float EPSILON = 1e-5f;
+
+	/** Component wise addition. */
+	static final int OP_ADD = 0;
+
+	/** Component wise subtraction. */
+	static final int OP_SUBTRACT = 1;
+
+	/** Component wise multiplication. */
+	static final int OP_MULTIPLY = 2;
+
+	/** Component wise division. */
+	static final int OP_DIVIDE = 3;
+
+	/**
+	 * Instantiates a new JavaMath (not used).
+	 */
+	private JavaMath()
+	{
+	}
+
+	/**
+	 * vector + vector.
+	 *
+	 * @param dimension the dimension
+	 * @param result the result
+	 * @param a the first vector
+	 * @param b the second vector
+	 */
+	static void vectorAddVector(int dimension, float[] result, float[] a, float[] b)
+	{
+		for(int i=0; i<dimension; i++)
+			result[i] = a[i] + b[i];
+	}
+
+	/**
+	 * vector + skalar.
+	 *
+	 * @param dimension the dimension
+	 * @param result the result
+	 * @param vector the vector
+	 * @param skalar the skalar
+	 */
+	static void vectorAddSkalar(int dimension, float[] result, float[] vector, float skalar)
+	{
+		for(int i=0; i<dimension; i++)
+			result[i] = vector[i] + skalar;
+	}
+
+	/**
+	 * vector - vector.
+	 *
+	 * @param dimension the dimension
+	 * @param result the result
+	 * @param a the first vector
+	 * @param b the second vector
+	 */
+	static void vectorSubtractVector(int dimension, float[] result, float[] a, float[] b)
+	{
+		for(int i=0; i<dimension; i++)
+			result[i] = a[i] - b[i];
+	}
+
+	/**
+	 * vector - skalar.
+	 *
+	 * @param dimension the dimension
+	 * @param result the result
+	 * @param vector the vector
+	 * @param skalar the skalar
+	 */
+	static void vectorSubtractSkalar(int dimension, float[] result, float[] vector, float skalar)
+	{
+		for(int i=0; i<dimension; i++)
+			result[i] = vector[i] - skalar;
+	}
+
+	/**
+	 * vector * vector.
+	 *
+	 * @param dimension the dimension
+	 * @param result the result
+	 * @param a the first vector
+	 * @param b the second vector
+	 */
+	static void vectorMultiplyVector(int dimension, float[] result, float[] a, float[] b)
+	{
+		for(int i=0; i<dimension; i++)
+			result[i] = a[i] * b[i];
+	}
+
+	/**
+	 * vector * skalar.
+	 *
+	 * @param dimension the dimension
+	 * @param result the result
+	 * @param vector the vector
+	 * @param skalar the skalar
+	 */
+	static void vectorMultiplySkalar(int dimension, float[] result, float[] vector, float skalar)
+	{
+		for(int i=0; i<dimension; i++)
+			result[i] = vector[i] * skalar;
+	}
+
+	/**
+	 * vector / vector.
+	 *
+	 * @param dimension the dimension
+	 * @param result the result
+	 * @param a the first vector
+	 * @param b the second vector
+	 */
+	static void vectorDivideVector(int dimension, float[] result, float[] a, float[] b)
+	{
+		for(int i=0; i<dimension; i++)
+			result[i] = a[i] / b[i];
+	}
+
+	/**
+	 * vector / skalar.
+	 *
+	 * @param dimension the dimension
+	 * @param result the result
+	 * @param vector the vector
+	 * @param skalar the skalar
+	 */
+	static void vectorDivideSkalar(int dimension, float[] result, float[] vector, float skalar)
+	{
+		for(int i=0; i<dimension; i++)
+			result[i] = vector[i] / skalar;
+	}
+
+	/**
+	 * vector length.
+	 *
+	 * @param dimension the dimension
+	 * @param vector the vector
+	 * @return the length
+	 */
+	static float vectorLength(int dimension, float[] vector)
+	{
+		float sum = 0;
+		for(int i=0; i<dimension; i++)
+			sum += vector[i]*vector[i];
+		return FastMath.sqrt(sum);
+	}
+
+	/**
+	 * Normalizes a vector. Vectors of length 0 or 1 are left untouched.
+	 *
+	 * @param dimension the dimension
+	 * @param result the result
+	 * @param vector the vector
+	 */
+	static void vectorNormalize(int dimension, float[] result, float[] vector)
+	{
+		float length = vectorLength(dimension, vector);
+		if(length != 0 && length != 1)
+		{
+			for(int i=0; i<dimension; i++)
+				result[i] = vector[i] / length;
+		}
+	}
+
+	/**
+	 * Dot product.
+	 *
+	 * @param dimension the dimension
+	 * @param a the first vector
+	 * @param b the second vector
+	 * @return the dot product
+	 */
+	static float dotProduct(int dimension, float[] a, float[] b)
+	{
+		float sum = 0;
+		for(int i=0; i<dimension; i++)
+			sum += a[i]*b[i];
+		return sum;
+	}
+
+	/**
+	 * The angle between two vectors.
+	 *
+	 * @param dimension the dimension
+	 * @param a the first vector
+	 * @param b the second vector
+	 * @return the angle
+	 */
+	static float vectorAngle(int dimension, float[] a, float[] b)
+	{
+		return FastMath.acos(dotProduct(dimension, a, b) / (vectorLength(dimension, a) * vectorLength(dimension, b)));
+	}
+
+	/**
+	 * Inverts a vector.
+	 *
+	 * @param dimension the dimension
+	 * @param v the vector
+	 */
+	static void vectorInvert(int dimension, float[] v)
+	{
+		for(int i=0; i<dimension; i++)
+			v[i] = -v[i];
+	}
+
+	/**
+	 * Homogenizes a 4 dimensional vector (only if w is neither 0 nor 1).
+	 *
+	 * @param result the result
+	 * @param vector the vector
+	 */
+	static void vector4Homogenize(float[] result, float[] vector)
+	{
+		float w = vector[3];
+		if(w != 1 && w != 0)
+		{
+			for(int i=0; i<4; i++)
+				result[i] = vector[i] / w;
+		}
+	}
+
+	/**
+	 * Gets a component of a 4 dimensional vector as if it was homogenized,
+	 * without modifying the vector.
+	 *
+	 * @param vector the vector
+	 * @param i the index of the component
+	 * @return the homogenized component
+	 */
+	static float vector4Homogenized(float[] vector, int i)
+	{
+		float w = vector[3];
+		if(w != 1 && w != 0)
+			return vector[i] / w;
+		return vector[i];
+	}
+
+	/**
+	 * Combines a 4 dimensional vector with another vector component by
+	 * component. Like the native version, this is homogenized first and only
+	 * the first three components are combined. The other vector is read as if
+	 * it was homogenized if it has four components.
+	 *
+	 * @param op one of OP_ADD, OP_SUBTRACT, OP_MULTIPLY, OP_DIVIDE
+	 * @param v the vector (result written back into this)
+	 * @param other the other vector
+	 */
+	static void vector4Combine(int op, float[] v, float[] other)
+	{
+		vector4Homogenize(v, v);
+		for(int i=0; i<3; i++)
+		{
+			float o = other.length == 4 ? vector4Homogenized(other, i) : other[i];
+			switch(op)
+			{
+			case OP_ADD:		v[i] += o; break;
+			case OP_SUBTRACT:	v[i] -= o; break;
+			case OP_MULTIPLY:	v[i] *= o; break;
+			default:			v[i] /= o; break;
+			}
+		}
+	}
+
+	/**
+	 * Combines a 4 dimensional vector with a skalar. Like the native version,
+	 * this is homogenized first and only the first three components are
+	 * combined.
+	 *
+	 * @param op one of OP_ADD, OP_SUBTRACT, OP_MULTIPLY, OP_DIVIDE
+	 * @param v the vector (result written back into this)
+	 * @param s the skalar
+	 */
+	static void vector4Combine(int op, float[] v, float s)
+	{
+		vector4Homogenize(v, v);
+		switch(op)
+		{
+		case OP_ADD:		vectorAddSkalar(3, v, v, s); break;
+		case OP_SUBTRACT:	vectorSubtractSkalar(3, v, v, s); break;
+		case OP_MULTIPLY:	vectorMultiplySkalar(3, v, v, s); break;
+		default:			vectorDivideSkalar(3, v, v, s); break;
+		}
+	}
+
+	/**
+	 * Dot product of two homogenized 4 dimensional vectors.
+	 *
+	 * @param a the first vector
+	 * @param b the second vector
+	 * @return the dot product
+	 */
+	static float vector4DotProduct(float[] a, float[] b)
+	{
+		float sum = 0;
+		for(int i=0; i<3; i++)
+			sum += vector4Homogenized(a, i)*vector4Homogenized(b, i);
+		return sum;
+	}
+
+	/**
+	 * Length of a homogenized 4 dimensional vector.
+	 *
+	 * @param v the vector
+	 * @return the length
+	 */
+	static float vector4Length(float[] v)
+	{
+		float sum = 0;
+		for(int i=0; i<3; i++)
+		{
+			float c = vector4Homogenized(v, i);
+			sum += c*c;
+		}
+		return (float)Math.sqrt(sum);
+	}
+
+	/**
+	 * Homogenizes a 4 dimensional vector and normalizes its first three
+	 * components.
+	 *
+	 * @param v the vector
+	 */
+	static void vector4Normalize(float[] v)
+	{
+		vector4Homogenize(v, v);
+		vectorNormalize(3, v, v);
+	}
+
+	/**
+	 * Homogenizes a 4 dimensional vector and inverts its first three
+	 * components.
+	 *
+	 * @param v the vector
+	 */
+	static void vector4Invert(float[] v)
+	{
+		vector4Homogenize(v, v);
+		vectorInvert(3, v);
+	}
+
+	/**
+	 * Cross product.
+	 *
+	 * @param result the result
+	 * @param a the first vector
+	 * @param b the second vector
+	 */
+	static void vector3CrossProduct(float[] result, float[] a, float[] b)
+	{
+		float x = a[1]*b[2] - a[2]*b[1];
+		float y = a[2]*b[0] - a[0]*b[2];
+		float z = a[0]*b[1] - a[1]*b[0];
+		result[0] = x;
+		result[1] = y;
+		result[2] = z;
+	}
+
+	/**
+	 * Matrix multiplication result = left * right (column major).
+	 * result may be the same array as left or right.
+	 *
+	 * @param left the left matrix
+	 * @param right the right matrix
+	 * @param result the result
+	 */
+	static void matrixMult(float[] left, float[] right, float[] result)
+	{
+		float l0 = left[ 0], l1 = left[ 1], l2 = left[ 2], l3 = left[ 3];
+		float l4 = left[ 4], l5 = left[ 5], l6 = left[ 6], l7 = left[ 7];
+		float l8 = left[ 8], l9 = left[ 9], l10 = left[10], l11 = left[11];
+		float l12 = left[12], l13 = left[13], l14 = left[14], l15 = left[15];
+
+		for(int c=0; c<16; c+=4)
+		{
+			float r0 = right[c], r1 = right[c+1], r2 = right[c+2], r3 = right[c+3];
+			result[c  ] = l0*r0 + l4*r1 + l8*r2 + l12*r3;
+			result[c+1] = l1*r0 + l5*r1 + l9*r2 + l13*r3;
+			result[c+2] = l2*r0 + l6*r1 + l10*r2 + l14*r3;
+			result[c+3] = l3*r0 + l7*r1 + l11*r2 + l15*r3;
+		}
+	}
+
+	/**
+	 * Batched matrix multiplication result[i] = left[i] * right[i]
+	 * (see MathKernels).
+	 *
+	 * @param left the left matrices (16 floats each)
+	 * @param right the right matrices
+	 * @param result the result (may be left or right)
+	 * @param count the number of matrices
+	 */
+	static void multMatrices(float[] left, float[] right, float[] result, int count)
+	{
+		for(int i=0; i<16*count; i+=16)
+		{
+			float l0 = left[i   ], l1 = left[i+ 1], l2 = left[i+ 2], l3 = left[i+ 3];
+			float l4 = left[i+ 4], l5 = left[i+ 5], l6 = left[i+ 6], l7 = left[i+ 7];
+			float l8 = left[i+ 8], l9 = left[i+ 9], l10 = left[i+10], l11 = left[i+11];
+			float l12 = left[i+12], l13 = left[i+13], l14 = left[i+14], l15 = left[i+15];
+
+			for(int c=i; c<i+16; c+=4)
+			{
+				float r0 = right[c], r1 = right[c+1], r2 = right[c+2], r3 = right[c+3];
+				result[c  ] = l0*r0 + l4*r1 + l8*r2 + l12*r3;
+				result[c+1] = l1*r0 + l5*r1 + l9*r2 + l13*r3;
+				result[c+2] = l2*r0 + l6*r1 + l10*r2 + l14*r3;
+				result[c+3] = l3*r0 + l7*r1 + l11*r2 + l15*r3;
+			}
+		}
+	}
+
+	/**
+	 * Checks if a matrix is affine, i.e. its last row is (0, 0, 0, 1).
+	 *
+	 * @param m16 the matrix
+	 * @return true, if the matrix has no projective terms
+	 */
+	static boolean isAffine(float[] m16)
+	{
+		return m16[3] == 0 && m16[7] == 0 && m16[11] == 0 && m16[15] == 1;
+	}
+
+	/**
+	 * Matrix multiplication result = left * right for two affine matrices.
+	 * Only the upper 4x3 part is calculated, the last row is (0, 0, 0, 1).
+	 * result may be the same array as left or right.
+	 *
+	 * @param left the left matrix (must be affine)
+	 * @param right the right matrix (must be affine)
+	 * @param result the result
+	 */
+	static void matrixMultAffine(float[] left, float[] right, float[] result)
+	{
+		float l0 = left[ 0], l1 = left[ 1], l2 = left[ 2];
+		float l4 = left[ 4], l5 = left[ 5], l6 = left[ 6];
+		float l8 = left[ 8], l9 = left[ 9], l10 = left[10];
+
+		for(int c=0; c<12; c+=4)
+		{
+			float r0 = right[c], r1 = right[c+1], r2 = right[c+2];
+			result[c  ] = l0*r0 + l4*r1 + l8*r2;
+			result[c+1] = l1*r0 + l5*r1 + l9*r2;
+			result[c+2] = l2*r0 + l6*r1 + l10*r2;
+			result[c+3] = 0;
+		}
+
+		float r12 = right[12], r13 = right[13], r14 = right[14];
+		result[12] = l0*r12 + l4*r13 + l8*r14 + left[12];
+		result[13] = l1*r12 + l5*r13 + l9*r14 + left[13];
+		result[14] = l2*r12 + l6*r13 + l10*r14 + left[14];
+		result[15] = 1;
+	}
+
+	/**
+	 * Sets m16 = T * m16 in place, where T is a translation. Works for any
+	 * matrix, for an affine one only the translation column changes.
+	 *
+	 * @param m16 the matrix
+	 * @param tx the tx
+	 * @param ty the ty
+	 * @param tz the tz
+	 */
+	static void premultTranslate(float[] m16, float tx, float ty, float tz)
+	{
+		for(int c=0; c<16; c+=4)
+		{
+			float w = m16[c+3];
+			if(w != 0)
+			{
+				m16[c  ] += tx*w;
+				m16[c+1] += ty*w;
+				m16[c+2] += tz*w;
+			}
+		}
+	}
+
+	/**
+	 * Sets m16 = S * m16 in place, where S is a scale.
+	 *
+	 * @param m16 the matrix
+	 * @param sx the sx
+	 * @param sy the sy
+	 * @param sz the sz
+	 */
+	static void premultScale(float[] m16, float sx, float sy, float sz)
+	{
+		for(int c=0; c<16; c+=4)
+		{
+			m16[c  ] *= sx;
+			m16[c+1] *= sy;
+			m16[c+2] *= sz;
+		}
+	}
+
+	/**
+	 * Sets m16 = R * m16 in place, where R is a linear transformation
+	 * (given by its 3x3 rows) without translation and projective terms.
+	 * The last row of m16 is not changed by this.
+	 *
+	 * @param m16 the matrix
+	 * @param r00 row 0, column 0 of R
+	 * @param r01 row 0, column 1 of R
+	 * @param r02 row 0, column 2 of R
+	 * @param r10 row 1, column 0 of R
+	 * @param r11 row 1, column 1 of R
+	 * @param r12 row 1, column 2 of R
+	 * @param r20 row 2, column 0 of R
+	 * @param r21 row 2, column 1 of R
+	 * @param r22 row 2, column 2 of R
+	 */
+	static void premultLinear(float[] m16,
+			float r00, float r01, float r02,
+			float r10, float r11, float r12,
+			float r20, float r21, float r22)
+	{
+		for(int c=0; c<16; c+=4)
+		{
+			float a = m16[c], b = m16[c+1], d = m16[c+2];
+			m16[c  ] = r00*a + r01*b + r02*d;
+			m16[c+1] = r10*a + r11*b + r12*d;
+			m16[c+2] = r20*a + r21*b + r22*d;
+		}
+	}
+
+	/**
+	 * Sets m16 = R * m16 in place, where R is a rotation around axis with
+	 * angle alpha (the same rotation as setRotate() builds).
+	 *
+	 * @param m16 the matrix
+	 * @param axis the axis (does not need to be normalized, is not changed)
+	 * @param alpha the angle
+	 */
+	static void premultRotate(float[] m16, float[] axis, float alpha)
+	{
+		float x = axis[0], y = axis[1], z = axis[2];
+		float length = (float)Math.sqrt(x*x + y*y + z*z);
+		if(length != 0 && length != 1)
+		{
+			x /= length;
+			y /= length;
+			z /= length;
+		}
+
+		float cosa = FastMath.cos(alpha);
+		float sina = FastMath.sin(alpha);
+		float t = 1 - cosa;
+
+		premultLinear(m16,
+				x * x + (1 - x * x) * cosa,	x * y * t - z * sina,		x * z * t + y * sina,
+				x * y * t + z * sina,		y * y + (1 - y * y) * cosa,	y * z * t - x * sina,
+				x * z * t - y * sina,		y * z * t + x * sina,		z * z + (1 - z * z) * cosa);
+	}
+
+	/**
+	 * Inverts a rigid transformation (rotation and translation only):
+	 * the rotation is transposed and the translation rotated back.
+	 * result may be the same array as m16.
+	 *
+	 * @param m16 the matrix (must be rigid)
+	 * @param result the inverse
+	 */
+	static void invertRigid(float[] m16, float[] result)
+	{
+		float m0 = m16[0], m1 = m16[1], m2 = m16[ 2];
+		float m4 = m16[4], m5 = m16[5], m6 = m16[ 6];
+		float m8 = m16[8], m9 = m16[9], m10 = m16[10];
+		float tx = m16[12], ty = m16[13], tz = m16[14];
+
+		result[ 0] = m0;	result[ 4] = m1;	result[ 8] = m2;	result[12] = -(m0*tx + m1*ty + m2*tz);
+		result[ 1] = m4;	result[ 5] = m5;	result[ 9] = m6;	result[13] = -(m4*tx + m5*ty + m6*tz);
+		result[ 2] = m8;	result[ 6] = m9;	result[10] = m10;	result[14] = -(m8*tx + m9*ty + m10*tz);
+		result[ 3] = 0;		result[ 7] = 0;		result[11] = 0;		result[15] = 1;
+	}
+
+	/**
+	 * Inverts an affine transformation using the adjugate of its 3x3 part.
+	 * result may be the same array as m16.
+	 *
+	 * @param m16 the matrix (must be affine)
+	 * @param result the inverse
+	 * @return false, if the matrix is singular (result is not changed then)
+	 */
+	static boolean invertAffine(float[] m16, float[] result)
+	{
+		float m0 = m16[0], m1 = m16[1], m2 = m16[ 2];
+		float m4 = m16[4], m5 = m16[5], m6 = m16[ 6];
+		float m8 = m16[8], m9 = m16[9], m10 = m16[10];
+		float tx = m16[12], ty = m16[13], tz = m16[14];
+
+		float a0 = m5*m10 - m6*m9;
+		float a1 = m6*m8 - m4*m10;
+		float a2 = m4*m9 - m5*m8;
+		float det = m0*a0 + m1*a1 + m2*a2;
+		if(det == 0)
+			return false;
+		float invDet = 1 / det;
+
+		float i0 = a0 * invDet;
+		float i1 = (m2*m9 - m1*m10) * invDet;
+		float i2 = (m1*m6 - m2*m5) * invDet;
+		float i4 = a1 * invDet;
+		float i5 = (m0*m10 - m2*m8) * invDet;
+		float i6 = (m2*m4 - m0*m6) * invDet;
+		float i8 = a2 * invDet;
+		float i9 = (m1*m8 - m0*m9) * invDet;
+		float i10 = (m0*m5 - m1*m4) * invDet;
+
+		result[ 0] = i0;	result[ 4] = i4;	result[ 8] = i8;	result[12] = -(i0*tx + i4*ty + i8*tz);
+		result[ 1] = i1;	result[ 5] = i5;	result[ 9] = i9;	result[13] = -(i1*tx + i5*ty + i9*tz);
+		result[ 2] = i2;	result[ 6] = i6;	result[10] = i10;	result[14] = -(i2*tx + i6*ty + i10*tz);
+		result[ 3] = 0;		result[ 7] = 0;		result[11] = 0;		result[15] = 1;
+		return true;
+	}
+
+	/**
+	 * Inverts a general 4x4 matrix (cofactor expansion).
+	 * result may be the same array as m16.
+	 *
+	 * @param m16 the matrix
+	 * @param result the inverse
+	 * @return false, if the matrix is singular (result is not changed then)
+	 */
+	static boolean invertGeneral(float[] m16, float[] result)
+	{
+		float[] m = m16;
+		float i0 =  m[5]*m[10]*m[15] - m[5]*m[11]*m[14] - m[9]*m[6]*m[15] + m[9]*m[7]*m[14] + m[13]*m[6]*m[11] - m[13]*m[7]*m[10];
+		float i4 = -m[4]*m[10]*m[15] + m[4]*m[11]*m[14] + m[8]*m[6]*m[15] - m[8]*m[7]*m[14] - m[12]*m[6]*m[11] + m[12]*m[7]*m[10];
+		float i8 =  m[4]*m[9]*m[15] - m[4]*m[11]*m[13] - m[8]*m[5]*m[15] + m[8]*m[7]*m[13] + m[12]*m[5]*m[11] - m[12]*m[7]*m[9];
+		float i12 = -m[4]*m[9]*m[14] + m[4]*m[10]*m[13] + m[8]*m[5]*m[14] - m[8]*m[6]*m[13] - m[12]*m[5]*m[10] + m[12]*m[6]*m[9];
+
+		float det = m[0]*i0 + m[1]*i4 + m[2]*i8 + m[3]*i12;
+		if(det == 0)
+			return false;
+		float invDet = 1 / det;
+
+		float i1 = -m[1]*m[10]*m[15] + m[1]*m[11]*m[14] + m[9]*m[2]*m[15] - m[9]*m[3]*m[14] - m[13]*m[2]*m[11] + m[13]*m[3]*m[10];
+		float i5 =  m[0]*m[10]*m[15] - m[0]*m[11]*m[14] - m[8]*m[2]*m[15] + m[8]*m[3]*m[14] + m[12]*m[2]*m[11] - m[12]*m[3]*m[10];
+		float i9 = -m[0]*m[9]*m[15] + m[0]*m[11]*m[13] + m[8]*m[1]*m[15] - m[8]*m[3]*m[13] - m[12]*m[1]*m[11] + m[12]*m[3]*m[9];
+		float i13 = m[0]*m[9]*m[14] - m[0]*m[10]*m[13] - m[8]*m[1]*m[14] + m[8]*m[2]*m[13] + m[12]*m[1]*m[10] - m[12]*m[2]*m[9];
+		float i2 =  m[1]*m[6]*m[15] - m[1]*m[7]*m[14] - m[5]*m[2]*m[15] + m[5]*m[3]*m[14] + m[13]*m[2]*m[7] - m[13]*m[3]*m[6];
+		float i6 = -m[0]*m[6]*m[15] + m[0]*m[7]*m[14] + m[4]*m[2]*m[15] - m[4]*m[3]*m[14] - m[12]*m[2]*m[7] + m[12]*m[3]*m[6];
+		float i10 = m[0]*m[5]*m[15] - m[0]*m[7]*m[13] - m[4]*m[1]*m[15] + m[4]*m[3]*m[13] + m[12]*m[1]*m[7] - m[12]*m[3]*m[5];
+		float i14 = -m[0]*m[5]*m[14] + m[0]*m[6]*m[13] + m[4]*m[1]*m[14] - m[4]*m[2]*m[13] - m[12]*m[1]*m[6] + m[12]*m[2]*m[5];
+		float i3 = -m[1]*m[6]*m[11] + m[1]*m[7]*m[10] + m[5]*m[2]*m[11] - m[5]*m[3]*m[10] - m[9]*m[2]*m[7] + m[9]*m[3]*m[6];
+		float i7 =  m[0]*m[6]*m[11] - m[0]*m[7]*m[10] - m[4]*m[2]*m[11] + m[4]*m[3]*m[10] + m[8]*m[2]*m[7] - m[8]*m[3]*m[6];
+		float i11 = -m[0]*m[5]*m[11] + m[0]*m[7]*m[9] + m[4]*m[1]*m[11] - m[4]*m[3]*m[9] - m[8]*m[1]*m[7] + m[8]*m[3]*m[5];
+		float i15 = m[0]*m[5]*m[10] - m[0]*m[6]*m[9] - m[4]*m[1]*m[10] + m[4]*m[2]*m[9] + m[8]*m[1]*m[6] - m[8]*m[2]*m[5];
+
+		result[ 0] = i0*invDet;		result[ 4] = i4*invDet;		result[ 8] = i8*invDet;		result[12] = i12*invDet;
+		result[ 1] = i1*invDet;		result[ 5] = i5*invDet;		result[ 9] = i9*invDet;		result[13] = i13*invDet;
+		result[ 2] = i2*invDet;		result[ 6] = i6*invDet;		result[10] = i10*invDet;	result[14] = i14*invDet;
+		result[ 3] = i3*invDet;		result[ 7] = i7*invDet;		result[11] = i11*invDet;	result[15] = i15*invDet;
+		return true;
+	}
+
+	/**
+	 * Transforms a point. A 3 dimensional point is extended by w=1 and
+	 * homogenized afterwards, a 4 dimensional one is transformed as is.
+	 *
+	 * @param m16 the matrix
+	 * @param vector the vector (result written back into this)
+	 */
+	static void transformPoint(float[] m16, float[] vector)
+	{
+		float vx = vector[0], vy = vector[1], vz = vector[2];
+		float vw = vector.length == 4 ? vector[3] : 1;
+
+		float x = m16[ 0]*vx + m16[ 4]*vy + m16[ 8]*vz + m16[12]*vw;
+		float y = m16[ 1]*vx + m16[ 5]*vy + m16[ 9]*vz + m16[13]*vw;
+		float z = m16[ 2]*vx + m16[ 6]*vy + m16[10]*vz + m16[14]*vw;
+		float w = m16[ 3]*vx + m16[ 7]*vy + m16[11]*vz + m16[15]*vw;
+
+		if(vector.length == 4)
+			vector[3] = w;
+		else if(w != 1 && w != 0)
+		{
+			x /= w;
+			y /= w;
+			z /= w;
+		}
+		vector[0] = x;
+		vector[1] = y;
+		vector[2] = z;
+	}
+
+	/**
+	 * Transforms an array of points (see MathKernels).
+	 *
+	 * @param m16 the matrix
+	 * @param points the points (packed xyz)
+	 * @param result the transformed points (may be points)
+	 * @param count the number of points
+	 */
+	static void transformPoints(float[] m16, float[] points, float[] result, int count)
+	{
+		for(int i=0; i<3*count; i+=3)
+		{
+			float vx = points[i], vy = points[i+1], vz = points[i+2];
+			float x = m16[ 0]*vx + m16[ 4]*vy + m16[ 8]*vz + m16[12];
+			float y = m16[ 1]*vx + m16[ 5]*vy + m16[ 9]*vz + m16[13];
+			float z = m16[ 2]*vx + m16[ 6]*vy + m16[10]*vz + m16[14];
+			float w = m16[ 3]*vx + m16[ 7]*vy + m16[11]*vz + m16[15];
+
+			if(w != 1 && w != 0)
+			{
+				x /= w;
+				y /= w;
+				z /= w;
+			}
+			result[i  ] = x;
+			result[i+1] = y;
+			result[i+2] = z;
+		}
+	}
+
+	/**
+	 * Transforms an array of spheres (see MathKernels).
+	 *
+	 * @param m16 the matrix
+	 * @param spheres the spheres (packed xyzr)
+	 * @param result the transformed spheres (may be spheres)
+	 * @param count the number of spheres
+	 */
+	static void transformSpheres(float[] m16, float[] spheres, float[] result, int count)
+	{
+		for(int i=0; i<4*count; i+=4)
+			result[i+3] = transformSphere(m16, 0, spheres[i], spheres[i+1], spheres[i+2], spheres[i+3], result, i);
+	}
+
+	/**
+	 * Finds the spheres overlapping a query sphere (see MathKernels).
+	 *
+	 * @param spheres the spheres (packed xyzr)
+	 * @param indices the indices of the spheres to test, null for the first count spheres
+	 * @param count the number of spheres to test
+	 * @param x the x coordinate of the query center
+	 * @param y the y coordinate of the query center
+	 * @param z the z coordinate of the query center
+	 * @param radius the radius of the query sphere
+	 * @param penetrationDepth the depth the spheres have to overlap
+	 * @param hits the positions (0..count-1) of the overlapping spheres
+	 * @return the number of hits
+	 */
+	static int overlapSpheres(float[] spheres, int[] indices, int count, float x, float y, float z, float radius, float penetrationDepth, int[] hits)
+	{
+		float reach = radius - penetrationDepth;
+		int n = 0;
+		for(int k=0; k<count; k++)
+		{
+			int s = 4*(indices != null ? indices[k] : k);
+			float dx = spheres[s]-x, dy = spheres[s+1]-y, dz = spheres[s+2]-z;
+			float overlap = spheres[s+3] + reach;
+			if(overlap > 0 && dx*dx + dy*dy + dz*dz < overlap*overlap)
+				hits[n++] = k;
+		}
+		return n;
+	}
+
+	/**
+	 * Finds the overlapping pairs of spheres (see MathKernels).
+	 *
+	 * @param spheres the spheres (packed xyzr)
+	 * @param pairs the pairs (interleaved indices of the spheres)
+	 * @param count the number of pairs
+	 * @param penetrationDepth the depth the spheres have to overlap
+	 * @param hits the positions (0..count-1) of the overlapping pairs
+	 * @return the number of hits
+	 */
+	static int overlapPairs(float[] spheres, int[] pairs, int count, float penetrationDepth, int[] hits)
+	{
+		int n = 0;
+		for(int k=0; k<count; k++)
+		{
+			int a = 4*pairs[2*k], b = 4*pairs[2*k+1];
+			float dx = spheres[b]-spheres[a], dy = spheres[b+1]-spheres[a+1], dz = spheres[b+2]-spheres[a+2];
+			float overlap = spheres[a+3] + spheres[b+3] - penetrationDepth;
+			if(overlap > 0 && dx*dx + dy*dy + dz*dz < overlap*overlap)
+				hits[n++] = k;
+		}
+		return n;
+	}
+
+	/**
+	 * Transforms a sphere by transforming its center and a point on its hull.
+	 *
+	 * @param m16 the matrix
+	 * @param center the center (result written back into this)
+	 * @param radius the radius
+	 * @return the transformed radius
+	 */
+	static float transformSphere(float[] m16, float[] center, float radius)
+	{
+		return transformSphere(m16, 0, center[0], center[1], center[2], radius, center, 0);
+	}
+
+	/**
+	 * Transforms a sphere by transforming its center and a point on its hull.
+	 *
+	 * @param m16 the array containing the matrix
+	 * @param mOffset the offset of the matrix in m16
+	 * @param cx the x coordinate of the center
+	 * @param cy the y coordinate of the center
+	 * @param cz the z coordinate of the center
+	 * @param radius the radius
+	 * @param center the transformed center is written into this
+	 * @param cOffset the offset of the center in center
+	 * @return the transformed radius
+	 */
+	static float transformSphere(float[] m16, int mOffset, float cx, float cy, float cz, float radius, float[] center, int cOffset)
+	{
+		float m0 = m16[mOffset   ], m1 = m16[mOffset+ 1], m2 = m16[mOffset+ 2], m3 = m16[mOffset+ 3];
+		float m4 = m16[mOffset+ 4], m5 = m16[mOffset+ 5], m6 = m16[mOffset+ 6], m7 = m16[mOffset+ 7];
+		float m8 = m16[mOffset+ 8], m9 = m16[mOffset+ 9], m10 = m16[mOffset+10], m11 = m16[mOffset+11];
+		float m12 = m16[mOffset+12], m13 = m16[mOffset+13], m14 = m16[mOffset+14], m15 = m16[mOffset+15];
+		float hx = cx + radius;
+
+		float x = m0*cx + m4*cy + m8*cz + m12;
+		float y = m1*cx + m5*cy + m9*cz + m13;
+		float z = m2*cx + m6*cy + m10*cz + m14;
+		float w = m3*cx + m7*cy + m11*cz + m15;
+		if(w != 1 && w != 0)
+		{
+			x /= w;
+			y /= w;
+			z /= w;
+		}
+
+		float rx = m0*hx + m4*cy + m8*cz + m12;
+		float ry = m1*hx + m5*cy + m9*cz + m13;
+		float rz = m2*hx + m6*cy + m10*cz + m14;
+		float rw = m3*hx + m7*cy + m11*cz + m15;
+		if(rw != 1 && rw != 0)
+		{
+			rx /= rw;
+			ry /= rw;
+			rz /= rw;
+		}
+
+		center[cOffset  ] = x;
+		center[cOffset+1] = y;
+		center[cOffset+2] = z;
+
+		rx -= x;
+		ry -= y;
+		rz -= z;
+		return (float)Math.sqrt(rx*rx + ry*ry + rz*rz);
+	}
+
+	/**
+	 * Merges the group space spheres of the children first to end-1 of a
+	 * SphereBatch into a group sphere (see transformSphereHierarchy()).
+	 *
+	 * @param groupSpheres the group spheres
+	 * @param gs the offset of the group sphere
+	 * @param childSpheres the child spheres
+	 * @param first the first child
+	 * @param end the last child + 1
+	 */
+	private static void mergeChildSpheres(float[] groupSpheres, int gs, float[] childSpheres, int first, int end)
+	{
+		int count = end-first;
+		if(count == 1)
+		{
+			int cs = 12*first;
+			for(int i=0; i<4; i++)
+				groupSpheres[gs+i] = childSpheres[cs+4+i];
+		}
+		else if(count > 1)
+		{
+			float cx = 0, cy = 0, cz = 0;
+			for(int c=first; c<end; c++)
+			{
+				cx += childSpheres[12*c+4];
+				cy += childSpheres[12*c+5];
+				cz += childSpheres[12*c+6];
+			}
+			cx /= count;
+			cy /= count;
+			cz /= count;
+
+			float r = 0;
+			for(int c=first; c<end; c++)
+			{
+				int cs = 12*c;
+				float x = childSpheres[cs+4] - cx;
+				float y = childSpheres[cs+5] - cy;
+				float z = childSpheres[cs+6] - cz;
+				float tempR = (float)Math.sqrt(x*x + y*y + z*z) + childSpheres[cs+7];
+				if(tempR > r)
+					r = tempR;
+			}
+			groupSpheres[gs  ] = cx;
+			groupSpheres[gs+1] = cy;
+			groupSpheres[gs+2] = cz;
+			groupSpheres[gs+3] = r;
+		}
+	}
+
+	/**
+	 * Transforms a two level hierarchy of bounding spheres (see SphereBatch).
+	 * For each group, the spheres of its children are transformed into group
+	 * space by their own matrices, merged into the group sphere and
+	 * transformed into world space by the group matrix together with the
+	 * group sphere. Groups are skipped or only transformed into world space
+	 * depending on their state (see SphereBatch).
+	 *
+	 * @param groupMatrices the group matrices (16 floats per group)
+	 * @param groupFirst the index of the first child of each group, groupFirst[groupCount] is the number of children
+	 * @param groupStates the state of each group
+	 * @param groupSpheres the group spheres (group space xyzr, world xyzr per group)
+	 * @param childMatrices the child matrices (16 floats per child)
+	 * @param childSpheres the child spheres (local xyzr, group space xyzr, world xyzr per child)
+	 * @param groupCount the number of groups
+	 */
+	static void transformSphereHierarchy(float[] groupMatrices, int[] groupFirst, int[] groupStates, float[] groupSpheres, float[] childMatrices, float[] childSpheres, int groupCount)
+	{
+		for(int g=0; g<groupCount; g++)
+		{
+			int state = groupStates[g];
+			if(state == SphereBatch.UNCHANGED)
+				continue;
+			
+			int first = groupFirst[g];
+			int end = groupFirst[g+1];
+			int gm = 16*g;
+			int gs = 8*g;
+
+			// if only the group moved, the group space spheres of the last frame are still valid
+			if(state == SphereBatch.CHANGED)
+			{
+				// children: local -> group space
+				for(int c=first; c<end; c++)
+				{
+					int cs = 12*c;
+					childSpheres[cs+7] = transformSphere(childMatrices, 16*c, childSpheres[cs], childSpheres[cs+1], childSpheres[cs+2], childSpheres[cs+3], childSpheres, cs+4);
+				}
+
+				// merge the children into the group sphere
+				mergeChildSpheres(groupSpheres, gs, childSpheres, first, end);
+			}
+
+			// group and children: group space -> world space
+			groupSpheres[gs+7] = transformSphere(groupMatrices, gm, groupSpheres[gs], groupSpheres[gs+1], groupSpheres[gs+2], groupSpheres[gs+3], groupSpheres, gs+4);
+			for(int c=first; c<end; c++)
+			{
+				int cs = 12*c;
+				childSpheres[cs+11] = transformSphere(groupMatrices, gm, childSpheres[cs+4], childSpheres[cs+5], childSpheres[cs+6], childSpheres[cs+7], childSpheres, cs+8);
+			}
+		}
+	}
+
+	/**
+	 * Sets a rotation matrix. Unlike the native version the axis is
+	 * normalized on a copy and not written back.
+	 *
+	 * @param m16 the matrix
+	 * @param axis the axis
+	 * @param alpha the angle
+	 */
+	static void setRotate(float[] m16, float[] axis, float alpha)
+	{
+		float x = axis[0], y = axis[1], z = axis[2];
+		float length = (float)Math.sqrt(x*x + y*y + z*z);
+		if(length != 0 && length != 1)
+		{
+			x /= length;
+			y /= length;
+			z /= length;
+		}
+
+		float cosa = FastMath.cos(alpha);
+		float sina = FastMath.sin(alpha);
+
+		m16[ 0] = x * x + (1 - x * x) * cosa;
+		m16[ 1] = x * y * (1 - cosa) + z * sina;
+		m16[ 2] = x * z * (1 - cosa) - y * sina;
+		m16[ 3] = 0;
+
+		m16[ 4] = x * y * (1 - cosa) - z * sina;
+		m16[ 5] = y * y + (1 - y * y) * cosa;
+		m16[ 6] = y * z * (1 - cosa) + x * sina;
+		m16[ 7] = 0;
+
+		m16[ 8] = x * z * (1 - cosa) + y * sina;
+		m16[ 9] = y * z * (1 - cosa) - x * sina;
+		m16[10] = z * z + (1 - z * z) * cosa;
+		m16[11] = 0;
+
+		m16[12] = 0;
+		m16[13] = 0;
+		m16[14] = 0;
+		m16[15] = 1;
+	}
+
+	/**
+	 * Sets a rotation matrix from a quaternion.
+	 *
+	 * @param m16 the matrix
+	 * @param x the x
+	 * @param y the y
+	 * @param z the z
+	 * @param w the w
+	 */
+	static void setFromQuaternion(float[] m16, float x, float y, float z, float w)
+	{
+		m16[ 0] = 1.0f - 2.0f * ( y * y + z * z );
+		m16[ 1] = 2.0f * ( x * y + w * z );
+		m16[ 2] = 2.0f * ( x * z - w * y );
+		m16[ 3] = 0.0f;
+
+		m16[ 4] = 2.0f * ( x * y - w * z );
+		m16[ 5] = 1.0f - 2.0f * ( x * x + z * z );
+		m16[ 6] = 2.0f * ( y * z + w * x );
+		m16[ 7] = 0.0f;
+
+		m16[ 8] = 2.0f * ( x * z + w * y );
+		m16[ 9] = 2.0f * ( y * z - w * x );
+		m16[10] = 1.0f - 2.0f * ( x * x + y * y );
+		m16[11] = 0.0f;
+
+		m16[12] = 0.0f;
+		m16[13] = 0.0f;
+		m16[14] = 0.0f;
+		m16[15] = 1.0f;
+	}
+
+	/**
+	 * Whether a point is inside a sphere.
+	 *
+	 * @param center the center of the sphere
+	 * @param radius the radius of the sphere
+	 * @param point the point
+	 * @return true, if the point is inside
+	 */
+	static boolean isPointInside(float[] center, float radius, float[] point)
+	{
+		float x = point[0] - center[0];
+		float y = point[1] - center[1];
+		float z = point[2] - center[2];
+		return (float)Math.sqrt(x*x + y*y + z*z) <= radius;
+	}
+
+	/**
+	 * Calculates the bounding sphere of a set of spheres. The center is set
+	 * to the centroid of the centers.
+	 *
+	 * @param centers the packed centers (xyz)
+	 * @param radii the radii
+	 * @param count the number of spheres
+	 * @param center the resulting center
+	 * @return the resulting radius
+	 */
+	static float setSphereSet(float[] centers, float[] radii, int count, float[] center)
+	{
+		float cx = 0, cy = 0, cz = 0;
+		for(int i=0; i<count; i++)
+		{
+			cx += centers[3*i];
+			cy += centers[3*i+1];
+			cz += centers[3*i+2];
+		}
+		cx /= count;
+		cy /= count;
+		cz /= count;
+
+		float r = 0;
+		for(int i=0; i<count; i++)
+		{
+			float x = centers[3*i] - cx;
+			float y = centers[3*i+1] - cy;
+			float z = centers[3*i+2] - cz;
+			float tempR = (float)Math.sqrt(x*x + y*y + z*z) + (radii != null ? radii[i] : 0);
+			if(tempR > r)
+				r = tempR;
+		}
+
+		center[0] = cx;
+		center[1] = cy;
+		center[2] = cz;
+		return r;
+	}
+
+	/**
+	 * Calculates the perimeter of an ellipse (Ramanujan's approximation).
+	 *
+	 * @param a the main axis
+	 * @param b the secondary axis
+	 * @return the perimeter
+	 */
+	static float ellipsePerimeter(float[] a, float[] b)
+	{
+		float lengthA = vectorLength(3, a);
+		float lengthB = vectorLength(3, b);
+
+		float sum = lengthA+lengthB;
+		float lambda = (lengthA-lengthB)/sum;
+		float threeLambdaPowTwo = 3*lambda*lambda;
+
+		return (float)Math.PI * sum * (1+(threeLambdaPowTwo/(10+((float)Math.sqrt(4.0f-threeLambdaPowTwo)))));
+	}
+
+	/**
+	 * Calculates a point on an ellipse: center + a*cos(t) + b*sin(t).
+	 *
+	 * @param center the center
+	 * @param a the main axis
+	 * @param b the secondary axis
+	 * @param result the result
+	 * @param t the parameter
+	 */
+	static void ellipsePoint(float[] center, float[] a, float[] b, float[] result, float t)
+	{
+		float cost = FastMath.cos(t);
+		float sint = FastMath.sin(t);
+		for(int i=0; i<3; i++)
+			result[i] = center[i] + (a[i]*cost + b[i]*sint);
+	}
+}
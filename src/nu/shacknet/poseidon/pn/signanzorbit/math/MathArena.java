@@ -0,0 +1,86 @@
+package nu.shacknet.poseidon.pn.signanzorbit.math;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * An off-heap arena for math data. All slots live in one direct,
+ * native-order FloatBuffer, so native code can read them through
+ * GetDirectBufferAddress and OpenGL can read them without marshalling.
+ * Slots are allocated once and never freed (bump allocation).
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class MathArena
+{
+	/** The buffer holding all slots. */
+	private final FloatBuffer buffer;
+
+	/** The number of allocated floats. */
+	private int size;
+
+	/**
+	 * Instantiates a new math arena.
+	 *
+	 * @param capacity the capacity in floats
+	 */
+	public MathArena(int capacity)
+	{
+		buffer = ByteBuffer.allocateDirect(capacity*4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		size = 0;
+	}
+
+	/**
+	 * Allocates a slot.
+	 *
+	 * @param length the length of the slot in floats
+	 * @return the offset of the slot or -1 if the arena is full
+	 */
+	public int allocate(int length)
+	{
+		if(size+length > buffer.capacity())
+			return -1;
+
+		int offset = size;
+		size += length;
+		return offset;
+	}
+
+	/**
+	 * Gets a view of a slot.
+	 *
+	 * @param offset the offset of the slot
+	 * @param length the length of the slot
+	 * @return a direct FloatBuffer sharing the content of the slot
+	 */
+	public FloatBuffer view(int offset, int length)
+	{
+		buffer.limit(offset+length);
+		buffer.position(offset);
+		FloatBuffer view = buffer.slice();
+		buffer.clear();
+		return view;
+	}
+
+	/**
+	 * Gets the buffer.
+	 *
+	 * @return the buffer holding all slots
+	 */
+	public FloatBuffer getBuffer()
+	{
+		return buffer;
+	}
+
+	/**
+	 * Gets the number of allocated floats.
+	 *
+	 * @return the size
+	 */
+	public int size()
+	{
+		return size;
+	}
+}
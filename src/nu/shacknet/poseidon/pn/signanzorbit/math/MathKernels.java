@@ -0,0 +1,211 @@
+package nu.shacknet.poseidon.pn.signanzorbit.math;
+
+import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
+
+/**
+ * Batch operations on packed float arrays. With the native backend each
+ * call is a single JNI call into a SIMD kernel (NEON on ARM cpus that
+ * support it, SSE on x86) or its scalar fallback, so per element costs
+ * stay far below the JNI overhead of the single element methods of
+ * Matrix44. With the Java backend the same loops run in JavaMath.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public final class MathKernels
+{
+	/** The name of the selected native implementation ("scalar", "sse" or "neon"). */
+	private static String implementation;
+
+	/**
+	 * Instantiates a new MathKernels (not used).
+	 */
+	private MathKernels()
+	{
+	}
+
+	/**
+	 * native selection of the kernels.
+	 *
+	 * @param simd whether to use SIMD kernels (if the cpu supports them)
+	 * @return the name of the selected implementation
+	 */
+	private static native String selectImplementation(boolean simd);
+
+	/**
+	 * Selects the native kernels. The library selects the SIMD kernels on
+	 * load, the scalar ones are only needed for comparison.
+	 *
+	 * @param simd whether to use SIMD kernels (if the cpu supports them)
+	 * @return the name of the selected implementation
+	 */
+	public static String useSimd(boolean simd)
+	{
+		implementation = selectImplementation(simd);
+		return implementation;
+	}
+
+	/**
+	 * Gets the name of the selected native implementation.
+	 *
+	 * @return "scalar", "sse" or "neon"
+	 */
+	public static String getImplementation()
+	{
+		if(implementation == null)
+			implementation = selectImplementation(true);
+		return implementation;
+	}
+
+	/**
+	 * native batched matrix multiplication.
+	 *
+	 * @param left the left matrices
+	 * @param right the right matrices
+	 * @param result the result
+	 * @param count the number of matrices
+	 */
+	private static native void nativeMultMatrices(float[] left, float[] right, float[] result, int count);
+
+	/**
+	 * Multiplies count pairs of matrices: result[i] = left[i] * right[i].
+	 *
+	 * @param left the left matrices (column major, 16 floats each)
+	 * @param right the right matrices
+	 * @param result the result, may be left or right
+	 * @param count the number of matrices
+	 */
+	public static void multMatrices(float[] left, float[] right, float[] result, int count)
+	{
+		if(Config.NATIVE_MATH)
+			nativeMultMatrices(left, right, result, count);
+		else
+			JavaMath.multMatrices(left, right, result, count);
+	}
+
+	/**
+	 * native point array transformation.
+	 *
+	 * @param m16 the matrix
+	 * @param points the points
+	 * @param result the result
+	 * @param count the number of points
+	 */
+	private static native void nativeTransformPoints(float[] m16, float[] points, float[] result, int count);
+
+	/**
+	 * Transforms count points by one matrix (like Matrix44.transformPoint()).
+	 *
+	 * @param m16 the matrix (column major)
+	 * @param points the points (packed xyz)
+	 * @param result the transformed points, may be points
+	 * @param count the number of points
+	 */
+	public static void transformPoints(float[] m16, float[] points, float[] result, int count)
+	{
+		if(Config.NATIVE_MATH)
+			nativeTransformPoints(m16, points, result, count);
+		else
+			JavaMath.transformPoints(m16, points, result, count);
+	}
+
+	/**
+	 * native sphere array transformation.
+	 *
+	 * @param m16 the matrix
+	 * @param spheres the spheres
+	 * @param result the result
+	 * @param count the number of spheres
+	 */
+	private static native void nativeTransformSpheres(float[] m16, float[] spheres, float[] result, int count);
+
+	/**
+	 * Transforms count spheres by one matrix (like Matrix44.transformSphere()).
+	 *
+	 * @param m16 the matrix (column major)
+	 * @param spheres the spheres (packed xyzr)
+	 * @param result the transformed spheres, may be spheres
+	 * @param count the number of spheres
+	 */
+	public static void transformSpheres(float[] m16, float[] spheres, float[] result, int count)
+	{
+		if(Config.NATIVE_MATH)
+			nativeTransformSpheres(m16, spheres, result, count);
+		else
+			JavaMath.transformSpheres(m16, spheres, result, count);
+	}
+
+	/**
+	 * native sphere overlap query.
+	 *
+	 * @param spheres the spheres
+	 * @param indices the indices, may be null
+	 * @param count the number of spheres to test
+	 * @param x the x coordinate of the query center
+	 * @param y the y coordinate of the query center
+	 * @param z the z coordinate of the query center
+	 * @param radius the radius of the query sphere
+	 * @param penetrationDepth the penetration depth
+	 * @param hits the hits
+	 * @return the number of hits
+	 */
+	private static native int nativeOverlapSpheres(float[] spheres, int[] indices, int count, float x, float y, float z, float radius,
+			float penetrationDepth, int[] hits);
+
+	/**
+	 * Finds the spheres which overlap a query sphere by more than the
+	 * penetration depth (|c - q|^2 < (r + radius - depth)^2, without
+	 * square roots). The positions k of the hits are written in ascending
+	 * order, so a candidate list can be compacted in place.
+	 *
+	 * @param spheres the spheres (packed xyzr)
+	 * @param indices the indices of the spheres to test (k-th sphere at 4*indices[k]), null to test the first count spheres
+	 * @param count the number of spheres to test
+	 * @param x the x coordinate of the query center
+	 * @param y the y coordinate of the query center
+	 * @param z the z coordinate of the query center
+	 * @param radius the radius of the query sphere
+	 * @param penetrationDepth the depth the spheres have to overlap
+	 * @param hits the positions k of the overlapping spheres, room for count
+	 * @return the number of hits
+	 */
+	public static int overlapSpheres(float[] spheres, int[] indices, int count, float x, float y, float z, float radius,
+			float penetrationDepth, int[] hits)
+	{
+		if(Config.NATIVE_MATH)
+			return nativeOverlapSpheres(spheres, indices, count, x, y, z, radius, penetrationDepth, hits);
+		else
+			return JavaMath.overlapSpheres(spheres, indices, count, x, y, z, radius, penetrationDepth, hits);
+	}
+
+	/**
+	 * native sphere pair overlap test.
+	 *
+	 * @param spheres the spheres
+	 * @param pairs the pairs
+	 * @param count the number of pairs
+	 * @param penetrationDepth the penetration depth
+	 * @param hits the hits
+	 * @return the number of hits
+	 */
+	private static native int nativeOverlapPairs(float[] spheres, int[] pairs, int count, float penetrationDepth, int[] hits);
+
+	/**
+	 * Finds the pairs of spheres which overlap by more than the penetration
+	 * depth, the positions k of the hits are written in ascending order.
+	 *
+	 * @param spheres the spheres (packed xyzr)
+	 * @param pairs the pairs (k-th pair: spheres pairs[2*k] and pairs[2*k+1])
+	 * @param count the number of pairs
+	 * @param penetrationDepth the depth the spheres have to overlap
+	 * @param hits the positions k of the overlapping pairs, room for count
+	 * @return the number of hits
+	 */
+	public static int overlapPairs(float[] spheres, int[] pairs, int count, float penetrationDepth, int[] hits)
+	{
+		if(Config.NATIVE_MATH)
+			return nativeOverlapPairs(spheres, pairs, count, penetrationDepth, hits);
+		else
+			return JavaMath.overlapPairs(spheres, pairs, count, penetrationDepth, hits);
+	}
+}
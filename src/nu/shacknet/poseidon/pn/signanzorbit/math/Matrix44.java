@@ -3,7 +3,10 @@ package nu.shacknet.poseidon.pn.signanzorbit.math;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.FloatBuffer;
 
+import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
+import nu.shacknet.poseidon.pn.signanzorbit.util.FastMath;
 import nu.shacknet.poseidon.pn.signanzorbit.util.Persistable;
 
 
@@ -19,7 +22,18 @@ public class Matrix44 implements Persistable
 	 * column major
 	 */
 	public final float m[] = new float[16];
-	private Matrix44 temp;
+	
+	/** The arena this is mirrored into (null if not bound). */
+	private MathArena arena;
+	
+	/** The offset of this in the arena. */
+	private int arenaOffset = -1;
+	
+	/** A view of this' slot in the arena. */
+	private FloatBuffer arenaView;
+	
+	/** This in fixed point (allocated on first use of getArrayFixed16()). */
+	private int[] fixed;
 
 	/**
 	 * Instantiates a new matrix44 as identity
@@ -106,6 +120,77 @@ public class Matrix44 implements Persistable
 		return m;
 	}
 	
+	/**
+	 * Gets this in 16.16 fixed point, e.g. for glLoadMatrixx(). The array is
+	 * reused, m is converted on every call.
+	 *
+	 * @return this as a column major int[16] (GL_FIXED)
+	 */
+	public int[] getArrayFixed16()
+	{
+		if(fixed == null)
+			fixed = new int[16];
+		FixedPoint.toFixed(m, fixed);
+		return fixed;
+	}
+	
+	/**
+	 * Binds this to a slot in a MathArena. Afterwards publish() mirrors m
+	 * into the slot.
+	 *
+	 * @param arena the arena
+	 * @return true, if this is bound to the arena (false if the arena is full)
+	 */
+	public boolean bind(MathArena arena)
+	{
+		if(this.arena == arena)
+			return true;
+		
+		int offset = arena.allocate(16);
+		if(offset < 0)
+			return false;
+		
+		this.arena = arena;
+		arenaOffset = offset;
+		arenaView = arena.view(offset, 16);
+		publish();
+		return true;
+	}
+	
+	/**
+	 * Writes m into the arena slot (if bound).
+	 */
+	public void publish()
+	{
+		FloatBuffer arenaView = this.arenaView;
+		if(arenaView != null)
+		{
+			arenaView.put(m, 0, 16);
+			arenaView.position(0);
+		}
+	}
+	
+	/**
+	 * Gets the buffer.
+	 *
+	 * @return a direct FloatBuffer holding the last published state of this, null if not bound
+	 */
+	public FloatBuffer getBuffer()
+	{
+		return arenaView;
+	}
+	
+	/**
+	 * Gets the offset of this in an arena.
+	 *
+	 * @param arena the arena
+	 * @return the offset or -1 if this is not bound to the arena
+	 */
+	public int getArenaOffset(MathArena arena)
+	{
+		return (arena != null && this.arena == arena) ? arenaOffset : -1;
+	}
+	
 	/**
 	 * Sets this from a [row][col] array
 	 *
@@ -193,6 +278,28 @@ public class Matrix44 implements Persistable
 	{
 		set(other.m);
 	}
+	
+	/**
+	 * Copies another Matrix44 into this and tells whether this has changed.
+	 * Lets per frame updates skip dependent calculations for matrices
+	 * that did not move.
+	 *
+	 * @param other the other Matrix44
+	 * @return true, if at least one element of this has changed
+	 */
+	public boolean copyChanged(Matrix44 other)
+	{
+		float[] m = this.m;
+		float[] o = other.m;
+		boolean changed = false;
+		for(int i=0; i<16; i++)
+			if(m[i] != o[i])
+			{
+				m[i] = o[i];
+				changed = true;
+			}
+		return changed;
+	}
 
 	/**
 	 * Returns a new rotation matrix corresponding to a quaternion
@@ -223,7 +330,10 @@ public class Matrix44 implements Persistable
 	 */
 	public Matrix44 setFromQuaternion(float x, float y, float z, float w)
 	{
-		setFromQuaternion(m, x, y, z, w);
+		if(Config.NATIVE_MATH)
+			setFromQuaternion(m, x, y, z, w);
+		else
+			JavaMath.setFromQuaternion(m, x, y, z, w);
 	    return this;
 	}
 
@@ -267,11 +377,7 @@ public class Matrix44 implements Persistable
 	 */
 	public Matrix44 addScale(float sx, float sy, float sz)
 	{
-		if(temp == null)
-			temp = new Matrix44();
-		temp.setScale(sx, sy, sz);
-		
-		mult(temp.m, m, m);
+		JavaMath.premultScale(m, sx, sy, sz);
 		return this;
 	}
 	
@@ -316,8 +422,8 @@ public class Matrix44 implements Persistable
 	 */
 	public Matrix44 setRotateX(float alpha)
 	{
-		float cosa = (float) Math.cos(alpha);
-		float sina = (float) Math.sin(alpha);
+		float cosa = FastMath.cos(alpha);
+		float sina = FastMath.sin(alpha);
 		
 		m[ 0] =     1; m[ 4] =     0; m[ 8] =     0; m[12] = 0;
 		m[ 1] =     0; m[ 5] =  cosa; m[ 9] = -sina; m[13] = 0;
@@ -345,11 +451,13 @@ public class Matrix44 implements Persistable
 	 */
 	public Matrix44 addRotateX(float alpha)
 	{
-		if(temp == null)
-			temp = new Matrix44();
-		temp.setRotateX(alpha);
+		float cosa = FastMath.cos(alpha);
+		float sina = FastMath.sin(alpha);
 		
-		mult(temp.m, m, m);
+		JavaMath.premultLinear(m,
+				1,     0,     0,
+				0,  cosa, -sina,
+				0,  sina,  cosa);
 		return this;
 	}
 
@@ -361,8 +469,8 @@ public class Matrix44 implements Persistable
 	 */
 	public Matrix44 setRotateY(float alpha)
 	{
-		float cosa = (float) Math.cos(alpha);
-		float sina = (float) Math.sin(alpha);
+		float cosa = FastMath.cos(alpha);
+		float sina = FastMath.sin(alpha);
 		
 		m[ 0] =  cosa; m[ 4] =     0; m[ 8] =  sina; m[12] = 0;
 		m[ 1] =     0; m[ 5] =     1; m[ 9] =     0; m[13] = 0;
@@ -390,11 +498,13 @@ public class Matrix44 implements Persistable
 	 */
 	public Matrix44 addRotateY(float alpha)
 	{
-		if(temp == null)
-			temp = new Matrix44();
-		temp.setRotateY(alpha);
+		float cosa = FastMath.cos(alpha);
+		float sina = FastMath.sin(alpha);
 		
-		mult(temp.m, m, m);
+		JavaMath.premultLinear(m,
+				 cosa, 0,  sina,
+				    0, 1,     0,
+				-sina, 0,  cosa);
 		return this;
 	}
 
@@ -406,8 +516,8 @@ public class Matrix44 implements Persistable
 	 */
 	public Matrix44 setRotateZ(float alpha)
 	{
-		float cosa = (float) Math.cos(alpha);
-		float sina = (float) Math.sin(alpha);
+		float cosa = FastMath.cos(alpha);
+		float sina = FastMath.sin(alpha);
 		m[ 0] =  cosa; m[ 4] = -sina; m[ 8] =     0; m[12] = 0;
 		m[ 1] =  sina; m[ 5] =  cosa; m[ 9] =     0; m[13] = 0;
 		m[ 2] =     0; m[ 6] =     0; m[10] =     1; m[14] = 0;
@@ -434,11 +544,13 @@ public class Matrix44 implements Persistable
 	 */
 	public Matrix44 addRotateZ(float alpha)
 	{
-		if(temp == null)
-			temp = new Matrix44();
-		temp.setRotateZ(alpha);
+		float cosa = FastMath.cos(alpha);
+		float sina = FastMath.sin(alpha);
 		
-		mult(temp.m, m, m);
+		JavaMath.premultLinear(m,
+				cosa, -sina, 0,
+				sina,  cosa, 0,
+				   0,     0, 1);
 		return this;
 	}
 	
@@ -453,7 +565,10 @@ public class Matrix44 implements Persistable
 	 */
 	public Matrix44 setRotate(Vector3 axis, float alpha)
 	{
-		setRotate(m, axis.v, alpha);
+		if(Config.NATIVE_MATH)
+			setRotate(m, axis.v, alpha);
+		else
+			JavaMath.setRotate(m, axis.v, alpha);
 		return this;
 	}
 
@@ -478,11 +593,7 @@ public class Matrix44 implements Persistable
 	 */
 	public Matrix44 addRotate(Vector3 axis, float alpha)
 	{
-		if(temp == null)
-			temp = new Matrix44();
-		temp.setRotate(axis, alpha);
-		
-		mult(temp.m, m, m);
+		JavaMath.premultRotate(m, axis.v, alpha);
 		return this;
 	}
 
@@ -526,16 +637,31 @@ public class Matrix44 implements Persistable
 	 */
 	public Matrix44 addTranslate(float tx, float ty, float tz)
 	{
-		if(temp == null)
-			temp = new Matrix44();
-		temp.setTranslate(tx, ty, tz);
-		
-		mult(temp.m, m, m);
+		JavaMath.premultTranslate(m, tx, ty, tz);
 		return this;
 	}
 
 	private native void mult(float[] m16left, float[] m16right, float[] m16result);
 	
+	/**
+	 * Multiplies two matrices using the selected math backend. If both are
+	 * affine only their 4x3 parts are multiplied, which is cheaper than a
+	 * JNI call, so this is done in java for both backends.
+	 *
+	 * @param m16left the left matrix
+	 * @param m16right the right matrix
+	 * @param m16result the result (may be left or right)
+	 */
+	private void mult16(float[] m16left, float[] m16right, float[] m16result)
+	{
+		if(JavaMath.isAffine(m16left) && JavaMath.isAffine(m16right))
+			JavaMath.matrixMultAffine(m16left, m16right, m16result);
+		else if(Config.NATIVE_MATH)
+			mult(m16left, m16right, m16result);
+		else
+			JavaMath.matrixMult(m16left, m16right, m16result);
+	}
+	
 	/**
 	 * Sets this = this*right and returns this
 	 *
@@ -544,7 +670,44 @@ public class Matrix44 implements Persistable
 	 */
 	public Matrix44 mult(Matrix44 right)
 	{
-		mult(m, right.m, m);
+		mult16(m, right.m, m);
+		return this;
+	}
+	
+	/**
+	 * Checks if this is affine (no projective terms, last row is 0,0,0,1).
+	 * Rotations, translations and scales and all their products are affine.
+	 *
+	 * @return true, if this is affine
+	 */
+	public boolean isAffine()
+	{
+		return JavaMath.isAffine(m);
+	}
+	
+	/**
+	 * Inverts this. Affine matrices are inverted via their 3x3 part,
+	 * all others with a full 4x4 inversion.
+	 *
+	 * @return true, if this has been inverted (false if it is singular, this is not changed then)
+	 */
+	public boolean invert()
+	{
+		if(JavaMath.isAffine(m))
+			return JavaMath.invertAffine(m, m);
+		return JavaMath.invertGeneral(m, m);
+	}
+	
+	/**
+	 * Inverts this, assuming it is a rigid transformation (rotation and
+	 * translation only). Cheaper than invert(), but the result is wrong
+	 * for matrices containing a scale or projective terms.
+	 *
+	 * @return this
+	 */
+	public Matrix44 invertRigid()
+	{
+		JavaMath.invertRigid(m, m);
 		return this;
 	}
 	
@@ -569,7 +732,10 @@ public class Matrix44 implements Persistable
 	 */
 	public void transformPoint(Vector3 in)
 	{
-		transformPoint(m, in.v);
+		if(Config.NATIVE_MATH)
+			transformPoint(m, in.v);
+		else
+			JavaMath.transformPoint(m, in.v);
 	}
 	
 	/**
@@ -579,7 +745,10 @@ public class Matrix44 implements Persistable
 	 */
 	public void transformPoint(Vector4 in)
 	{
-		transformPoint(m, in.v);
+		if(Config.NATIVE_MATH)
+			transformPoint(m, in.v);
+		else
+			JavaMath.transformPoint(m, in.v);
 	}
 	
 	private native float transformSphere(float[] m16, float[] center, float radius);
@@ -591,7 +760,10 @@ public class Matrix44 implements Persistable
 	 */
 	public void transformSphere(Sphere inout)
 	{
-		inout.radius = transformSphere(m, inout.center.v, inout.radius);
+		if(Config.NATIVE_MATH)
+			inout.radius = transformSphere(m, inout.center.v, inout.radius);
+		else
+			inout.radius = JavaMath.transformSphere(m, inout.center.v, inout.radius);
 	}
 	
 	/**
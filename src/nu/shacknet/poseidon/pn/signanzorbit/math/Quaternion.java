@@ -0,0 +1,300 @@
+package nu.shacknet.poseidon.pn.signanzorbit.math;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import nu.shacknet.poseidon.pn.signanzorbit.util.FastMath;
+import nu.shacknet.poseidon.pn.signanzorbit.util.Persistable;
+
+/**
+ * The Class Quaternion represents a rotation as a unit quaternion (x,y,z,w).
+ * Concatenating two rotations costs 16 multiplications and no trigonometry,
+ * a Matrix44 is only needed once the final rotation is composed
+ * (see <code>toMatrix()</code>). All operations are done in java, they are
+ * cheaper than a JNI call.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class Quaternion implements Persistable
+{
+
+	/** Up to this angle setFromAxisAngleStep() uses polynomials instead of sin/cos (error below 1e-7). */
+	private static final float SMALL_ANGLE = 0.5f;
+
+	/** The v (x,y,z,w). */
+	public final float v[] = new float[4];
+
+	/**
+	 * Instantiates a new quaternion as identity.
+	 */
+	public Quaternion()
+	{
+		setIdentity();
+	}
+
+	/**
+	 * Instantiates a new quaternion.
+	 *
+	 * @param x the x
+	 * @param y the y
+	 * @param z the z
+	 * @param w the w
+	 */
+	public Quaternion(float x, float y, float z, float w)
+	{
+		set(x,y,z,w);
+	}
+
+	/**
+	 * Copy Constructor.
+	 *
+	 * @param other the other Quaternion
+	 */
+	public Quaternion(Quaternion other)
+	{
+		set(other);
+	}
+
+	/* (non-Javadoc)
+	 * @see nu.shacknet.poseidon.pn.signanzorbit.util.Persistable#persist(java.io.DataOutputStream)
+	 */
+	public void persist(DataOutputStream dos) throws IOException
+	{
+		for(int i=0; i<4; i++)
+			dos.writeFloat(v[i]);
+	}
+
+	/* (non-Javadoc)
+	 * @see nu.shacknet.poseidon.pn.signanzorbit.util.Persistable#restore(java.io.DataInputStream)
+	 */
+	public void restore(DataInputStream dis) throws IOException
+	{
+		for(int i=0; i<4; i++)
+			v[i] = dis.readFloat();
+	}
+
+	/**
+	 * Sets the new values.
+	 *
+	 * @param x the x
+	 * @param y the y
+	 * @param z the z
+	 * @param w the w
+	 * @return this
+	 */
+	public Quaternion set(float x, float y, float z, float w)
+	{
+		v[0] = x;
+		v[1] = y;
+		v[2] = z;
+		v[3] = w;
+		return this;
+	}
+
+	/**
+	 * Sets this to the values of another Quaternion.
+	 *
+	 * @param other the other Quaternion
+	 * @return this
+	 */
+	public Quaternion set(Quaternion other)
+	{
+		return set(other.v[0], other.v[1], other.v[2], other.v[3]);
+	}
+
+	/**
+	 * Sets this to the identity (no rotation).
+	 *
+	 * @return this
+	 */
+	public Quaternion setIdentity()
+	{
+		return set(0,0,0,1);
+	}
+
+	/**
+	 * Sets this to a rotation around axis with angle alpha
+	 * (the same rotation as <code>Matrix44.setRotate()</code>).
+	 *
+	 * @param axis the axis (does not need to be normalized, is not changed)
+	 * @param alpha the angle
+	 * @return this
+	 */
+	public Quaternion setFromAxisAngle(Vector3 axis, float alpha)
+	{
+		float x = axis.v[0], y = axis.v[1], z = axis.v[2];
+		float length = (float)Math.sqrt(x*x + y*y + z*z);
+		if(length == 0)
+			return setIdentity();
+
+		float s = FastMath.sin(alpha/2) / length;
+		return set(x*s, y*s, z*s, FastMath.cos(alpha/2));
+	}
+
+	/**
+	 * Same as setFromAxisAngle(), meant for the small per frame steps of an
+	 * incrementally integrated rotation: sin and cos of the half angle are
+	 * evaluated as Taylor polynomials if alpha is small enough.
+	 *
+	 * @param axis the axis (does not need to be normalized, is not changed)
+	 * @param alpha the angle
+	 * @return this
+	 */
+	public Quaternion setFromAxisAngleStep(Vector3 axis, float alpha)
+	{
+		if(alpha > SMALL_ANGLE || alpha < -SMALL_ANGLE)
+			return setFromAxisAngle(axis, alpha);
+
+		float x = axis.v[0], y = axis.v[1], z = axis.v[2];
+		float length = (float)Math.sqrt(x*x + y*y + z*z);
+		if(length == 0)
+			return setIdentity();
+
+		float h = alpha/2;
+		float h2 = h*h;
+		float s = h * (1 - h2/6 * (1 - h2/20)) / length;
+		return set(x*s, y*s, z*s, 1 - h2/2 * (1 - h2/12));
+	}
+
+	/**
+	 * Sets this from the rotational part of a Matrix44.
+	 * The upper 3x3 part of the matrix has to be a pure rotation.
+	 *
+	 * @param matrix the matrix
+	 * @return this
+	 */
+	public Quaternion setFromMatrix(Matrix44 matrix)
+	{
+		float[] m = matrix.m;
+		float trace = m[0] + m[5] + m[10];
+
+		if(trace > 0)
+		{
+			float s = 0.5f / (float)Math.sqrt(trace + 1);
+			set((m[6] - m[9]) * s, (m[8] - m[2]) * s, (m[1] - m[4]) * s, 0.25f / s);
+		}
+		else if(m[0] > m[5] && m[0] > m[10])
+		{
+			float s = 2 * (float)Math.sqrt(1 + m[0] - m[5] - m[10]);
+			set(0.25f * s, (m[4] + m[1]) / s, (m[8] + m[2]) / s, (m[6] - m[9]) / s);
+		}
+		else if(m[5] > m[10])
+		{
+			float s = 2 * (float)Math.sqrt(1 + m[5] - m[0] - m[10]);
+			set((m[4] + m[1]) / s, 0.25f * s, (m[9] + m[6]) / s, (m[8] - m[2]) / s);
+		}
+		else
+		{
+			float s = 2 * (float)Math.sqrt(1 + m[10] - m[0] - m[5]);
+			set((m[8] + m[2]) / s, (m[9] + m[6]) / s, 0.25f * s, (m[1] - m[4]) / s);
+		}
+		return normalize();
+	}
+
+	/**
+	 * Sets this = this*right, i.e. the rotation right is applied first.
+	 *
+	 * @param right the right Quaternion
+	 * @return this
+	 */
+	public Quaternion mult(Quaternion right)
+	{
+		return mult(this, right, this);
+	}
+
+	/**
+	 * Sets this = left*this, i.e. the rotation left is applied after this.
+	 *
+	 * @param left the left Quaternion
+	 * @return this
+	 */
+	public Quaternion premult(Quaternion left)
+	{
+		return mult(left, this, this);
+	}
+
+	/**
+	 * Multiplies two Quaternions.
+	 *
+	 * @param left the left Quaternion
+	 * @param right the right Quaternion
+	 * @param result the result, set to left*right (may be left or right)
+	 * @return result
+	 */
+	public static Quaternion mult(Quaternion left, Quaternion right, Quaternion result)
+	{
+		float lx = left.v[0], ly = left.v[1], lz = left.v[2], lw = left.v[3];
+		float rx = right.v[0], ry = right.v[1], rz = right.v[2], rw = right.v[3];
+
+		return result.set(	lw*rx + lx*rw + ly*rz - lz*ry,
+							lw*ry - lx*rz + ly*rw + lz*rx,
+							lw*rz + lx*ry - ly*rx + lz*rw,
+							lw*rw - lx*rx - ly*ry - lz*rz);
+	}
+
+	/**
+	 * Normalizes this. Incrementally integrated rotations should be
+	 * normalized from time to time, otherwise rounding errors add a scale.
+	 *
+	 * @return this
+	 */
+	public Quaternion normalize()
+	{
+		float length = length();
+		if(length != 0 && length != 1)
+		{
+			float inv = 1 / length;
+			v[0] *= inv;
+			v[1] *= inv;
+			v[2] *= inv;
+			v[3] *= inv;
+		}
+		return this;
+	}
+
+	/**
+	 * Conjugates this (the inverse rotation of a unit quaternion).
+	 *
+	 * @return this
+	 */
+	public Quaternion conjugate()
+	{
+		v[0] = -v[0];
+		v[1] = -v[1];
+		v[2] = -v[2];
+		return this;
+	}
+
+	/**
+	 * Length.
+	 *
+	 * @return the length of this
+	 */
+	public float length()
+	{
+		return (float)Math.sqrt(v[0]*v[0] + v[1]*v[1] + v[2]*v[2] + v[3]*v[3]);
+	}
+
+	/**
+	 * Writes the rotation of this into a Matrix44.
+	 *
+	 * @param out the matrix, set to the rotation of this
+	 * @return out
+	 */
+	public Matrix44 toMatrix(Matrix44 out)
+	{
+		JavaMath.setFromQuaternion(out.m, v[0], v[1], v[2], v[3]);
+		return out;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		return "(" + v[0] + "," + v[1] + "," + v[2] + "," + v[3] + ")";
+	}
+}
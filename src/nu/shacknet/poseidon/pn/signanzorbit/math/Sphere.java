@@ -2,6 +2,8 @@ package nu.shacknet.poseidon.pn.signanzorbit.math;
 
 import java.util.ArrayList;
 
+import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
+
 /**
  * The Class Sphere.
  *
@@ -87,7 +89,7 @@ public class Sphere
 	 */
 	public boolean isPointInside(Vector3 point)
 	{
-		return isPointInside(center.v, radius, point.v);
+		return Config.NATIVE_MATH ? isPointInside(center.v, radius, point.v) : JavaMath.isPointInside(center.v, radius, point.v);
 	}
 	
 	/**
@@ -115,7 +117,10 @@ public class Sphere
 			for(int j=0; j<3; j++)
 				verticesFloats[3*i + j] = v.v[j];
 		}
-		radius = setPointSet(verticesFloats, center.v);
+		if(Config.NATIVE_MATH)
+			radius = setPointSet(verticesFloats, center.v);
+		else
+			radius = JavaMath.setSphereSet(verticesFloats, null, size, center.v);
 	}
 	
 	/**
@@ -136,14 +141,6 @@ public class Sphere
 	public void setSphereSet(ArrayList<Sphere> sphereSet)
 	{
 		int size = sphereSet.size();
-		
-		if(size == 1)
-		{
-			center.set(sphereSet.get(0).center);
-			radius = sphereSet.get(0).radius;
-			return;
-		}
-		
 		float[] centers = new float[3*size];
 		float[] radii = new float[size];
 		for(int i=0; i<size; i++)
@@ -153,7 +150,30 @@ public class Sphere
 				centers[3*i + j] = s.center.v[j];
 			radii[i] = s.radius;
 		}
+		setSphereSet(centers, radii);
+	}
+	
+	/**
+	 * Sets the sphere set. Does not allocate, callers updating every frame
+	 * should keep the arrays.
+	 *
+	 * @param centers the packed centers (xyz), 3*radii.length floats
+	 * @param radii the radii
+	 */
+	public void setSphereSet(float[] centers, float[] radii)
+	{
+		int size = radii.length;
+		
+		if(size == 1)
+		{
+			center.set(centers[0], centers[1], centers[2]);
+			radius = radii[0];
+			return;
+		}
 		
-		radius = setSphereSet(centers, radii, center.v);
+		if(Config.NATIVE_MATH)
+			radius = setSphereSet(centers, radii, center.v);
+		else
+			radius = JavaMath.setSphereSet(centers, radii, size, center.v);
 	}
 }
@@ -0,0 +1,343 @@
+package nu.shacknet.poseidon.pn.signanzorbit.math;
+
+import java.nio.FloatBuffer;
+
+import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
+
+/**
+ * A structure-of-arrays snapshot of the bounding spheres of a two level
+ * hierarchy (scene entities and their models). All spheres are transformed
+ * with a single call to <code>transform()</code>, which is one JNI call for
+ * the whole batch if the native math backend is used.
+ *
+ * Usage: <code>clear()</code>, then <code>addGroup()</code> followed by
+ * <code>addSphere()</code> for each of its children, <code>transform()</code>
+ * and read back the results with the get methods.
+ *
+ * Each group has a state: CHANGED groups are fully recalculated, for MOVED
+ * groups (only the group matrix changed) the group space spheres passed to
+ * addGroup()/addSphere() are reused and only transformed into world space,
+ * UNCHANGED groups are skipped and their results must not be read back.
+ *
+ * If an arena is set and the native backend is used, matrices bound to the
+ * arena are not copied into the batch: the native code reads their last
+ * published state straight from the arena.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class SphereBatch
+{
+	/** The number of floats per group sphere (group space xyzr, world xyzr). */
+	private static final int GROUP_STRIDE = 8;
+
+	/** The number of floats per child sphere (local xyzr, group space xyzr, world xyzr). */
+	private static final int CHILD_STRIDE = 12;
+	
+	/** Group state: nothing has changed since the last transform, the group is skipped. */
+	public static final int UNCHANGED = 0;
+	
+	/** Group state: only the group matrix has changed. */
+	public static final int MOVED = 1;
+	
+	/** Group state: a child has changed, everything is recalculated. */
+	public static final int CHANGED = 2;
+
+	/** The group matrices. */
+	private float[] groupMatrices;
+
+	/** The index of the first child of each group. */
+	private int[] groupFirst;
+	
+	/** The state of each group. */
+	private int[] groupStates;
+
+	/** The group spheres. */
+	private float[] groupSpheres;
+
+	/** The child matrices. */
+	private float[] childMatrices;
+
+	/** The child spheres. */
+	private float[] childSpheres;
+
+	/** The offsets of the group matrices in the arena (-1 = copied into groupMatrices). */
+	private int[] groupMatrixOffsets;
+
+	/** The offsets of the child matrices in the arena (-1 = copied into childMatrices). */
+	private int[] childMatrixOffsets;
+
+	/** The arena (may be null). */
+	private MathArena arena;
+
+	/** The number of groups. */
+	private int groupCount;
+
+	/** The number of children. */
+	private int childCount;
+
+	/** Whether the native backend is used, read once per batch in clear(). */
+	private boolean nativeMath;
+
+	/**
+	 * Instantiates a new sphere batch.
+	 */
+	public SphereBatch()
+	{
+		this(16, 64);
+	}
+
+	/**
+	 * Instantiates a new sphere batch.
+	 *
+	 * @param groupCapacity the initial group capacity
+	 * @param childCapacity the initial child capacity
+	 */
+	public SphereBatch(int groupCapacity, int childCapacity)
+	{
+		groupMatrices = new float[16*groupCapacity];
+		groupMatrixOffsets = new int[groupCapacity];
+		groupFirst = new int[groupCapacity+1];
+		groupStates = new int[groupCapacity];
+		groupSpheres = new float[GROUP_STRIDE*groupCapacity];
+		childMatrices = new float[16*childCapacity];
+		childMatrixOffsets = new int[childCapacity];
+		childSpheres = new float[CHILD_STRIDE*childCapacity];
+		nativeMath = Config.NATIVE_MATH;
+	}
+
+	/**
+	 * Sets the arena.
+	 *
+	 * @param arena the arena the native code reads bound matrices from
+	 */
+	public void setArena(MathArena arena)
+	{
+		this.arena = arena;
+	}
+
+	/**
+	 * Removes all groups and children and picks the math backend for the
+	 * next batch: the matrices added and transform() must agree on it.
+	 */
+	public void clear()
+	{
+		groupCount = 0;
+		childCount = 0;
+		nativeMath = Config.NATIVE_MATH;
+	}
+
+	/**
+	 * Starts a new group, all following spheres belong to it.
+	 * The state of the group is CHANGED.
+	 *
+	 * @param transformation the group to world transformation
+	 * @param current the current group sphere in group space (kept if the group has no children or is not CHANGED)
+	 * @return the index of the group
+	 */
+	public int addGroup(Matrix44 transformation, Sphere current)
+	{
+		if(groupCount == groupFirst.length-1)
+		{
+			int capacity = Math.max(16, 2*groupCount);
+			groupMatrices = grow(groupMatrices, 16*capacity);
+			groupSpheres = grow(groupSpheres, GROUP_STRIDE*capacity);
+			groupMatrixOffsets = grow(groupMatrixOffsets, capacity);
+			groupStates = grow(groupStates, capacity);
+			int[] first = new int[capacity+1];
+			System.arraycopy(groupFirst, 0, first, 0, groupFirst.length);
+			groupFirst = first;
+		}
+
+		int g = groupCount++;
+		groupMatrixOffsets[g] = matrixOffset(transformation, groupMatrices, g);
+		groupFirst[g] = childCount;
+		groupStates[g] = CHANGED;
+		put(groupSpheres, GROUP_STRIDE*g, current);
+		return g;
+	}
+
+	/**
+	 * Adds a sphere to the current group.
+	 *
+	 * @param transformation the local to group transformation
+	 * @param local the sphere in local space
+	 * @param group the current sphere in group space (kept if the group is not CHANGED)
+	 * @return the index of the sphere
+	 */
+	public int addSphere(Matrix44 transformation, Sphere local, Sphere group)
+	{
+		if(CHILD_STRIDE*childCount == childSpheres.length)
+		{
+			int capacity = Math.max(16, 2*childCount);
+			childMatrices = grow(childMatrices, 16*capacity);
+			childSpheres = grow(childSpheres, CHILD_STRIDE*capacity);
+			childMatrixOffsets = grow(childMatrixOffsets, capacity);
+		}
+
+		int c = childCount++;
+		childMatrixOffsets[c] = matrixOffset(transformation, childMatrices, c);
+		put(childSpheres, CHILD_STRIDE*c, local);
+		put(childSpheres, CHILD_STRIDE*c+4, group);
+		return c;
+	}
+	
+	/**
+	 * Sets the state of a group.
+	 *
+	 * @param group the index of the group
+	 * @param state UNCHANGED, MOVED or CHANGED
+	 */
+	public void setGroupState(int group, int state)
+	{
+		groupStates[group] = state;
+	}
+
+	/**
+	 * Gets the arena offset of a matrix, or copies the matrix into the batch
+	 * if the native code can not read it from the arena.
+	 *
+	 * @param transformation the matrix
+	 * @param matrices the matrices of the batch
+	 * @param index the index of the matrix in the batch
+	 * @return the arena offset or -1 if the matrix has been copied
+	 */
+	private int matrixOffset(Matrix44 transformation, float[] matrices, int index)
+	{
+		int offset = nativeMath ? transformation.getArenaOffset(arena) : -1;
+		if(offset < 0)
+			System.arraycopy(transformation.m, 0, matrices, 16*index, 16);
+		return offset;
+	}
+
+	/**
+	 * native transform of the whole batch.
+	 *
+	 * @param arena the arena (direct buffer, may be null)
+	 * @param groupMatrixOffsets the offsets of the group matrices in the arena
+	 * @param groupMatrices the group matrices
+	 * @param groupFirst the index of the first child of each group
+	 * @param groupStates the state of each group
+	 * @param groupSpheres the group spheres
+	 * @param childMatrixOffsets the offsets of the child matrices in the arena
+	 * @param childMatrices the child matrices
+	 * @param childSpheres the child spheres
+	 * @param groupCount the number of groups
+	 */
+	private static native void transformSpheres(FloatBuffer arena, int[] groupMatrixOffsets, float[] groupMatrices, int[] groupFirst, int[] groupStates, float[] groupSpheres, int[] childMatrixOffsets, float[] childMatrices, float[] childSpheres, int groupCount);
+
+	/**
+	 * Transforms all spheres of this batch into group and world space and
+	 * merges the children of each group into the group sphere.
+	 */
+	public void transform()
+	{
+		groupFirst[groupCount] = childCount;
+
+		if(nativeMath)
+			transformSpheres(arena != null ? arena.getBuffer() : null, groupMatrixOffsets, groupMatrices, groupFirst, groupStates, groupSpheres, childMatrixOffsets, childMatrices, childSpheres, groupCount);
+		else
+			JavaMath.transformSphereHierarchy(groupMatrices, groupFirst, groupStates, groupSpheres, childMatrices, childSpheres, groupCount);
+	}
+
+	/**
+	 * Gets the merged sphere of a group in group space.
+	 *
+	 * @param group the index of the group
+	 * @param out the result is written into this
+	 */
+	public void getGroupSphere(int group, Sphere out)
+	{
+		get(groupSpheres, GROUP_STRIDE*group, out);
+	}
+
+	/**
+	 * Gets the merged sphere of a group in world space.
+	 *
+	 * @param group the index of the group
+	 * @param out the result is written into this
+	 */
+	public void getGroupSphereWorld(int group, Sphere out)
+	{
+		get(groupSpheres, GROUP_STRIDE*group+4, out);
+	}
+
+	/**
+	 * Gets a sphere in group space.
+	 *
+	 * @param index the index of the sphere
+	 * @param out the result is written into this
+	 */
+	public void getSphereGroup(int index, Sphere out)
+	{
+		get(childSpheres, CHILD_STRIDE*index+4, out);
+	}
+
+	/**
+	 * Gets a sphere in world space.
+	 *
+	 * @param index the index of the sphere
+	 * @param out the result is written into this
+	 */
+	public void getSphereWorld(int index, Sphere out)
+	{
+		get(childSpheres, CHILD_STRIDE*index+8, out);
+	}
+
+	/**
+	 * Writes a sphere into a packed array.
+	 *
+	 * @param arr the packed array
+	 * @param offset the offset
+	 * @param s the sphere
+	 */
+	private static void put(float[] arr, int offset, Sphere s)
+	{
+		float[] center = s.center.v;
+		arr[offset  ] = center[0];
+		arr[offset+1] = center[1];
+		arr[offset+2] = center[2];
+		arr[offset+3] = s.radius;
+	}
+
+	/**
+	 * Reads a sphere from a packed array.
+	 *
+	 * @param arr the packed array
+	 * @param offset the offset
+	 * @param s the sphere
+	 */
+	private static void get(float[] arr, int offset, Sphere s)
+	{
+		s.center.set(arr[offset], arr[offset+1], arr[offset+2]);
+		s.radius = arr[offset+3];
+	}
+
+	/**
+	 * Grows an array.
+	 *
+	 * @param arr the array
+	 * @param length the new length
+	 * @return a new array containing the values of arr
+	 */
+	private static int[] grow(int[] arr, int length)
+	{
+		int[] result = new int[length];
+		System.arraycopy(arr, 0, result, 0, arr.length);
+		return result;
+	}
+
+	/**
+	 * Grows an array.
+	 *
+	 * @param arr the array
+	 * @param length the new length
+	 * @return a new array containing the values of arr
+	 */
+	private static float[] grow(float[] arr, int length)
+	{
+		float[] result = new float[length];
+		System.arraycopy(arr, 0, result, 0, arr.length);
+		return result;
+	}
+}
@@ -1,5 +1,7 @@
 package nu.shacknet.poseidon.pn.signanzorbit.math;
 
+import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
+
 /**
  * The Class Vector2.
  *
@@ -97,7 +99,10 @@ public class Vector2
 	 */
 	public Vector2 add(Vector2 other)
 	{
-		add(v, other.v);
+		if(Config.NATIVE_MATH)
+			add(v, other.v);
+		else
+			JavaMath.vectorAddVector(2, v, v, other.v);
 		return this;
 	}
 	
@@ -109,7 +114,10 @@ public class Vector2
 	 */
 	public Vector2 add(float s)
 	{
-		add(v, s);
+		if(Config.NATIVE_MATH)
+			add(v, s);
+		else
+			JavaMath.vectorAddSkalar(2, v, v, s);
 		return this;
 	}
 	
@@ -161,7 +169,10 @@ public class Vector2
 	 */
 	public Vector2 subtract(Vector2 other)
 	{
-		subtract(v, other.v);
+		if(Config.NATIVE_MATH)
+			subtract(v, other.v);
+		else
+			JavaMath.vectorSubtractVector(2, v, v, other.v);
 		return this;
 	}
 	
@@ -173,7 +184,10 @@ public class Vector2
 	 */
 	public Vector2 subtract(float s)
 	{
-		subtract(v, s);
+		if(Config.NATIVE_MATH)
+			subtract(v, s);
+		else
+			JavaMath.vectorSubtractSkalar(2, v, v, s);
 		return this;
 	}
 	
@@ -225,7 +239,10 @@ public class Vector2
 	 */
 	public Vector2 multiply(Vector2 other)
 	{
-		multiply(v, other.v);
+		if(Config.NATIVE_MATH)
+			multiply(v, other.v);
+		else
+			JavaMath.vectorMultiplyVector(2, v, v, other.v);
 		return this;
 	}
 	
@@ -237,7 +254,10 @@ public class Vector2
 	 */
 	public Vector2 multiply(float s)
 	{
-		multiply(v, s);
+		if(Config.NATIVE_MATH)
+			multiply(v, s);
+		else
+			JavaMath.vectorMultiplySkalar(2, v, v, s);
 		return this;
 	}
 	
@@ -289,7 +309,10 @@ public class Vector2
 	 */
 	public Vector2 divide(Vector2 other)
 	{
-		divide(v,other.v);
+		if(Config.NATIVE_MATH)
+			divide(v,other.v);
+		else
+			JavaMath.vectorDivideVector(2, v, v, other.v);
 		return this;
 	}
 	
@@ -301,7 +324,10 @@ public class Vector2
 	 */
 	public Vector2 divide(float s)
 	{
-		divide(v,s);
+		if(Config.NATIVE_MATH)
+			divide(v,s);
+		else
+			JavaMath.vectorDivideSkalar(2, v, v, s);
 		return this;
 	}
 	
@@ -347,7 +373,7 @@ public class Vector2
 	 */
 	public static float dotProduct(Vector2 a, Vector2 b)
 	{
-		return dotProduct(a.v, b.v);
+		return Config.NATIVE_MATH ? dotProduct(a.v, b.v) : JavaMath.dotProduct(2, a.v, b.v);
 	}
 	
 	/**
@@ -364,7 +390,10 @@ public class Vector2
 	 */
 	public Vector2 normalize()
 	{
-		normalize(v);
+		if(Config.NATIVE_MATH)
+			normalize(v);
+		else
+			JavaMath.vectorNormalize(2, v, v);
 		return this;
 	}
 	
@@ -393,7 +422,10 @@ public class Vector2
 	 */
 	public Vector2 invert()
 	{
-		invert(v);
+		if(Config.NATIVE_MATH)
+			invert(v);
+		else
+			JavaMath.vectorInvert(2, v);
 		return this;
 	}
 
@@ -412,7 +444,7 @@ public class Vector2
 	 */
 	public float length()
 	{
-		return length(v);
+		return Config.NATIVE_MATH ? length(v) : JavaMath.vectorLength(2, v);
 	}
 
 	/* (non-Javadoc)
@@ -4,6 +4,7 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 
+import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
 import nu.shacknet.poseidon.pn.signanzorbit.util.Persistable;
 
 
@@ -138,7 +139,10 @@ public class Vector3 implements Persistable
 	 */
 	public Vector3 add(Vector3 other)
 	{
-		add(v, other.v);
+		if(Config.NATIVE_MATH)
+			add(v, other.v);
+		else
+			JavaMath.vectorAddVector(3, v, v, other.v);
 		return this;
 	}
 	
@@ -150,7 +154,10 @@ public class Vector3 implements Persistable
 	 */
 	public Vector3 add(float s)
 	{
-		add(v, s);
+		if(Config.NATIVE_MATH)
+			add(v, s);
+		else
+			JavaMath.vectorAddSkalar(3, v, v, s);
 		return this;
 	}
 	
@@ -202,7 +209,10 @@ public class Vector3 implements Persistable
 	 */
 	public Vector3 subtract(Vector3 other)
 	{
-		subtract(v, other.v);
+		if(Config.NATIVE_MATH)
+			subtract(v, other.v);
+		else
+			JavaMath.vectorSubtractVector(3, v, v, other.v);
 		return this;
 	}
 	
@@ -214,7 +224,10 @@ public class Vector3 implements Persistable
 	 */
 	public Vector3 subtract(float s)
 	{
-		subtract(v,s);
+		if(Config.NATIVE_MATH)
+			subtract(v,s);
+		else
+			JavaMath.vectorSubtractSkalar(3, v, v, s);
 		return this;
 	}
 	
@@ -266,7 +279,10 @@ public class Vector3 implements Persistable
 	 */
 	public Vector3 multiply(Vector3 other)
 	{
-		multiply(v, other.v);
+		if(Config.NATIVE_MATH)
+			multiply(v, other.v);
+		else
+			JavaMath.vectorMultiplyVector(3, v, v, other.v);
 		return this;
 	}
 
@@ -278,7 +294,10 @@ public class Vector3 implements Persistable
 	 */
 	public Vector3 multiply(float s)
 	{
-		multiply(v,s);
+		if(Config.NATIVE_MATH)
+			multiply(v,s);
+		else
+			JavaMath.vectorMultiplySkalar(3, v, v, s);
 		return this;
 	}
 	
@@ -330,7 +349,10 @@ public class Vector3 implements Persistable
 	 */
 	public Vector3 divide(Vector3 other)
 	{
-		divide(v, other.v);
+		if(Config.NATIVE_MATH)
+			divide(v, other.v);
+		else
+			JavaMath.vectorDivideVector(3, v, v, other.v);
 		return this;
 	}
 	
@@ -342,7 +364,10 @@ public class Vector3 implements Persistable
 	 */
 	public Vector3 divide(float s)
 	{
-		divide(v, s);
+		if(Config.NATIVE_MATH)
+			divide(v, s);
+		else
+			JavaMath.vectorDivideSkalar(3, v, v, s);
 		return this;
 	}
 	
@@ -388,7 +413,7 @@ public class Vector3 implements Persistable
 	 */
 	public static float dotProduct (Vector3 a, Vector3 b)
 	{
-		return dotProduct(a.v, b.v);
+		return Config.NATIVE_MATH ? dotProduct(a.v, b.v) : JavaMath.dotProduct(3, a.v, b.v);
 	}
 
 	/**
@@ -409,7 +434,10 @@ public class Vector3 implements Persistable
 	 */
 	public static void crossProduct(Vector3 a, Vector3 b, Vector3 result)
 	{
-		crossProduct(a.v, b.v, result.v);
+		if(Config.NATIVE_MATH)
+			crossProduct(a.v, b.v, result.v);
+		else
+			JavaMath.vector3CrossProduct(result.v, a.v, b.v);
 	}
 	
 	/**
@@ -440,7 +468,10 @@ public class Vector3 implements Persistable
 	 */
 	public Vector3 normalize()
 	{
-		normalize(v);
+		if(Config.NATIVE_MATH)
+			normalize(v);
+		else
+			JavaMath.vectorNormalize(3, v, v);
 		return this;
 	}
 	
@@ -472,7 +503,7 @@ public class Vector3 implements Persistable
 	 */
 	public float getAngle(Vector3 other)
 	{
-		return getAngle(v, other.v);
+		return Config.NATIVE_MATH ? getAngle(v, other.v) : JavaMath.vectorAngle(3, v, other.v);
 	}
 	
 	/**
@@ -501,7 +532,10 @@ public class Vector3 implements Persistable
 	 */
 	public Vector3 invert()
 	{
-		invert(v);
+		if(Config.NATIVE_MATH)
+			invert(v);
+		else
+			JavaMath.vectorInvert(3, v);
 		return this;
 	}
 	
@@ -520,7 +554,7 @@ public class Vector3 implements Persistable
 	 */
 	public float length()
 	{
-		return length(v);
+		return Config.NATIVE_MATH ? length(v) : JavaMath.vectorLength(3, v);
 	}
 	
 	/* (non-Javadoc)
@@ -1,5 +1,7 @@
 package nu.shacknet.poseidon.pn.signanzorbit.math;
 
+import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
+
 /**
  * The Class Vector4.
  *
@@ -133,7 +135,10 @@ public class Vector4
 	 */
 	public Vector4 add(Vector4 other)
 	{
-		add(v, other.v);
+		if(Config.NATIVE_MATH)
+			add(v, other.v);
+		else
+			JavaMath.vector4Combine(JavaMath.OP_ADD, v, other.v);
 		return this;
 	}
 	
@@ -145,7 +150,10 @@ public class Vector4
 	 */
 	public Vector4 add(float s)
 	{
-		add(v, s);
+		if(Config.NATIVE_MATH)
+			add(v, s);
+		else
+			JavaMath.vector4Combine(JavaMath.OP_ADD, v, s);
 		return this;
 	}
 	
@@ -181,7 +189,10 @@ public class Vector4
 	 */
 	public Vector4 add(Vector3 other)
 	{
-		add3(v, other.v);
+		if(Config.NATIVE_MATH)
+			add3(v, other.v);
+		else
+			JavaMath.vector4Combine(JavaMath.OP_ADD, v, other.v);
 		return this;
 	}
 	
@@ -229,7 +240,10 @@ public class Vector4
 	 */
 	public Vector4 subtract(Vector4 other)
 	{
-		subtract(v, other.v);
+		if(Config.NATIVE_MATH)
+			subtract(v, other.v);
+		else
+			JavaMath.vector4Combine(JavaMath.OP_SUBTRACT, v, other.v);
 		return this;
 	}
 	
@@ -241,7 +255,10 @@ public class Vector4
 	 */
 	public Vector4 subtract(float s)
 	{
-		subtract(v, s);
+		if(Config.NATIVE_MATH)
+			subtract(v, s);
+		else
+			JavaMath.vector4Combine(JavaMath.OP_SUBTRACT, v, s);
 		return this;
 	}
 	
@@ -277,7 +294,10 @@ public class Vector4
 	 */
 	public Vector4 subtract(Vector3 other)
 	{
-		subtract3(v, other.v);
+		if(Config.NATIVE_MATH)
+			subtract3(v, other.v);
+		else
+			JavaMath.vector4Combine(JavaMath.OP_SUBTRACT, v, other.v);
 		return this;
 	}
 	
@@ -325,7 +345,10 @@ public class Vector4
 	 */
 	public Vector4 multiply(Vector4 other)
 	{
-		multiply(v, other.v);
+		if(Config.NATIVE_MATH)
+			multiply(v, other.v);
+		else
+			JavaMath.vector4Combine(JavaMath.OP_MULTIPLY, v, other.v);
 		return this;
 	}
 	
@@ -337,7 +360,10 @@ public class Vector4
 	 */
 	public Vector4 multiply(float s)
 	{
-		multiply(v, s);
+		if(Config.NATIVE_MATH)
+			multiply(v, s);
+		else
+			JavaMath.vector4Combine(JavaMath.OP_MULTIPLY, v, s);
 		return this;
 	}
 	
@@ -373,7 +399,10 @@ public class Vector4
 	 */
 	public Vector4 multiply(Vector3 other)
 	{
-		multiply3(v, other.v);
+		if(Config.NATIVE_MATH)
+			multiply3(v, other.v);
+		else
+			JavaMath.vector4Combine(JavaMath.OP_MULTIPLY, v, other.v);
 		return this;
 	}
 	
@@ -421,7 +450,10 @@ public class Vector4
 	 */
 	public Vector4 divide(Vector4 other)
 	{
-		divide(v, other.v);
+		if(Config.NATIVE_MATH)
+			divide(v, other.v);
+		else
+			JavaMath.vector4Combine(JavaMath.OP_DIVIDE, v, other.v);
 		return this;
 	}
 	
@@ -433,7 +465,10 @@ public class Vector4
 	 */
 	public Vector4 divide(float s)
 	{
-		divide(v, s);
+		if(Config.NATIVE_MATH)
+			divide(v, s);
+		else
+			JavaMath.vector4Combine(JavaMath.OP_DIVIDE, v, s);
 		return this;
 	}
 	
@@ -469,7 +504,10 @@ public class Vector4
 	 */
 	public Vector4 divide(Vector3 other)
 	{
-		divide3(v, other.v);
+		if(Config.NATIVE_MATH)
+			divide3(v, other.v);
+		else
+			JavaMath.vector4Combine(JavaMath.OP_DIVIDE, v, other.v);
 		return this;
 	}
 	
@@ -503,7 +541,7 @@ public class Vector4
 	 */
 	public static float dotProduct (Vector4 a, Vector4 b)
 	{
-		return dotProduct(a.v, b.v);
+		return Config.NATIVE_MATH ? dotProduct(a.v, b.v) : JavaMath.vector4DotProduct(a.v, b.v);
 	}
 	
 	/**
@@ -520,7 +558,10 @@ public class Vector4
 	 */
 	public Vector4 normalize()
 	{
-		normalize(v);
+		if(Config.NATIVE_MATH)
+			normalize(v);
+		else
+			JavaMath.vector4Normalize(v);
 		return this;
 	}
 	
@@ -549,7 +590,10 @@ public class Vector4
 	 */
 	public Vector4 homogenize()
 	{
-		homogenize(v);
+		if(Config.NATIVE_MATH)
+			homogenize(v);
+		else
+			JavaMath.vector4Homogenize(v, v);
 		return this;
 	}
 	
@@ -578,7 +622,10 @@ public class Vector4
 	 */
 	public Vector4 invert()
 	{
-		invert(v);
+		if(Config.NATIVE_MATH)
+			invert(v);
+		else
+			JavaMath.vector4Invert(v);
 		return this;
 	}
 	
@@ -597,7 +644,7 @@ public class Vector4
 	 */
 	public float length()
 	{
-		return length(v);
+		return Config.NATIVE_MATH ? length(v) : JavaMath.vector4Length(v);
 	}
 	
 	/* (non-Javadoc)
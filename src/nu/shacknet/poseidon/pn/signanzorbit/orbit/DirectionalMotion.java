@@ -98,8 +98,7 @@ public class DirectionalMotion extends Motion
 		
 		position.add(tempDirectionVec);
 	
-		transform.setIdentity();
-		transform.mult(basicOrientation);
+		transform.copy(basicOrientation);
 		
 		if(satTrans!=null){
 			satTrans.update(dt);
@@ -136,10 +135,6 @@ public class DirectionalMotion extends Motion
 		dos.writeFloat(this.speed);
 		this.basicOrientation.persist(dos);
 		
-		dos.writeBoolean(isInsidePlanet);
-		dos.writeBoolean(filterPlanetColl);
-		dos.writeBoolean(playedCollSound);
-		
 		if(satTrans != null){
 			dos.writeBoolean(true);
 			dos.writeUTF(satTrans.getClass().getName());
@@ -159,10 +154,6 @@ public class DirectionalMotion extends Motion
 		this.speed = dis.readFloat();
 		this.basicOrientation.restore(dis);
 		
-		this.isInsidePlanet = dis.readBoolean();
-		this.filterPlanetColl = dis.readBoolean();
-		this.playedCollSound = dis.readBoolean();
-		
 		if(dis.readBoolean()){
 			String className = dis.readUTF();
 			this.satTrans = SatelliteTransformation.restore(dis,className);
@@ -21,34 +21,6 @@ import nu.shacknet.poseidon.pn.signanzorbit.util.managers.LogManager;
 public abstract class Motion implements Persistable
 {	
 	
-	/** flag used to determine if the object is inside the planet */
-	boolean isInsidePlanet = false;
-	
-	/** flag used to avoid collisions of satellites */
-	boolean filterPlanetColl = false;
-	
-	/** flag used to play the collision sound only once */
-	boolean playedCollSound = false;
-	
-	/** The collision counter */
-	int collCount = 0;
-	
-	/**
-	 * Sets the collision counter.
-	 * @param newCollCount the new collision count
-	 */
-	public void setCollCount(int newCollCount){
-		collCount = newCollCount;
-	}
-	
-	/**
-	 * Gets the collision counter.
-	 * @return the collision counter
-	 */
-	public int getCollCount(){
-		return collCount;
-	}
-	
 	/**
 	 * Do the next iteration step 
 	 * @param dt delta time between frames for a frame-independent motion
@@ -104,54 +76,6 @@ public abstract class Motion implements Persistable
 	 */
 	public abstract void morph(Vector3 pushVec);
 	
-	/**
-	 * Checks if is inside planet.
-	 * @return true, if is inside planet
-	 */
-	public boolean isInsidePlanet(){
-		return isInsidePlanet;		
-	}
-	
-	/**
-	 * Sets the inside planet flag
-	 * @param isInsidePlanet the satellite is in/outside
-	 */
-	public void setInsidePlanet(boolean isInsidePlanet){
-		this.isInsidePlanet = isInsidePlanet;
-	}
-	
-	/**
-	 * Gets the flag state used to avoid collisions of satellites.
-	 * @return the flag used to avoid collisions of satellites
-	 */
-	public boolean getFilterPlanetColl(){
-		return filterPlanetColl;		
-	}
-	
-	/**
-	 * Sets the flag used to avoid collisions of satellites with the planet.
-	 * @param filterPlanetColl the new state for filtering collisions
-	 */
-	public void setFilterPlanetColl(boolean filterPlanetColl){
-		this.filterPlanetColl = filterPlanetColl;		
-	}
-	
-	/**
-	 * Gets the state of the flag - used to play the collision sound only once.
-	 * @return state if the sound was already played or not
-	 */
-	public boolean getPlayedCollSound(){
-		return playedCollSound;		
-	}
-
-	/**
-	 * Sets the state of the flag - used to play the collision sound only once.
-	 * @param playedCollSound state if the sound was already played or not
-	 */
-	public void setPlayedCollSound(boolean playedCollSound){
-		this.playedCollSound = playedCollSound;		
-	}
-	
 	/**
 	 * Gets the basic orientation of the satellite
 	 * @return the basic orientation matrix
@@ -23,7 +23,7 @@ public class Orbit extends Motion
 	
 	/** The iteration speed. */
 	private float 	speed;
-	/** The ellipse parameter */
+	/** The arc parameter along the ellipse (normalized arc length, [0,2PI)) */
 	private float  	u;
 	/** The step size */
 	private float  	step;
@@ -392,7 +392,7 @@ public class Orbit extends Motion
 	private void evaluatePos()
 	{
 		//evaluate ellipse
-		position.set(ellipse.getPoint(u));
+		position.set(ellipse.getPointArc(u));
 				
 		//reset transformation to basic orientation
 		transform.set(basicOrientation.m);
@@ -492,7 +492,7 @@ public class Orbit extends Motion
 			dirVecRotationInProgress = true;
 			
 		//approx current direction vec
-		currtDirApproximation.set(ellipse.getPoint(u+step));
+		currtDirApproximation.set(ellipse.getPointArc(u+step));
 		currtDirApproximation.subtract(position);
 		currtDirApproximation.normalize();
 		
@@ -610,10 +610,6 @@ public class Orbit extends Motion
 		directionVec.persist(dos);
 		basicOrientation.persist(dos);
 		
-		dos.writeBoolean(isInsidePlanet);
-		dos.writeBoolean(filterPlanetColl);
-		dos.writeBoolean(playedCollSound);
-		
 		if(satTrans != null){
 			dos.writeBoolean(true);
 			dos.writeUTF(satTrans.getClass().getName());
@@ -659,10 +655,6 @@ public class Orbit extends Motion
 		directionVec.restore(dis);
 		basicOrientation.restore(dis);
 		
-		isInsidePlanet = dis.readBoolean();
-		filterPlanetColl = dis.readBoolean();
-		playedCollSound = dis.readBoolean();
-		
 		if(dis.readBoolean()){
 			String className = dis.readUTF();
 			satTrans = SatelliteTransformation.restore(dis,className);
@@ -685,7 +677,7 @@ public class Orbit extends Motion
 	@Override
 	public Vector3 getCurrDirectionVec() {
 		//approx current direction vec
-		currtDirApproximation.set(ellipse.getPoint(u+step));
+		currtDirApproximation.set(ellipse.getPointArc(u+step));
 		currtDirApproximation.subtract(position);
 		return currtDirApproximation;
 	}
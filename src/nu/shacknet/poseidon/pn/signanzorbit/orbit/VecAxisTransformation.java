@@ -6,12 +6,18 @@ import java.io.IOException;
 
 import nu.shacknet.poseidon.pn.signanzorbit.math.Constants;
 import nu.shacknet.poseidon.pn.signanzorbit.math.Matrix44;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Quaternion;
 import nu.shacknet.poseidon.pn.signanzorbit.math.Vector3;
 
 
 /**
  * The Class VecAxisTransformation represents a satellite
  * transformation around a vector axis.
+ * 
+ * The rotation is integrated incrementally as a quaternion, the matrix
+ * returned by getTransform() is only expanded once per update. The
+ * persisted state is the same as before (angle, axis and the basic
+ * orientation as matrix).
  *
  * @author Alex Druml
  * @author Lukas Roessler
@@ -38,6 +44,15 @@ public class VecAxisTransformation extends SatelliteTransformation{
 	
 	/** The axis. */
 	public final Vector3 axis;
+	
+	/** The current rotation around the axis (without the basic orientation). */
+	private final Quaternion rotation;
+	
+	/** The basic orientation as quaternion. */
+	private final Quaternion orientation;
+	
+	/** A temporary quaternion (the rotation of the current update step, the composed rotation). */
+	private final Quaternion temp;
 
 	/**
 	 * Instantiates a new vector axis transformation.
@@ -47,6 +62,9 @@ public class VecAxisTransformation extends SatelliteTransformation{
 		this.transform = new Matrix44();
 		this.basicOrientation = new Matrix44();
 		this.axis = new Vector3();
+		this.rotation = new Quaternion();
+		this.orientation = new Quaternion();
+		this.temp = new Quaternion();
 	}
 	
 	/**
@@ -68,7 +86,11 @@ public class VecAxisTransformation extends SatelliteTransformation{
 		this.axis.set(axis);
 
 		if(basicOrientation!=null)
+		{
 			this.basicOrientation.copy(basicOrientation);
+			this.orientation.setFromMatrix(basicOrientation);
+		}
+		compose();
 	}
 	
 	/* (non-Javadoc)
@@ -76,17 +98,38 @@ public class VecAxisTransformation extends SatelliteTransformation{
 	 */
 	public void update(float dt)
 	{
-		qvCurr += dt*qv*speed;
+		float angle = dt*qv*speed;
+		qvCurr += angle;
 	
 		if(qvCurr>=Constants.TWOPI)
 			qvCurr-=Constants.TWOPI;
 		
+		//rotation = step*rotation, both rotate around the same axis
+		temp.setFromAxisAngleStep(axis, angle);
+		rotation.premult(temp).normalize();
 		
-		transform.setIdentity();
-		transform.mult(basicOrientation);
-		transform.addRotate(axis,qvCurr);
-
-		
+		compose();
+	}
+	
+	/**
+	 * Expands rotation*orientation into the transformation matrix.
+	 */
+	private void compose()
+	{
+		Quaternion.mult(rotation, orientation, temp);
+		temp.toMatrix(transform);
+	}
+	
+	/**
+	 * Takes the current transformation as new basic orientation, the rotation
+	 * starts again at 0. Same as setBasicOrientation(getTransform()),
+	 * but stays in quaternion space.
+	 */
+	public void rebase()
+	{
+		orientation.premult(rotation).normalize();
+		orientation.toMatrix(basicOrientation);
+		reset();
 	}
 
 	/* (non-Javadoc)
@@ -121,6 +164,10 @@ public class VecAxisTransformation extends SatelliteTransformation{
 		this.speed = dis.readFloat();
 		axis.restore(dis);
 		basicOrientation.restore(dis);
+		
+		orientation.setFromMatrix(basicOrientation);
+		rotation.setFromAxisAngle(axis, qvCurr);
+		compose();
 	}
 
 	
@@ -137,8 +184,9 @@ public class VecAxisTransformation extends SatelliteTransformation{
 	 */
 	@Override
 	public void setBasicOrientation(Matrix44 basicOrientation) {
-		this.qvCurr = 0;
 		this.basicOrientation.copy(basicOrientation);
+		this.orientation.setFromMatrix(basicOrientation);
+		reset();
 	}
 
 	/**
@@ -163,5 +211,7 @@ public class VecAxisTransformation extends SatelliteTransformation{
 	@Override
 	public void reset() {
 		this.qvCurr = 0;
+		this.rotation.setIdentity();
+		compose();
 	}
 }
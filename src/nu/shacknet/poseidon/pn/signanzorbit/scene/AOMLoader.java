@@ -9,8 +9,11 @@ import java.util.HashMap;
 import java.util.zip.GZIPInputStream;
 
 import nu.shacknet.poseidon.pn.signanzorbit.LevelActivity;
+import nu.shacknet.poseidon.pn.signanzorbit.collision.GeometrySphereTree;
 import nu.shacknet.poseidon.pn.signanzorbit.math.AxisAlignedBox3;
+import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
 import nu.shacknet.poseidon.pn.signanzorbit.math.Color4;
+import nu.shacknet.poseidon.pn.signanzorbit.math.FixedPoint;
 import nu.shacknet.poseidon.pn.signanzorbit.math.Matrix44;
 import nu.shacknet.poseidon.pn.signanzorbit.math.Sphere;
 import nu.shacknet.poseidon.pn.signanzorbit.math.Vector3;
@@ -18,6 +21,7 @@ import nu.shacknet.poseidon.pn.signanzorbit.scene.MaterialManager.Material;
 import nu.shacknet.poseidon.pn.signanzorbit.util.managers.LogManager;
 
 import android.content.Context;
+import android.opengl.GLES10;
 
 /**
  * # AndroidModel format (*.aom) layout. The whole thing is usually GZIPed.
@@ -230,7 +234,17 @@ public class AOMLoader
 					texcoords = new float[numVertices*2];
 					readFloatArray(texcoords, dis);
 				}
-				geometries.put(name, new Geometry(arrayToBuffer(vertices), arrayToBuffer(normals), arrayToBuffer(texcoords), boundingBox, boundingSphere, numVertices));
+				// converted once here, the geometry keeps its format
+				Geometry geometry;
+				if(Config.FIXED_POINT)
+					geometry = new Geometry(FixedPoint.toFixedBuffer(vertices), FixedPoint.toFixedBuffer(normals), FixedPoint.toFixedBuffer(texcoords), GLES10.GL_FIXED, boundingBox, boundingSphere, numVertices);
+				else
+					geometry = new Geometry(arrayToBuffer(vertices), arrayToBuffer(normals), arrayToBuffer(texcoords), boundingBox, boundingSphere, numVertices);
+				
+				// built from the float vertices, shared by all copies of the models using this geometry
+				if(Config.COLLISION_PROXIES)
+					geometry.setCollisionTree(new GeometrySphereTree(vertices, numVertices, Config.COLLISION_PROXY_LEVELS));
+				geometries.put(name, geometry);
 			}
 			
 			/*
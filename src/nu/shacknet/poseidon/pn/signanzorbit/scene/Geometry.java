@@ -4,8 +4,10 @@ import static android.opengl.GLES10.*;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.nio.Buffer;
 import java.nio.FloatBuffer;
 
+import nu.shacknet.poseidon.pn.signanzorbit.collision.GeometrySphereTree;
 import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
 import nu.shacknet.poseidon.pn.signanzorbit.math.AxisAlignedBox3;
 import nu.shacknet.poseidon.pn.signanzorbit.math.Sphere;
@@ -32,7 +34,10 @@ public class Geometry implements Persistable
 	private final OGLManager oglManager = OGLManager.instance;
 	
 	/** The Buffers. */
-	private final FloatBuffer vertices, normals, texcoords;
+	private final Buffer vertices, normals, texcoords;
+	
+	/** The type of the buffers' elements (GL_FLOAT or GL_FIXED). */
+	private final int type;
 	
 	/** The bounding box. */
 	private final AxisAlignedBox3 boundingBox;
@@ -40,6 +45,9 @@ public class Geometry implements Persistable
 	/** The bounding sphere. */
 	private final Sphere boundingSphere;
 	
+	/** The sphere tree used as collision proxy, null if there is none. */
+	private GeometrySphereTree collisionTree;
+	
 	/** The number of vertices. */
 	private final int numVertices;
 	
@@ -75,8 +83,25 @@ public class Geometry implements Persistable
 	 * @param numVertices the num vertices
 	 */
 	public Geometry(FloatBuffer vertices, FloatBuffer normals, FloatBuffer texcoords, AxisAlignedBox3 boundingBox, Sphere boundingSphere, int numVertices)
+	{
+		this(vertices, normals, texcoords, GL_FLOAT, boundingBox, boundingSphere, numVertices);
+	}
+	
+	/**
+	 * Instantiates a new geometry.
+	 *
+	 * @param vertices the vertices
+	 * @param normals the normals
+	 * @param texcoords the texcoords
+	 * @param type the type of the buffers' elements, GL_FLOAT (FloatBuffers) or GL_FIXED (IntBuffers)
+	 * @param boundingBox the bounding box
+	 * @param boundingSphere the bounding sphere
+	 * @param numVertices the num vertices
+	 */
+	public Geometry(Buffer vertices, Buffer normals, Buffer texcoords, int type, AxisAlignedBox3 boundingBox, Sphere boundingSphere, int numVertices)
 	{
 		this.vertices = vertices;
+		this.type = type;
 		this.normals = normals;
 		this.texcoords = texcoords;
 		this.boundingBox = boundingBox;
@@ -84,6 +109,7 @@ public class Geometry implements Persistable
 		this.numVertices = numVertices;
 		initialized = false;
 		
+		// GL_FLOAT and GL_FIXED both have 4 bytes per element
 		if(vertices != null)
 			nrOfVertexBytes = numVertices*VERTEX_LENGTH*4;
 		else
@@ -154,19 +180,19 @@ public class Geometry implements Persistable
 		{
 		case Scene.RENDERMODE_VBO:
 			if(vertices != null)
-				GLES11.glVertexPointer(VERTEX_LENGTH, GL_FLOAT, 0, vertexOffset);
+				GLES11.glVertexPointer(VERTEX_LENGTH, type, 0, vertexOffset);
 			if(normals != null)
-				GLES11.glNormalPointer(GL_FLOAT, 0, normalOffset);
+				GLES11.glNormalPointer(type, 0, normalOffset);
 			if(texcoords != null)
-				GLES11.glTexCoordPointer(TEXCOORD_LENGTH, GL_FLOAT, 0, texcoordOffset);
+				GLES11.glTexCoordPointer(TEXCOORD_LENGTH, type, 0, texcoordOffset);
 			break;
 		case Scene.RENDERMODE_VERTEXARRAY:
 			if(vertices != null)
-				glVertexPointer(VERTEX_LENGTH, GL_FLOAT, 0, vertices);
+				glVertexPointer(VERTEX_LENGTH, type, 0, vertices);
 			if(normals != null)
-				glNormalPointer(GL_FLOAT, 0, normals);
+				glNormalPointer(type, 0, normals);
 			if(texcoords != null)
-				glTexCoordPointer(TEXCOORD_LENGTH, GL_FLOAT, 0, texcoords);
+				glTexCoordPointer(TEXCOORD_LENGTH, type, 0, texcoords);
 			break;
 		}
 		
@@ -199,4 +225,24 @@ public class Geometry implements Persistable
 	{
 		return boundingSphere;
 	}
+	
+	/**
+	 * Gets the sphere tree used as collision proxy.
+	 *
+	 * @return the sphere tree, null if there is none
+	 */
+	public GeometrySphereTree getCollisionTree()
+	{
+		return collisionTree;
+	}
+	
+	/**
+	 * Sets the sphere tree used as collision proxy.
+	 *
+	 * @param collisionTree the sphere tree
+	 */
+	public void setCollisionTree(GeometrySphereTree collisionTree)
+	{
+		this.collisionTree = collisionTree;
+	}
 }
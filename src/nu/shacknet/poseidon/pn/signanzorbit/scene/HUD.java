@@ -9,7 +9,7 @@ import nu.shacknet.poseidon.pn.signanzorbit.math.Sphere;
 import nu.shacknet.poseidon.pn.signanzorbit.math.Vector2;
 import nu.shacknet.poseidon.pn.signanzorbit.math.Vector3;
 import nu.shacknet.poseidon.pn.signanzorbit.scene.MaterialManager.Material;
-import nu.shacknet.poseidon.pn.signanzorbit.util.MathUtil;
+import nu.shacknet.poseidon.pn.signanzorbit.util.FastMath;
 import nu.shacknet.poseidon.pn.signanzorbit.util.managers.OGLManager;
 import nu.shacknet.poseidon.pn.signanzorbit.util.managers.TimeManager;
 
@@ -150,8 +150,10 @@ public class HUD extends Model
 	
 	/**
 	 * Update.
+	 *
+	 * @return false, the HUD has no bounding sphere
 	 */
-	public void update(Matrix44 sceneEntityTransformation)
+	public boolean update(Matrix44 sceneEntityTransformation)
 	{
 		int[] viewport = oglManager.getViewport();
 		width = viewport[2];
@@ -163,12 +165,13 @@ public class HUD extends Model
 		{
 			long circleTime = timeManager.getTimeOfLastFrame()-circleStartMillis;
 			float circlePercent = (float)circleTime / (float)Config.LONG_PRESS_CYCLE_DURATION;
-			float scale = MathUtil.forcePulseFunktion(circlePercent) * Config.MAX_FORCE_VIS_SIZE;
+			float scale = FastMath.forcePulse(circlePercent) * Config.MAX_FORCE_VIS_SIZE;
 			float angle = circleTime * Config.FORCE_VIS_ROTATION_SPEED;
 			transformation.setScale(scale,scale,scale);
 			transformation.addRotateZ(angle);
 			transformation.addTranslate(circleCenter.v[0], circleCenter.v[1], 0);
 		}
+		return false;
 	}
 	
 	
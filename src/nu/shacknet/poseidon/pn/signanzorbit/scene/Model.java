@@ -3,11 +3,14 @@ package nu.shacknet.poseidon.pn.signanzorbit.scene;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
 
+import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
 import nu.shacknet.poseidon.pn.signanzorbit.math.AxisAlignedBox3;
 import nu.shacknet.poseidon.pn.signanzorbit.math.Matrix44;
 import nu.shacknet.poseidon.pn.signanzorbit.math.Sphere;
+import nu.shacknet.poseidon.pn.signanzorbit.math.SphereBatch;
 import nu.shacknet.poseidon.pn.signanzorbit.math.Vector3;
 import nu.shacknet.poseidon.pn.signanzorbit.orbit.Motion;
 import nu.shacknet.poseidon.pn.signanzorbit.orbit.Movable;
@@ -74,6 +77,12 @@ public class Model implements Movable,Persistable
 	/** whether this Model is disabled (not rendered, not updated) */
 	boolean disabled;
 	
+	/** The index of this Model's bounding sphere in the scene's SphereBatch */
+	int sphereBatchIndex;
+	
+	/** whether the bounding sphere in scene entity space has to be recalculated even if the transformation did not change */
+	boolean boundsDirty;
+	
 	/**
 	 * Instantiates a new model.
 	 */
@@ -90,6 +99,7 @@ public class Model implements Movable,Persistable
 		initialized = false;
 		currentPos = new Vector3();
 		disabled = false;
+		boundsDirty = true;
 	}
 	
 	/**
@@ -110,6 +120,7 @@ public class Model implements Movable,Persistable
 		currentPos = new Vector3();
 		name = other.name;
 		disabled = other.disabled;
+		boundsDirty = true;
 		
 		int numGeoms = other.geometries.size();
 		
@@ -221,7 +232,13 @@ public class Model implements Movable,Persistable
 			return;
 		
 		glPushMatrix();
-		glMultMatrixf(transformation.getArray16(), 0);
+		FloatBuffer buffer = transformation.getBuffer();
+		if(Config.FIXED_POINT)
+			glMultMatrixx(transformation.getArrayFixed16(), 0);
+		else if(buffer != null)
+			glMultMatrixf(buffer);
+		else
+			glMultMatrixf(transformation.getArray16(), 0);
 		int numGeoms = geometries.size();
 		for(int i=0; i<numGeoms; i++)
 		{
@@ -250,23 +267,70 @@ public class Model implements Movable,Persistable
 	}
 	
 	/**
-	 * Update.
+	 * Update. The bounding sphere in scene entity space is only recalculated
+	 * if the transformation has changed.
 	 *
 	 * @param sceneEntityTransformation the scene entity transformation
+	 * @return true, if the bounding sphere in scene entity space has changed
 	 */
-	public void update(Matrix44 sceneEntityTransformation)
+	public boolean update(Matrix44 sceneEntityTransformation)
 	{
 		if(disabled)
-			return;
+			return false;
 		
 		int numGeoms = geometries.size();
 		for(int i=0; i<numGeoms; i++)
 			geometries.get(i).update();
 
-		transformation.copy(transformation_temp);
-
-		transformation.transformSphere(boundingSphere, boundingSphereSceneEntity);
+		boolean changed = transformation.copyChanged(transformation_temp) || boundsDirty;
+		if(changed)
+		{
+			transformation.publish();
+			transformation.transformSphere(boundingSphere, boundingSphereSceneEntity);
+			boundsDirty = false;
+		}
 		sceneEntityTransformation.transformSphere(boundingSphereSceneEntity, boundingSphereWorld);
+		return changed;
+	}
+	
+	/**
+	 * Batched counterpart of update(): copies the transformation and adds the
+	 * bounding sphere to the batch (see SceneEntity.collectBoundingSpheres()).
+	 *
+	 * @param batch the batch of the scene
+	 * @return true, if the bounding sphere in scene entity space has to be recalculated
+	 */
+	boolean collectBoundingSphere(SphereBatch batch)
+	{
+		boolean changed = false;
+		if(!disabled)
+		{
+			int numGeoms = geometries.size();
+			for(int i=0; i<numGeoms; i++)
+				geometries.get(i).update();
+			
+			changed = transformation.copyChanged(transformation_temp) || boundsDirty;
+			if(changed)
+				transformation.publish();
+			boundsDirty = false;
+		}
+		
+		sphereBatchIndex = batch.addSphere(transformation, boundingSphere, boundingSphereSceneEntity);
+		return changed;
+	}
+	
+	/**
+	 * Reads back the transformed bounding spheres.
+	 *
+	 * @param batch the batch of the scene
+	 */
+	void applyBoundingSphere(SphereBatch batch)
+	{
+		if(disabled)
+			return;
+		
+		batch.getSphereGroup(sphereBatchIndex, boundingSphereSceneEntity);
+		batch.getSphereWorld(sphereBatchIndex, boundingSphereWorld);
 	}
 	
 	/**
@@ -319,6 +383,16 @@ public class Model implements Movable,Persistable
 		this.transformation_temp = transformation;
 	}
 	
+	/**
+	 * Gets the geometries, shared with the copies of this Model.
+	 *
+	 * @return the geometries
+	 */
+	public ArrayList<Geometry> getGeometries()
+	{
+		return geometries;
+	}
+	
 	/**
 	 * Adds a Geometry and its Material to the Model
 	 *
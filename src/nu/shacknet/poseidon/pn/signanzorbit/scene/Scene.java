@@ -7,7 +7,9 @@ import java.util.ArrayList;
 import java.util.LinkedList;
 
 import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
+import nu.shacknet.poseidon.pn.signanzorbit.math.MathArena;
 import nu.shacknet.poseidon.pn.signanzorbit.math.Matrix44;
+import nu.shacknet.poseidon.pn.signanzorbit.math.SphereBatch;
 import nu.shacknet.poseidon.pn.signanzorbit.util.Persistable;
 import nu.shacknet.poseidon.pn.signanzorbit.util.datastructures.Pair;
 import nu.shacknet.poseidon.pn.signanzorbit.util.managers.MotionManager;
@@ -55,6 +57,13 @@ public class Scene implements Persistable
 	/** contains all Models that have already been untied from their SceneEntities, written as their indices (SceneEntity first) */
 	private final LinkedList<Pair<Integer,Integer>> untied;
 	
+	/** The bounding spheres of all SceneEntities and Models, transformed at once in update() */
+	private final SphereBatch sphereBatch;
+	
+	/** The arena holding the transformations used by opengl, created in the first update()
+	 * with the native backend (null with the Java backend, nothing reads it there) */
+	private MathArena arena;
+	
 	/**
 	 * Instantiates a new scene.
 	 */
@@ -64,6 +73,7 @@ public class Scene implements Persistable
 		initialized = false;
 		toUntie = new LinkedList<Pair<SceneEntity,Model>>();
 		untied = new LinkedList<Pair<Integer,Integer>>();
+		sphereBatch = new SphereBatch();
 	}
 	
 	/**
@@ -150,6 +160,8 @@ public class Scene implements Persistable
 			
 			s.remove(m);
 			sceneEntities.add(new_s);
+			if(arena != null)
+				new_s.bindArena(arena);
 			untied.add(new Pair<Integer, Integer>(first, second));
 		}
 		
@@ -211,6 +223,8 @@ public class Scene implements Persistable
 					new_s_transformation.copy(s.getTransformation());
 					new_s_transformation.mult(m.getTransformation());
 					new_s.update();
+					if(arena != null)
+						new_s.bindArena(arena);
 					m.getTransformation().setIdentity();
 					m.getBasicOrientation().setIdentity();
 					motionManager.transferMotion(m, new_s);
@@ -222,14 +236,42 @@ public class Scene implements Persistable
 			}
 		}
 		
+		if(arena == null && Config.NATIVE_MATH)
+			createArena();
+		
+		// transform the bounding spheres of all SceneEntities in one batch
+		SphereBatch sphereBatch = this.sphereBatch;
+		sphereBatch.clear();
 		int size = sceneEntities.size();
 		for(int i=0;i<size;i++)
-			sceneEntities.get(i).update();
+			sceneEntities.get(i).collectBoundingSpheres(sphereBatch);
+		sphereBatch.transform();
+		for(int i=0;i<size;i++)
+			sceneEntities.get(i).applyBoundingSpheres(sphereBatch);
 		
 		if(hud != null)
 			hud.update(null);
 	}
 	
+	/**
+	 * Creates the arena and binds the transformations of all SceneEntities
+	 * and Models to it (only used by the native backend, unbound matrices
+	 * aren't published). There is room for one more SceneEntity per Model, so
+	 * the SceneEntities created by untying Models fit in as well.
+	 */
+	private void createArena()
+	{
+		int size = sceneEntities.size();
+		int numModels = 0;
+		for(int i=0;i<size;i++)
+			numModels += sceneEntities.get(i).models.size();
+		
+		arena = new MathArena(16*(size + 2*numModels));
+		for(int i=0;i<size;i++)
+			sceneEntities.get(i).bindArena(arena);
+		sphereBatch.setArena(arena);
+	}
+	
 	/**
 	 * Adds a SceneEntity to the Scene.
 	 *
@@ -238,6 +280,8 @@ public class Scene implements Persistable
 	public void add(SceneEntity sceneEntity)
 	{
 		sceneEntities.add(sceneEntity);
+		if(arena != null)
+			sceneEntity.bindArena(arena);
 	}
 	
 	/**
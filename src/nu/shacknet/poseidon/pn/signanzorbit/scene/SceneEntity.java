@@ -5,12 +5,15 @@ import static android.opengl.GLES10.*;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
 
 import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
 import nu.shacknet.poseidon.pn.signanzorbit.math.AxisAlignedBox3;
+import nu.shacknet.poseidon.pn.signanzorbit.math.MathArena;
 import nu.shacknet.poseidon.pn.signanzorbit.math.Matrix44;
 import nu.shacknet.poseidon.pn.signanzorbit.math.Sphere;
+import nu.shacknet.poseidon.pn.signanzorbit.math.SphereBatch;
 import nu.shacknet.poseidon.pn.signanzorbit.math.Vector3;
 import nu.shacknet.poseidon.pn.signanzorbit.orbit.Motion;
 import nu.shacknet.poseidon.pn.signanzorbit.orbit.Movable;
@@ -60,12 +63,24 @@ public class SceneEntity implements Movable,Persistable
 	/** The current position */
 	private final Vector3 currentPos;
 	
-	/** A List for all the Bounding Spheres of this SceneEntity */
-	private final ArrayList<Sphere> modelBoundingSpheres;
+	/** The centers of the Models' bounding spheres (scene entity space, packed xyz), kept between update() calls */
+	private float[] modelSphereCenters;
+	
+	/** The radii of the Models' bounding spheres, kept between update() calls */
+	private float[] modelSphereRadii;
+	
+	/** whether the bounding sphere has to be recalculated even if no Model moved (Models added or removed) */
+	private boolean boundsDirty;
 	
 	/** whether this SceneEntity is disabled (not rendered, not updated) */
 	private boolean disabled;
 	
+	/** The index of this SceneEntity's group in the scene's SphereBatch */
+	private int sphereBatchGroup;
+	
+	/** The state of this SceneEntity's group in the scene's SphereBatch */
+	private int sphereBatchState;
+	
 	/**
 	 * Instantiates a new scene entity.
 	 */
@@ -80,8 +95,8 @@ public class SceneEntity implements Movable,Persistable
 		boundingSphereWorld = new Sphere();
 		initialized = false;
 		currentPos = new Vector3();
-		modelBoundingSpheres = new ArrayList<Sphere>();
 		disabled = false;
+		boundsDirty = true;
 	}
 	
 	/**
@@ -173,7 +188,13 @@ public class SceneEntity implements Movable,Persistable
 			return;
 		
 		glPushMatrix();
-		glMultMatrixf(transformation.getArray16(), 0);
+		FloatBuffer buffer = transformation.getBuffer();
+		if(Config.FIXED_POINT)
+			glMultMatrixx(transformation.getArrayFixed16(), 0);
+		else if(buffer != null)
+			glMultMatrixf(buffer);
+		else
+			glMultMatrixf(transformation.getArray16(), 0);
 		int numModels = models.size();
 		for(int i=0; i<numModels; i++)
 			models.get(i).render(rendermode);
@@ -209,27 +230,132 @@ public class SceneEntity implements Movable,Persistable
 	}
 	
 	/**
-	 * Update.
+	 * Update. The bounding sphere is only merged again if a Model moved and
+	 * only transformed into world space if this or a Model moved.
 	 */
 	public void update()
 	{
 		if(disabled)
 			return;
 		
+		boolean moved = transformation.copyChanged(transformation_temp);
+		if(moved)
+			transformation.publish();
+		
+		boolean modelsChanged = boundsDirty;
 		int numModels = models.size();
 		for(int i=0; i<numModels; i++)
-		{
-			Model m = models.get(i);
 			// Models need the SceneEntitie's transformation to transform their bounding sphere into world space
-			m.update(transformation_temp);
-			modelBoundingSpheres.add(m.getBoundingSphereSceneEntity());
+			if(models.get(i).update(transformation))
+				modelsChanged = true;
+		
+		if(modelsChanged)
+		{
+			mergeModelBoundingSpheres();
+			boundsDirty = false;
 		}
-
-		transformation.copy(transformation_temp);
-
-		boundingSphere.setSphereSet(modelBoundingSpheres);
-		modelBoundingSpheres.clear();
-		transformation.transformSphere(boundingSphere, boundingSphereWorld);
+		if(moved || modelsChanged)
+			transformation.transformSphere(boundingSphere, boundingSphereWorld);
+	}
+	
+	/**
+	 * Merges the bounding spheres of the Models (scene entity space) into
+	 * the bounding sphere of this. The packed arrays are only reallocated
+	 * if the number of Models has changed.
+	 */
+	private void mergeModelBoundingSpheres()
+	{
+		ArrayList<Model> models = this.models;
+		int numModels = models.size();
+		if(numModels == 0)
+			return;
+		
+		if(modelSphereRadii == null || modelSphereRadii.length != numModels)
+		{
+			modelSphereCenters = new float[3*numModels];
+			modelSphereRadii = new float[numModels];
+		}
+		
+		float[] centers = modelSphereCenters;
+		float[] radii = modelSphereRadii;
+		for(int i=0; i<numModels; i++)
+		{
+			Sphere s = models.get(i).boundingSphereSceneEntity;
+			float[] center = s.center.v;
+			centers[3*i  ] = center[0];
+			centers[3*i+1] = center[1];
+			centers[3*i+2] = center[2];
+			radii[i] = s.radius;
+		}
+		boundingSphere.setSphereSet(centers, radii);
+	}
+	
+	/**
+	 * First half of the batched update: copies the transformations and adds
+	 * this SceneEntity and its Models to the batch. The state of the group
+	 * tells the batch what has moved since the last frame.
+	 *
+	 * @param batch the batch of the scene
+	 */
+	void collectBoundingSpheres(SphereBatch batch)
+	{
+		if(disabled)
+			return;
+		
+		boolean moved = transformation.copyChanged(transformation_temp);
+		if(moved)
+			transformation.publish();
+		sphereBatchGroup = batch.addGroup(transformation, boundingSphere);
+		
+		boolean modelsChanged = boundsDirty;
+		int numModels = models.size();
+		for(int i=0; i<numModels; i++)
+			if(models.get(i).collectBoundingSphere(batch))
+				modelsChanged = true;
+		boundsDirty = false;
+		
+		if(modelsChanged)
+			sphereBatchState = SphereBatch.CHANGED;
+		else if(moved)
+			sphereBatchState = SphereBatch.MOVED;
+		else
+			sphereBatchState = SphereBatch.UNCHANGED;
+		batch.setGroupState(sphereBatchGroup, sphereBatchState);
+	}
+	
+	/**
+	 * Binds the transformations used by opengl of this SceneEntity and its
+	 * Models to the arena of the scene.
+	 *
+	 * @param arena the arena
+	 */
+	void bindArena(MathArena arena)
+	{
+		transformation.bind(arena);
+		
+		int numModels = models.size();
+		for(int i=0; i<numModels; i++)
+			models.get(i).transformation.bind(arena);
+	}
+	
+	/**
+	 * Second half of the batched update: reads back the transformed bounding
+	 * spheres after the batch has been transformed.
+	 *
+	 * @param batch the batch of the scene
+	 */
+	void applyBoundingSpheres(SphereBatch batch)
+	{
+		// the batch has skipped this, the spheres of the last frame are still valid
+		if(disabled || sphereBatchState == SphereBatch.UNCHANGED)
+			return;
+		
+		int numModels = models.size();
+		for(int i=0; i<numModels; i++)
+			models.get(i).applyBoundingSphere(batch);
+		
+		batch.getGroupSphere(sphereBatchGroup, boundingSphere);
+		batch.getGroupSphereWorld(sphereBatchGroup, boundingSphereWorld);
 	}
 	
 	/* (non-Javadoc)
@@ -257,6 +383,7 @@ public class SceneEntity implements Movable,Persistable
 	{
 		models.add(model);
 		boundingBox.include(model.getBoundingBox());
+		boundsDirty = true;
 	}
 	
 	/**
@@ -266,6 +393,7 @@ public class SceneEntity implements Movable,Persistable
 	public void remove(Model model)
 	{
 		models.remove(model);
+		boundsDirty = true;
 	}
 
 	/* (non-Javadoc)
@@ -296,6 +424,16 @@ public class SceneEntity implements Movable,Persistable
 		return boundingBox;
 	}
 	
+	/**
+	 * Gets the bounding sphere in scene entity space.
+	 *
+	 * @return the bounding sphere
+	 */
+	public Sphere getBoundingSphere()
+	{
+		return boundingSphere;
+	}
+	
 	/* (non-Javadoc)
 	 * @see nu.shacknet.poseidon.pn.signanzorbit.orbit.Movable#getBoundingSphereWorld()
 	 */
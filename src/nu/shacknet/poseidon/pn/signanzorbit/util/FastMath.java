@@ -0,0 +1,190 @@
+package nu.shacknet.poseidon.pn.signanzorbit.util;
+
+import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
+
+/**
+ * Approximations of the transcendental functions used by the simulation
+ * every frame. If <code>Config.FAST_MATH</code> is false every method
+ * returns the exact (java.lang.Math) result, so callers do not have to
+ * switch themselves. The maximal absolute errors of the fast variants are
+ * given by the *_MAX_ERROR constants and checked by FastMathTest.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public final class FastMath
+{
+	/** The number of samples of the sine table per period (a power of two). */
+	private static final int SIN_TABLE_SIZE = 2048;
+
+	/** Maps an angle in radians to a (fractional) index into the sine table. */
+	private static final float SIN_INDEX_SCALE = SIN_TABLE_SIZE / (float)(2*Math.PI);
+
+	/** Beyond this index the float angle is too coarse for the table. */
+	private static final float SIN_INDEX_LIMIT = 1 << 24;
+
+	/** Degrees to radians. */
+	private static final float DEG_TO_RAD = (float)(Math.PI / 180);
+
+	/** The largest absolute error of sin() and cos() for |x| <= 8*PI (linear
+	 * interpolation of the table, grows with the rounding of x*SIN_INDEX_SCALE). */
+	public static final float SIN_MAX_ERROR = 4e-6f;
+
+	/** The largest relative error of invSqrt() and sqrt() (two newton iterations). */
+	public static final float SQRT_MAX_ERROR = 5e-6f;
+
+	/** The largest absolute error of acos() in radians (Abramowitz/Stegun 4.4.46 and sqrt()). */
+	public static final float ACOS_MAX_ERROR = 1e-5f;
+
+	/** The largest absolute error of forcePulse(). */
+	public static final float PULSE_MAX_ERROR = 4e-6f;
+
+	/** sin(2*PI*i/SIN_TABLE_SIZE), one extra sample for the interpolation. */
+	private static final float[] sinTable = new float[SIN_TABLE_SIZE+1];
+
+	static
+	{
+		for(int i=0; i<=SIN_TABLE_SIZE; i++)
+			sinTable[i] = (float)Math.sin((2*Math.PI*i) / SIN_TABLE_SIZE);
+	}
+
+	/**
+	 * Instantiates a new FastMath (not used).
+	 */
+	private FastMath()
+	{
+	}
+
+	/**
+	 * Interpolates the sine table at a fractional index.
+	 *
+	 * @param index the index (angle * SIN_INDEX_SCALE, may be negative)
+	 * @return the sine
+	 */
+	private static float sinIndex(float index)
+	{
+		int i = (int)index;
+		if(index < i)
+			i--;
+		float fraction = index - i;
+		i &= SIN_TABLE_SIZE-1;
+		return sinTable[i] + (sinTable[i+1] - sinTable[i]) * fraction;
+	}
+
+	/**
+	 * Sine.
+	 *
+	 * @param x the angle in radians
+	 * @return sin(x)
+	 */
+	public static float sin(float x)
+	{
+		float index = x * SIN_INDEX_SCALE;
+		if(!Config.FAST_MATH || !(Math.abs(index) < SIN_INDEX_LIMIT))
+			return (float)Math.sin(x);
+		return sinIndex(index);
+	}
+
+	/**
+	 * Cosine.
+	 *
+	 * @param x the angle in radians
+	 * @return cos(x)
+	 */
+	public static float cos(float x)
+	{
+		float index = x * SIN_INDEX_SCALE;
+		if(!Config.FAST_MATH || !(Math.abs(index) < SIN_INDEX_LIMIT))
+			return (float)Math.cos(x);
+		//cos(x) = sin(x + PI/2)
+		return sinIndex(index + SIN_TABLE_SIZE/4);
+	}
+
+	/**
+	 * Converts degrees to radians in float arithmetic (within one ulp of
+	 * Math.toRadians(), independent of FAST_MATH).
+	 *
+	 * @param degrees the angle in degrees
+	 * @return the angle in radians
+	 */
+	public static float toRadians(float degrees)
+	{
+		return degrees * DEG_TO_RAD;
+	}
+
+	/**
+	 * Inverse square root.
+	 *
+	 * @param x the argument (>= 0)
+	 * @return 1/sqrt(x), infinite for 0
+	 */
+	public static float invSqrt(float x)
+	{
+		if(!Config.FAST_MATH || x <= 0 || Float.isInfinite(x))
+			return 1 / (float)Math.sqrt(x);
+
+		//initial guess from the exponent, then two newton iterations
+		float half = 0.5f * x;
+		float y = Float.intBitsToFloat(0x5f3759df - (Float.floatToRawIntBits(x) >> 1));
+		y *= 1.5f - half * y * y;
+		y *= 1.5f - half * y * y;
+		return y;
+	}
+
+	/**
+	 * Square root.
+	 *
+	 * @param x the argument (>= 0)
+	 * @return sqrt(x)
+	 */
+	public static float sqrt(float x)
+	{
+		if(!Config.FAST_MATH || x <= 0 || Float.isInfinite(x))
+			return (float)Math.sqrt(x);
+		return x * invSqrt(x);
+	}
+
+	/**
+	 * Arc cosine. Unlike Math.acos() the argument is clamped to [-1,1], so
+	 * rounding errors of normalized dot products do not produce NaN.
+	 *
+	 * @param x the argument
+	 * @return acos(x) in [0,PI]
+	 */
+	public static float acos(float x)
+	{
+		if(!Config.FAST_MATH)
+			return (float)Math.acos(x);
+
+		if(x > 1)
+			x = 1;
+		else if(x < -1)
+			x = -1;
+		float a = Math.abs(x);
+		float p = -0.0012624911f;
+		p = p*a + 0.0066700901f;
+		p = p*a - 0.0170881256f;
+		p = p*a + 0.0308918810f;
+		p = p*a - 0.0501743046f;
+		p = p*a + 0.0889789874f;
+		p = p*a - 0.2145988016f;
+		p = p*a + 1.5707963050f;
+		float result = sqrt(1 - a) * p;
+		return x < 0 ? (float)Math.PI - result : result;
+	}
+
+	/**
+	 * Evaluates sin(sin(t*PI/2)*PI-PI/2)/2+0.5, a Java port of
+	 * MathUtil.forcePulseFunktion(), which is used in exact mode.
+	 *
+	 * @param t the parameter of the function
+	 * @return the result of the function
+	 */
+	public static float forcePulse(float t)
+	{
+		if(!Config.FAST_MATH)
+			return MathUtil.forcePulseFunktion(t);
+		final float halfPi = (float)(Math.PI / 2);
+		return sin(sin(t*halfPi)*(float)Math.PI - halfPi)/2 + 0.5f;
+	}
+}
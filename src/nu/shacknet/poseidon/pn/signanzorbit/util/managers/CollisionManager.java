@@ -4,13 +4,27 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.Random;
-import java.util.Vector;
 
+import nu.shacknet.poseidon.pn.signanzorbit.collision.Broadphase;
+import nu.shacknet.poseidon.pn.signanzorbit.collision.BruteForceBroadphase;
+import nu.shacknet.poseidon.pn.signanzorbit.collision.CollisionEvents;
+import nu.shacknet.poseidon.pn.signanzorbit.collision.CollisionProxies;
+import nu.shacknet.poseidon.pn.signanzorbit.collision.CollisionScheduler;
+import nu.shacknet.poseidon.pn.signanzorbit.collision.ContactCache;
+import nu.shacknet.poseidon.pn.signanzorbit.collision.EntityActivity;
+import nu.shacknet.poseidon.pn.signanzorbit.collision.KineticScheduler;
+import nu.shacknet.poseidon.pn.signanzorbit.collision.Narrowphase;
+import nu.shacknet.poseidon.pn.signanzorbit.collision.PairList;
+import nu.shacknet.poseidon.pn.signanzorbit.collision.PartTree;
+import nu.shacknet.poseidon.pn.signanzorbit.collision.Planet;
+import nu.shacknet.poseidon.pn.signanzorbit.collision.SphereTree;
+import nu.shacknet.poseidon.pn.signanzorbit.collision.SpatialHashBroadphase;
+import nu.shacknet.poseidon.pn.signanzorbit.collision.SweepAndPruneBroadphase;
+import nu.shacknet.poseidon.pn.signanzorbit.collision.SweptSpheres;
+import nu.shacknet.poseidon.pn.signanzorbit.LevelActivity;
 import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
 import nu.shacknet.poseidon.pn.signanzorbit.math.Constants;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Sphere;
 import nu.shacknet.poseidon.pn.signanzorbit.math.Vector3;
 import nu.shacknet.poseidon.pn.signanzorbit.orbit.DirectionalMotion;
 import nu.shacknet.poseidon.pn.signanzorbit.orbit.DirectionalPlanetMotion;
@@ -24,38 +38,43 @@ import nu.shacknet.poseidon.pn.signanzorbit.util.Persistable;
 
 
 /**
- * This Manager handles the selection and collisions between objects
+ * This Manager handles the selection and collisions between objects. A
+ * level may have any number of destructible planets, each with its own
+ * part tree: the planets are fixed entities, so only the planets whose
+ * bounds overlap a satellite are paired with it (see EntityActivity) and
+ * only their parts are queried.
  *
  * @author Alex Druml
  * @author Lukas Roessler
  */
 public class CollisionManager implements Persistable{
 
+	/** Contact flag: the satellite doesn't hit planet parts until it leaves the planet */
+	private static final int CONTACT_FILTERED = 1;
+	
+	/** Contact flag: the collision sound has been played for this contact */
+	private static final int CONTACT_SOUND_PLAYED = 2;
+	
+	/** No planet. */
+	private static final int NO_PLANET = -1;
+	
 	/** The scene reference */
 	private Scene scene;
 	
 	/** list containing the current scene entities */
 	private ArrayList<SceneEntity> entityList;
 	
-	/** The point on the line */
-	private final Vector3 p;
-	
 	/** The direction vector of the line */
 	private final Vector3 a;
 	
-	/** The point which distance should be evaluated */
-	private final Vector3 q;
+	/** The satellites which can be selected by a ray */
+	private final SphereTree selectionTree;
 	
-	/** The vector between p and q */
-	private final Vector3 pq;
-	
-	/** The normal distance */
-	private final Vector3 normalDistance;
+	/** The index of the entity found by the last intersectRay(), SphereTree.NULL if none */
+	private int selectedIndex;
 
 	/** The distance vector between two center points. */
 	private final Vector3 centerDistance;
-	/** The distance vector between planet and sat. center points. */
-	private final Vector3 planetCenterDistance;
 	/** Temp var for the approximation of the current direction. */
 	private final Vector3 objACurrDir;
 	/** Temp var for the approximation of the current direction. */
@@ -72,23 +91,24 @@ public class CollisionManager implements Persistable{
 	private final Vector3 toCenterVecA;
 	/** Temp var for the center vector */
 	private final Vector3 toCenterVecB;
+	/** Temp var for the swept bounding sphere */
+	private final Sphere sweptBound;
 		
-	/** The gold planet. */
-	private Movable goldPlanet;
+	/** The planets with their remaining parts. */
+	private final ArrayList<Planet> planets;
+	
+	/** The number of the planet of a scene entity, NO_PLANET for the others. */
+	private int[] planetNumbers;
 	
-	/** The skysphere. */
-	private Movable skysphere;
+	/** The number of the planet an entity is inside (has a planet contact with), NO_PLANET if none. */
+	private int[] insidePlanet;
 	
-	/** list containing the remaining parts of the planet -
-	 * 	sorted by the distance to the planet center. */
-	public Vector<Model> remainingPlanetParts;
+	/** Temp var for the direction between the planet and an aiming entity */
+	private final Vector3 aimVec;
 	
 	/** Singleton */
 	public static CollisionManager instance = new CollisionManager();
 	
-	/** The comparator for sorting the remainingPlanetParts. */
-	public static NearestEntityComperator comperator;
-	
 	/** The game manager. */
 	public GameManager gameManager;
 	
@@ -98,14 +118,50 @@ public class CollisionManager implements Persistable{
 	/** The sound manager. */
 	private SoundManager soundManager;
 	
-	/** The collision list offset / startpoint */
-	private int collOffset;
+	/** The broadphase, selected by Config.BROADPHASE */
+	private Broadphase broadphase;
+	
+	/** The type of the current broadphase */
+	private int broadphaseType;
+	
+	/** The candidate pairs of the broadphase */
+	private final PairList pairs;
+	
+	/** The awake, sleeping and retired scene entities - only the awake
+	 * ones are paired by the broadphase */
+	private final EntityActivity activity;
+	
+	/** Whether a scene entity needs its collision proxy in this frame */
+	private boolean[] proxied;
+	
+	/** The sphere trees of the satellites' geometries in world space */
+	private final CollisionProxies proxies;
+	
+	/** The sweeps of the entities since the last collision detection */
+	private final SweptSpheres sweptSpheres;
+	
+	/** The contact tests, with Config.COLLISION_THREADS threads */
+	private Narrowphase narrowphase;
+	
+	/** Selects the candidate pairs tested per frame */
+	private final CollisionScheduler scheduler;
+	
+	/** The candidate pairs selected by the scheduler */
+	private final PairList scheduledPairs;
 	
-	/** Proceed the collision up to this index */
-	private int collOffsetLimit;
+	/** Predicts when satellites on stable orbits may touch */
+	private final KineticScheduler kineticScheduler;
 	
-	/** Random Generator */
-	private final Random rand;
+	/** The candidate pairs with the due pairs of the kinetic scheduler */
+	private final PairList kineticPairs;
+	
+	/** The contacts of the last frames - the planet contact of a satellite
+	 * lasts until it leaves the planet */
+	private final ContactCache contactCache;
+	
+	/** The events of the collision response handled by the sound, score
+	 * and vibration threads */
+	private final CollisionEvents events;
 
 	/**
 	 * Instantiates a new collision manager.
@@ -115,14 +171,11 @@ public class CollisionManager implements Persistable{
 		this.scene = null;
 		this.entityList = null;
 		
-		this.p = new Vector3();
-		this.q = new Vector3();
 		this.a = new Vector3();
-		this.pq = new Vector3();
-		this.normalDistance = new Vector3();
+		this.selectionTree = new SphereTree(Config.SELECTION_TREE_MARGIN);
+		this.selectedIndex = SphereTree.NULL;
 		
 		this.centerDistance = new Vector3();
-		this.planetCenterDistance = new Vector3();
 		
 		this.objACurrDir = new Vector3();
 		this.objBCurrDir = new Vector3();
@@ -135,14 +188,62 @@ public class CollisionManager implements Persistable{
 		
 		this.toCenterVecA = new Vector3();
 		this.toCenterVecB = new Vector3();
+		this.sweptBound = new Sphere();
 
-		this.remainingPlanetParts = new Vector<Model>();
-		comperator = new NearestEntityComperator();
+		this.planets = new ArrayList<Planet>();
+		this.planetNumbers = new int[0];
+		this.insidePlanet = new int[0];
+		this.aimVec = new Vector3();
 				
 		this.motionManager = MotionManager.instance;
 		this.soundManager = SoundManager.instance;
 		
-		this.rand = new Random();
+		this.pairs = new PairList();
+		this.activity = new EntityActivity();
+		this.proxied = new boolean[0];
+		this.proxies = new CollisionProxies();
+		this.sweptSpheres = new SweptSpheres();
+		this.scheduler = new CollisionScheduler();
+		this.scheduledPairs = new PairList();
+		this.kineticScheduler = new KineticScheduler();
+		this.kineticPairs = new PairList();
+		this.contactCache = new ContactCache();
+		this.broadphaseType = -1;
+		
+		this.events = new CollisionEvents();
+		events.addChannel("Collision Sound", 1 << CollisionEvents.IMPACT, Config.COLLISION_EVENT_CAPACITY, false, new CollisionEvents.Consumer()
+		{
+			@Override
+			public void consume(int event)
+			{
+				if((CollisionEvents.getFlags(event) & CollisionEvents.HEAVY) != 0)
+					soundManager.playSound(Config.SOUND_HEAVYIMPACT);
+				else
+					soundManager.playSound(Config.SOUND_IMPACT);
+			}
+		});
+		events.addChannel("Collision Score", 1 << CollisionEvents.PART_HIT, Config.COLLISION_EVENT_CAPACITY, true, new CollisionEvents.Consumer()
+		{
+			@Override
+			public void consume(int event)
+			{
+				//the entity of a part hit is the number of the planet
+				gameManager.incScore(CollisionEvents.getEntity(event));
+			}
+		});
+		if(Config.IMPACT_VIBRATION)
+		{
+			events.addChannel("Collision Vibration", 1 << CollisionEvents.IMPACT, Config.COLLISION_EVENT_CAPACITY, false, new CollisionEvents.Consumer()
+			{
+				@Override
+				public void consume(int event)
+				{
+					LevelActivity activity = LevelActivity.getInstance();
+					if(activity != null && (CollisionEvents.getFlags(event) & CollisionEvents.HEAVY) != 0)
+						activity.vibrate(Config.IMPACT_VIBRATION_LENGTH);
+				}
+			});
+		}
 	}
 	
 	/**
@@ -154,24 +255,123 @@ public class CollisionManager implements Persistable{
 		this.scene = scene;
 		this.entityList = scene.sceneEntities;
 		
-		remainingPlanetParts.clear();
+		int entityListSize = entityList.size();
+		
+		scheduler.clear();
+		kineticScheduler.clear();
+		contactCache.clear();
+		activity.clear();
 		
-		for(int i=entityList.size()-1;i>=0;i--)
+		//the planets don't move, their trees are built once
+		planets.clear();
+		planetNumbers = new int[entityListSize];
+		insidePlanet = new int[entityListSize];
+		for(int i=0;i<entityListSize;i++)
 		{
-			if(entityList.get(i).getName().equals(Config.PLANET_NAME)){
-				goldPlanet = entityList.get(i);
-				remainingPlanetParts.addAll(entityList.get(i).models);
-			}
-			if(entityList.get(i).getName().equals(Config.SKYSPHERE_NAME)){
-				skysphere = entityList.get(i);
+			SceneEntity entity = entityList.get(i);
+			planetNumbers[i] = NO_PLANET;
+			insidePlanet[i] = NO_PLANET;
+			if(isPlanet(entity)){
+				planetNumbers[i] = planets.size();
+				planets.add(new Planet(entity, i, planets.size()));
+				activity.setFixed(i);
+				LogManager.d("PLANET "+entity.getName()+" BSPHERE RADIUS:"+entity.getBoundingSphereWorld().radius+", PARTS:"+entity.models.size());
 			}
+			else if(entity.getName().startsWith(Config.SKYSPHERE_NAME))
+				activity.setIgnored(i);
 		}
-		Collections.sort(remainingPlanetParts, comperator);
 		//printRemaingingPlanetParts();
-		LogManager.d("PLANET BSPHERE RADIUS:"+goldPlanet.getBoundingSphereWorld().radius);
 		
-		this.collOffset = (int)(entityList.size()/2);
-		this.collOffsetLimit = entityList.size();
+		selectionTree.clear();
+		selectedIndex = SphereTree.NULL;
+		updateSelectionTree();
+	}
+	
+	/**
+	 * Checks if the given entity is a planet
+	 *
+	 * @param entity the entity to check
+	 * @return true, if its name starts with Config.PLANET_NAME
+	 */
+	public boolean isPlanet(Movable entity)
+	{
+		return entity != null && entity.getName().startsWith(Config.PLANET_NAME);
+	}
+	
+	/**
+	 * Gets the number of planets
+	 *
+	 * @return the number of planets
+	 */
+	public int getPlanetCount()
+	{
+		return planets.size();
+	}
+	
+	/**
+	 * Gets a planet
+	 *
+	 * @param number the number of the planet
+	 * @return the planet
+	 */
+	public Planet getPlanet(int number)
+	{
+		return planets.get(number);
+	}
+	
+	/**
+	 * Gets the number of the planet of a scene entity
+	 *
+	 * @param index the index of the scene entity
+	 * @return the number of the planet, -1 if the entity isn't a planet
+	 */
+	public int getPlanetNumber(int index)
+	{
+		int[] planetNumbers = this.planetNumbers;
+		return index < planetNumbers.length ? planetNumbers[index] : NO_PLANET;
+	}
+	
+	/**
+	 * Gets the broadphase selected by Config.BROADPHASE (Config.BROADPHASE_AUTO
+	 * selects by the number of entities), a new one is created if the
+	 * selection has changed.
+	 *
+	 * @return the broadphase
+	 */
+	private Broadphase getBroadphase()
+	{
+		int type = Config.BROADPHASE;
+		if(type == Config.BROADPHASE_AUTO)
+			type = entityList.size() < Config.BROADPHASE_AUTO_SIZE ? Config.BROADPHASE_BRUTE_FORCE : Config.BROADPHASE_SWEEP_AND_PRUNE;
+		if(broadphase == null || broadphaseType != type)
+		{
+			broadphaseType = type;
+			if(broadphaseType == Config.BROADPHASE_SPATIAL_HASH)
+				broadphase = new SpatialHashBroadphase();
+			else if(broadphaseType == Config.BROADPHASE_SWEEP_AND_PRUNE)
+				broadphase = new SweepAndPruneBroadphase();
+			else
+				broadphase = new BruteForceBroadphase();
+		}
+		return broadphase;
+	}
+	
+	/**
+	 * Gets the narrowphase with Config.COLLISION_THREADS threads, a new one
+	 * is created if the number has changed.
+	 *
+	 * @return the narrowphase
+	 */
+	private Narrowphase getNarrowphase()
+	{
+		int threads = Math.max(1, Config.COLLISION_THREADS);
+		if(narrowphase == null || narrowphase.getThreads() != threads)
+		{
+			if(narrowphase != null)
+				narrowphase.shutdown();
+			narrowphase = new Narrowphase(threads);
+		}
+		return narrowphase;
 	}
 	
 	/**
@@ -180,61 +380,35 @@ public class CollisionManager implements Persistable{
 	 */
 	public void initAndSetGameManager(GameManager gameManager)
 	{
-		gameManager.init(remainingPlanetParts.size());
+		int[] planetParts = new int[planets.size()];
+		for(int i=0; i<planetParts.length; i++)
+			planetParts[i] = planets.get(i).getPartCount();
+		gameManager.init(planetParts);
 		this.gameManager = gameManager;
 	}
 	
 	/**
 	 * Shoot a ray through the scene and detect nearest intersection with the 
-	 * objects
+	 * satellites, using the selection tree of the last collision detection
 	 *
 	 * @param origin the origin of the ray
 	 * @param direction the ray direction
-	 * @return the nearest SceneEntity intersected by the ray
+	 * @return the nearest satellite intersected by the ray, null if there is none
 	 */
 	public SceneEntity intersectRay(Vector3 origin,Vector3 direction)
 	{
 		a.set(direction);
 		a.normalize();
-		p.set(origin);
 		
-		//reset values
-		float minDistance = Float.MAX_VALUE;
+		float[] o = origin.v;
+		float[] d = a.v;
+		int nearest = selectionTree.nearestOnLine(o[0], o[1], o[2], d[0], d[1], d[2], Config.SELECTION_BSPHERE_INCREMENT);
+		selectedIndex = nearest;
+		
 		SceneEntity nearestEntity = null;
-		SceneEntity entity = null;
+		if(nearest != SphereTree.NULL)
+			nearestEntity = entityList.get(nearest);
 		
-		//iterate over all scene entities and calc the hesse normal form
-		for(int i=0;i<entityList.size();i++)
-		{
-			entity = entityList.get(i);
-			
-			//exclude inactive entities
-			if(entity.isDisabled()||entity.equals(skysphere))
-				continue;
-			
-			//get entity bounding sphere position
-			q.set(entity.getBoundingSphereWorld().center);
-			
-			//calc vector from q -> p
-			pq.set(p);
-			pq.subtract(q);
-			
-			Vector3.crossProduct(pq,a,normalDistance);
-			if(normalDistance.length() < (entity.getBoundingSphereWorld().radius+Config.SELECTION_BSPHERE_INCREMENT))
-			{
-				LogManager.d("found hit with " + entity.getName() + " distance="+normalDistance.length()+" sphereradius="+entity.getBoundingSphereWorld().radius);
-				
-				//only store the one with the min distance
-				if(nearestEntity==null && entity.getName().startsWith(Config.SATELLITE_PREFIX))
-					nearestEntity = entity;
-				
-				if(pq.length()<minDistance && entity.getName().startsWith(Config.SATELLITE_PREFIX));
-				{
-					nearestEntity = entity;
-					minDistance = pq.length();
-				}
-			}
-		}
 		if(nearestEntity!=null)
 			LogManager.d("ray intersected with "+nearestEntity.getName());
 		else
@@ -244,40 +418,43 @@ public class CollisionManager implements Persistable{
 	}
 	
 	/**
-	 * Detect the collision between <code>objA</code> and <code>objB</code> 
-	 *
-	 * @param objA the object a
-	 * @param objB the object b
-	 * @param penetrationDepth the depth that the objects has to penetrate 
-	 * each other
-	 * @param centerDistance the vector between the center of 
-	 * the bounding spheres of each object
-	 * @return true, if there is a collision otherwise false
+	 * Update the selection tree: enabled satellites are inserted or moved,
+	 * the others removed. Only satellites which have left their leaf change
+	 * the tree.
 	 */
-	private static boolean collisionDetected(Movable objA, Movable objB, float penetrationDepth, Vector3 centerDistance)
+	private void updateSelectionTree()
 	{
-		if(centerDistance == null)
-			centerDistance = new Vector3();
-		
-		//calc distance between center points
-		centerDistance.set(objB.getBoundingSphereWorld().center);
-		centerDistance.subtract(objA.getBoundingSphereWorld().center);
-		
-		if(centerDistance.length()+ penetrationDepth < 
-					objA.getBoundingSphereWorld().radius + objB.getBoundingSphereWorld().radius)
-			return true;
-		
-		
-		return false;		
+		int entityListSize = entityList.size();
+		for(int i=0; i<entityListSize; i++)
+		{
+			SceneEntity entity = entityList.get(i);
+			if(entity.isDisabled() || !entity.getName().startsWith(Config.SATELLITE_PREFIX))
+			{
+				selectionTree.remove(i);
+				continue;
+			}
+			Sphere sphere = entity.getBoundingSphereWorld();
+			float[] c = sphere.center.v;
+			if(selectionTree.contains(i))
+				selectionTree.update(i, c[0], c[1], c[2], sphere.radius);
+			else
+				selectionTree.insert(i, c[0], c[1], c[2], sphere.radius);
+		}
 	}
 	
 	/**
-	 * Do collision detection between all scene entities in the scene
+	 * Do collision detection between all scene entities in the scene: the
+	 * broadphase selects the candidate pairs, the narrowphase tests them
+	 * (in parallel) and the contacts are resolved here, in the order of the
+	 * pairs. Fast entities are checked with their sweeps since the last
+	 * frame. With Config.KINETIC_SCHEDULER two satellites on stable orbits
+	 * are only tested when they may touch, with Config.COLLISION_SCHEDULER
+	 * only the pairs selected by the scheduler are tested, the others are
+	 * known to be apart. The response reacts to the begin of a contact only.
 	 */
 	public void doCollisionDetection()
 	{		
 		int entityListSize = entityList.size();
-		int listSize = remainingPlanetParts.size();
 		
 		Movable objA = null;
 		Movable objB = null;
@@ -287,317 +464,506 @@ public class CollisionManager implements Persistable{
 		
 		float satSpeed = 0;
 		
-		if(collOffset==0){
-			collOffset = (int)(entityListSize/2);
-			collOffsetLimit = entityListSize;
-		}else{
-			collOffset = 0;
-			collOffsetLimit = (int)(entityListSize/2);
+		contactCache.beginFrame();
+		events.setInline(!Config.COLLISION_EVENTS);
+		
+		//entities untied from a planet are appended to the list
+		if(insidePlanet.length < entityListSize)
+		{
+			int[] grown = new int[Math.max(entityListSize, 2*insidePlanet.length)];
+			System.arraycopy(insidePlanet, 0, grown, 0, insidePlanet.length);
+			for(int i=insidePlanet.length; i<grown.length; i++)
+				grown[i] = NO_PLANET;
+			insidePlanet = grown;
+		}
+		
+		//only collide with awake and sleeping entities, the disabled ones and the skysphere are retired
+		activity.update(entityList, Config.SLEEPING, Config.SLEEP_DISTANCE, Config.SLEEP_FRAMES);
+		boolean[] active = activity.getCollidable();
+		
+		//the broadphase pairs the awake entities, the sleeping ones (and the planets) are tested against them
+		PairList pairs = this.pairs;
+		getBroadphase().findPairs(entityList, activity.getAwake(), pairs);
+		activity.addSleepingPairs(entityList, pairs);
+		
+		//fast entities may have passed others since the last frame
+		sweptSpheres.update(entityList, active, Config.CONTINUOUS_COLLISION_MIN_DISTANCE);
+		if(Config.CONTINUOUS_COLLISION)
+			sweptSpheres.addPairs(active, pairs);
+		
+		//pairs of satellites on stable orbits are only tested when they may touch
+		if(Config.KINETIC_SCHEDULER)
+		{
+			kineticScheduler.schedule(entityList, active, TimeManager.instance.getDeltaTsec(), Config.KINETIC_SPEED_MARGIN,
+					Config.KINETIC_STABLE_FRAMES, Config.COLLISION_PENETRATION_DEPTH, pairs, kineticPairs);
+			pairs = kineticPairs;
+			if(Config.KINETIC_SCHEDULER_STATS)
+				LogManager.d("kinetic entities: "+kineticScheduler.getKineticCount()+", deactivated: "+kineticScheduler.getDeactivated()+", queued pairs: "+kineticScheduler.getQueued()
+						+", checked: "+kineticScheduler.getChecked()+", tested: "+kineticScheduler.getEmitted()+", candidates replaced: "+kineticScheduler.getFiltered());
 		}
+		else
+			kineticScheduler.clear();
 		
-		//for each entity
-		for(int i=collOffset; i<collOffsetLimit; i++) 
+		//skip the pairs which are known to be apart
+		if(Config.COLLISION_SCHEDULER)
 		{
-			objA = entityList.get(i);	
+			scheduler.schedule(entityListSize, sweptSpheres, pairs, Config.COLLISION_TIME_BUDGET*1000L, Config.COLLISION_MAX_STALENESS, scheduledPairs);
+			pairs = scheduledPairs;
+		}
+		else
+			scheduler.clear();
+		
+		//the proxies of the entities which are tested (the planets are tested by their parts)
+		if(Config.COLLISION_PROXIES)
+			updateProxies(pairs);
+		
+		//test the pairs first, the response changes the motions only
+		Narrowphase narrowphase = getNarrowphase();
+		long testStart = System.nanoTime();
+		narrowphase.test(entityList, pairs, Config.CONTINUOUS_COLLISION ? sweptSpheres : null, Config.COLLISION_PROXIES ? proxies : null, Config.COLLISION_PENETRATION_DEPTH);
+		if(Config.COLLISION_SCHEDULER)
+		{
+			scheduler.update(narrowphase, System.nanoTime() - testStart);
+			if(Config.COLLISION_SCHEDULER_STATS)
+				LogManager.d("collision pairs tested: "+scheduler.getTested()+", deferred: "+scheduler.getDeferred()+", overdue: "+scheduler.getOverdue());
+		}
+		
+		//for each candidate pair
+		int pairCount = pairs.size();
+		for(int k=0; k<pairCount; k++)
+		{
+			int indexA = pairs.getFirst(k);
+			int indexB = pairs.getSecond(k);
+			objA = entityList.get(indexA);
+			objB = entityList.get(indexB);
 			
-			//only collide with active entities
-			if(objA.isDisabled()||objA.equals(skysphere))
+			//entities may have been disabled by an earlier pair
+			if(objA.isDisabled()||objB.isDisabled())
 				continue;
 			
-			objAIsMoveable = (objA.equals(goldPlanet))?false:true;
-			
-			
-			for(int j = i+1; j<entityListSize; j++)
+			int planetNumberA = getPlanetNumber(indexA);
+			int planetNumberB = getPlanetNumber(indexB);
+			objAIsMoveable = planetNumberA == NO_PLANET;
+			objBIsMoveable = planetNumberB == NO_PLANET;
+
+			//check for contact (tested by the narrowphase)
+			if(narrowphase.hasContact(k))
 			{
-				objB = entityList.get(j);
+				//a contact wakes up sleeping entities (not the planets)
+				activity.wake(indexA);
+				activity.wake(indexB);
 				
-				//only collide with active entities
-				if(objB.isDisabled()||objB.equals(skysphere))
-					continue;
+				//collision detected
+				narrowphase.getCenterDistance(k, centerDistance);
+				//LogManager.d("COLLISION DETECTED");
 				
-				objBIsMoveable = (objB.equals(goldPlanet))?false:true;
-
-				//check for contact
-				if(collisionDetected(objA,objB,Config.COLLISION_PENETRATION_DEPTH,centerDistance))
+				//check for collision between satellite and planet
+				if(!objAIsMoveable||!objBIsMoveable)
 				{
-					//collision detected
-					//LogManager.d("COLLISION DETECTED");
+					//two planets never move
+					if(!objAIsMoveable&&!objBIsMoveable)
+						continue;
 					
-					//check for collision between satellite and planet
-					if(!objAIsMoveable||!objBIsMoveable)
+					//distinguish entities
+					Planet planetEntry = null;
+					SceneEntity planet = null;
+					SceneEntity satellite = null;
+					int satelliteIndex;
+					
+					if(!objAIsMoveable){
+						planetEntry = planets.get(planetNumberA);
+						satellite = (SceneEntity) objB;
+						satelliteIndex = indexB;
+					}else{
+						planetEntry = planets.get(planetNumberB);
+						satellite = (SceneEntity) objA;
+						satelliteIndex = indexA;
+					}
+					planet = planetEntry.getEntity();
+					int planetIndex = planetEntry.getIndex();
+					PartTree<Model> remainingPlanetParts = planetEntry.getRemainingParts();
+					
+					/**
+					 * SPECIAL CASE
+					 * planet part moves out of the planet -> avoid collision with planet
+					 */
+					Motion satMotion = satellite.getMotion();
+					Model planetPart = null;
+					//store sat speed for further processing
+					satSpeed = satMotion.getSpeed();
+					
+					//the satellite is inside the planet until it leaves it (see leavePlanet)
+					if(contactCache.touch(satelliteIndex, planetIndex))
 					{
-						//distinguish entities
-						SceneEntity planet = null;
-						SceneEntity satellite = null;
-						
-						if(!objAIsMoveable){
-							planet = (SceneEntity) objA;
-							satellite = (SceneEntity) objB;
-						}else{
-							planet = (SceneEntity) objB;
-							satellite = (SceneEntity) objA;
-						}
-						
-						/**
-						 * SPECIAL CASE
-						 * planet part moves out of the planet -> avoid collision with planet
-						 */
-						Motion satMotion = satellite.getMotion();
-						Model planetPart = null;
-						//store sat speed for further processing
-						satSpeed = satMotion.getSpeed();
-						
-						if(satMotion.getFilterPlanetColl())
-							continue;
+						//parts knocked out of the planet start inside, they don't hit the other parts on their way out
+						float planetRadius = planet.getBoundingSphereWorld().radius;
+						if(motionManager.isPlanetPart(satellite) && planetEntry.distance2(satellite.getCurrentPosition().v) < planetRadius*planetRadius)
+							contactCache.setFlags(satelliteIndex, planetIndex, CONTACT_FILTERED);
+					}
+					insidePlanet[satelliteIndex] = planetEntry.getNumber();
 					
-						//set planet entrance flag
-						satMotion.setInsidePlanet(true);
-						
-						//find out which part of the planet got hit
-						//only search in remaining planet parts
-						listSize = remainingPlanetParts.size();
-						for(int u = listSize-1; u >=0; u--)
+					if((contactCache.getFlags(satelliteIndex, planetIndex) & CONTACT_FILTERED) != 0)
+						continue;
+					
+					//find out which part of the planet got hit
+					//only search in remaining planet parts near the satellite (or its sweep), the outer ones first
+					boolean swept = Config.CONTINUOUS_COLLISION && sweptSpheres.isFast(satelliteIndex);
+					Sphere satelliteBound = satellite.getBoundingSphereWorld();
+					if(swept)
+					{
+						sweptSpheres.getSweptBound(satelliteIndex, sweptBound);
+						satelliteBound = sweptBound;
+					}
+					int candidateCount = remainingPlanetParts.query(satelliteBound, Config.COLLISION_PENETRATION_DEPTH);
+					//without a sweep the contacts are the candidates overlapping the satellite, tested in one batch
+					if(!swept)
+						candidateCount = remainingPlanetParts.filterCandidates(satelliteBound, Config.COLLISION_PENETRATION_DEPTH);
+					for(int u = candidateCount-1; u >=0; u--)
+					{
+						int planetPartItem = remainingPlanetParts.getCandidate(u);
+						planetPart = remainingPlanetParts.getPart(planetPartItem);
+								
+						//check for contact
+						if(!swept || sweptSpheres.timeOfImpact(satelliteIndex, planetPart.getBoundingSphereWorld(), Config.COLLISION_PENETRATION_DEPTH) != SweptSpheres.NO_IMPACT)
 						{
-							planetPart = remainingPlanetParts.get(u);
-									
-							//check for contact
-							if(collisionDetected(planetPart,satellite,Config.COLLISION_PENETRATION_DEPTH,planetCenterDistance))
+							if((contactCache.getFlags(satelliteIndex, planetIndex) & CONTACT_SOUND_PLAYED) == 0){
+								//play sound per sat - planet hit only once
+								int impactFlags = satMotion.getSpeed() > Config.MIN_SPEED_FOR_UNDAMPED_DIRECTIONAL ? CollisionEvents.HEAVY : 0;
+								events.publish(CollisionEvents.IMPACT, impactFlags, satelliteIndex);
+								contactCache.setFlags(satelliteIndex, planetIndex, CONTACT_SOUND_PLAYED);
+							}
+							
+							Motion planetPartMotion = planetPart.getMotion();
+							
+							if(planetPart.getMotion()==null)
 							{
-								if(!satMotion.getPlayedCollSound()){
-									playCollSound(satellite);
-									satMotion.setPlayedCollSound(true);
-								}
+								planetPushVec.set(planetPart.getBoundingSphereWorld().center);
+								planetPushVec.subtract(planet.getBoundingSphereWorld().center);
 								
-								Motion planetPartMotion = planetPart.getMotion();
+								if(planetPushVec.length()==0)
+									planetPushVec.set(Constants.DUMMY_INIT_VEC);
 								
-								if(planetPart.getMotion()==null)
-								{
-									planetPushVec.set(planetPart.getBoundingSphereWorld().center);
-									planetPushVec.subtract(Config.UNIVERSE_CENTER);
-									
-									if(planetPushVec.length()==0)
-										planetPushVec.set(Constants.DUMMY_INIT_VEC);
-									
-									planetPartMotion = new DirectionalPlanetMotion(	planetPart.getBoundingSphereWorld().center,
-																					planetPushVec,
-																					satMotion.getSpeed()*Config.PLANETCOLL_SPEED_FROM_SAT_FACTOR,
-																					planetPart.getBasicOrientation());
+								planetPartMotion = new DirectionalPlanetMotion(	planetPart.getBoundingSphereWorld().center,
+																				planetPushVec,
+																				satMotion.getSpeed()*Config.PLANETCOLL_SPEED_FROM_SAT_FACTOR,
+																				planetPart.getBasicOrientation());
 
-									LogManager.d(satMotion.getSpeed());
-									if(satMotion.getSpeed()<Config.MIN_SPEED_FOR_UNDAMPED_DIRECTIONAL){
+								LogManager.d(satMotion.getSpeed());
+								if(satMotion.getSpeed()<Config.MIN_SPEED_FOR_UNDAMPED_DIRECTIONAL){
 
-										morphPlanetPushVec.set(satellite.getBoundingSphereWorld().center);
-										tempMorphPlanetPushVec.set(morphPlanetPushVec);
-										morphPlanetPushVec.subtract(planetPart.getBoundingSphereWorld().center);
-										morphPlanetPushVec.normalize();
-										centerDistance.normalize();
-										
-										morphPlanetPushVec.add(centerDistance).normalize();
-										if(morphPlanetPushVec.length()<=0.1f){
-											morphPlanetPushVec.set(tempMorphPlanetPushVec).normalize();
-										}
-																				
-										morphPlanetPushVec.multiply(satMotion.getSpeed()*Config.PLANETPART_BOUNCE_FACTOR);
-										satMotion.morph(morphPlanetPushVec);
-										
-										//COLLISION FILTER
-										int collCount = satMotion.getCollCount();
-										collCount++;
-										satMotion.setCollCount(collCount);
-										
-										//check if there were to many collision with this satellite
-										if(collCount >= Config.DAMPED_MAX_COLLISION_COUNT_FACTOR * satSpeed){
-											LogManager.d("MAX COLLISION COUNT REACHED");
-											satMotion.setFilterPlanetColl(true);
-											satMotion.setCollCount(0);		
-											//stop the collision detection for this satellite
-											break;
-										}
-										
-									}else{
-										satMotion.setSpeed(satMotion.getSpeed()-Config.UNDAMPED_SPEED_DECREMENT);
-										satSpeed = satMotion.getSpeed();
+									morphPlanetPushVec.set(satellite.getBoundingSphereWorld().center);
+									tempMorphPlanetPushVec.set(morphPlanetPushVec);
+									morphPlanetPushVec.subtract(planetPart.getBoundingSphereWorld().center);
+									morphPlanetPushVec.normalize();
+									centerDistance.normalize();
+									
+									morphPlanetPushVec.add(centerDistance).normalize();
+									if(morphPlanetPushVec.length()<=0.1f){
+										morphPlanetPushVec.set(tempMorphPlanetPushVec).normalize();
 									}
-									motionManager.addMotion(planetPartMotion,planetPart);
-									planetPartMotion.setInsidePlanet(true);
+																			
+									morphPlanetPushVec.multiply(satMotion.getSpeed()*Config.PLANETPART_BOUNCE_FACTOR);
+									satMotion.morph(morphPlanetPushVec);
 									
-									//LogManager.d("PLANET COLL - SAT speed="+satellite.getMotion().getSpeed()+" PLANET speed="+planetPart.getMotion().getSpeed());
+									//COLLISION FILTER
+									int collCount = contactCache.getCount(satelliteIndex, planetIndex);
+									collCount++;
+									contactCache.setCount(satelliteIndex, planetIndex, collCount);
 									
-									//report game manager
-									gameManager.incScore();
+									//check if there were to many collision with this satellite
+									if(collCount >= Config.DAMPED_MAX_COLLISION_COUNT_FACTOR * satSpeed){
+										LogManager.d("MAX COLLISION COUNT REACHED");
+										contactCache.setFlags(satelliteIndex, planetIndex, CONTACT_FILTERED);
+										contactCache.setCount(satelliteIndex, planetIndex, 0);		
+										//stop the collision detection for this satellite
+										break;
+									}
+									
+								}else{
+									satMotion.setSpeed(satMotion.getSpeed()-Config.UNDAMPED_SPEED_DECREMENT);
+									satSpeed = satMotion.getSpeed();
 								}
+								motionManager.addMotion(planetPartMotion,planetPart);
 								
-								//delete from aiming list
-								remainingPlanetParts.remove(planetPart);
+								//LogManager.d("PLANET COLL - SAT speed="+satellite.getMotion().getSpeed()+" PLANET speed="+planetPart.getMotion().getSpeed());
 								
-								//avoid inter-planet-part-coll
-								if(remainingPlanetParts.size()>1){
-									planetPartMotion.setFilterPlanetColl(true);
-								}									
-								
-								// schedule for untie
-								scene.unTie(planet, planetPart);
+								//report game manager
+								events.publish(CollisionEvents.PART_HIT, 0, planetEntry.getNumber());
 							}
+							
+							//delete from aiming list
+							remainingPlanetParts.remove(planetPartItem);
+							
+							// schedule for untie
+							scene.unTie(planet, planetPart);
 						}
-						
 					}
-					else
+					
+				}
+				else
+				{
+					//respond once per contact, not on every frame of the overlap
+					if(!contactCache.touch(indexA, indexB))
+						continue;
+					
+					Motion objAMotion = objA.getMotion();
+					Motion objBMotion = objB.getMotion();
+					
+					if(objAMotion==null)
 					{
-						Motion objAMotion = objA.getMotion();
-						Motion objBMotion = objB.getMotion();
-						
-						if(objAMotion==null)
-						{
-							
-							objAMotion = new Orbit(	objA.getBoundingSphereWorld().center,
-													Config.UNIVERSE_CENTER,
-													Constants.DUMMY_INIT_VEC,
-													0.1f,
-													null);
-							motionManager.addMotion(objAMotion,objA);
-						}
-						
-	
-						if(objBMotion==null)
-						{
-							objBMotion = new Orbit(	objB.getBoundingSphereWorld().center,
-													Config.UNIVERSE_CENTER,
-													Constants.DUMMY_INIT_VEC,
-													0.1f,
-													null);
-							motionManager.addMotion(objBMotion,objB);
-						}
-						
 						
-						objACurrDir.set(objA.getMotion().getCurrDirectionVec()).normalize();
-						objBCurrDir.set(objB.getMotion().getCurrDirectionVec()).normalize();
-											
-						//weight with current speed
-						objACurrDir.multiply(objA.getMotion().getSpeed()*0.2f);
-						objBCurrDir.multiply(objB.getMotion().getSpeed()*0.2f);
-						
-						toCenterVecA.set(centerDistance);
-						toCenterVecA.normalize().multiply(-objA.getBoundingSphereWorld().radius);
-						
-						toCenterVecB.set(centerDistance);
-						toCenterVecB.normalize().multiply(objB.getBoundingSphereWorld().radius);
-						
-						objAPushVec.set(objBCurrDir);
-						objAPushVec.add(toCenterVecA);
+						objAMotion = new Orbit(	objA.getBoundingSphereWorld().center,
+												Config.UNIVERSE_CENTER,
+												Constants.DUMMY_INIT_VEC,
+												0.1f,
+												null);
+						motionManager.addMotion(objAMotion,objA);
+					}
+					
 
-						objBPushVec.set(objACurrDir);
-						objBPushVec.add(toCenterVecB);
+					if(objBMotion==null)
+					{
+						objBMotion = new Orbit(	objB.getBoundingSphereWorld().center,
+												Config.UNIVERSE_CENTER,
+												Constants.DUMMY_INIT_VEC,
+												0.1f,
+												null);
+						motionManager.addMotion(objBMotion,objB);
+					}
+					
+					
+					objACurrDir.set(objA.getMotion().getCurrDirectionVec()).normalize();
+					objBCurrDir.set(objB.getMotion().getCurrDirectionVec()).normalize();
+										
+					//weight with current speed
+					objACurrDir.multiply(objA.getMotion().getSpeed()*0.2f);
+					objBCurrDir.multiply(objB.getMotion().getSpeed()*0.2f);
+					
+					toCenterVecA.set(centerDistance);
+					toCenterVecA.normalize().multiply(-objA.getBoundingSphereWorld().radius);
+					
+					toCenterVecB.set(centerDistance);
+					toCenterVecB.normalize().multiply(objB.getBoundingSphereWorld().radius);
+					
+					objAPushVec.set(objBCurrDir);
+					objAPushVec.add(toCenterVecA);
 
-						if(objAPushVec.length()!=0){
-							objA.getMotion().morph(objAPushVec);
-							motionManager.changeSatelliteTransformation(objA, objACurrDir, objAPushVec,Config.INTERSATELLITE_SPEEDROTA_RATIO);
-						}
-						
-						if(objBPushVec.length()!=0){
-							objB.getMotion().morph(objBPushVec);
-							motionManager.changeSatelliteTransformation(objB, objBCurrDir, objBPushVec,Config.INTERSATELLITE_SPEEDROTA_RATIO);					
-						}
-				}
+					objBPushVec.set(objACurrDir);
+					objBPushVec.add(toCenterVecB);
 
-				//END of contact detection
-				}else{
-					//special case: sat is not longer "inside the planet"
-					Motion motion = objA.getMotion();
-					float distance = objA.getCurrentPosition().length();
+					if(objAPushVec.length()!=0){
+						objA.getMotion().morph(objAPushVec);
+						motionManager.changeSatelliteTransformation(objA, objACurrDir, objAPushVec,Config.INTERSATELLITE_SPEEDROTA_RATIO);
+					}
 					
-					if(motion !=null && motion.isInsidePlanet()){
-				
-						if(!motionManager.isPlanetPart(objA)){
-							if(distance > Config.TRANSFORMATION_DISTANCE){
-								
-								if(motion instanceof DirectionalMotion){
-									motionManager.transformDirMotionInOrbit(objA);
-								}
-								motion.setInsidePlanet(false);
-								motion.setPlayedCollSound(false);
-								motion.setFilterPlanetColl(false);
-								motion.setCollCount(0);
-							}
-						}else{
-							if(distance > goldPlanet.getBoundingSphereWorld().radius + Config.PLANETPART_REUSE_MINDISTANCE){
-								motion.setInsidePlanet(false);
-								motion.setFilterPlanetColl(false);
-								motion.setPlayedCollSound(false);
-								motion.setCollCount(0);
-							}
-						}						
+					if(objBPushVec.length()!=0){
+						objB.getMotion().morph(objBPushVec);
+						motionManager.changeSatelliteTransformation(objB, objBCurrDir, objBPushVec,Config.INTERSATELLITE_SPEEDROTA_RATIO);					
 					}
 				}
-				
 			}
 		}
+		
+		//special case: sat is not longer "inside the planet"
+		int awakeCount = activity.getAwakeCount();
+		for(int j=0; j<awakeCount; j++)
+			leavePlanet(activity.getAwakeEntity(j));
+		int sleepingCount = activity.getSleepingCount();
+		for(int j=0; j<sleepingCount; j++)
+			leavePlanet(activity.getSleepingEntity(j));
+		
+		//contacts which haven't been touched (or whose entities have been disabled) end
+		contactCache.endFrame();
+		
+		//hand the events of this frame to the consumer threads
+		events.flush();
+		if(Config.COLLISION_EVENT_STATS)
+			events.logStats();
+		
+		if(Config.SLEEP_STATS)
+			LogManager.d("entities awake: "+activity.getAwakeCount()+", sleeping: "+activity.getSleepingCount()+", woken: "+activity.getWokenCount()
+					+", fallen asleep: "+activity.getFallenAsleepCount()+", retired: "+activity.getRetiredCount());
+		activity.endFrame();
+		
+		updateSelectionTree();
 	}
 	
 	/**
-	 * Play a collision sound depending on the motion speed
-	 * @param satellite the satellite with collision
+	 * Wakes up a sleeping entity when a force is applied to it. Forces are
+	 * applied to the entity selected by intersectRay() only, so its index
+	 * is known (the entity list only grows, the index stays valid).
+	 *
+	 * @param entity the entity, found by the last intersectRay()
 	 */
-	private void playCollSound(Movable satellite)
+	public void wake(Movable entity)
 	{
-		//play sound per sat - planet hit only once
-		if(satellite.getMotion().getSpeed()>Config.MIN_SPEED_FOR_UNDAMPED_DIRECTIONAL)
-			soundManager.playSound(Config.SOUND_HEAVYIMPACT);
+		int index = selectedIndex;
+		if(index != SphereTree.NULL && entityList.get(index) == entity)
+			activity.wake(index);
 		else
-			soundManager.playSound(Config.SOUND_IMPACT);
+			LogManager.w("wake(): " + entity.getName() + " has not been selected by intersectRay()");
 	}
 	
 	/**
-	 * Select randomly an entity from the <code>remainingPlanetParts</code> list
-	 * @return a random selected entity
+	 * Gets the events of the collision response, their consumer threads
+	 * are started and stopped with the activity.
+	 *
+	 * @return the collision events
 	 */
-	public Movable getAutoAimEntity()
+	public CollisionEvents getEvents()
 	{
-		//printRemaingingPlanetParts();
-		if(remainingPlanetParts.size()>0){	
-			//pseudo random selection of next element
-			int index = (int)(rand.nextFloat()*(remainingPlanetParts.size()-1));
-			LogManager.d("RANDOM SELECTION INDEX:"+index);
-			return remainingPlanetParts.get(index);
-		}else 
-			return null;
+		return events;
 	}
 	
+	/**
+	 * Transforms the collision proxies of the entities taking part in the
+	 * given pairs, except the planets.
+	 *
+	 * @param pairs the pairs which are tested
+	 */
+	private void updateProxies(PairList pairs)
+	{
+		int entityListSize = entityList.size();
+		if(proxied.length < entityListSize)
+			proxied = new boolean[Math.max(entityListSize, 2*proxied.length)];
+		for(int i=0; i<entityListSize; i++)
+			proxied[i] = false;
+		int pairCount = pairs.size();
+		for(int k=0; k<pairCount; k++)
+		{
+			proxied[pairs.getFirst(k)] = true;
+			proxied[pairs.getSecond(k)] = true;
+		}
+		int planetCount = planets.size();
+		for(int i=0; i<planetCount; i++)
+			proxied[planets.get(i).getIndex()] = false;
+		proxies.update(entityList, proxied);
+	}
 	
 	/**
-	 * The Class NearestEntityComperator - Comparator used to sort the 
-	 * <code>remainingPlanetParts</code> list
+	 * Ends the planet contact of an object which has left the planet, the
+	 * planet contact of an object still inside persists.
 	 *
-	 * @author Alex Druml
-	 * @author Lukas Roessler
+	 * @param index the index of the object
 	 */
-	protected class NearestEntityComperator implements Comparator<Movable>{
+	private void leavePlanet(int index)
+	{
+		int number = insidePlanet[index];
+		if(number == NO_PLANET)
+			return;
+		Planet planet = planets.get(number);
+		int planetIndex = planet.getIndex();
+		if(!contactCache.contains(index, planetIndex))
+		{
+			insidePlanet[index] = NO_PLANET;
+			return;
+		}
+		
+		Movable obj = entityList.get(index);
+		float distance = (float)Math.sqrt(planet.distance2(obj.getCurrentPosition().v));
 
-		/* (non-Javadoc)
-		 * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
-		 */
-		@Override
-		public int compare(Movable objA, Movable objB) {
-			if(objA.getBoundingSphereWorld().center.length() <
-					objB.getBoundingSphereWorld().center.length())
-				return -1;
-			
-			if(objA.getBoundingSphereWorld().center.length() ==
-					objB.getBoundingSphereWorld().center.length())
-				return 0;
-			
-			return 1;
+		if(!motionManager.isPlanetPart(obj)){
+			if(distance > Config.TRANSFORMATION_DISTANCE){
+				
+				if(obj.getMotion() instanceof DirectionalMotion){
+					motionManager.transformDirMotionInOrbit(obj);
+				}
+				contactCache.remove(index, planetIndex);
+				insidePlanet[index] = NO_PLANET;
+				return;
+			}
+		}else{
+			if(distance > planet.getEntity().getBoundingSphereWorld().radius + Config.PLANETPART_REUSE_MINDISTANCE){
+				contactCache.remove(index, planetIndex);
+				insidePlanet[index] = NO_PLANET;
+				return;
+			}
 		}
 		
+		//still inside
+		contactCache.touch(index, planetIndex);
 	}
-
+	
 	/**
-	 * Prints the <code>remainingPlanetParts</code> list
+	 * Select the planet part an entity pushed into a direction aims at: the
+	 * remaining part nearest to the push ray on the planet nearest to the
+	 * ray, or the part facing the entity on the nearest planet if the push
+	 * points away from all planets
+	 *
+	 * @param position the position of the entity
+	 * @param direction the push direction
+	 * @return the selected part, null if no part remains
+	 */
+	public Movable getAutoAimEntity(Vector3 position, Vector3 direction)
+	{
+		float[] p = position.v, d = direction.v;
+		float length = (float)Math.sqrt(d[0]*d[0] + d[1]*d[1] + d[2]*d[2]);
+		if(length == 0)
+			length = 1;
+		
+		//the planet nearest to the ray (ahead of the entity), else the one nearest to the entity
+		Planet ahead = null, nearest = null;
+		float aheadDistance = Float.MAX_VALUE, nearestDistance = Float.MAX_VALUE;
+		int planetCount = planets.size();
+		for(int i=0; i<planetCount; i++)
+		{
+			Planet planet = planets.get(i);
+			if(planet.getRemainingParts().size()==0)
+				continue;
+			Sphere bound = planet.getEntity().getBoundingSphereWorld();
+			float[] c = bound.center.v;
+			float vx = c[0]-p[0], vy = c[1]-p[1], vz = c[2]-p[2];
+			float distance2 = vx*vx + vy*vy + vz*vz;
+			float distance = (float)Math.sqrt(distance2) - bound.radius;
+			if(distance < nearestDistance)
+			{
+				nearestDistance = distance;
+				nearest = planet;
+			}
+			float t = (vx*d[0] + vy*d[1] + vz*d[2]) / length;
+			if(t > 0)
+			{
+				float rayDistance = (float)Math.sqrt(Math.max(0, distance2 - t*t)) - bound.radius;
+				if(rayDistance < aheadDistance)
+				{
+					aheadDistance = rayDistance;
+					ahead = planet;
+				}
+			}
+		}
+		
+		int item;
+		PartTree<Model> remainingPlanetParts;
+		if(ahead != null)
+		{
+			remainingPlanetParts = ahead.getRemainingParts();
+			item = remainingPlanetParts.nearestToRay(position, direction);
+		}
+		else if(nearest != null)
+		{
+			Vector3 center = nearest.getEntity().getBoundingSphereWorld().center;
+			float[] c = center.v;
+			aimVec.set(p[0]-c[0], p[1]-c[1], p[2]-c[2]);
+			remainingPlanetParts = nearest.getRemainingParts();
+			item = remainingPlanetParts.mostExposed(center, aimVec);
+		}
+		else
+			return null;
+		return item != PartTree.NULL ? remainingPlanetParts.getPart(item) : null;
+	}
+	
+	/**
+	 * Prints the remaining parts of the planets
 	 */
 	private void printRemaingingPlanetParts()
 	{
 		LogManager.d("AUTOAIM ----");
-		for(int i=0;i<remainingPlanetParts.size();i++)
-			LogManager.d("AUTOAIM: i=" + i + " length=" + remainingPlanetParts.get(i).getBoundingSphereWorld().center.length());
+		for(int p=0;p<planets.size();p++)
+		{
+			PartTree<Model> remainingPlanetParts = planets.get(p).getRemainingParts();
+			for(int i=0;i<remainingPlanetParts.size();i++)
+				LogManager.d("AUTOAIM: planet=" + p + " i=" + i + " distance=" + (float)Math.sqrt(planets.get(p).distance2(remainingPlanetParts.get(i).getBoundingSphereWorld().center.v)));
+		}
 	}
 
 	/* (non-Javadoc)
@@ -605,6 +971,7 @@ public class CollisionManager implements Persistable{
 	 */
 	@Override
 	public void persist(DataOutputStream dos) throws IOException {
+		contactCache.persist(dos);
 	}
 
 	/* (non-Javadoc)
@@ -613,14 +980,30 @@ public class CollisionManager implements Persistable{
 	@Override
 	public void restore(DataInputStream dis) throws IOException {
 		
-		int size = remainingPlanetParts.size();
-		for(int u = size-1; u >= 0; u--)
+		for(int p=0;p<planets.size();p++)
 		{
-			if(remainingPlanetParts.get(u).getMotion()!=null)
-				remainingPlanetParts.remove(u);
+			PartTree<Model> remainingPlanetParts = planets.get(p).getRemainingParts();
+			int size = remainingPlanetParts.size();
+			for(int u = size-1; u >= 0; u--)
+			{
+				if(remainingPlanetParts.get(u).getMotion()!=null)
+					remainingPlanetParts.remove(remainingPlanetParts.getItem(u));
+			}
 		}
-		Collections.sort(remainingPlanetParts, comperator);
 		printRemaingingPlanetParts();
+		
+		contactCache.restore(dis);
+		
+		//the planets the entities are inside
+		for(int i=0;i<insidePlanet.length;i++)
+		{
+			insidePlanet[i] = NO_PLANET;
+			for(int p=0;p<planets.size() && insidePlanet[i]==NO_PLANET;p++)
+			{
+				if(contactCache.contains(i, planets.get(p).getIndex()))
+					insidePlanet[i] = p;
+			}
+		}
 	}
 
 }
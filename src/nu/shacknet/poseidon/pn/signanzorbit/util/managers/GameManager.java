@@ -8,7 +8,8 @@ import nu.shacknet.poseidon.pn.signanzorbit.util.Persistable;
 
 
 /**
- * The Class GameManager.
+ * The Class GameManager. The score is the number of parts knocked out of
+ * the planets, counted per planet as well.
  *
  * @author Alex Druml
  * @author Lukas Roessler
@@ -21,6 +22,12 @@ public class GameManager implements Persistable{
 	/** The current score. */
 	private int score;
 	
+	/** The number of parts of each planet. */
+	private int[] planetParts;
+	
+	/** The score of each planet. */
+	private int[] planetScores;
+	
 	/** whether score has changed. */
 	private boolean scoreHasChanged;
 	
@@ -33,17 +40,23 @@ public class GameManager implements Persistable{
 	public GameManager(){
 		this.score = 0;
 		this.parts = 0;
+		this.planetParts = new int[0];
+		this.planetScores = new int[0];
 		this.scoreHasChanged = false;
 	}
 	
 	/**
 	 * Inits this.
 	 *
-	 * @param parts the parts
+	 * @param planetParts the number of parts of each planet
 	 */
-	public void init(int parts){
+	public synchronized void init(int[] planetParts){
 		this.score = 0;
-		this.parts = parts;
+		this.parts = 0;
+		for(int i=0; i<planetParts.length; i++)
+			this.parts += planetParts[i];
+		this.planetParts = planetParts.clone();
+		this.planetScores = new int[planetParts.length];
 	
 		this.scoreHasChanged = false;
 	}
@@ -77,22 +90,42 @@ public class GameManager implements Persistable{
 	}
 	
 	/**
-	 * Checks if is complete.
+	 * Checks if is complete: all parts of every planet have been knocked out.
 	 *
 	 * @return true, if is complete
 	 */
 	public synchronized boolean isComplete(){
+		for(int i=0; i<planetScores.length; i++)
+			if(!isPlanetComplete(i))
+				return false;
 		return score==parts;
 	}
 	
 	/**
 	 * Increment score.
+	 *
+	 * @param planet the number of the planet the part has been knocked out of
+	 * @throws IllegalArgumentException if there is no such planet (init() or
+	 * restore() has been called for another level)
 	 */
-	public synchronized void incScore(){
+	public synchronized void incScore(int planet){
+		if(planet < 0 || planet >= planetScores.length)
+			throw new IllegalArgumentException("Invalid planet " + planet + ", the level has " + planetScores.length + " planets");
 		score++;
+		planetScores[planet]++;
 		scoreHasChanged=true;
 	}
 	
+	/**
+	 * Checks if all parts of a planet have been knocked out.
+	 *
+	 * @param planet the number of the planet
+	 * @return true, if is complete
+	 */
+	private boolean isPlanetComplete(int planet){
+		return planetScores[planet]==planetParts[planet];
+	}
+	
 	/**
 	 * whether the score has changed.
 	 *
@@ -111,20 +144,34 @@ public class GameManager implements Persistable{
 	 * @see nu.shacknet.poseidon.pn.signanzorbit.util.Persistable#persist(java.io.DataOutputStream)
 	 */
 	@Override
-	public void persist(DataOutputStream dos) throws IOException {
+	public synchronized void persist(DataOutputStream dos) throws IOException {
 		dos.writeInt(parts);
 		dos.writeInt(score);
 		dos.writeBoolean(scoreHasChanged);
+		dos.writeInt(planetParts.length);
+		for(int i=0; i<planetParts.length; i++)
+		{
+			dos.writeInt(planetParts[i]);
+			dos.writeInt(planetScores[i]);
+		}
 	}
 
 	/* (non-Javadoc)
 	 * @see nu.shacknet.poseidon.pn.signanzorbit.util.Persistable#restore(java.io.DataInputStream)
 	 */
 	@Override
-	public void restore(DataInputStream dis) throws IOException {
+	public synchronized void restore(DataInputStream dis) throws IOException {
 		parts = dis.readInt();
 		score = dis.readInt();
 		scoreHasChanged = dis.readBoolean();
+		int planets = dis.readInt();
+		planetParts = new int[planets];
+		planetScores = new int[planets];
+		for(int i=0; i<planets; i++)
+		{
+			planetParts[i] = dis.readInt();
+			planetScores[i] = dis.readInt();
+		}
 	}
 	
 }
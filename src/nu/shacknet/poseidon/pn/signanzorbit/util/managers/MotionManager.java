@@ -44,8 +44,6 @@ public class MotionManager {
 	private final Vector3 	tempForceDirectionVec;
 	/** Temp var for the deflaction vector. */
 	private final Vector3 	deflactionDirVec;
-	/** Temp var for the basic orientation matrix of an object */
-	private final Matrix44 tempBasicOrientation;
 	
 	/**
 	 * Instantiates a new motion manager.
@@ -58,7 +56,6 @@ public class MotionManager {
 		this.tempCenterVec = new Vector3();
 		this.tempForceDirectionVec = new Vector3();
 		this.tempPushVec = new Vector3();
-		this.tempBasicOrientation = new Matrix44();
 		this.deflactionDirVec = new Vector3();
 	}
 	
@@ -125,12 +122,13 @@ public class MotionManager {
 	public void applySelectionForce(Movable entity, Vector3 pushVec)
 	{
 		Motion motion = entity.getMotion();
+		CollisionManager.instance.wake(entity);
 		
 		//check for a change to directional motion
 		if(pushVec.length()>= Config.MIN_STRENGTH_FOR_DIRECTIONAL){
 				
-			//determine aiming center
-			Movable aimEntity = CollisionManager.instance.getAutoAimEntity();
+			//determine aiming center: the planet part nearest to the push ray
+			Movable aimEntity = CollisionManager.instance.getAutoAimEntity(entity.getCurrentPosition(), pushVec);
 			Vector3 aimCenter = null;
 			
 			if(aimEntity!=null)
@@ -310,10 +308,8 @@ public class MotionManager {
 		if(currSatTransform!=null && currSatTransform instanceof VecAxisTransformation)
 		{
 			vecSatTransform = (VecAxisTransformation)currSatTransform;
-			tempBasicOrientation.copy(vecSatTransform.getTransform());
-			
 			//set current transformation (rotation) as basic orientation
-			vecSatTransform.setBasicOrientation(tempBasicOrientation);
+			vecSatTransform.rebase();
 			//set new rotation axis
 			vecSatTransform.axis.set(satTransformAxis);
 	
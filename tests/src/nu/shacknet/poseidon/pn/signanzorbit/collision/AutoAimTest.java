@@ -0,0 +1,219 @@
+package nu.shacknet.poseidon.pn.signanzorbit.collision;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Vector3;
+import nu.shacknet.poseidon.pn.signanzorbit.scene.Model;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks the aiming queries of the part tree against a linear scan over
+ * the remaining parts: the part nearest to a ray, the k parts nearest to a
+ * point and the most exposed part in a direction. The parts fill a ball
+ * like the parts of the planet, a random part is knocked out after every
+ * round of queries until only a few remain. Both have to find the same
+ * parts.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class AutoAimTest
+{
+	/** The part counts. */
+	private static final int[] SIZES = { 256, 1024, 4096 };
+
+	/** The number of nearest parts. */
+	private static final int K = 8;
+
+	/** The radius of a part. */
+	private static final float PART_RADIUS = 0.5f;
+
+	/**
+	 * Turns the logging off.
+	 */
+	@BeforeClass
+	public static void setUp()
+	{
+		Config.LOGLEVEL = Config.NONE;
+	}
+
+	/**
+	 * Runs the rounds of queries for every part count.
+	 */
+	@Test
+	public void treeQueriesMatchLinearScan()
+	{
+		for(int s=0; s<SIZES.length; s++)
+		{
+			int size = SIZES[s];
+			Random rand = new Random(size);
+			float radius = (float)Math.cbrt(size) * PART_RADIUS * 1.6f;
+			ArrayList<Model> parts = new ArrayList<Model>(size);
+			for(int i=0; i<size; i++)
+			{
+				Model part = new Model();
+				float x, y, z;
+				do
+				{
+					x = (rand.nextFloat()*2-1)*radius;
+					y = (rand.nextFloat()*2-1)*radius;
+					z = (rand.nextFloat()*2-1)*radius;
+				}
+				while(x*x + y*y + z*z > radius*radius);
+				part.getBoundingSphereWorld().center.set(x, y, z);
+				part.getBoundingSphereWorld().radius = PART_RADIUS;
+				parts.add(part);
+			}
+			PartTree<Model> tree = new PartTree<Model>();
+			tree.build(parts);
+
+			Vector3 origin = new Vector3(), direction = new Vector3(), center = new Vector3(), zero = new Vector3();
+			int[] nearest = new int[K];
+			while(tree.size() > K)
+			{
+				//a ray from outside the planet roughly towards it, a point near it
+				randomDirection(direction, rand);
+				origin.set(direction).multiply(-3*radius);
+				randomDirection(center, rand);
+				direction.add(center.multiply(0.3f));
+				randomDirection(center, rand);
+				center.multiply(radius*1.5f*rand.nextFloat());
+
+				String name = size + " parts, " + tree.size() + " remaining, ";
+				assertEquals(name + "nearest to ray", linearRay(tree, origin, direction), tree.nearestToRay(origin, direction));
+				int count = tree.nearest(center, K);
+				for(int k=0; k<count; k++)
+					nearest[k] = tree.getCandidate(k);
+				assertTrue(name + "nearest to point", linearNearest(tree, center, nearest, count));
+				assertEquals(name + "most exposed", linearExposed(tree, origin), tree.mostExposed(zero, origin));
+
+				tree.remove(tree.getItem(rand.nextInt(tree.size())));
+			}
+		}
+	}
+
+	/**
+	 * Finds the remaining part nearest to a ray with a linear scan.
+	 *
+	 * @param tree the tree
+	 * @param origin the origin of the ray
+	 * @param direction the direction of the ray
+	 * @return the item
+	 */
+	private static int linearRay(PartTree<Model> tree, Vector3 origin, Vector3 direction)
+	{
+		float[] o = origin.v, d = direction.v;
+		float length = (float)Math.sqrt(d[0]*d[0] + d[1]*d[1] + d[2]*d[2]);
+		float dx = d[0]/length, dy = d[1]/length, dz = d[2]/length;
+		int best = PartTree.NULL;
+		float bestDistance2 = Float.MAX_VALUE;
+		for(int i=0; i<tree.size(); i++)
+		{
+			float[] c = tree.get(i).getBoundingSphereWorld().center.v;
+			float vx = c[0]-o[0], vy = c[1]-o[1], vz = c[2]-o[2];
+			float t = Math.max(0, vx*dx + vy*dy + vz*dz);
+			vx -= t*dx;
+			vy -= t*dy;
+			vz -= t*dz;
+			float distance2 = vx*vx + vy*vy + vz*vz;
+			if(distance2 < bestDistance2 || (distance2 == bestDistance2 && tree.getItem(i) < best))
+			{
+				bestDistance2 = distance2;
+				best = tree.getItem(i);
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Checks the k nearest parts with a linear scan: no other remaining
+	 * part may be nearer than the farthest one found.
+	 *
+	 * @param tree the tree
+	 * @param point the point
+	 * @param nearest the parts found, the nearest first
+	 * @param count the number of parts found
+	 * @return true if they are the nearest ones
+	 */
+	private static boolean linearNearest(PartTree<Model> tree, Vector3 point, int[] nearest, int count)
+	{
+		if(count != Math.min(K, tree.size()))
+			return false;
+		float farthest = distance2(tree.getPart(nearest[count-1]), point);
+		int nearer = 0;
+		for(int i=0; i<tree.size(); i++)
+		{
+			if(distance2(tree.get(i), point) < farthest)
+				nearer++;
+		}
+		return nearer < count;
+	}
+
+	/**
+	 * Finds the most exposed remaining part with a linear scan.
+	 *
+	 * @param tree the tree
+	 * @param direction the direction, from the origin
+	 * @return the item
+	 */
+	private static int linearExposed(PartTree<Model> tree, Vector3 direction)
+	{
+		float[] d = direction.v;
+		float length = (float)Math.sqrt(d[0]*d[0] + d[1]*d[1] + d[2]*d[2]);
+		int best = PartTree.NULL;
+		float bestExposure = -Float.MAX_VALUE;
+		for(int i=0; i<tree.size(); i++)
+		{
+			float[] c = tree.get(i).getBoundingSphereWorld().center.v;
+			float exposure = (c[0]*d[0] + c[1]*d[1] + c[2]*d[2])/length;
+			if(exposure > bestExposure)
+			{
+				bestExposure = exposure;
+				best = tree.getItem(i);
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Gets the squared distance of a part to a point.
+	 *
+	 * @param part the part
+	 * @param point the point
+	 * @return the squared distance
+	 */
+	private static float distance2(Model part, Vector3 point)
+	{
+		float[] c = part.getBoundingSphereWorld().center.v, p = point.v;
+		float x = c[0]-p[0], y = c[1]-p[1], z = c[2]-p[2];
+		return x*x + y*y + z*z;
+	}
+
+	/**
+	 * Sets a vector to a random unit vector.
+	 *
+	 * @param v the vector
+	 * @param rand the random generator
+	 */
+	private static void randomDirection(Vector3 v, Random rand)
+	{
+		float x, y, z, length2;
+		do
+		{
+			x = rand.nextFloat()*2-1;
+			y = rand.nextFloat()*2-1;
+			z = rand.nextFloat()*2-1;
+			length2 = x*x + y*y + z*z;
+		}
+		while(length2 > 1 || length2 < 0.01f);
+		float length = (float)Math.sqrt(length2);
+		v.set(x/length, y/length, z/length);
+	}
+}
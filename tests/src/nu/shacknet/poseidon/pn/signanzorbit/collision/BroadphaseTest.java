@@ -0,0 +1,227 @@
+package nu.shacknet.poseidon.pn.signanzorbit.collision;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Sphere;
+import nu.shacknet.poseidon.pn.signanzorbit.scene.SceneEntity;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks that the broadphases find every overlapping pair the nested loop
+ * over all pairs finds. The entities are spheres (radius 0.3 to 1) with a
+ * constant density, like the parts of a fractured planet, plus one large
+ * sphere in the center. Every frame they move a little and about one
+ * percent of them is disabled or enabled.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class BroadphaseTest
+{
+	/** The entity counts. */
+	private static final int[] SIZES = { 64, 256, 1024, 4096 };
+
+	/** The number of frames per entity count. */
+	private static final int FRAMES = 10;
+
+	/** The volume per entity. */
+	private static final float VOLUME_PER_ENTITY = 8;
+
+	/**
+	 * Turns the logging off.
+	 */
+	@BeforeClass
+	public static void setUp()
+	{
+		Config.LOGLEVEL = Config.NONE;
+	}
+
+	/**
+	 * Checks the brute force broadphase.
+	 */
+	@Test
+	public void bruteForceFindsAllPairs()
+	{
+		checkBroadphase(new BruteForceBroadphase());
+	}
+
+	/**
+	 * Checks the spatial hash.
+	 */
+	@Test
+	public void spatialHashFindsAllPairs()
+	{
+		checkBroadphase(new SpatialHashBroadphase());
+	}
+
+	/**
+	 * Checks sweep and prune, which keeps its state from frame to frame.
+	 */
+	@Test
+	public void sweepAndPruneFindsAllPairs()
+	{
+		checkBroadphase(new SweepAndPruneBroadphase());
+	}
+
+	/**
+	 * Runs a broadphase for every entity count and compares the overlapping
+	 * candidate pairs with the nested loop, frame by frame.
+	 *
+	 * @param broadphase the broadphase
+	 */
+	private static void checkBroadphase(Broadphase broadphase)
+	{
+		for(int s=0; s<SIZES.length; s++)
+		{
+			int size = SIZES[s];
+			ArrayList<SceneEntity> entities = createEntities(size);
+			boolean[] active = new boolean[size];
+			for(int i=0; i<size; i++)
+				active[i] = true;
+
+			PairList pairs = new PairList();
+			Random rand = new Random(size);
+			for(int f=0; f<FRAMES; f++)
+			{
+				move(entities, rand);
+				toggle(active, rand);
+
+				broadphase.findPairs(entities, active, pairs);
+				assertEquals(size + " entities, frame " + f, nestedLoop(entities, active), narrowphase(entities, pairs));
+			}
+		}
+	}
+
+	/**
+	 * Creates the entities.
+	 *
+	 * @param size the number of entities
+	 * @return the entities
+	 */
+	private static ArrayList<SceneEntity> createEntities(int size)
+	{
+		Random rand = new Random(42);
+		float edge = (float)Math.cbrt(size * VOLUME_PER_ENTITY);
+		ArrayList<SceneEntity> entities = new ArrayList<SceneEntity>(size);
+		for(int i=0; i<size; i++)
+		{
+			SceneEntity entity = new SceneEntity();
+			Sphere sphere = entity.getBoundingSphereWorld();
+			if(i == 0)
+			{
+				sphere.center.set(0, 0, 0);
+				sphere.radius = edge/4;
+			}
+			else
+			{
+				sphere.center.set((rand.nextFloat()-0.5f)*edge, (rand.nextFloat()-0.5f)*edge, (rand.nextFloat()-0.5f)*edge);
+				sphere.radius = 0.3f + rand.nextFloat()*0.7f;
+			}
+			entities.add(entity);
+		}
+		return entities;
+	}
+
+	/**
+	 * Moves every entity but the first one by up to 0.1 per axis.
+	 *
+	 * @param entities the entities
+	 * @param rand the random generator
+	 */
+	private static void move(ArrayList<SceneEntity> entities, Random rand)
+	{
+		for(int i=1; i<entities.size(); i++)
+		{
+			float[] c = entities.get(i).getBoundingSphereWorld().center.v;
+			c[0] += (rand.nextFloat()-0.5f)*0.2f;
+			c[1] += (rand.nextFloat()-0.5f)*0.2f;
+			c[2] += (rand.nextFloat()-0.5f)*0.2f;
+		}
+	}
+
+	/**
+	 * Disables or enables about one percent of the entities (not the first one).
+	 *
+	 * @param active whether an entity takes part
+	 * @param rand the random generator
+	 */
+	private static void toggle(boolean[] active, Random rand)
+	{
+		for(int i=0; i<=active.length/100; i++)
+		{
+			int entity = 1 + rand.nextInt(active.length-1);
+			active[entity] = !active[entity];
+		}
+	}
+
+	/**
+	 * Whether the bounding spheres of two entities overlap.
+	 *
+	 * @param a the first sphere
+	 * @param b the second sphere
+	 * @return true if the spheres overlap
+	 */
+	private static boolean overlap(Sphere a, Sphere b)
+	{
+		float[] ca = a.center.v, cb = b.center.v;
+		float x = ca[0]-cb[0], y = ca[1]-cb[1], z = ca[2]-cb[2];
+		float r = a.radius + b.radius;
+		return x*x + y*y + z*z < r*r;
+	}
+
+	/**
+	 * Tests all pairs of active entities.
+	 *
+	 * @param entities the entities
+	 * @param active whether an entity takes part
+	 * @return the number of overlapping pairs (upper 32 bits) and a checksum of their indices
+	 */
+	private static long nestedLoop(ArrayList<SceneEntity> entities, boolean[] active)
+	{
+		long count = 0, checksum = 0;
+		int size = entities.size();
+		for(int i=0; i<size; i++)
+		{
+			if(!active[i])
+				continue;
+			Sphere a = entities.get(i).getBoundingSphereWorld();
+			for(int j=i+1; j<size; j++)
+			{
+				if(active[j] && overlap(a, entities.get(j).getBoundingSphereWorld()))
+				{
+					count++;
+					checksum += i*31 + j;
+				}
+			}
+		}
+		return (count << 32) + checksum;
+	}
+
+	/**
+	 * Tests the candidate pairs.
+	 *
+	 * @param entities the entities
+	 * @param pairs the candidate pairs
+	 * @return the number of overlapping pairs (upper 32 bits) and a checksum of their indices
+	 */
+	private static long narrowphase(ArrayList<SceneEntity> entities, PairList pairs)
+	{
+		long count = 0, checksum = 0;
+		for(int k=0; k<pairs.size(); k++)
+		{
+			int i = pairs.getFirst(k), j = pairs.getSecond(k);
+			if(overlap(entities.get(i).getBoundingSphereWorld(), entities.get(j).getBoundingSphereWorld()))
+			{
+				count++;
+				checksum += i*31 + j;
+			}
+		}
+		return (count << 32) + checksum;
+	}
+}
@@ -0,0 +1,224 @@
+package nu.shacknet.poseidon.pn.signanzorbit.collision;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
+import nu.shacknet.poseidon.pn.signanzorbit.math.AxisAlignedBox3;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Matrix44;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Sphere;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Vector3;
+import nu.shacknet.poseidon.pn.signanzorbit.scene.AOMLoader;
+import nu.shacknet.poseidon.pn.signanzorbit.scene.Geometry;
+import nu.shacknet.poseidon.pn.signanzorbit.scene.Model;
+import nu.shacknet.poseidon.pn.signanzorbit.scene.SceneEntity;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks the collision proxies with two elongated satellites (thin rods):
+ * every vertex has to be inside a leaf of the sphere tree, parallel rods
+ * next to each other have overlapping bounding spheres but no contact,
+ * crossing rods and rods overlapping at their tips are in contact.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class CollisionProxyTest
+{
+	/** The half length of the rods. */
+	private static final float HALF_LENGTH = 2;
+
+	/** The half thickness of the rods. */
+	private static final float HALF_THICKNESS = 0.1f;
+
+	/** The penetration depth. */
+	private static final float DEPTH = 0.2f;
+
+	/** The vertices of a rod. */
+	private float[] vertices;
+
+	/** The sphere tree of a rod. */
+	private GeometrySphereTree tree;
+
+	/** The two rods, the first one is along the x axis at the origin. */
+	private ArrayList<SceneEntity> entities;
+
+	/** The pair of the rods. */
+	private PairList pairs;
+
+	/** The narrowphase. */
+	private Narrowphase narrowphase;
+
+	/**
+	 * Turns the logging off.
+	 */
+	@BeforeClass
+	public static void setUp()
+	{
+		Config.LOGLEVEL = Config.NONE;
+	}
+
+	/**
+	 * Creates the rods, they share the geometry.
+	 */
+	@Before
+	public void createRods()
+	{
+		vertices = createRod();
+		int numVertices = vertices.length/3;
+		tree = new GeometrySphereTree(vertices, numVertices, Config.COLLISION_PROXY_LEVELS);
+		Geometry geometry = new Geometry(AOMLoader.instance.arrayToBuffer(vertices), null, null,
+				new AxisAlignedBox3(), new Sphere(new Vector3(), HALF_LENGTH), numVertices);
+		geometry.setCollisionTree(tree);
+		entities = new ArrayList<SceneEntity>();
+		for(int i=0; i<2; i++)
+		{
+			Model model = new Model();
+			model.getBoundingSphere().radius = (float)Math.sqrt(HALF_LENGTH*HALF_LENGTH + 2*HALF_THICKNESS*HALF_THICKNESS);
+			model.setTransformation(new Matrix44());
+			model.add(geometry, null);
+			SceneEntity entity = new SceneEntity();
+			entity.add(model);
+			entity.getBoundingSphereWorld().radius = model.getBoundingSphere().radius;
+			entities.add(entity);
+		}
+		pairs = new PairList();
+		pairs.add(0, 1);
+		narrowphase = new Narrowphase(1);
+	}
+
+	/**
+	 * Stops the narrowphase.
+	 */
+	@After
+	public void shutdown()
+	{
+		narrowphase.shutdown();
+	}
+
+	/**
+	 * Every vertex has to be inside a leaf of the complete tree.
+	 */
+	@Test
+	public void leavesContainAllVertices()
+	{
+		assertEquals("nodes", (1 << Config.COLLISION_PROXY_LEVELS) - 1, tree.getNodeCount());
+
+		float[] sphere = new float[4];
+		for(int v=0; v<vertices.length/3; v++)
+		{
+			boolean inside = false;
+			for(int n=0; n<tree.getNodeCount() && !inside; n++)
+			{
+				if(tree.getChild(n) != GeometrySphereTree.NULL)
+					continue;
+				tree.getSphere(n, sphere, 0);
+				float x = vertices[3*v]-sphere[0], y = vertices[3*v+1]-sphere[1], z = vertices[3*v+2]-sphere[2];
+				inside = x*x + y*y + z*z <= sphere[3]*sphere[3]*1.0001f;
+			}
+			assertTrue("vertex " + v + " outside the leaves", inside);
+		}
+	}
+
+	/**
+	 * Parallel rods 1 apart: the bounding spheres are in contact, the
+	 * proxies are not.
+	 */
+	@Test
+	public void parallelRodsNotInContact()
+	{
+		place(entities.get(1), 0, 1, 0, 0);
+		assertTrue("the bounding spheres of the parallel rods are in contact", contact(false));
+		assertFalse("the parallel rods are in contact", contact(true));
+	}
+
+	/**
+	 * Crossing rods 0.1 apart.
+	 */
+	@Test
+	public void crossingRodsInContact()
+	{
+		place(entities.get(1), 0, 0.1f, 0, 90);
+		assertTrue("the crossing rods are not in contact", contact(true));
+	}
+
+	/**
+	 * Rods in a row, the tips overlapping by 0.5.
+	 */
+	@Test
+	public void overlappingTipsInContact()
+	{
+		place(entities.get(1), 2*HALF_LENGTH - 0.5f, 0, 0, 0);
+		assertTrue("the rods overlapping at their tips are not in contact", contact(true));
+	}
+
+	/**
+	 * Tests the pair of rods.
+	 *
+	 * @param useProxies whether to test the collision proxies or the bounding spheres only
+	 * @return true if the rods are in contact
+	 */
+	private boolean contact(boolean useProxies)
+	{
+		CollisionProxies proxies = null;
+		if(useProxies)
+		{
+			proxies = new CollisionProxies();
+			proxies.update(entities, new boolean[] { true, true });
+		}
+		narrowphase.test(entities, pairs, null, proxies, DEPTH);
+		return narrowphase.hasContact(0);
+	}
+
+	/**
+	 * Moves an entity and its world bounding sphere.
+	 *
+	 * @param entity the entity
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @param angle the rotation around z in degrees
+	 */
+	private static void place(SceneEntity entity, float x, float y, float z, float angle)
+	{
+		Matrix44 transformation = new Matrix44();
+		transformation.setTranslate(x, y, z);
+		transformation.mult(Matrix44.getRotateZ((float)Math.toRadians(angle)));
+		entity.setTransformation(transformation);
+		entity.getBoundingSphereWorld().center.set(x, y, z);
+	}
+
+	/**
+	 * Creates the triangles of a rod along the x axis, every long side is
+	 * divided into segments.
+	 *
+	 * @return the vertices
+	 */
+	private static float[] createRod()
+	{
+		int segments = 16;
+		float[] corners = { -1, -1, 1, -1, 1, 1, -1, 1 };
+		float[] vertices = new float[4*segments*2*9];
+		int v = 0;
+		for(int s=0; s<segments; s++)
+		{
+			float x0 = -HALF_LENGTH + 2*HALF_LENGTH*s/segments, x1 = -HALF_LENGTH + 2*HALF_LENGTH*(s+1)/segments;
+			for(int side=0; side<4; side++)
+			{
+				float y0 = corners[2*side]*HALF_THICKNESS, z0 = corners[2*side+1]*HALF_THICKNESS;
+				float y1 = corners[(2*side+2)%8]*HALF_THICKNESS, z1 = corners[(2*side+3)%8]*HALF_THICKNESS;
+				float[] quad = { x0, y0, z0, x1, y0, z0, x1, y1, z1,  x0, y0, z0, x1, y1, z1, x0, y1, z1 };
+				System.arraycopy(quad, 0, vertices, v, 18);
+				v += 18;
+			}
+		}
+		return vertices;
+	}
+}
@@ -0,0 +1,158 @@
+package nu.shacknet.poseidon.pn.signanzorbit.collision;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Sphere;
+import nu.shacknet.poseidon.pn.signanzorbit.scene.SceneEntity;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks the collision scheduler: a cloud of spheres moves with random
+ * velocities through a box, every frame all candidate pairs are tested and
+ * the scheduled pairs are tested. Every contact found by testing all pairs
+ * has to be found among the scheduled pairs as well. The budget is 0, so
+ * only the pairs which have to be tested are tested.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class CollisionSchedulerTest
+{
+	/** The entity counts. */
+	private static final int[] SIZES = { 256, 1024 };
+
+	/** The number of frames per entity count. */
+	private static final int FRAMES = 200;
+
+	/** The volume per entity. */
+	private static final float VOLUME_PER_ENTITY = 8;
+
+	/** The maximal distance an entity moves per frame. */
+	private static final float MAX_SPEED = 0.1f;
+
+	/** The penetration depth. */
+	private static final float DEPTH = 0.2f;
+
+	/** The minimal distance of fast entities. */
+	private static final float MIN_DISTANCE = 0.2f;
+
+	/** The maximal number of frames a pair may be deferred. */
+	private static final int MAX_STALENESS = 8;
+
+	/**
+	 * Turns the logging off.
+	 */
+	@BeforeClass
+	public static void setUp()
+	{
+		Config.LOGLEVEL = Config.NONE;
+	}
+
+	/**
+	 * Simulates the cloud for every entity count, the scheduled pairs have
+	 * to contain every contact and fewer pairs than all candidates.
+	 */
+	@Test
+	public void scheduledPairsContainAllContacts()
+	{
+		for(int s=0; s<SIZES.length; s++)
+		{
+			int size = SIZES[s];
+			Random rand = new Random(42);
+			float edge = (float)Math.cbrt(size * VOLUME_PER_ENTITY);
+			ArrayList<SceneEntity> entities = new ArrayList<SceneEntity>(size);
+			float[] velocities = new float[3*size];
+			boolean[] active = new boolean[size];
+			for(int i=0; i<size; i++)
+			{
+				SceneEntity entity = new SceneEntity();
+				Sphere sphere = entity.getBoundingSphereWorld();
+				sphere.center.set((rand.nextFloat()-0.5f)*edge, (rand.nextFloat()-0.5f)*edge, (rand.nextFloat()-0.5f)*edge);
+				sphere.radius = 0.3f + rand.nextFloat()*0.7f;
+				entities.add(entity);
+				for(int c=0; c<3; c++)
+					velocities[3*i+c] = (rand.nextFloat()-0.5f)*2*MAX_SPEED/(float)Math.sqrt(3);
+				active[i] = true;
+			}
+
+			Broadphase broadphase = new SpatialHashBroadphase();
+			SweptSpheres swept = new SweptSpheres();
+			CollisionScheduler scheduler = new CollisionScheduler();
+			Narrowphase all = new Narrowphase(1);
+			Narrowphase scheduled = new Narrowphase(1);
+			PairList pairs = new PairList();
+			PairList scheduledPairs = new PairList();
+
+			long pairSum = 0, testedSum = 0;
+			int contacts = 0;
+			try
+			{
+				for(int f=0; f<FRAMES; f++)
+				{
+					move(entities, velocities, edge/2);
+					broadphase.findPairs(entities, active, pairs);
+					swept.update(entities, active, MIN_DISTANCE);
+
+					all.test(entities, pairs, null, DEPTH);
+					scheduler.schedule(size, swept, pairs, 0, MAX_STALENESS, scheduledPairs);
+					long start = System.nanoTime();
+					scheduled.test(entities, scheduledPairs, null, DEPTH);
+					scheduler.update(scheduled, System.nanoTime() - start);
+
+					//every contact has to be among the scheduled pairs
+					int pairCount = pairs.size();
+					int j = 0;
+					for(int k=0; k<pairCount; k++)
+					{
+						if(!all.hasContact(k))
+							continue;
+						contacts++;
+						int a = pairs.getFirst(k), b = pairs.getSecond(k);
+						while(j < scheduledPairs.size() && (scheduledPairs.getFirst(j) < a || (scheduledPairs.getFirst(j) == a && scheduledPairs.getSecond(j) < b)))
+							j++;
+						assertTrue(size + " entities, frame " + f + ", contact " + a + "/" + b + " missed",
+								j < scheduledPairs.size() && scheduledPairs.getFirst(j) == a && scheduledPairs.getSecond(j) == b && scheduled.hasContact(j));
+					}
+					pairSum += pairCount;
+					testedSum += scheduler.getTested();
+				}
+			}
+			finally
+			{
+				all.shutdown();
+				scheduled.shutdown();
+			}
+			assertTrue(size + " entities, no contacts", contacts > 0);
+			assertTrue(size + " entities, " + testedSum + " of " + pairSum + " pairs tested", testedSum < pairSum);
+		}
+	}
+
+	/**
+	 * Moves the entities, they bounce off the walls of the box.
+	 *
+	 * @param entities the entities
+	 * @param velocities the velocities (xyz)
+	 * @param halfEdge the half edge length of the box
+	 */
+	private static void move(ArrayList<SceneEntity> entities, float[] velocities, float halfEdge)
+	{
+		int size = entities.size();
+		for(int i=0; i<size; i++)
+		{
+			float[] c = entities.get(i).getBoundingSphereWorld().center.v;
+			for(int d=0; d<3; d++)
+			{
+				int v = 3*i+d;
+				c[d] += velocities[v];
+				if(c[d] > halfEdge || c[d] < -halfEdge)
+					velocities[v] = -velocities[v];
+			}
+		}
+	}
+}
@@ -0,0 +1,239 @@
+package nu.shacknet.poseidon.pn.signanzorbit.collision;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Sphere;
+import nu.shacknet.poseidon.pn.signanzorbit.scene.SceneEntity;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks the continuous collision detection with fixed high speed
+ * scenarios: every scenario places the entities, starts a step, moves them
+ * and compares the swept test (and the discrete test for contrast) with
+ * the expected time of impact.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class ContinuousCollisionTest
+{
+	/** The penetration depth used by the scenarios. */
+	private static final float DEPTH = 0.2f;
+
+	/** The minimal distance of fast entities used by the scenarios. */
+	private static final float MIN_DISTANCE = 0.2f;
+
+	/** The allowed error of the time of impact. */
+	private static final float EPSILON = 1e-4f;
+
+	/**
+	 * Turns the logging off.
+	 */
+	@BeforeClass
+	public static void setUp()
+	{
+		Config.LOGLEVEL = Config.NONE;
+	}
+
+	/**
+	 * A satellite shot through a planet part within one frame.
+	 */
+	@Test
+	public void tunnelingSatellite()
+	{
+		ArrayList<SceneEntity> entities = createEntities(2);
+		place(entities, 0, 0, 0, 0, 0.5f);
+		place(entities, 1, -5, 0, 0, 0.3f);
+		SweptSpheres swept = step(entities, null);
+		place(entities, 1, 5, 0, 0, 0.3f);
+		PairList pairs = new PairList();
+		swept = step(entities, swept);
+		new SpatialHashBroadphase().findPairs(entities, active(2), pairs);
+		assertEquals("the broadphase misses the tunneling satellite", 0, pairs.size());
+		swept.addPairs(active(2), pairs);
+		assertTrue("the swept pair is added", pairs.size() == 1 && pairs.getFirst(0) == 0 && pairs.getSecond(0) == 1);
+		assertTrue("the satellite is fast, the part is not", swept.isFast(1) && !swept.isFast(0));
+		assertImpact(swept.timeOfImpact(0, 1, DEPTH), (5 - (0.8f - DEPTH)) / 10);
+	}
+
+	/**
+	 * Two satellites passing each other head-on.
+	 */
+	@Test
+	public void headOnSatellites()
+	{
+		ArrayList<SceneEntity> entities = createEntities(2);
+		place(entities, 0, -3, 0, 0, 0.3f);
+		place(entities, 1, 3, 0, 0, 0.3f);
+		SweptSpheres swept = step(entities, null);
+		place(entities, 0, 3, 0, 0, 0.3f);
+		place(entities, 1, -3, 0, 0, 0.3f);
+		swept = step(entities, swept);
+		assertImpact(swept.timeOfImpact(0, 1, DEPTH), (6 - (0.6f - DEPTH)) / 12);
+		assertImpact(swept.timeOfImpact(1, 0, DEPTH), (6 - (0.6f - DEPTH)) / 12);
+	}
+
+	/**
+	 * A satellite passing a planet part closely.
+	 */
+	@Test
+	public void nearMiss()
+	{
+		ArrayList<SceneEntity> entities = createEntities(2);
+		place(entities, 0, 0, 0, 0, 0.5f);
+		place(entities, 1, -5, 0.7f, 0, 0.3f);
+		SweptSpheres swept = step(entities, null);
+		place(entities, 1, 5, 0.7f, 0, 0.3f);
+		swept = step(entities, swept);
+		assertEquals(SweptSpheres.NO_IMPACT, swept.timeOfImpact(0, 1, DEPTH), 0);
+	}
+
+	/**
+	 * Overlapping satellites moving apart were handled in the previous frame.
+	 */
+	@Test
+	public void separatingSatellites()
+	{
+		ArrayList<SceneEntity> entities = createEntities(2);
+		place(entities, 0, -0.2f, 0, 0, 0.3f);
+		place(entities, 1, 0.2f, 0, 0, 0.3f);
+		SweptSpheres swept = step(entities, null);
+		place(entities, 0, -2, 0, 0, 0.3f);
+		place(entities, 1, 2, 0, 0, 0.3f);
+		swept = step(entities, swept);
+		assertEquals(SweptSpheres.NO_IMPACT, swept.timeOfImpact(0, 1, DEPTH), 0);
+	}
+
+	/**
+	 * A satellite ending inside a planet part.
+	 */
+	@Test
+	public void satelliteEndingInside()
+	{
+		ArrayList<SceneEntity> entities = createEntities(2);
+		place(entities, 0, 0, 0, 0, 0.5f);
+		place(entities, 1, 0, 0, -4, 0.3f);
+		SweptSpheres swept = step(entities, null);
+		place(entities, 1, 0, 0, 0.1f, 0.3f);
+		swept = step(entities, swept);
+		assertImpact(swept.timeOfImpact(1, 0, DEPTH), (4 - (0.8f - DEPTH)) / 4.1f);
+	}
+
+	/**
+	 * A shot through a row of planet parts hits the first part on its way first.
+	 */
+	@Test
+	public void rowOfParts()
+	{
+		int parts = 20;
+		ArrayList<SceneEntity> planetParts = createEntities(parts);
+		for(int i=0; i<parts; i++)
+			place(planetParts, i, i*0.5f, 0, 0, 0.25f);
+		PartTree<SceneEntity> tree = new PartTree<SceneEntity>();
+		tree.build(planetParts);
+		ArrayList<SceneEntity> entities = createEntities(1);
+		place(entities, 0, -3, 0.1f, 0, 0.3f);
+		SweptSpheres swept = step(entities, null);
+		place(entities, 0, 12, 0.1f, 0, 0.3f);
+		swept = step(entities, swept);
+		assertEquals("no part overlaps the satellite at the end of the step", 0, tree.query(entities.get(0).getBoundingSphereWorld(), DEPTH));
+
+		Sphere bound = new Sphere();
+		swept.getSweptBound(0, bound);
+		int candidates = tree.query(bound, DEPTH);
+		int first = -1;
+		float firstImpact = Float.MAX_VALUE;
+		for(int k=0; k<candidates; k++)
+		{
+			int part = tree.getCandidate(k);
+			float t = swept.timeOfImpact(0, tree.getPart(part).getBoundingSphereWorld(), DEPTH);
+			if(t != SweptSpheres.NO_IMPACT && t < firstImpact)
+			{
+				first = part;
+				firstImpact = t;
+			}
+		}
+		assertEquals("the sweep finds the first part", 0, first);
+		float contact = 0.55f - DEPTH;
+		float offset = (float)Math.sqrt(contact*contact - 0.1f*0.1f);
+		assertImpact(firstImpact, (3 - offset) / 15);
+	}
+
+	/**
+	 * Creates entities.
+	 *
+	 * @param size the number of entities
+	 * @return the entities
+	 */
+	private static ArrayList<SceneEntity> createEntities(int size)
+	{
+		ArrayList<SceneEntity> entities = new ArrayList<SceneEntity>(size);
+		for(int i=0; i<size; i++)
+			entities.add(new SceneEntity());
+		return entities;
+	}
+
+	/**
+	 * Sets the world bounding sphere of an entity.
+	 *
+	 * @param entities the entities
+	 * @param i the entity
+	 * @param x the x coordinate of the center
+	 * @param y the y coordinate of the center
+	 * @param z the z coordinate of the center
+	 * @param radius the radius
+	 */
+	private static void place(ArrayList<SceneEntity> entities, int i, float x, float y, float z, float radius)
+	{
+		Sphere sphere = entities.get(i).getBoundingSphereWorld();
+		sphere.center.set(x, y, z);
+		sphere.radius = radius;
+	}
+
+	/**
+	 * Gets an array of active flags.
+	 *
+	 * @param size the number of entities
+	 * @return the flags, all true
+	 */
+	private static boolean[] active(int size)
+	{
+		boolean[] active = new boolean[size];
+		for(int i=0; i<size; i++)
+			active[i] = true;
+		return active;
+	}
+
+	/**
+	 * Starts a step.
+	 *
+	 * @param entities the entities
+	 * @param swept the swept spheres of the previous step, null for the first step
+	 * @return the swept spheres
+	 */
+	private static SweptSpheres step(ArrayList<SceneEntity> entities, SweptSpheres swept)
+	{
+		if(swept == null)
+			swept = new SweptSpheres();
+		swept.update(entities, active(entities.size()), MIN_DISTANCE);
+		return swept;
+	}
+
+	/**
+	 * Asserts a time of impact.
+	 *
+	 * @param t the time of impact
+	 * @param expected the expected time of impact
+	 */
+	private static void assertImpact(float t, float expected)
+	{
+		assertTrue("no impact, expected " + expected, t != SweptSpheres.NO_IMPACT);
+		assertEquals("time of impact", expected, t, EPSILON);
+	}
+}
@@ -0,0 +1,204 @@
+package nu.shacknet.poseidon.pn.signanzorbit.collision;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Constants;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Sphere;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Vector3;
+import nu.shacknet.poseidon.pn.signanzorbit.orbit.Orbit;
+import nu.shacknet.poseidon.pn.signanzorbit.orbit.VecAxisTransformation;
+import nu.shacknet.poseidon.pn.signanzorbit.scene.SceneEntity;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks the kinetic scheduler with satellites on crossing orbits: every
+ * pair in contact has to be among the pairs it passes on, while orbits are
+ * morphed and sped up now and then. The satellites spin and the centers of
+ * their bounding spheres are off their positions, and the world bounding
+ * spheres are updated after the collision detection like by the render
+ * thread.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class KineticSchedulerTest
+{
+	/** The number of satellites. */
+	private static final int SATELLITES = 150;
+
+	/** The number of frames. */
+	private static final int FRAMES = 900;
+
+	/** The time per frame. */
+	private static final float DT = 1/30f;
+
+	/** The number of frames between two morphs. */
+	private static final int MORPH_INTERVAL = 15;
+
+	/** The radius of a satellite. */
+	private static final float RADIUS = 0.8f;
+
+	/**
+	 * Turns the logging off.
+	 */
+	@BeforeClass
+	public static void setUp()
+	{
+		Config.LOGLEVEL = Config.NONE;
+	}
+
+	/**
+	 * Simulates the satellites, every contact has to be passed on and fewer
+	 * pairs have to be checked than all pairs.
+	 */
+	@Test
+	public void passesOnAllContacts()
+	{
+		Random rand = new Random(23);
+		ArrayList<SceneEntity> entities = new ArrayList<SceneEntity>(SATELLITES);
+		Orbit[] orbits = new Orbit[SATELLITES];
+		Vector3 entityPos = new Vector3(), centerPos = new Vector3(), directionVec = new Vector3(), push = new Vector3();
+		for(int i=0; i<SATELLITES; i++)
+		{
+			SceneEntity entity = new SceneEntity();
+			Sphere sphere = entity.getBoundingSphere();
+			sphere.center.set(0.3f, 0, 0);
+			sphere.radius = RADIUS;
+
+			randomDirection(centerPos, rand);
+			centerPos.multiply(2*rand.nextFloat());
+			randomDirection(entityPos, rand);
+			entityPos.multiply(12 + 10*rand.nextFloat()).add(centerPos);
+			randomDirection(directionVec, rand);
+			directionVec.multiply(12 + 10*rand.nextFloat());
+			orbits[i] = new Orbit(entityPos, centerPos, directionVec, 1 + 4*rand.nextFloat(), null);
+			orbits[i].setSatTrans(new VecAxisTransformation(Constants.Y_AXIS, (float)Math.PI, 5, null));
+			orbits[i].setTransform(entity.getTransformation());
+			entity.setMotion(orbits[i]);
+			orbits[i].update(0);
+			entity.update();
+			entities.add(entity);
+		}
+
+		KineticScheduler scheduler = new KineticScheduler();
+		boolean[] collidable = new boolean[SATELLITES];
+		for(int i=0; i<SATELLITES; i++)
+			collidable[i] = true;
+		PairList candidates = new PairList(), result = new PairList();
+		long checked = 0, contacts = 0;
+		for(int frame=0; frame<FRAMES; frame++)
+		{
+			if(frame % MORPH_INTERVAL == 0)
+			{
+				randomDirection(push, rand);
+				orbits[rand.nextInt(SATELLITES)].morph(push.multiply(2*rand.nextFloat()));
+				orbits[rand.nextInt(SATELLITES)].setSpeed(1 + 4*rand.nextFloat());
+			}
+			for(int i=0; i<SATELLITES; i++)
+				orbits[i].update(DT);
+
+			//the candidates of a broadphase: overlapping bounding spheres
+			candidates.clear();
+			for(int a=0; a<SATELLITES; a++)
+			{
+				for(int b=a+1; b<SATELLITES; b++)
+				{
+					if(distance(entities, a, b) < 2*RADIUS)
+						candidates.add(a, b);
+				}
+			}
+
+			scheduler.schedule(entities, collidable, DT, Config.KINETIC_SPEED_MARGIN, Config.KINETIC_STABLE_FRAMES,
+					Config.COLLISION_PENETRATION_DEPTH, candidates, result);
+			checked += scheduler.getChecked() + result.size();
+
+			//every contact has to be passed on
+			for(int a=0; a<SATELLITES; a++)
+			{
+				for(int b=a+1; b<SATELLITES; b++)
+				{
+					if(distance(entities, a, b) + Config.COLLISION_PENETRATION_DEPTH >= 2*RADIUS)
+						continue;
+					contacts++;
+					assertTrue("frame " + frame + ", contact " + a + "/" + b + " missed", contains(result, a, b));
+				}
+			}
+
+			//the render thread updates the world bounding spheres
+			for(int i=0; i<SATELLITES; i++)
+				entities.get(i).update();
+		}
+
+		long all = (long)FRAMES*SATELLITES*(SATELLITES-1)/2;
+		assertTrue("no contacts", contacts > 0);
+		assertTrue(checked + " of " + all + " pairs checked", checked < all);
+	}
+
+	/**
+	 * Gets the distance of the world bounding spheres of two entities.
+	 *
+	 * @param entities the entities
+	 * @param a the first entity
+	 * @param b the second entity
+	 * @return the distance of the centers
+	 */
+	private static float distance(ArrayList<SceneEntity> entities, int a, int b)
+	{
+		float[] ca = entities.get(a).getBoundingSphereWorld().center.v, cb = entities.get(b).getBoundingSphereWorld().center.v;
+		float x = cb[0]-ca[0], y = cb[1]-ca[1], z = cb[2]-ca[2];
+		return (float)Math.sqrt(x*x + y*y + z*z);
+	}
+
+	/**
+	 * Whether a sorted pair list contains a pair.
+	 *
+	 * @param pairs the pairs
+	 * @param a the first entity
+	 * @param b the second entity
+	 * @return true if it does
+	 */
+	private static boolean contains(PairList pairs, int a, int b)
+	{
+		long key = ((long)a << 32) | b;
+		int lo = 0, hi = pairs.size()-1;
+		while(lo <= hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			long k = pairs.getKey(mid);
+			if(k < key)
+				lo = mid+1;
+			else if(k > key)
+				hi = mid-1;
+			else
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Sets a vector to a random unit vector.
+	 *
+	 * @param v the vector
+	 * @param rand the random generator
+	 */
+	private static void randomDirection(Vector3 v, Random rand)
+	{
+		float x, y, z, length2;
+		do
+		{
+			x = rand.nextFloat()*2-1;
+			y = rand.nextFloat()*2-1;
+			z = rand.nextFloat()*2-1;
+			length2 = x*x + y*y + z*z;
+		}
+		while(length2 > 1 || length2 < 0.01f);
+		float length = (float)Math.sqrt(length2);
+		v.set(x/length, y/length, z/length);
+	}
+}
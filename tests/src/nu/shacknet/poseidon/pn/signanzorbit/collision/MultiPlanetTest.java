@@ -0,0 +1,186 @@
+package nu.shacknet.poseidon.pn.signanzorbit.collision;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Sphere;
+import nu.shacknet.poseidon.pn.signanzorbit.scene.Model;
+import nu.shacknet.poseidon.pn.signanzorbit.scene.SceneEntity;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks the satellite-vs-planet queries of levels with many planets:
+ * satellites fly through a box of planets, every planet with hundreds of
+ * parts. Like in the collision detection, the planets are fixed entities
+ * which are only paired with the satellites overlapping them, and only
+ * the part trees of these planets are queried. This is compared with one
+ * part tree over the parts of all planets, queried by every satellite.
+ * Both have to find the same contacts.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class MultiPlanetTest
+{
+	/** The numbers of planets. */
+	private static final int[] PLANETS = { 1, 12, 48 };
+
+	/** The number of parts per planet. */
+	private static final int PARTS = 256;
+
+	/** The number of satellites. */
+	private static final int SATELLITES = 200;
+
+	/** The number of frames. */
+	private static final int FRAMES = 300;
+
+	/** The radius of a part. */
+	private static final float PART_RADIUS = 0.5f;
+
+	/** The radius of a satellite. */
+	private static final float SATELLITE_RADIUS = 0.8f;
+
+	/** The distance a satellite moves per frame. */
+	private static final float SATELLITE_STEP = 0.3f;
+
+	/**
+	 * Turns the logging off.
+	 */
+	@BeforeClass
+	public static void setUp()
+	{
+		Config.LOGLEVEL = Config.NONE;
+	}
+
+	/**
+	 * Flies the satellites through 1, 12 and 48 planets, the queries per
+	 * planet have to find the contacts of the merged tree every frame.
+	 */
+	@Test
+	public void planetQueriesMatchMergedTree()
+	{
+		float depth = Config.COLLISION_PENETRATION_DEPTH;
+		float planetRadius = (float)Math.cbrt(PARTS) * PART_RADIUS * 1.6f;
+		for(int s=0; s<PLANETS.length; s++)
+		{
+			int planetCount = PLANETS[s];
+			Random rand = new Random(planetCount);
+
+			//the planets on a grid, 3 planet radii apart
+			int side = (int)Math.ceil(Math.cbrt(planetCount));
+			float half = side * 3 * planetRadius / 2;
+			ArrayList<SceneEntity> entities = new ArrayList<SceneEntity>(planetCount + SATELLITES);
+			ArrayList<Model> allParts = new ArrayList<Model>(planetCount * PARTS);
+			for(int p=0; p<planetCount; p++)
+			{
+				SceneEntity planet = new SceneEntity();
+				Sphere bound = planet.getBoundingSphereWorld();
+				bound.center.set(-half + 3*planetRadius*(p % side + 0.5f), -half + 3*planetRadius*((p / side) % side + 0.5f),
+						-half + 3*planetRadius*(p / (side*side) + 0.5f));
+				bound.radius = planetRadius + PART_RADIUS;
+				float[] c = bound.center.v;
+				for(int i=0; i<PARTS; i++)
+				{
+					Model part = new Model();
+					float x, y, z;
+					do
+					{
+						x = (rand.nextFloat()*2-1)*planetRadius;
+						y = (rand.nextFloat()*2-1)*planetRadius;
+						z = (rand.nextFloat()*2-1)*planetRadius;
+					}
+					while(x*x + y*y + z*z > planetRadius*planetRadius);
+					part.getBoundingSphereWorld().center.set(c[0]+x, c[1]+y, c[2]+z);
+					part.getBoundingSphereWorld().radius = PART_RADIUS;
+					planet.add(part);
+					allParts.add(part);
+				}
+				entities.add(planet);
+			}
+
+			float[] velocities = new float[3*SATELLITES];
+			for(int i=0; i<SATELLITES; i++)
+			{
+				SceneEntity satellite = new SceneEntity();
+				Sphere bound = satellite.getBoundingSphereWorld();
+				bound.center.set((rand.nextFloat()*2-1)*half, (rand.nextFloat()*2-1)*half, (rand.nextFloat()*2-1)*half);
+				bound.radius = SATELLITE_RADIUS;
+				for(int j=0; j<3; j++)
+					velocities[3*i+j] = (rand.nextFloat()*2-1)*SATELLITE_STEP;
+				entities.add(satellite);
+			}
+
+			//per planet part trees, paired by the sweep over the fixed planets
+			Planet[] planets = new Planet[planetCount];
+			EntityActivity activity = new EntityActivity();
+			for(int p=0; p<planetCount; p++)
+			{
+				planets[p] = new Planet(entities.get(p), p, p);
+				activity.setFixed(p);
+			}
+			//one part tree over all parts
+			PartTree<Model> merged = new PartTree<Model>();
+			merged.build(allParts);
+
+			PairList pairs = new PairList();
+			long contacts = 0;
+			for(int frame=0; frame<FRAMES; frame++)
+			{
+				move(entities, planetCount, velocities, half);
+
+				activity.update(entities, false, 0, 1);
+				pairs.clear();
+				activity.addSleepingPairs(entities, pairs);
+				int planetContacts = 0;
+				for(int k=0; k<pairs.size(); k++)
+				{
+					//the planets come first in the list
+					PartTree<Model> parts = planets[pairs.getFirst(k)].getRemainingParts();
+					Sphere bound = entities.get(pairs.getSecond(k)).getBoundingSphereWorld();
+					parts.query(bound, depth);
+					planetContacts += parts.filterCandidates(bound, depth);
+				}
+				activity.endFrame();
+
+				int mergedContacts = 0;
+				for(int i=planetCount; i<planetCount+SATELLITES; i++)
+				{
+					Sphere bound = entities.get(i).getBoundingSphereWorld();
+					merged.query(bound, depth);
+					mergedContacts += merged.filterCandidates(bound, depth);
+				}
+				assertEquals(planetCount + " planets, frame " + frame, mergedContacts, planetContacts);
+				contacts += planetContacts;
+			}
+			assertTrue(planetCount + " planets, no contacts", contacts > 0);
+		}
+	}
+
+	/**
+	 * Moves the satellites, they bounce off the walls of the box.
+	 *
+	 * @param entities the entities, the planets first
+	 * @param planetCount the number of planets
+	 * @param velocities the velocities of the satellites (xyz)
+	 * @param half the half size of the box
+	 */
+	private static void move(ArrayList<SceneEntity> entities, int planetCount, float[] velocities, float half)
+	{
+		for(int i=0; i<SATELLITES; i++)
+		{
+			float[] c = entities.get(planetCount+i).getBoundingSphereWorld().center.v;
+			for(int j=0; j<3; j++)
+			{
+				c[j] += velocities[3*i+j];
+				if(c[j] > half || c[j] < -half)
+					velocities[3*i+j] = -velocities[3*i+j];
+			}
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package nu.shacknet.poseidon.pn.signanzorbit.collision;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Sphere;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Vector3;
+import nu.shacknet.poseidon.pn.signanzorbit.scene.SceneEntity;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks the narrowphase with 2 to 8 threads against a single thread. The
+ * scenes are dense clouds of spheres, every pair is a candidate (brute
+ * force broadphase) and every tenth entity is fast, so the swept tests
+ * take part as well. The contacts and center distances found with several
+ * threads have to be bit-identical to the ones of a single thread.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class NarrowphaseTest
+{
+	/** The entity counts. */
+	private static final int[] SIZES = { 256, 1024 };
+
+	/** The thread counts, the first one gives the reference. */
+	private static final int[] THREADS = { 1, 2, 4, 8 };
+
+	/** The number of frames per entity and thread count. */
+	private static final int FRAMES = 3;
+
+	/** The volume per entity. */
+	private static final float VOLUME_PER_ENTITY = 2;
+
+	/** The penetration depth. */
+	private static final float DEPTH = 0.2f;
+
+	/** The minimal distance of fast entities. */
+	private static final float MIN_DISTANCE = 0.2f;
+
+	/**
+	 * Turns the logging off.
+	 */
+	@BeforeClass
+	public static void setUp()
+	{
+		Config.LOGLEVEL = Config.NONE;
+	}
+
+	/**
+	 * Runs the narrowphase with every thread count and compares the results
+	 * of every frame with the ones of a single thread.
+	 */
+	@Test
+	public void threadsMatchSingleThread()
+	{
+		for(int s=0; s<SIZES.length; s++)
+		{
+			int size = SIZES[s];
+			ArrayList<SceneEntity> entities = createEntities(size);
+			boolean[] active = new boolean[size];
+			for(int i=0; i<size; i++)
+				active[i] = true;
+			PairList pairs = new PairList();
+			new BruteForceBroadphase().findPairs(entities, active, pairs);
+
+			//every tenth entity moves fast during the step
+			SweptSpheres swept = new SweptSpheres();
+			swept.update(entities, active, MIN_DISTANCE);
+			for(int i=0; i<size; i+=10)
+				entities.get(i).getBoundingSphereWorld().center.v[0] += 2;
+			swept.update(entities, active, MIN_DISTANCE);
+
+			int pairCount = pairs.size();
+			boolean[] referenceContact = new boolean[pairCount];
+			int[] referenceDistance = new int[3*pairCount];
+			Vector3 distance = new Vector3();
+			int contacts = 0;
+
+			for(int t=0; t<THREADS.length; t++)
+			{
+				Narrowphase narrowphase = new Narrowphase(THREADS[t]);
+				try
+				{
+					for(int f=0; f<FRAMES; f++)
+					{
+						narrowphase.test(entities, pairs, swept, DEPTH);
+						String name = size + " entities, " + THREADS[t] + " threads, frame " + f + ", pair ";
+						for(int k=0; k<pairCount; k++)
+						{
+							boolean contact = narrowphase.hasContact(k);
+							if(contact)
+								narrowphase.getCenterDistance(k, distance);
+							if(t == 0 && f == 0)
+							{
+								referenceContact[k] = contact;
+								if(contact)
+								{
+									contacts++;
+									for(int c=0; c<3; c++)
+										referenceDistance[3*k+c] = Float.floatToIntBits(distance.v[c]);
+								}
+								continue;
+							}
+							assertEquals(name + k, referenceContact[k], contact);
+							if(contact)
+							{
+								for(int c=0; c<3; c++)
+									assertEquals(name + k, referenceDistance[3*k+c], Float.floatToIntBits(distance.v[c]));
+							}
+						}
+					}
+				}
+				finally
+				{
+					narrowphase.shutdown();
+				}
+			}
+			assertTrue(size + " entities, no contacts", contacts > 0);
+		}
+	}
+
+	/**
+	 * Creates the entities.
+	 *
+	 * @param size the number of entities
+	 * @return the entities
+	 */
+	private static ArrayList<SceneEntity> createEntities(int size)
+	{
+		Random rand = new Random(42);
+		float edge = (float)Math.cbrt(size * VOLUME_PER_ENTITY);
+		ArrayList<SceneEntity> entities = new ArrayList<SceneEntity>(size);
+		for(int i=0; i<size; i++)
+		{
+			SceneEntity entity = new SceneEntity();
+			Sphere sphere = entity.getBoundingSphereWorld();
+			sphere.center.set((rand.nextFloat()-0.5f)*edge, (rand.nextFloat()-0.5f)*edge, (rand.nextFloat()-0.5f)*edge);
+			sphere.radius = 0.3f + rand.nextFloat()*0.7f;
+			entities.add(entity);
+		}
+		return entities;
+	}
+}
@@ -0,0 +1,201 @@
+package nu.shacknet.poseidon.pn.signanzorbit.collision;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Sphere;
+import nu.shacknet.poseidon.pn.signanzorbit.scene.SceneEntity;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks the ray selection with the sphere tree against the linear scan
+ * over all entities (CollisionManager.intersectRay() before the tree).
+ * Half of the entities are satellites, only those can be selected. Every
+ * frame the entities move a little and the tree is updated, then rays
+ * from outside are shot at random points. Both have to select the same
+ * entities.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class SelectionTest
+{
+	/** The entity counts. */
+	private static final int[] SIZES = { 64, 256, 1024, 4096 };
+
+	/** The number of frames per entity count. */
+	private static final int FRAMES = 10;
+
+	/** The number of rays per frame. */
+	private static final int RAYS = 100;
+
+	/** The volume per entity. */
+	private static final float VOLUME_PER_ENTITY = 8;
+
+	/**
+	 * Turns the logging off.
+	 */
+	@BeforeClass
+	public static void setUp()
+	{
+		Config.LOGLEVEL = Config.NONE;
+	}
+
+	/**
+	 * Shoots the rays for every entity count, the tree has to select the
+	 * entity the linear scan selects.
+	 */
+	@Test
+	public void treeSelectsLikeLinearScan()
+	{
+		for(int s=0; s<SIZES.length; s++)
+		{
+			int size = SIZES[s];
+			ArrayList<SceneEntity> entities = createEntities(size);
+			float edge = (float)Math.cbrt(size * VOLUME_PER_ENTITY);
+			SphereTree tree = new SphereTree(Config.SELECTION_TREE_MARGIN);
+			Random rand = new Random(size);
+			float[] ray = new float[6];
+
+			int hits = 0;
+			for(int f=0; f<FRAMES; f++)
+			{
+				move(entities, rand);
+				updateTree(tree, entities);
+
+				for(int r=0; r<RAYS; r++)
+				{
+					randomRay(ray, edge, rand);
+					int expected = linearScan(entities, ray);
+					int found = tree.nearestOnLine(ray[0], ray[1], ray[2], ray[3], ray[4], ray[5], Config.SELECTION_BSPHERE_INCREMENT);
+					assertEquals(size + " entities, frame " + f + ", ray " + r, expected, found);
+					if(found != SphereTree.NULL)
+						hits++;
+				}
+			}
+			assertTrue(size + " entities, no ray hit a satellite", hits > 0);
+		}
+	}
+
+	/**
+	 * Creates the entities, every second one is a satellite.
+	 *
+	 * @param size the number of entities
+	 * @return the entities
+	 */
+	private static ArrayList<SceneEntity> createEntities(int size)
+	{
+		Random rand = new Random(42);
+		float edge = (float)Math.cbrt(size * VOLUME_PER_ENTITY);
+		ArrayList<SceneEntity> entities = new ArrayList<SceneEntity>(size);
+		for(int i=0; i<size; i++)
+		{
+			SceneEntity entity = new SceneEntity();
+			entity.setName(i%2 == 0 ? Config.SATELLITE_PREFIX + i : "part" + i);
+			Sphere sphere = entity.getBoundingSphereWorld();
+			sphere.center.set((rand.nextFloat()-0.5f)*edge, (rand.nextFloat()-0.5f)*edge, (rand.nextFloat()-0.5f)*edge);
+			sphere.radius = 0.3f + rand.nextFloat()*0.7f;
+			entities.add(entity);
+		}
+		return entities;
+	}
+
+	/**
+	 * Moves every entity by up to 0.1 per axis.
+	 *
+	 * @param entities the entities
+	 * @param rand the random generator
+	 */
+	private static void move(ArrayList<SceneEntity> entities, Random rand)
+	{
+		for(int i=0; i<entities.size(); i++)
+		{
+			float[] c = entities.get(i).getBoundingSphereWorld().center.v;
+			c[0] += (rand.nextFloat()-0.5f)*0.2f;
+			c[1] += (rand.nextFloat()-0.5f)*0.2f;
+			c[2] += (rand.nextFloat()-0.5f)*0.2f;
+		}
+	}
+
+	/**
+	 * Inserts or moves the satellites in the tree.
+	 *
+	 * @param tree the tree
+	 * @param entities the entities
+	 */
+	private static void updateTree(SphereTree tree, ArrayList<SceneEntity> entities)
+	{
+		for(int i=0; i<entities.size(); i++)
+		{
+			SceneEntity entity = entities.get(i);
+			if(!entity.getName().startsWith(Config.SATELLITE_PREFIX))
+				continue;
+			Sphere sphere = entity.getBoundingSphereWorld();
+			float[] c = sphere.center.v;
+			tree.insert(i, c[0], c[1], c[2], sphere.radius);
+		}
+	}
+
+	/**
+	 * Creates a ray from a point outside the entities to a random point
+	 * inside.
+	 *
+	 * @param ray receives the origin and the normalized direction
+	 * @param edge the edge length of the cube containing the entities
+	 * @param rand the random generator
+	 */
+	private static void randomRay(float[] ray, float edge, Random rand)
+	{
+		ray[0] = (rand.nextFloat()-0.5f)*edge;
+		ray[1] = (rand.nextFloat()-0.5f)*edge;
+		ray[2] = edge;
+		float dx = (rand.nextFloat()-0.5f)*edge - ray[0];
+		float dy = (rand.nextFloat()-0.5f)*edge - ray[1];
+		float dz = (rand.nextFloat()-0.5f)*edge - ray[2];
+		float length = (float)Math.sqrt(dx*dx + dy*dy + dz*dz);
+		ray[3] = dx/length;
+		ray[4] = dy/length;
+		ray[5] = dz/length;
+	}
+
+	/**
+	 * Selects the satellite nearest to the ray origin whose enlarged
+	 * bounding sphere is hit, by testing all entities.
+	 *
+	 * @param entities the entities
+	 * @param ray the origin and the normalized direction
+	 * @return the index of the selected entity, SphereTree.NULL if there is none
+	 */
+	private static int linearScan(ArrayList<SceneEntity> entities, float[] ray)
+	{
+		int nearest = SphereTree.NULL;
+		float minDistance = Float.MAX_VALUE;
+		for(int i=0; i<entities.size(); i++)
+		{
+			SceneEntity entity = entities.get(i);
+			Sphere sphere = entity.getBoundingSphereWorld();
+			float[] c = sphere.center.v;
+			float px = c[0]-ray[0], py = c[1]-ray[1], pz = c[2]-ray[2];
+
+			//distance to the line
+			float nx = py*ray[5] - pz*ray[4], ny = pz*ray[3] - px*ray[5], nz = px*ray[4] - py*ray[3];
+			float reach = sphere.radius + Config.SELECTION_BSPHERE_INCREMENT;
+			if(nx*nx + ny*ny + nz*nz >= reach*reach)
+				continue;
+
+			float distance = (float)Math.sqrt(px*px + py*py + pz*pz);
+			if(distance < minDistance && entity.getName().startsWith(Config.SATELLITE_PREFIX))
+			{
+				nearest = i;
+				minDistance = distance;
+			}
+		}
+		return nearest;
+	}
+}
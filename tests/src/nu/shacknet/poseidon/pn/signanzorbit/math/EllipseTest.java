@@ -0,0 +1,200 @@
+package nu.shacknet.poseidon.pn.signanzorbit.math;
+
+import static org.junit.Assert.assertTrue;
+import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks the arc length tables of Ellipse: the perimeter against the closed
+ * form approximation and the arc positions against a double precision arc
+ * length integral, with the error bounds given in Config.ELLIPSE_TABLE_SIZE.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class EllipseTest
+{
+	/** The max. difference of the perimeter of the table and the closed form, relative to the perimeter. */
+	private static final float PERIMETER_BOUND = 1e-5f;
+
+	/** The number of steps of the reference arc length integral. */
+	private static final int REFERENCE_STEPS = 1 << 16;
+
+	/** The number of arc positions checked per ellipse. */
+	private static final int ARC_SAMPLES = 1000;
+
+	/** The backend selected before the test. */
+	private boolean nativeMath;
+
+	/** The table size selected before the test. */
+	private int tableSize;
+
+	/**
+	 * Loads the native library.
+	 */
+	@BeforeClass
+	public static void loadLibrary()
+	{
+		Config.LOGLEVEL = Config.NONE;
+		System.loadLibrary("signanzorbit");
+	}
+
+	/**
+	 * Saves the selected backend and table size.
+	 */
+	@Before
+	public void saveConfig()
+	{
+		nativeMath = Config.NATIVE_MATH;
+		tableSize = Config.ELLIPSE_TABLE_SIZE;
+	}
+
+	/**
+	 * Restores the selected backend and table size.
+	 */
+	@After
+	public void restoreConfig()
+	{
+		Config.NATIVE_MATH = nativeMath;
+		Config.ELLIPSE_TABLE_SIZE = tableSize;
+	}
+
+	/**
+	 * Compares the perimeter of the table with the closed form
+	 * approximation of both backends, for axis ratios up to 1:5.
+	 */
+	@Test
+	public void perimeterMatchesClosedForm()
+	{
+		for(int backend=0; backend<2; backend++)
+		{
+			Config.NATIVE_MATH = backend == 1;
+			for(int i=1; i<=5; i++)
+			{
+				Ellipse e = new Ellipse(new Vector3(), new Vector3(10, 0, 0), new Vector3(0, 0, 10f/i));
+				float error = Math.abs(e.perimeter - e.calcPerimeterApproximation()) / e.perimeter;
+				assertTrue("ellipse 1:" + i + ", native " + Config.NATIVE_MATH + ", perimeter differs by " + error, error <= PERIMETER_BOUND);
+			}
+		}
+	}
+
+	/**
+	 * Checks the arc positions with 32 table samples, within 1e-5 of the
+	 * perimeter for axis ratios up to 1:5.
+	 */
+	@Test
+	public void arcPositionsWith32Samples()
+	{
+		checkArcPositions(32, 5, 1e-5f);
+	}
+
+	/**
+	 * Checks the arc positions with 32 table samples, within 7e-5 of the
+	 * perimeter for axis ratios up to 1:10.
+	 */
+	@Test
+	public void arcPositionsWith32SamplesElongated()
+	{
+		checkArcPositions(32, 10, 7e-5f);
+	}
+
+	/**
+	 * Checks the arc positions with 64 table samples, within 1e-6 of the
+	 * perimeter for axis ratios up to 1:5.
+	 */
+	@Test
+	public void arcPositionsWith64Samples()
+	{
+		checkArcPositions(64, 5, 1e-6f);
+	}
+
+	/**
+	 * Checks the arc positions of ellipses with axis ratios from 1:1 up to
+	 * 1:maxRatio.
+	 *
+	 * @param tableSize the number of table samples
+	 * @param maxRatio the max. axis ratio
+	 * @param bound the max. error, relative to the perimeter
+	 */
+	private static void checkArcPositions(int tableSize, int maxRatio, float bound)
+	{
+		Config.ELLIPSE_TABLE_SIZE = tableSize;
+		for(int i=1; i<=maxRatio; i++)
+		{
+			Ellipse e = new Ellipse(new Vector3(1, 2, 3), new Vector3(6, 8, 0), new Vector3(-8f/i, 6f/i, 0));
+			float error = arcPositionError(e);
+			assertTrue("ellipse 1:" + i + ", " + tableSize + " samples, arc positions differ by " + error, error <= bound);
+		}
+	}
+
+	/**
+	 * Gets the largest distance of the positions of getPointArc() to the
+	 * points at the same arc length, which are found with an arc length
+	 * integral in double precision (trapezoidal rule, fine steps).
+	 *
+	 * @param ellipse the ellipse
+	 * @return the max. distance, relative to the perimeter
+	 */
+	private static float arcPositionError(Ellipse ellipse)
+	{
+		float[] c = ellipse.center.v, a = ellipse.a.v, b = ellipse.b.v;
+		int n = REFERENCE_STEPS;
+		double dt = 2*Math.PI / n;
+		double[] arc = new double[n+1];
+		double previous = speed(a, b, 0);
+		for(int i=1; i<=n; i++)
+		{
+			double speed = speed(a, b, i*dt);
+			arc[i] = arc[i-1] + (previous + speed) * 0.5 * dt;
+			previous = speed;
+		}
+		double perimeter = arc[n];
+
+		double maxError = 0;
+		int lo = 0;
+		for(int i=0; i<ARC_SAMPLES; i++)
+		{
+			//the same normalization as getPointArc(), u grows so the interval only moves forward
+			float u = Constants.TWOPI * i / ARC_SAMPLES;
+			double s = u / Constants.TWOPI * perimeter;
+			while(lo < n-1 && arc[lo+1] <= s)
+				lo++;
+			double t = (lo + (s - arc[lo]) / (arc[lo+1] - arc[lo])) * dt;
+			double cos = Math.cos(t), sin = Math.sin(t);
+
+			float[] p = ellipse.getPointArc(u).v;
+			double error = 0;
+			for(int j=0; j<3; j++)
+			{
+				double d = p[j] - (c[j] + a[j]*cos + b[j]*sin);
+				error += d*d;
+			}
+			maxError = Math.max(maxError, Math.sqrt(error));
+		}
+		return (float)(maxError / perimeter);
+	}
+
+	/**
+	 * Gets the speed |dp/dt| along the ellipse.
+	 *
+	 * @param a the major axis
+	 * @param b the secondary axis
+	 * @param t the parameter
+	 * @return the speed
+	 */
+	private static double speed(float[] a, float[] b, double t)
+	{
+		double cos = Math.cos(t), sin = Math.sin(t);
+		double speed2 = 0;
+		for(int j=0; j<3; j++)
+		{
+			double d = b[j]*cos - a[j]*sin;
+			speed2 += d*d;
+		}
+		return Math.sqrt(speed2);
+	}
+}
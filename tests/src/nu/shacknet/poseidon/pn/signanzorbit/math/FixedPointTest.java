@@ -0,0 +1,85 @@
+package nu.shacknet.poseidon.pn.signanzorbit.math;
+
+import static org.junit.Assert.assertTrue;
+import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks the 16.16 fixed point conversion and point transformation of
+ * FixedPoint against their float counterparts.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class FixedPointTest
+{
+	/** The number of points. */
+	private static final int POINTS = 256;
+
+	/**
+	 * Turns the logging off.
+	 */
+	@BeforeClass
+	public static void setUp()
+	{
+		Config.LOGLEVEL = Config.NONE;
+	}
+
+	/**
+	 * Converts values to fixed point and back, they have to be within half
+	 * an ulp (1/2^17).
+	 */
+	@Test
+	public void conversionRoundsToNearest()
+	{
+		float[] values = new float[3*POINTS];
+		for(int i=0; i<values.length; i++)
+			values[i] = (float)Math.sin(i) * 10;
+		int[] fixed = new int[values.length];
+		FixedPoint.toFixed(values, fixed);
+
+		for(int i=0; i<values.length; i++)
+		{
+			float error = Math.abs(values[i] - FixedPoint.toFloat(fixed[i]));
+			assertTrue("value " + values[i] + " differs by " + error, error <= 0.5f/FixedPoint.ONE);
+		}
+	}
+
+	/**
+	 * Transforms points in fixed point and in float, the results have to be
+	 * within the quantisation bound of the fixed point transformation.
+	 */
+	@Test
+	public void transformationWithinQuantisationBound()
+	{
+		float[] points = new float[3*POINTS];
+		for(int i=0; i<points.length; i++)
+			points[i] = (float)Math.sin(i) * 10;
+		Matrix44 m = new Matrix44().setRotate(new Vector3(1, 2, 3), 0.7f).addTranslate(3, -2, 5);
+
+		float[] floatResult = new float[points.length];
+		int[] fixedPoints = new int[points.length];
+		int[] fixedResult = new int[points.length];
+		FixedPoint.toFixed(points, fixedPoints);
+		JavaMath.transformPoints(m.m, points, floatResult, POINTS);
+		FixedPoint.transformPoints(m.getArrayFixed16(), fixedPoints, fixedResult, POINTS);
+
+		float maxPoint = 0;
+		for(int i=0; i<points.length; i++)
+			maxPoint = Math.max(maxPoint, Math.abs(points[i]));
+		//the rounding of the rotation (|m| <= 1), of the points and of the translation
+		//costs 1/2 ulp each (times the other factor), the shift truncates by up to 1 ulp
+		float maxMatrix = 0;
+		for(int i=0; i<12; i++)
+			maxMatrix = Math.max(maxMatrix, Math.abs(m.m[i]));
+		float bound = (3*maxMatrix + 3*maxPoint + 1) / (2*FixedPoint.ONE) + 1f/FixedPoint.ONE;
+
+		for(int i=0; i<points.length; i++)
+		{
+			float error = Math.abs(floatResult[i] - FixedPoint.toFloat(fixedResult[i]));
+			assertTrue("coordinate " + i + " differs by " + error + " (bound " + bound + ")", error <= bound);
+		}
+	}
+}
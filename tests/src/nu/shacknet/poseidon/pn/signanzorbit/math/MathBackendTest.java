@@ -0,0 +1,125 @@
+package nu.shacknet.poseidon.pn.signanzorbit.math;
+
+import static org.junit.Assert.assertTrue;
+import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks that the native and the pure Java math backend agree within
+ * <code>JavaMath.EPSILON</code> on a workload resembling the per frame math
+ * of the logic thread (vector arithmetic, matrix concatenation and
+ * point/sphere transformation).
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class MathBackendTest
+{
+	/** The number of rounds of the workload. */
+	private static final int ROUNDS = 20000;
+
+	/** The backend selected before the test. */
+	private boolean nativeMath;
+
+	/**
+	 * Loads the native library.
+	 */
+	@BeforeClass
+	public static void loadLibrary()
+	{
+		Config.LOGLEVEL = Config.NONE;
+		System.loadLibrary("signanzorbit");
+	}
+
+	/**
+	 * Saves the selected backend.
+	 */
+	@Before
+	public void saveBackend()
+	{
+		nativeMath = Config.NATIVE_MATH;
+	}
+
+	/**
+	 * Restores the selected backend.
+	 */
+	@After
+	public void restoreBackend()
+	{
+		Config.NATIVE_MATH = nativeMath;
+	}
+
+	/**
+	 * Runs the workload with both backends and compares the results.
+	 */
+	@Test
+	public void backendsAgree()
+	{
+		float[] nativeResult = new float[8];
+		float[] javaResult = new float[8];
+
+		Config.NATIVE_MATH = true;
+		workload(ROUNDS, nativeResult);
+
+		Config.NATIVE_MATH = false;
+		workload(ROUNDS, javaResult);
+
+		for(int i=0; i<nativeResult.length; i++)
+		{
+			float error = Math.abs(nativeResult[i]-javaResult[i]) / Math.max(1, Math.abs(nativeResult[i]));
+			assertTrue("backends differ by " + error + " at " + i, error <= JavaMath.EPSILON);
+		}
+	}
+
+	/**
+	 * Runs the workload with the currently selected backend.
+	 *
+	 * @param rounds the number of rounds
+	 * @param result the final state of the workload is written into this (8 floats)
+	 */
+	private static void workload(int rounds, float[] result)
+	{
+		Vector3 a = new Vector3(1, 2, 3);
+		Vector3 b = new Vector3(-2, 0.5f, 1);
+		Vector3 c = new Vector3();
+		Vector3 axis = new Vector3(0.3f, 1, 0.2f);
+		Matrix44 m = new Matrix44();
+		Matrix44 rot = new Matrix44();
+		Sphere in = new Sphere(new Vector3(1, 0, 0), 1);
+		Sphere out = new Sphere();
+		float angle = 0;
+
+		for(int i=0; i<rounds; i++)
+		{
+			float alpha = (i % 360) * 0.01745329f;
+
+			c.set(a).add(b).multiply(0.5f);
+			c.subtract(b).normalize();
+			Vector3.crossProduct(a, c, b);
+			b.normalize();
+			angle += a.getAngle(c);
+
+			rot.setRotate(axis, alpha);
+			m.setIdentity();
+			m.addTranslate(c.v[0], c.v[1], c.v[2]);
+			m.mult(rot);
+			m.transformPoint(c);
+			m.transformSphere(in, out);
+
+			a.set(c).add(1);
+		}
+
+		result[0] = a.v[0];
+		result[1] = a.v[1];
+		result[2] = a.v[2];
+		result[3] = b.v[0];
+		result[4] = b.v[1];
+		result[5] = b.v[2];
+		result[6] = out.radius;
+		result[7] = angle / rounds;
+	}
+}
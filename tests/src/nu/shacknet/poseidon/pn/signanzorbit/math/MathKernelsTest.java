@@ -0,0 +1,224 @@
+package nu.shacknet.poseidon.pn.signanzorbit.math;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks that the batch kernels of MathKernels give the same results in
+ * Java, native scalar and native SIMD (if the cpu has SIMD kernels).
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class MathKernelsTest
+{
+	/** The number of elements per call. */
+	private static final int BATCH = 256;
+
+	/** The number of query spheres in the overlap test. */
+	private static final int OVERLAP_ROUNDS = 50;
+
+	/** The backend selected before the test. */
+	private boolean nativeMath;
+
+	/** Whether the SIMD kernels were selected before the test. */
+	private boolean simd;
+
+	/**
+	 * Loads the native library.
+	 */
+	@BeforeClass
+	public static void loadLibrary()
+	{
+		Config.LOGLEVEL = Config.NONE;
+		System.loadLibrary("signanzorbit");
+	}
+
+	/**
+	 * Saves the selected backend and kernels.
+	 */
+	@Before
+	public void saveBackend()
+	{
+		nativeMath = Config.NATIVE_MATH;
+		simd = !"scalar".equals(MathKernels.getImplementation());
+	}
+
+	/**
+	 * Restores the selected backend and kernels.
+	 */
+	@After
+	public void restoreBackend()
+	{
+		MathKernels.useSimd(simd);
+		Config.NATIVE_MATH = nativeMath;
+	}
+
+	/**
+	 * Multiplies matrices, transforms points and spheres with the three
+	 * implementations and compares the results, within a relative error of
+	 * JavaMath.EPSILON.
+	 */
+	@Test
+	public void kernelsAgree()
+	{
+		// java, native scalar, native simd
+		float[][] results = new float[3][];
+		for(int v=0; v<3; v++)
+		{
+			Config.NATIVE_MATH = v > 0;
+			if(v > 0)
+				MathKernels.useSimd(v == 2);
+
+			results[v] = new float[BATCH*(16+3+4)];
+			kernels(results[v]);
+		}
+
+		for(int v=1; v<3; v++)
+			for(int i=0; i<results[0].length; i++)
+			{
+				float error = Math.abs(results[0][i]-results[v][i]) / Math.max(1, Math.abs(results[0][i]));
+				assertTrue((v == 1 ? "scalar" : "simd") + " kernels differ by " + error + " at " + i, error <= JavaMath.EPSILON);
+			}
+	}
+
+	/**
+	 * Tests query spheres against candidate spheres and pairs of spheres
+	 * with the overlap kernels of the three implementations and one pair at
+	 * a time with a square root (like the collision tests did before), the
+	 * hits have to be the same.
+	 */
+	@Test
+	public void overlapKernelsAgree()
+	{
+		//spheres scattered in a box, candidate lists and pairs of random spheres
+		int size = 4*BATCH;
+		float[] spheres = new float[4*size];
+		int[] indices = new int[BATCH];
+		int[] pairs = new int[2*BATCH];
+		Random rand = new Random(24);
+		for(int i=0; i<size; i++)
+		{
+			for(int j=0; j<3; j++)
+				spheres[4*i+j] = rand.nextFloat()*20 - 10;
+			spheres[4*i+3] = 0.5f + rand.nextFloat()*2;
+		}
+		for(int k=0; k<BATCH; k++)
+		{
+			indices[k] = rand.nextInt(size);
+			pairs[2*k] = rand.nextInt(size);
+			pairs[2*k+1] = rand.nextInt(size);
+		}
+
+		// per pair, java, native scalar, native simd
+		String[] names = { "per pair", "java", "scalar", "simd" };
+		int[][] hits = new int[4][];
+		for(int v=0; v<4; v++)
+		{
+			Config.NATIVE_MATH = v > 1;
+			if(v > 1)
+				MathKernels.useSimd(v == 3);
+			hits[v] = overlaps(v == 0, spheres, indices, pairs);
+		}
+
+		assertTrue("no hits", hits[0][0] > 0 && hits[0][1] > 0);
+		for(int v=1; v<4; v++)
+			assertArrayEquals(names[v] + " hits differ from " + names[0], hits[0], hits[v]);
+	}
+
+	/**
+	 * Multiplies BATCH matrices, transforms as many points and spheres.
+	 *
+	 * @param result the matrices, points and spheres are written into this
+	 */
+	private static void kernels(float[] result)
+	{
+		float[] left = new float[16*BATCH];
+		float[] right = new float[16*BATCH];
+		float[] points = new float[3*BATCH];
+		float[] spheres = new float[4*BATCH];
+		Matrix44 m = new Matrix44();
+		for(int i=0; i<BATCH; i++)
+		{
+			m.setRotate(new Vector3(1, i % 3, i % 5 + 1), 0.5f + i * 0.1f).addTranslate(1 + i % 7, i % 11, -(i % 13));
+			System.arraycopy(m.m, 0, left, 16*i, 16);
+			m.setRotateY(0.3f + i * 0.05f).addScale(1 + i % 3, 1, 1);
+			System.arraycopy(m.m, 0, right, 16*i, 16);
+			for(int j=0; j<3; j++)
+				points[3*i+j] = spheres[4*i+j] = (float)Math.sin(i+j) * 10;
+			spheres[4*i+3] = 1 + i % 4;
+		}
+		float[] matrixResult = new float[16*BATCH];
+		float[] pointResult = new float[3*BATCH];
+		float[] sphereResult = new float[4*BATCH];
+
+		MathKernels.multMatrices(left, right, matrixResult, BATCH);
+		MathKernels.transformPoints(left, points, pointResult, BATCH);
+		MathKernels.transformSpheres(left, spheres, sphereResult, BATCH);
+
+		System.arraycopy(matrixResult, 0, result, 0, matrixResult.length);
+		System.arraycopy(pointResult, 0, result, matrixResult.length, pointResult.length);
+		System.arraycopy(sphereResult, 0, result, matrixResult.length+pointResult.length, sphereResult.length);
+	}
+
+	/**
+	 * Tests a query sphere against BATCH candidates and BATCH pairs of
+	 * spheres per round, the query sphere moves every round.
+	 *
+	 * @param perPair whether to test one pair at a time with a square root instead of the kernels
+	 * @param spheres the spheres (packed xyzr)
+	 * @param indices the candidates
+	 * @param pairs the pairs
+	 * @return the total number of hits of the candidates and the pairs, followed by the hits of every round
+	 */
+	private static int[] overlaps(boolean perPair, float[] spheres, int[] indices, int[] pairs)
+	{
+		float depth = Config.COLLISION_PENETRATION_DEPTH;
+		int[] sphereHits = new int[BATCH];
+		int[] pairHits = new int[BATCH];
+		int[] result = new int[2 + OVERLAP_ROUNDS*2*BATCH];
+		for(int i=0; i<OVERLAP_ROUNDS; i++)
+		{
+			float x = (i % 21) - 10, y = (i % 13) - 6, z = (i % 7) - 3, radius = 4;
+			int sphereCount = 0, pairCount = 0;
+			if(perPair)
+			{
+				for(int k=0; k<BATCH; k++)
+				{
+					int s = 4*indices[k];
+					float dx = spheres[s]-x, dy = spheres[s+1]-y, dz = spheres[s+2]-z;
+					if((float)Math.sqrt(dx*dx + dy*dy + dz*dz) + depth < spheres[s+3] + radius)
+						sphereHits[sphereCount++] = k;
+				}
+				for(int k=0; k<BATCH; k++)
+				{
+					int a = 4*pairs[2*k], b = 4*pairs[2*k+1];
+					float dx = spheres[b]-spheres[a], dy = spheres[b+1]-spheres[a+1], dz = spheres[b+2]-spheres[a+2];
+					if((float)Math.sqrt(dx*dx + dy*dy + dz*dz) + depth < spheres[a+3] + spheres[b+3])
+						pairHits[pairCount++] = k;
+				}
+			}
+			else
+			{
+				sphereCount = MathKernels.overlapSpheres(spheres, indices, BATCH, x, y, z, radius, depth, sphereHits);
+				pairCount = MathKernels.overlapPairs(spheres, pairs, BATCH, depth, pairHits);
+			}
+
+			result[0] += sphereCount;
+			result[1] += pairCount;
+			int offset = 2 + i*2*BATCH;
+			System.arraycopy(sphereHits, 0, result, offset, sphereCount);
+			System.arraycopy(pairHits, 0, result, offset+BATCH, pairCount);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,102 @@
+package nu.shacknet.poseidon.pn.signanzorbit.math;
+
+import static org.junit.Assert.assertEquals;
+import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks the affine fast paths of Matrix44 against full 4x4
+ * multiplications on the matrix compositions of the orbit, satellite and
+ * scene updates.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class Matrix44AffineTest
+{
+	/** The number of rounds of the workload. */
+	private static final int ROUNDS = 20000;
+
+	/** The max. difference of the matrix elements. */
+	private static final float MAX_ERROR = 1e-5f;
+
+	/**
+	 * Turns the logging off.
+	 */
+	@BeforeClass
+	public static void setUp()
+	{
+		Config.LOGLEVEL = Config.NONE;
+	}
+
+	/**
+	 * Runs the workload with the affine fast paths and with full 4x4
+	 * multiplications and compares the final matrices.
+	 */
+	@Test
+	public void affineMatchesFull()
+	{
+		float[] fullResult = new float[16];
+		float[] affineResult = new float[16];
+
+		workload(ROUNDS, false, fullResult);
+		workload(ROUNDS, true, affineResult);
+
+		for(int i=0; i<16; i++)
+			assertEquals("element " + i, fullResult[i], affineResult[i], MAX_ERROR);
+	}
+
+	/**
+	 * The matrix compositions of one frame: an orbit (basic orientation *
+	 * self rotation, then translated onto the ellipse), a satellite self
+	 * rotation and a scene entity * model concatenation.
+	 *
+	 * @param rounds the number of rounds
+	 * @param affine whether to use the affine fast paths or full 4x4 multiplications
+	 * @param result the final scene matrix is written into this (16 floats)
+	 */
+	private static void workload(int rounds, boolean affine, float[] result)
+	{
+		Vector3 axis = new Vector3(0.3f, 1, 0.2f);
+		Matrix44 basicOrientation = new Matrix44().setRotateX(0.5f);
+		Matrix44 selfRotation = new Matrix44();
+		Matrix44 orbit = new Matrix44();
+		Matrix44 scene = new Matrix44();
+		Matrix44 temp = new Matrix44();
+
+		for(int i=0; i<rounds; i++)
+		{
+			float alpha = (i % 360) * 0.01745329f;
+			float x = (float)Math.cos(alpha) * 10;
+			float z = (float)Math.sin(alpha) * 5;
+
+			if(affine)
+			{
+				selfRotation.copy(basicOrientation);
+				selfRotation.addRotate(axis, alpha);
+
+				orbit.copy(basicOrientation);
+				orbit.mult(selfRotation);
+				orbit.addTranslate(x, 0, z);
+
+				scene.copy(orbit);
+				scene.mult(selfRotation);
+			}
+			else
+			{
+				temp.setRotate(axis, alpha);
+				JavaMath.matrixMult(temp.m, basicOrientation.m, selfRotation.m);
+
+				JavaMath.matrixMult(basicOrientation.m, selfRotation.m, orbit.m);
+				temp.setTranslate(x, 0, z);
+				JavaMath.matrixMult(temp.m, orbit.m, orbit.m);
+
+				JavaMath.matrixMult(orbit.m, selfRotation.m, scene.m);
+			}
+		}
+
+		System.arraycopy(scene.m, 0, result, 0, 16);
+	}
+}
@@ -0,0 +1,77 @@
+package nu.shacknet.poseidon.pn.signanzorbit.orbit;
+
+import static org.junit.Assert.assertEquals;
+import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Constants;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Matrix44;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Vector3;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks the quaternion based satellite self rotation against the matrix
+ * based one (axis-angle rebuilt every frame).
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class VecAxisTransformationTest
+{
+	/** The number of satellites. */
+	private static final int SATELLITES = 1024;
+
+	/** The number of frames. */
+	private static final int FRAMES = 200;
+
+	/** The max. difference of the matrix elements. */
+	private static final float MAX_ERROR = 1e-4f;
+
+	/**
+	 * Turns the logging off.
+	 */
+	@BeforeClass
+	public static void setUp()
+	{
+		Config.LOGLEVEL = Config.NONE;
+	}
+
+	/**
+	 * Rotates the satellites both ways and compares their transformations.
+	 */
+	@Test
+	public void quaternionMatchesMatrix()
+	{
+		Vector3[] axes = new Vector3[SATELLITES];
+		float[] angles = new float[SATELLITES];
+		Matrix44[] matrices = new Matrix44[SATELLITES];
+		VecAxisTransformation[] satellites = new VecAxisTransformation[SATELLITES];
+		Matrix44 basicOrientation = new Matrix44().setRotateX(0.5f);
+
+		for(int i=0; i<SATELLITES; i++)
+		{
+			axes[i] = new Vector3(i % 7 + 1, i % 3, i % 5 + 1).normalize();
+			matrices[i] = new Matrix44();
+			satellites[i] = new VecAxisTransformation(axes[i], 1 + i % 90, 1, basicOrientation);
+		}
+
+		float dt = 0.016f;
+		for(int f=0; f<FRAMES; f++)
+			for(int i=0; i<SATELLITES; i++)
+			{
+				// the reference: what the matrix based update did for every satellite
+				VecAxisTransformation s = satellites[i];
+				angles[i] += dt*s.qv*s.speed;
+				if(angles[i] >= Constants.TWOPI)
+					angles[i] -= Constants.TWOPI;
+				matrices[i].copy(basicOrientation);
+				matrices[i].addRotate(axes[i], angles[i]);
+
+				s.update(dt);
+			}
+
+		for(int i=0; i<SATELLITES; i++)
+			for(int j=0; j<16; j++)
+				assertEquals("satellite " + i + ", element " + j, matrices[i].m[j], satellites[i].getTransform().m[j], MAX_ERROR);
+	}
+}
@@ -0,0 +1,159 @@
+package nu.shacknet.poseidon.pn.signanzorbit.scene;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.management.ManagementFactory;
+
+import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
+import nu.shacknet.poseidon.pn.signanzorbit.math.AxisAlignedBox3;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Matrix44;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Sphere;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Vector3;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Checks that the bounding sphere updates of the render thread
+ * (Scene.update()) do not allocate once all SceneEntities have been added,
+ * with both math backends. Half of the SceneEntities and a quarter of the
+ * Models move every frame. The allocations are counted by the JVM per
+ * thread (HotSpot).
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class SceneAllocationTest
+{
+	/** The number of SceneEntities. */
+	private static final int ENTITIES = 64;
+
+	/** The number of Models per SceneEntity. */
+	private static final int MODELS = 4;
+
+	/** The number of frames which may allocate (arena, batch capacity, class loading). */
+	private static final int WARMUP_FRAMES = 60;
+
+	/** The number of frames checked after the warm up. */
+	private static final int FRAMES = 200;
+
+	/** The thread bean counting the allocations. */
+	private static ThreadMXBean threads;
+
+	/** The backend selected before the test. */
+	private boolean nativeMath;
+
+	/**
+	 * Loads the native library.
+	 */
+	@BeforeClass
+	public static void setUp()
+	{
+		Config.LOGLEVEL = Config.NONE;
+		System.loadLibrary("signanzorbit");
+		threads = (ThreadMXBean)ManagementFactory.getThreadMXBean();
+		threads.setThreadAllocatedMemoryEnabled(true);
+	}
+
+	/**
+	 * Saves the selected backend.
+	 */
+	@Before
+	public void saveBackend()
+	{
+		nativeMath = Config.NATIVE_MATH;
+	}
+
+	/**
+	 * Restores the selected backend.
+	 */
+	@After
+	public void restoreBackend()
+	{
+		Config.NATIVE_MATH = nativeMath;
+	}
+
+	/**
+	 * Checks the updates with the Java backend.
+	 */
+	@Test
+	public void javaUpdateDoesNotAllocate()
+	{
+		Config.NATIVE_MATH = false;
+		assertEquals("bytes allocated by Scene.update()", 0, countAllocations());
+	}
+
+	/**
+	 * Checks the updates with the native backend (matrices in the arena).
+	 */
+	@Test
+	public void nativeUpdateDoesNotAllocate()
+	{
+		Config.NATIVE_MATH = true;
+		assertEquals("bytes allocated by Scene.update()", 0, countAllocations());
+	}
+
+	/**
+	 * Creates a scene, updates it and counts the bytes allocated by the
+	 * updates after the warm up.
+	 *
+	 * @return the number of bytes
+	 */
+	private static long countAllocations()
+	{
+		Scene scene = new Scene();
+		Geometry geometry = new Geometry(null, null, null, new AxisAlignedBox3(), new Sphere(new Vector3(), 1), 0);
+		for(int i=0; i<ENTITIES; i++)
+		{
+			SceneEntity entity = new SceneEntity();
+			for(int j=0; j<MODELS; j++)
+			{
+				Model model = new Model();
+				model.getBoundingSphere().radius = 1;
+				model.setTransformation(new Matrix44().setTranslate(j, 0, 0));
+				model.add(geometry, null);
+				entity.add(model);
+			}
+			scene.add(entity);
+		}
+
+		long thread = Thread.currentThread().getId();
+		// the bean may allocate itself, which is measured and subtracted
+		long overhead = -threads.getThreadAllocatedBytes(thread);
+		overhead += threads.getThreadAllocatedBytes(thread);
+
+		long allocated = 0;
+		for(int f=0; f<WARMUP_FRAMES+FRAMES; f++)
+		{
+			move(scene, f);
+			long before = threads.getThreadAllocatedBytes(thread);
+			scene.update();
+			long bytes = threads.getThreadAllocatedBytes(thread) - before - overhead;
+			if(f >= WARMUP_FRAMES)
+				allocated += bytes;
+		}
+		return allocated;
+	}
+
+	/**
+	 * Moves every second SceneEntity and every fourth Model, like the
+	 * logic thread does.
+	 *
+	 * @param scene the scene
+	 * @param frame the frame number
+	 */
+	private static void move(Scene scene, int frame)
+	{
+		for(int i=0; i<ENTITIES; i+=2)
+			scene.getSceneEntity(i).getTransformation().setTranslate(i, frame*0.01f, 0);
+		for(int i=1; i<ENTITIES; i+=4)
+		{
+			Matrix44 transformation = scene.getSceneEntity(i).models.get(i % MODELS).getTransformation();
+			transformation.setRotateY(frame*0.01f);
+		}
+	}
+}
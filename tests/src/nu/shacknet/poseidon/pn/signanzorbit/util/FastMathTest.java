@@ -0,0 +1,215 @@
+package nu.shacknet.poseidon.pn.signanzorbit.util;
+
+import static org.junit.Assert.assertTrue;
+import nu.shacknet.poseidon.pn.signanzorbit.camera.Camera;
+import nu.shacknet.poseidon.pn.signanzorbit.config.Config;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Constants;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Matrix44;
+import nu.shacknet.poseidon.pn.signanzorbit.math.Vector3;
+import nu.shacknet.poseidon.pn.signanzorbit.orbit.Orbit;
+import nu.shacknet.poseidon.pn.signanzorbit.orbit.VecAxisTransformation;
+import nu.shacknet.poseidon.pn.signanzorbit.scene.SceneEntity;
+import nu.shacknet.poseidon.pn.signanzorbit.util.managers.MotionManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks the error bounds of FastMath and compares the orbit, camera and
+ * satellite updates with and without Config.FAST_MATH.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public class FastMathTest
+{
+	/** The number of samples per function. */
+	private static final int SAMPLES = 100000;
+
+	/** The number of orbits. */
+	private static final int ORBITS = 64;
+
+	/** The number of frames of the motion updates. */
+	private static final int FRAMES = 200;
+
+	/** The max. distance of the positions with and without FAST_MATH (the camera
+	 * at CAM_DISTANCE drifts by about 2e-3 in FRAMES, the orbits by less than 1e-4). */
+	private static final float MAX_POSITION_ERROR = 1e-2f;
+
+	/** The backends selected before the test. */
+	private boolean nativeMath, fastMath;
+
+	/**
+	 * Turns the logging off.
+	 */
+	@BeforeClass
+	public static void setUp()
+	{
+		Config.LOGLEVEL = Config.NONE;
+	}
+
+	/**
+	 * Saves the selected backends.
+	 */
+	@Before
+	public void saveBackends()
+	{
+		nativeMath = Config.NATIVE_MATH;
+		fastMath = Config.FAST_MATH;
+	}
+
+	/**
+	 * Restores the selected backends.
+	 */
+	@After
+	public void restoreBackends()
+	{
+		Config.NATIVE_MATH = nativeMath;
+		Config.FAST_MATH = fastMath;
+	}
+
+	/**
+	 * Checks sin() and cos() for |x| <= 4*TWOPI.
+	 */
+	@Test
+	public void sinCosWithinBound()
+	{
+		Config.FAST_MATH = true;
+		for(int i=0; i<SAMPLES; i++)
+		{
+			float x = -4*Constants.TWOPI + 8*Constants.TWOPI * i / SAMPLES;
+			assertWithin("sin", x, FastMath.sin(x), Math.sin(x), FastMath.SIN_MAX_ERROR);
+			assertWithin("cos", x, FastMath.cos(x), Math.cos(x), FastMath.SIN_MAX_ERROR);
+		}
+	}
+
+	/**
+	 * Checks sqrt() and invSqrt() from 1e-6 to 1e6 (relative error).
+	 */
+	@Test
+	public void sqrtWithinBound()
+	{
+		Config.FAST_MATH = true;
+		for(int i=0; i<SAMPLES; i++)
+		{
+			float y = (float)Math.pow(10, -6 + 12.0 * i / SAMPLES);
+			assertWithin("sqrt", y, FastMath.sqrt(y) / Math.sqrt(y), 1, FastMath.SQRT_MAX_ERROR);
+			assertWithin("invSqrt", y, FastMath.invSqrt(y) * Math.sqrt(y), 1, FastMath.SQRT_MAX_ERROR);
+		}
+	}
+
+	/**
+	 * Checks acos() on [-1,1].
+	 */
+	@Test
+	public void acosWithinBound()
+	{
+		Config.FAST_MATH = true;
+		for(int i=0; i<SAMPLES; i++)
+		{
+			float c = -1 + 2f * i / (SAMPLES-1);
+			assertWithin("acos", c, FastMath.acos(c), Math.acos(c), FastMath.ACOS_MAX_ERROR);
+		}
+	}
+
+	/**
+	 * Checks forcePulse() on [0,1].
+	 */
+	@Test
+	public void forcePulseWithinBound()
+	{
+		Config.FAST_MATH = true;
+		for(int i=0; i<SAMPLES; i++)
+		{
+			float t = (float)i / (SAMPLES-1);
+			double pulse = Math.sin(Math.sin(t*Math.PI/2)*Math.PI - Math.PI/2)/2 + 0.5;
+			assertWithin("forcePulse", t, FastMath.forcePulse(t), pulse, FastMath.PULSE_MAX_ERROR);
+		}
+	}
+
+	/**
+	 * Runs the motion updates with and without FAST_MATH (Java backend, the
+	 * approximations only replace java.lang.Math in the Java paths) and
+	 * compares the positions of the orbits and the camera.
+	 */
+	@Test
+	public void motionMatchesExact()
+	{
+		Config.NATIVE_MATH = false;
+		Vector3[] exactResult = new Vector3[ORBITS+1];
+		Vector3[] fastResult = new Vector3[ORBITS+1];
+		Config.FAST_MATH = false;
+		motion(exactResult);
+		Config.FAST_MATH = true;
+		motion(fastResult);
+
+		for(int i=0; i<exactResult.length; i++)
+		{
+			float error = Vector3.subtract(exactResult[i], fastResult[i]).length();
+			assertTrue((i < ORBITS ? "orbit " + i : "camera") + " differs by " + error, error <= MAX_POSITION_ERROR);
+		}
+	}
+
+	/**
+	 * The per frame motion updates: Orbit.update() of every orbit (with a
+	 * satellite rotation), Camera.updatePosition() while the camera is
+	 * dragged and MotionManager.changeSatelliteTransformation() for one
+	 * orbit per frame. The orbits stay clear of the limits of
+	 * Orbit.limitUniverse().
+	 *
+	 * @param result the orbit positions and the camera eye position are written into this
+	 */
+	private static void motion(Vector3[] result)
+	{
+		Matrix44 basicOrientation = new Matrix44().setRotateX(0.5f);
+		Orbit[] orbits = new Orbit[ORBITS];
+		SceneEntity[] entities = new SceneEntity[ORBITS];
+		for(int i=0; i<ORBITS; i++)
+		{
+			Vector3 entityPos = new Vector3(12.5f + i % 7, i % 3, -(i % 5));
+			Vector3 directionVec = new Vector3(0, 1 + i % 2, 3 + i % 4);
+			orbits[i] = new Orbit(entityPos, new Vector3(), directionVec, 1 + i % 3, basicOrientation);
+			orbits[i].setSatTrans(new VecAxisTransformation(new Vector3(i % 7 + 1, i % 3, i % 5 + 1), 1 + i % 90, 1, basicOrientation));
+			entities[i] = new SceneEntity();
+			entities[i].setMotion(orbits[i]);
+		}
+		Camera camera = new Camera(Config.CAM_DISTANCE, -80.0f, 80.0f, 0.0f, 0.0f, 1.0f/60.0f, 1.0f, 200.0f);
+		Vector3 viewPos = new Vector3();
+		Vector3 pushVec = new Vector3();
+		float dt = 0.016f;
+
+		for(int f=0; f<FRAMES; f++)
+		{
+			for(int i=0; i<ORBITS; i++)
+				orbits[i].update(dt);
+
+			camera.setMouseDiff(1 + f % 3, (f % 20) - 10);
+			camera.updatePosition(viewPos, dt);
+
+			int i = f % ORBITS;
+			pushVec.set(orbits[i].position).add(1 + f % 5);
+			MotionManager.instance.changeSatelliteTransformation(entities[i], orbits[i].directionVec, pushVec, 1);
+		}
+
+		for(int i=0; i<ORBITS; i++)
+			result[i] = new Vector3(orbits[i].position);
+		result[ORBITS] = new Vector3(camera.eyePosition);
+	}
+
+	/**
+	 * Asserts that an approximation is within its error bound.
+	 *
+	 * @param name the name of the function
+	 * @param x the argument
+	 * @param value the approximation
+	 * @param exact the exact value
+	 * @param bound the error bound
+	 */
+	private static void assertWithin(String name, float x, double value, double exact, float bound)
+	{
+		double error = Math.abs(value - exact);
+		assertTrue(name + "(" + x + ") differs by " + error + " (bound " + bound + ")", error <= bound);
+	}
+}
@@ -0,0 +1,34 @@
+package nu.shacknet.poseidon.pn.signanzorbit;
+
+import android.content.Context;
+
+/**
+ * Stands in for the activity in the JVM tests, which run without the
+ * Android runtime. There is no instance, so the managers skip what needs
+ * the activity (sound, vibration, resources).
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public abstract class LevelActivity extends Context
+{
+	/** Whether sound is enabled or not. */
+	public static boolean SOUND_ENABLED = false;
+
+	/**
+	 * triggers the Vibrator.
+	 *
+	 * @param millis The Milliseconds the Vibrator will be turned on for
+	 */
+	public abstract void vibrate(long millis);
+
+	/**
+	 * Gets the single instance of LevelActivity.
+	 *
+	 * @return null, there is no activity in the tests
+	 */
+	public static LevelActivity getInstance()
+	{
+		return null;
+	}
+}
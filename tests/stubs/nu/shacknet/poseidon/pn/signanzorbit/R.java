@@ -0,0 +1,20 @@
+package nu.shacknet.poseidon.pn.signanzorbit;
+
+/**
+ * Stands in for the resource ids aapt generates, the JVM tests do not
+ * load resources.
+ *
+ * @author Alex Druml
+ * @author Lukas Roessler
+ */
+public final class R
+{
+	/** The raw resources. */
+	public static final class raw
+	{
+		public static final int heavyimpact = 1;
+		public static final int impact = 2;
+		public static final int shoot = 3;
+		public static final int yeah = 4;
+	}
+}